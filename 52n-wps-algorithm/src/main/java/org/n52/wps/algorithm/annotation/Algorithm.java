@@ -34,4 +34,9 @@ public @interface Algorithm {
     String version();
     boolean storeSupported() default true;
     boolean statusSupported() default true;
+    /**
+     * Set to true if the outputs depend on nothing but the inputs, so results
+     * of repeated executions with the same inputs may be reused.
+     */
+    boolean deterministic() default false;
 }
@@ -16,10 +16,12 @@
  */
 package org.n52.wps.algorithm.annotation;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -37,12 +39,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Binds annotated members of an algorithm class. Members are accessed through
+ * {@link MethodHandle}s that are created on first use and kept with the
+ * binding, bindings are cached by the {@link AnnotatedAlgorithmIntrospector}.
  *
  * @author tkunicki
  */
 public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(AnnotationBinding.class);
+
+    private final static MethodType EXECUTE_TYPE = MethodType.methodType(void.class, Object.class);
+    private final static MethodType GET_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType SET_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private final static MethodType BIND_TYPE = MethodType.methodType(IData.class, Object.class);
     
     private M member;
 
@@ -62,6 +72,8 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
     
     public static class ExecuteMethodBinding extends AnnotationBinding<Method> {
 
+        private volatile MethodHandle executeHandle;
+
         public ExecuteMethodBinding(Method method) {
             super(method);
         }
@@ -85,17 +97,27 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         }
         
         public void execute(Object annotatedInstance) {
+            MethodHandle handle;
             try {
-                getMember().invoke(annotatedInstance);
-            }catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error executing process", ex);
-            } catch (IllegalArgumentException ex) {
+                handle = getExecuteHandle();
+            } catch (IllegalAccessException ex) {
                 throw new RuntimeException("Internal error executing process", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+            }
+            try {
+                handle.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
+
+        private MethodHandle getExecuteHandle() throws IllegalAccessException {
+            MethodHandle handle = executeHandle;
+            if (handle == null) {
+                handle = MethodHandles.lookup().unreflect(getMember()).asType(EXECUTE_TYPE);
+                executeHandle = handle;
+            }
+            return handle;
+        }
     }
     
     public static abstract class DataBinding<M extends AccessibleObject & Member, D extends BoundDescriptor> extends AnnotationBinding<M> {
@@ -250,7 +272,9 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static abstract class OutputBinding<M extends AccessibleObject & Member,  D extends OutputDescriptor> extends DataBinding<M,D> {
         
-        private Constructor<? extends IData> bindingConstructor;
+        private volatile Constructor<? extends IData> bindingConstructor;
+
+        private volatile MethodHandle bindingHandle;
         
         public OutputBinding(M member) {
             super(member);
@@ -261,26 +285,29 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         }
         
         public IData bindOutputValue(Object outputValue) {
-            try {
-                if (isTypeEnum()) {
-                    outputValue = ((Enum<?>)outputValue).name();
+            if (isTypeEnum()) {
+                outputValue = ((Enum<?>)outputValue).name();
+            }
+            MethodHandle handle = bindingHandle;
+            if (handle == null) {
+                try {
+                    handle = MethodHandles.lookup().unreflectConstructor(getConstructor()).asType(BIND_TYPE);
+                } catch (IllegalAccessException ex) {
+                    throw new RuntimeException("Internal error processing outputs", ex);
                 }
-                return getConstructor().newInstance(outputValue);
-            } catch (InstantiationException ex) {
-                throw new RuntimeException("Internal error processing outputs", ex);
-            } catch (SecurityException ex) {
-                throw new RuntimeException("Internal error processing outputs", ex);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing outputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                bindingHandle = handle;
+            }
+            try {
+                return (IData) handle.invokeExact(outputValue);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
         
         public abstract IData get(Object annotatedInstance);
         
-        private synchronized Constructor<? extends IData> getConstructor() {
+        private Constructor<? extends IData> getConstructor() {
+            // a race only looks the constructor up twice
             if (bindingConstructor == null ){
                 try {
                     Class<? extends IData> bindingClass = getDescriptor().getBinding();
@@ -302,6 +329,8 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class InputFieldBinding<D extends InputDescriptor> extends InputBinding<Field, D> {
 
+        private volatile MethodHandle setter;
+
         public InputFieldBinding(Field field) {
             super(field);
         }
@@ -330,11 +359,18 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            Object value = unbindInput(boundInputList);
             try {
-                getMember().set(annotatedObject, unbindInput(boundInputList));
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalAccessException ex) {
+                MethodHandle handle = setter;
+                if (handle == null) {
+                    handle = MethodHandles.lookup().unreflectSetter(getMember()).asType(SET_TYPE);
+                    setter = handle;
+                }
+                handle.invokeExact(annotatedObject, value);
+            } catch (Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                // includes a wrong payload type or null for a primitive field
                 throw new RuntimeException("Internal error processing inputs", ex);
             }
         }
@@ -342,8 +378,18 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class InputMethodBinding<D extends InputDescriptor> extends InputBinding<Method, D> {
 
+        private volatile MethodHandle setter;
+
+        // the wrapped parameter class, null if the method has no parameter
+        private final Class<?> parameterClass;
+
+        private final boolean primitiveParameter;
+
         public InputMethodBinding(Method method) {
             super(method);
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            this.parameterClass = parameterTypes.length == 0 ? null : ClassUtil.wrap(parameterTypes[0]);
+            this.primitiveParameter = parameterTypes.length != 0 && parameterTypes[0].isPrimitive();
         }
 
         @Override
@@ -371,14 +417,23 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            Object value = unbindInput(boundInputList);
+            MethodHandle handle = setter;
+            if (handle == null) {
+                try {
+                    handle = MethodHandles.lookup().unreflect(getMember()).asType(SET_TYPE);
+                } catch (IllegalAccessException ex) {
+                    throw new RuntimeException("Internal error processing inputs", ex);
+                }
+                setter = handle;
+            }
+            if (value == null ? primitiveParameter : parameterClass == null || !parameterClass.isInstance(value)) {
+                throw new RuntimeException("Internal error processing inputs",
+                        new IllegalArgumentException("Can not pass " + value + " to " + getMember()));
+            }
             try {
-                getMember().invoke(annotatedObject, unbindInput(boundInputList));
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                handle.invokeExact(annotatedObject, value);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
@@ -386,6 +441,8 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class OutputFieldBinding<D extends OutputDescriptor> extends OutputBinding<Field, D> {
 
+        private volatile MethodHandle getter;
+
         public OutputFieldBinding(Field field) {
             super(field);
         }
@@ -412,10 +469,15 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         public IData get(Object annotatedInstance) {
             Object value;
             try {
-                value = getMember().get(annotatedInstance);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalAccessException ex) {
+                MethodHandle handle = getter;
+                if (handle == null) {
+                    handle = MethodHandles.lookup().unreflectGetter(getMember()).asType(GET_TYPE);
+                    getter = handle;
+                }
+                value = (Object) handle.invokeExact(annotatedInstance);
+            } catch (Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
                 throw new RuntimeException("Internal error processing inputs", ex);
             }
             return value == null ? null : bindOutputValue(value);
@@ -424,6 +486,8 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class OutputMethodBinding<D extends OutputDescriptor> extends OutputBinding<Method, D> {
 
+        private volatile MethodHandle getter;
+
         public OutputMethodBinding(Method method) {
             super(method);
         }
@@ -453,15 +517,19 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         
         @Override
         public IData get(Object annotatedInstance) {
+            MethodHandle handle = getter;
+            if (handle == null) {
+                try {
+                    handle = MethodHandles.lookup().unreflect(getMember()).asType(GET_TYPE);
+                } catch (IllegalAccessException ex) {
+                    throw new RuntimeException("Internal error processing inputs", ex);
+                }
+                getter = handle;
+            }
             Object value;
             try {
-                value = getMember().invoke(annotatedInstance);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                value = (Object) handle.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
             return value == null ? null : bindOutputValue(value);
@@ -51,7 +51,7 @@ public abstract class AbstractAnnotatedAlgorithm extends AbstractDescriptorAlgor
             iEntry.getValue().set(annotatedInstance, inputMap.get(iEntry.getKey()));
         }
         
-        getInstrospector(annotatedInstance.getClass()).getExecuteMethodBinding().execute(annotatedInstance);
+        introspector.getExecuteMethodBinding().execute(annotatedInstance);
         
         Map<String, IData> oMap = new HashMap<String, IData>();
         for (Map.Entry<String, AnnotationBinding.OutputBinding<?, ?>> oEntry : introspector.getOutputBindingMap().entrySet()) {
@@ -84,6 +84,11 @@ public abstract class AbstractAnnotatedAlgorithm extends AbstractDescriptorAlgor
             }
         }
 
+        public Proxy(Class<?> proxiedClass, Object proxiedInstance) {
+            this.proxiedClass = proxiedClass;
+            this.proxiedInstance = proxiedInstance;
+        }
+
         @Override
         public Class<?> getAlgorithmClass() {
             return proxiedClass;
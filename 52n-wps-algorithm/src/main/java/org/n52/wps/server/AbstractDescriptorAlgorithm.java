@@ -92,6 +92,14 @@ public abstract class AbstractDescriptorAlgorithm implements IAlgorithm, ISubjec
         return getAlgorithmDescriptor().getIdentifier();
     }
 
+    /**
+     * @return <code>true</code> if the algorithm is declared deterministic, so
+     *         results of executions with the same inputs may be reused
+     */
+    public boolean isDeterministic() {
+        return getAlgorithmDescriptor().getDeterministic();
+    }
+
     private ProcessDescription createProcessDescription() {
 
         AlgorithmDescriptor algorithmDescriptor = getAlgorithmDescriptor();
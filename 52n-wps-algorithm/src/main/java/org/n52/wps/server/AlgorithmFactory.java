@@ -0,0 +1,92 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.n52.wps.algorithm.annotation.Algorithm;
+
+/**
+ * Creates a new instance of an algorithm class for every execution, so
+ * executions running at the same time do not share inputs, outputs, errors or
+ * observers. Classes that only carry an {@link Algorithm} annotation are
+ * wrapped in an {@link AbstractAnnotatedAlgorithm.Proxy}.
+ * 
+ * The public no-arg constructor is looked up once and invoked through a
+ * {@link MethodHandle}.
+ */
+public class AlgorithmFactory {
+
+	private final Class<?> algorithmClass;
+
+	private final boolean annotated;
+
+	private final MethodHandle constructor;
+
+	/**
+	 * @param algorithmClass
+	 *            a class implementing {@link IAlgorithm} or annotated with
+	 *            {@link Algorithm}
+	 * @throws IllegalArgumentException
+	 *             if the class is neither an algorithm nor annotated or has no
+	 *             public no-arg constructor
+	 */
+	public AlgorithmFactory(Class<?> algorithmClass) {
+		this.algorithmClass = algorithmClass;
+		if (IAlgorithm.class.isAssignableFrom(algorithmClass)) {
+			this.annotated = false;
+		} else if (algorithmClass.isAnnotationPresent(Algorithm.class)) {
+			this.annotated = true;
+		} else {
+			throw new IllegalArgumentException(algorithmClass.getName()
+					+ " does not implement IAlgorithm or have a Algorithm annotation.");
+		}
+		try {
+			MethodHandle handle = MethodHandles.publicLookup().findConstructor(algorithmClass,
+					MethodType.methodType(void.class));
+			this.constructor = handle.asType(MethodType.methodType(annotated ? Object.class : IAlgorithm.class));
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(algorithmClass.getName() + " has no public no-arg constructor.", e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(algorithmClass.getName() + " has no public no-arg constructor.", e);
+		}
+	}
+
+	public Class<?> getAlgorithmClass() {
+		return algorithmClass;
+	}
+
+	/**
+	 * @return a new instance of the algorithm
+	 */
+	public IAlgorithm newInstance() {
+		try {
+			if (annotated) {
+				Object proxiedInstance = (Object) constructor.invokeExact();
+				return new AbstractAnnotatedAlgorithm.Proxy(algorithmClass, proxiedInstance);
+			}
+			return (IAlgorithm) constructor.invokeExact();
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Could not instantiate algorithm " + algorithmClass.getName(), t);
+		}
+	}
+
+}
@@ -18,12 +18,11 @@ package org.n52.wps.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.NotImplementedException;
-import org.n52.wps.algorithm.annotation.Algorithm;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.webapp.api.AlgorithmEntry;
 import org.n52.wps.webapp.api.ConfigurationCategory;
@@ -32,7 +31,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A static repository to retrieve the available algorithms.
+ * A static repository to retrieve the available algorithms. Every call of
+ * {@link #getAlgorithm(String)} returns a new instance of the algorithm.
  * 
  * @author foerster
  *
@@ -43,12 +43,12 @@ public class LocalAlgorithmRepository implements
 	private static Logger LOGGER = LoggerFactory
 			.getLogger(LocalAlgorithmRepository.class);
 	private Map<String, ProcessDescription> processDescriptionMap;
-	private Map<String, IAlgorithm> algorithmMap;
+	private Map<String, AlgorithmFactory> algorithmMap;
 	private ConfigurationModule localAlgorithmRepoConfigModule;
 
 	public LocalAlgorithmRepository() {
-		processDescriptionMap = new HashMap<String, ProcessDescription>();
-		algorithmMap = new HashMap<String, IAlgorithm>();
+		processDescriptionMap = new ConcurrentHashMap<String, ProcessDescription>();
+		algorithmMap = new ConcurrentHashMap<String, AlgorithmFactory>();
 
 		localAlgorithmRepoConfigModule = WPSConfig.getInstance()
 				.getConfigurationModuleForClass(this.getClass().getName(),
@@ -76,7 +76,8 @@ public class LocalAlgorithmRepository implements
 
 	public IAlgorithm getAlgorithm(String className) {
 		if(getAlgorithmNames().contains(className)){
-			return algorithmMap.get(className);
+			AlgorithmFactory factory = algorithmMap.get(className);
+			return factory == null ? null : factory.newInstance();
 		}
 		return null;
 	}
@@ -101,23 +102,21 @@ public class LocalAlgorithmRepository implements
 		return getAlgorithmNames().contains(className);
 	}
 
-	private IAlgorithm loadAlgorithm(String algorithmClassName)
+	private AlgorithmFactory createFactory(String algorithmClassName)
 			throws Exception {
 		Class<?> algorithmClass = LocalAlgorithmRepository.class
 				.getClassLoader().loadClass(algorithmClassName);
-		IAlgorithm algorithm = null;
-		if (IAlgorithm.class.isAssignableFrom(algorithmClass)) {
-			algorithm = IAlgorithm.class.cast(algorithmClass.newInstance());
-		} else if (algorithmClass.isAnnotationPresent(Algorithm.class)) {
-			// we have an annotated algorithm that doesn't implement IAlgorithm
-			// wrap it in a proxy class
-			algorithm = new AbstractAnnotatedAlgorithm.Proxy(algorithmClass);
-		} else {
-			throw new Exception(
-					"Could not load algorithm "
-							+ algorithmClassName
-							+ " does not implement IAlgorithm or have a Algorithm annotation.");
+		try {
+			return new AlgorithmFactory(algorithmClass);
+		} catch (IllegalArgumentException e) {
+			throw new Exception("Could not load algorithm " + algorithmClassName
+					+ ": " + e.getMessage(), e);
 		}
+	}
+
+	private IAlgorithm loadAlgorithm(String algorithmClassName, AlgorithmFactory factory)
+			throws Exception {
+		IAlgorithm algorithm = factory.newInstance();
 
 		boolean isNoProcessDescriptionValid = false;
 
@@ -144,11 +143,15 @@ public class LocalAlgorithmRepository implements
 
 		try {
 			
-			IAlgorithm algorithm = loadAlgorithm(algorithmClassName);
+			AlgorithmFactory factory = createFactory(algorithmClassName);
+			// this instance only provides the description, executions get their own
+			IAlgorithm algorithm = loadAlgorithm(algorithmClassName, factory);
 			
-			processDescriptionMap.put(algorithmClassName,
-					algorithm.getDescription());
-			algorithmMap.put(algorithmClassName, algorithm);
+			ProcessDescription description = algorithm.getDescription();
+			if (description != null) {
+				processDescriptionMap.put(algorithmClassName, description);
+			}
+			algorithmMap.put(algorithmClassName, factory);
 			LOGGER.info("Algorithm class registered: " + algorithmClassName);
 
 			return true;
@@ -0,0 +1,224 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionsDocument;
+
+import org.apache.xmlbeans.XmlException;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Keeps process descriptions that are expensive to generate on disk, so
+ * repositories do not generate them again after a restart. Descriptions are
+ * stored per repository and process together with a checksum of the files they
+ * were generated from, e.g. the tool or script and the jar of the description
+ * creator. A description is only used while the checksum matches.
+ * 
+ * Only the WPS 1.0.0 description is stored, the 2.0.0 description is derived
+ * from it by {@link ProcessDescription}.
+ */
+public class ProcessDescriptionCache {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ProcessDescriptionCache.class);
+
+	private static final String CACHE_DIRECTORY_NAME = "52n-wps-process-descriptions";
+
+	private static final String SUFFIX = ".xml";
+
+	private static ProcessDescriptionCache instance;
+
+	private final File directory;
+
+	/**
+	 * checksums of files by path, length and modification time, jars are
+	 * shared by many processes
+	 */
+	private final Map<String, String> fileChecksums = new ConcurrentHashMap<String, String>();
+
+	public static synchronized ProcessDescriptionCache getInstance() {
+		if (instance == null) {
+			File directory = null;
+			Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
+			if (serverConfig != null && serverConfig.getProcessDescriptionCacheDirectory() != null
+					&& !serverConfig.getProcessDescriptionCacheDirectory().trim().isEmpty()) {
+				directory = new File(serverConfig.getProcessDescriptionCacheDirectory().trim());
+			} else {
+				directory = new File(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY_NAME);
+			}
+			instance = new ProcessDescriptionCache(directory);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param directory
+	 *            the directory holding the descriptions, created if necessary
+	 */
+	public ProcessDescriptionCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Computes the checksum of the given files. Files that do not exist or are
+	 * <code>null</code> are skipped.
+	 * 
+	 * @return the checksum as hex string
+	 * @throws IOException
+	 *             if a file can not be read
+	 */
+	public String checksum(File... files) throws IOException {
+		Hasher hasher = Hashing.sha1().newHasher();
+		for (File file : files) {
+			if (file == null || !file.isFile()) {
+				continue;
+			}
+			String key = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+			String checksum = fileChecksums.get(key);
+			if (checksum == null) {
+				checksum = Files.hash(file, Hashing.sha1()).toString();
+				fileChecksums.put(key, checksum);
+			}
+			hasher.putUnencodedChars(checksum);
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * @return the jar file a class was loaded from or <code>null</code> if it
+	 *         was not loaded from a file
+	 */
+	public static File getCodeSourceFile(Class<?> clazz) {
+		CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null
+				|| !"file".equals(codeSource.getLocation().getProtocol())) {
+			return null;
+		}
+		try {
+			File file = new File(codeSource.getLocation().toURI());
+			return file.isFile() ? file : null;
+		} catch (URISyntaxException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param repository
+	 *            the name of the repository, e.g. its class name
+	 * @param processID
+	 *            the identifier of the process
+	 * @param checksum
+	 *            the checksum of the files the description is generated from
+	 * @return the stored description or <code>null</code> if none is stored
+	 *         for the checksum
+	 */
+	public ProcessDescription get(String repository, String processID, String checksum) {
+		File file = getFile(repository, processID, checksum);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ProcessDescriptionsDocument document = ProcessDescriptionsDocument.Factory.parse(file);
+			ProcessDescriptionType[] descriptions = document.getProcessDescriptions().getProcessDescriptionArray();
+			if (descriptions.length != 1) {
+				return null;
+			}
+			ProcessDescription processDescription = new ProcessDescription();
+			processDescription.addProcessDescriptionForVersion(descriptions[0], WPSConfig.VERSION_100);
+			LOGGER.debug("Using stored description of process {}.", processID);
+			return processDescription;
+		} catch (XmlException e) {
+			LOGGER.warn("Could not read stored description of process " + processID + ", generating it again.", e);
+		} catch (IOException e) {
+			LOGGER.warn("Could not read stored description of process " + processID + ", generating it again.", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Stores a description, descriptions stored for other checksums of the
+	 * process are removed.
+	 * 
+	 * @param repository
+	 *            the name of the repository, e.g. its class name
+	 * @param processID
+	 *            the identifier of the process
+	 * @param checksum
+	 *            the checksum of the files the description was generated from
+	 * @param processDescription
+	 *            the description to store
+	 */
+	public void put(String repository, String processID, String checksum, ProcessDescription processDescription) {
+		ProcessDescriptionType description = (ProcessDescriptionType) processDescription
+				.getProcessDescriptionType(WPSConfig.VERSION_100);
+		if (description == null) {
+			return;
+		}
+		File target = getFile(repository, processID, checksum);
+		File processDirectory = target.getParentFile();
+		// write to a temporary file first, so a half written description is never used
+		File temp = new File(processDirectory, target.getName() + ".part");
+		try {
+			Files.createParentDirs(target);
+			File[] outdated = processDirectory.listFiles();
+			if (outdated != null) {
+				for (File file : outdated) {
+					file.delete();
+				}
+			}
+			ProcessDescriptionsDocument document = ProcessDescriptionsDocument.Factory.newInstance();
+			document.addNewProcessDescriptions().addNewProcessDescription().set(description);
+			document.save(temp);
+			if (!temp.renameTo(target)) {
+				throw new IOException("Could not rename " + temp + " to " + target);
+			}
+		} catch (IOException e) {
+			temp.delete();
+			LOGGER.warn("Could not store description of process " + processID + ".", e);
+		}
+	}
+
+	/**
+	 * @return the file the description is stored in
+	 */
+	File getFile(String repository, String processID, String checksum) {
+		File repositoryDirectory = new File(directory, toFileName(repository));
+		return new File(new File(repositoryDirectory, toFileName(processID)), checksum + SUFFIX);
+	}
+
+	private static String toFileName(String name) {
+		// never leave the cache directory
+		return name.replaceAll("[^A-Za-z0-9._-]", "_").replace("..", "_");
+	}
+
+}
@@ -0,0 +1,67 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+public class AlgorithmFactoryTest {
+
+	@Test
+	public void shouldCreateNewInstances() {
+		AlgorithmFactory factory = new AlgorithmFactory(StringReverseAnnotatedAlgorithm.class);
+		IAlgorithm first = factory.newInstance();
+		IAlgorithm second = factory.newInstance();
+		Assert.assertThat(first, is(instanceOf(StringReverseAnnotatedAlgorithm.class)));
+		Assert.assertThat(first, is(not(sameInstance(second))));
+	}
+
+	@Test
+	public void shouldIsolateExecutions() throws Exception {
+		AlgorithmFactory factory = new AlgorithmFactory(StringReverseAnnotatedAlgorithm.class);
+		IAlgorithm first = factory.newInstance();
+		IAlgorithm second = factory.newInstance();
+		Map<String, IData> firstResult = first.run(input("abc"));
+		Map<String, IData> secondResult = second.run(input("xyz"));
+		Assert.assertThat((String) firstResult.get("OUTPUT_STRING").getPayload(), is("cba"));
+		Assert.assertThat((String) secondResult.get("OUTPUT_STRING").getPayload(), is("zyx"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectOtherClasses() {
+		new AlgorithmFactory(String.class);
+	}
+
+	private Map<String, List<IData>> input(String value) {
+		Map<String, List<IData>> inputs = new HashMap<String, List<IData>>();
+		inputs.put("INPUT_STRING", Collections.<IData> singletonList(new LiteralStringBinding(value)));
+		return inputs;
+	}
+
+}
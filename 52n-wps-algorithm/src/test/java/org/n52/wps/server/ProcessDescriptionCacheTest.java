@@ -0,0 +1,99 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.wps.commons.WPSConfig;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class ProcessDescriptionCacheTest {
+
+	private static final String REPOSITORY = "org.example.Repository";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ProcessDescriptionCache cache;
+
+	@Before
+	public void init() throws IOException {
+		this.cache = new ProcessDescriptionCache(folder.newFolder("cache"));
+	}
+
+	@Test
+	public void shouldReturnStoredDescription() {
+		cache.put(REPOSITORY, "v.buffer", "abc", createDescription("v.buffer"));
+		ProcessDescription description = cache.get(REPOSITORY, "v.buffer", "abc");
+		Assert.assertThat(description, is(notNullValue()));
+		ProcessDescriptionType type = (ProcessDescriptionType) description
+				.getProcessDescriptionType(WPSConfig.VERSION_100);
+		Assert.assertThat(type.getIdentifier().getStringValue(), is("v.buffer"));
+	}
+
+	@Test
+	public void shouldReplaceOutdatedDescription() {
+		cache.put(REPOSITORY, "v.buffer", "abc", createDescription("v.buffer"));
+		cache.put(REPOSITORY, "v.buffer", "def", createDescription("v.buffer"));
+		Assert.assertThat(cache.get(REPOSITORY, "v.buffer", "abc"), is(nullValue()));
+		Assert.assertThat(cache.get(REPOSITORY, "v.buffer", "def"), is(notNullValue()));
+		Assert.assertThat(cache.getFile(REPOSITORY, "v.buffer", "def").getParentFile().list().length, is(1));
+	}
+
+	@Test
+	public void shouldStayInCacheDirectory() {
+		File file = cache.getFile(REPOSITORY, "../../secret", "abc");
+		Assert.assertThat(file.getAbsolutePath().startsWith(new File(folder.getRoot(), "cache").getAbsolutePath()),
+				is(true));
+	}
+
+	@Test
+	public void shouldChangeChecksumWithContent() throws IOException {
+		File tool = folder.newFile("tool");
+		Files.write("first", tool, Charsets.UTF_8);
+		String first = cache.checksum(tool);
+		Assert.assertThat(cache.checksum(tool), is(first));
+		Files.write("second version", tool, Charsets.UTF_8);
+		Assert.assertThat(cache.checksum(tool), is(not(first)));
+		Assert.assertThat(cache.checksum(tool, null), is(cache.checksum(tool)));
+	}
+
+	private ProcessDescription createDescription(String identifier) {
+		ProcessDescriptionType type = ProcessDescriptionType.Factory.newInstance();
+		type.addNewIdentifier().setStringValue(identifier);
+		type.addNewTitle().setStringValue(identifier);
+		ProcessDescription description = new ProcessDescription();
+		description.addProcessDescriptionForVersion(type, WPSConfig.VERSION_100);
+		return description;
+	}
+
+}
@@ -24,6 +24,7 @@ import java.io.StringWriter;
 import javanet.staxutils.IndentingXMLStreamWriter;
 import javanet.staxutils.XMLStreamUtils;
 
+import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
@@ -44,8 +45,10 @@ import javax.xml.transform.stream.StreamResult;
 import org.apache.xmlbeans.SchemaType;
 import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlObject;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
+import com.ctc.wstx.api.WstxOutputProperties;
 import com.ctc.wstx.stax.WstxInputFactory;
 import com.ctc.wstx.stax.WstxOutputFactory;
 
@@ -58,9 +61,15 @@ public class XMLUtil {
     private final static XMLOutputFactory xmlOutputFactory;
     private final static XMLInputFactory xmlInputFactory;
 
+    private final static XMLOutputFactory fragmentOutputFactory;
+
     static {
         xmlInputFactory = new WstxInputFactory();
         xmlOutputFactory = new WstxOutputFactory();
+        fragmentOutputFactory = new WstxOutputFactory();
+        fragmentOutputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+        // fragments may consist of text or several elements
+        fragmentOutputFactory.setProperty(WstxOutputProperties.P_OUTPUT_VALIDATE_STRUCTURE, Boolean.FALSE);
     }
 
     public static XMLInputFactory getInputFactory() {
@@ -138,6 +147,82 @@ public class XMLUtil {
         }
     }
 
+    /**
+     * Writes the content of a node, i.e. its children without the node itself,
+     * as UTF-8 encoded XML. Namespaces are declared as needed. Unlike
+     * {@link #nodeToString(Node)} no intermediate String is created.
+     *
+     * @param node
+     *        the node, e.g. an element holding inline data
+     * @param output
+     *        the stream to write to, not closed by this method
+     * @throws IOException
+     *         if the content cannot be written
+     */
+    public static void writeNodeContent(Node node, OutputStream output) throws IOException {
+        try {
+            XMLStreamWriter writer = fragmentOutputFactory.createXMLStreamWriter(output, "UTF-8");
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                writeNode(child, writer);
+            }
+            writer.flush();
+            writer.close();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Error writing XML", e);
+        }
+    }
+
+    private static void writeNode(Node node, XMLStreamWriter writer) throws XMLStreamException {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            String prefix = node.getPrefix() == null ? "" : node.getPrefix();
+            String namespace = node.getNamespaceURI() == null ? "" : node.getNamespaceURI();
+            writer.writeStartElement(prefix, localNameOf(node), namespace);
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                String attributeNamespace = attribute.getNamespaceURI();
+                if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attributeNamespace)) {
+                    // keep declarations, the content may use them in values
+                    if (attribute.getPrefix() != null) {
+                        writer.writeNamespace(attribute.getLocalName(), attribute.getNodeValue());
+                    }
+                }
+                else if (attributeNamespace == null || attributeNamespace.length() == 0) {
+                    writer.writeAttribute(localNameOf(attribute), attribute.getNodeValue());
+                }
+                else {
+                    writer.writeAttribute(attribute.getPrefix() == null ? "" : attribute.getPrefix(),
+                                          attributeNamespace,
+                                          attribute.getLocalName(),
+                                          attribute.getNodeValue());
+                }
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                writeNode(child, writer);
+            }
+            writer.writeEndElement();
+            break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+            writer.writeCharacters(node.getNodeValue());
+            break;
+        case Node.COMMENT_NODE:
+            writer.writeComment(node.getNodeValue());
+            break;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static String localNameOf(Node node) {
+        return node.getLocalName() == null ? node.getNodeName() : node.getLocalName();
+    }
+
     public static String nodeToString(Node node) throws TransformerFactoryConfigurationError, TransformerException {
         StringWriter stringWriter = new StringWriter();
         Transformer transformer = TransformerFactory.newInstance().newTransformer();
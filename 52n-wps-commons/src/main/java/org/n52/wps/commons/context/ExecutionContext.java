@@ -16,6 +16,10 @@
  */
 package org.n52.wps.commons.context;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -23,10 +27,25 @@ import java.util.UUID;
 
 import net.opengis.wps.x100.OutputDefinitionType;
 
-public class ExecutionContext {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the state of a single execution. Temporary files written by parsers,
+ * generators and processes are registered with the context and deleted when
+ * the execution is closed, instead of waiting for finalization. Resources
+ * holding such files open, e.g. image readers, are closed before the files
+ * are deleted.
+ */
+public class ExecutionContext implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(ExecutionContext.class);
 
     private String tempFolderName;
     private List<OutputDefinitionType> outputDefinitionTypes;
+    private final List<File> temporaryFiles = new ArrayList<File>();
+    private final List<Closeable> resources = new ArrayList<Closeable>();
+    private boolean closed = false;
 
     public ExecutionContext() {
         this(Arrays.asList(new OutputDefinitionType[0]));
@@ -50,4 +69,105 @@ public class ExecutionContext {
     public List<OutputDefinitionType> getOutputs() {
         return this.outputDefinitionTypes;
     }
+
+    /**
+     * Registers a file or directory that is deleted when this context is
+     * closed. Directories are deleted including their content. Files
+     * registered after the context was closed are deleted immediately.
+     *
+     * @param file
+     *            the temporary file
+     */
+    public void registerTemporaryFile(File file) {
+        if (file == null) {
+            return;
+        }
+        synchronized (temporaryFiles) {
+            if (!closed) {
+                temporaryFiles.add(file);
+                return;
+            }
+        }
+        delete(file);
+    }
+
+    /**
+     * Registers a resource that is closed when this context is closed, before
+     * the temporary files are deleted. Resources registered after the context
+     * was closed are closed immediately.
+     *
+     * @param resource
+     *            the resource, e.g. a reader of a temporary file
+     */
+    public void registerResource(Closeable resource) {
+        if (resource == null) {
+            return;
+        }
+        synchronized (temporaryFiles) {
+            if (!closed) {
+                resources.add(resource);
+                return;
+            }
+        }
+        close(resource);
+    }
+
+    /**
+     * @return the number of temporary files registered so far, used to tell
+     *         whether data depends on files that are deleted with this context
+     */
+    public int getTemporaryFileCount() {
+        synchronized (temporaryFiles) {
+            return temporaryFiles.size();
+        }
+    }
+
+    /**
+     * Deletes all registered temporary files and the temporary directory of
+     * this context.
+     */
+    @Override
+    public void close() {
+        List<File> files;
+        List<Closeable> openResources;
+        synchronized (temporaryFiles) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            files = new ArrayList<File>(temporaryFiles);
+            temporaryFiles.clear();
+            openResources = new ArrayList<Closeable>(resources);
+            resources.clear();
+        }
+        for (Closeable resource : openResources) {
+            close(resource);
+        }
+        files.add(new File(getTempDirectoryPath()));
+        for (File file : files) {
+            delete(file);
+        }
+    }
+
+    private static void close(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException e) {
+            log.warn("Could not close resource of the execution", e);
+        } catch (RuntimeException e) {
+            log.warn("Could not close resource of the execution", e);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            log.warn("Could not delete temporary file {}", file.getAbsolutePath());
+        }
+    }
 }
@@ -21,8 +21,14 @@
 package org.n52.wps.commons.context;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -32,13 +38,18 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
  * @author tkunicki
  */
 public class ExecutionContextTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
     
     public ExecutionContextTest() {
     }
@@ -92,6 +103,57 @@ public class ExecutionContextTest {
         assertNotNull(ec.getOutputs());
         assertEquals(0, ec.getOutputs().size());
     }
+
+    @Test
+    public void testCloseDeletesTemporaryFiles() throws IOException {
+        ExecutionContext ec = new ExecutionContext();
+        File file = folder.newFile("data.xml");
+        File directory = folder.newFolder("unzipped");
+        File nested = new File(directory, "data.shp");
+        assertTrue(nested.createNewFile());
+
+        assertEquals(0, ec.getTemporaryFileCount());
+        ec.registerTemporaryFile(file);
+        ec.registerTemporaryFile(directory);
+        assertEquals(2, ec.getTemporaryFileCount());
+        assertTrue(file.exists());
+
+        ec.close();
+        assertFalse(file.exists());
+        assertFalse(directory.exists());
+
+        // files registered after closing are deleted immediately
+        File late = folder.newFile("late.xml");
+        ec.registerTemporaryFile(late);
+        assertFalse(late.exists());
+    }
+
+    @Test
+    public void testCloseClosesResourcesBeforeDeletingFiles() throws IOException {
+        ExecutionContext ec = new ExecutionContext();
+        final File file = folder.newFile("image.tif");
+        final List<Boolean> fileExisted = new ArrayList<Boolean>();
+        ec.registerTemporaryFile(file);
+        ec.registerResource(new Closeable() {
+            @Override
+            public void close() throws IOException {
+                fileExisted.add(file.exists());
+            }
+        });
+
+        ec.close();
+        assertEquals(Arrays.asList(true), fileExisted);
+        assertFalse(file.exists());
+
+        // resources registered after closing are closed immediately
+        ec.registerResource(new Closeable() {
+            @Override
+            public void close() throws IOException {
+                fileExisted.add(file.exists());
+            }
+        });
+        assertEquals(Arrays.asList(true, false), fileExisted);
+    }
     
 
 }
@@ -73,10 +73,44 @@ public class Server implements ConfigurationModule {
 			"Maximum time that excess idle threads are kept alive", true, 1000);
 	private ConfigurationEntry<Integer> maxQueuedTasksEntry = new IntegerConfigurationEntry("max_queued_tasks", "Maximum queued tasks",
 			"Maximum queued tasks of the work queue", true, 100);
+	private ConfigurationEntry<Integer> inputFetchPoolSizeEntry = new IntegerConfigurationEntry("input_fetch_pool_size", "Input fetch thread pool size",
+			"Maximum number of referenced inputs fetched and parsed in parallel", true, 16);
+	private ConfigurationEntry<Integer> inputFetchMaxPerHostEntry = new IntegerConfigurationEntry("input_fetch_max_per_host", "Input fetches per host",
+			"Maximum number of parallel input fetches against a single host", true, 4);
+	private ConfigurationEntry<String> proxyHostEntry = new StringConfigurationEntry("proxy_host", "Proxy Host Name",
+			"Proxy for outgoing HTTP requests, e.g. when fetching referenced inputs (empty = no proxy)", false, "");
+	private ConfigurationEntry<Integer> proxyPortEntry = new IntegerConfigurationEntry("proxy_port", "Proxy Port",
+			"", false, 8080);
+	private ConfigurationEntry<Integer> inlineDataSpoolThresholdEntry = new IntegerConfigurationEntry("inline_data_spool_threshold", "Inline data spool threshold",
+			"Inline complex data larger than this is spooled to disk instead of being kept in memory (in kilo bytes, 0 = never spool)", true, 1024);
+	private ConfigurationEntry<Integer> statusUpdateIntervalEntry = new IntegerConfigurationEntry("status_update_interval", "Status update interval",
+			"Minimum time between two stored progress updates of a running process (in milliseconds)", true, 1000);
+	private ConfigurationEntry<Integer> statusUpdatePercentStepEntry = new IntegerConfigurationEntry("status_update_percent_step", "Status update percent step",
+			"Progress change that is stored before the status update interval has passed (in percent)", true, 5);
+	private ConfigurationEntry<Integer> asyncPoolSizeEntry = new IntegerConfigurationEntry("async_pool_size", "Asynchronous execution pool size",
+			"Number of threads for executions that store their response, the max pool size applies to all other executions", true, 10);
+	private ConfigurationEntry<Integer> processConcurrencyLimitEntry = new IntegerConfigurationEntry("process_concurrency_limit", "Process concurrency limit",
+			"Maximum number of concurrent executions of one process (0 = unlimited)", true, 0);
+	private ConfigurationEntry<String> processConcurrencyLimitsEntry = new StringConfigurationEntry("process_concurrency_limits", "Process concurrency limits",
+			"Concurrency limits of single processes or repositories, e.g. org.n52.wps.server.r.LocalRAlgorithmRepository=2 (comma separated identifier=limit pairs)", false, "");
+	private ConfigurationEntry<String> processPrioritiesEntry = new StringConfigurationEntry("process_priorities", "Process priorities",
+			"Queued executions with a higher priority start first, the default priority is 0 (comma separated identifier=priority pairs of processes or repositories)", false, "");
+	private ConfigurationEntry<String> schemaCacheDirectoryEntry = new StringConfigurationEntry("schema_cache_directory", "Schema cache directory",
+			"Directory holding local copies of remote XML schemas, may be filled in advance for servers without internet access (empty = temporary directory)", false, "");
+	private ConfigurationEntry<Integer> schemaCacheSizeEntry = new IntegerConfigurationEntry("schema_cache_size", "Schema cache size",
+			"Number of compiled application schemas kept in memory", true, 50);
+	private ConfigurationEntry<Boolean> indentXMLEntry = new BooleanConfigurationEntry("indent_xml", "Indent XML",
+			"Indent stored and retrieved XML responses for debugging, they are copied byte by byte otherwise", true, false);
+	private ConfigurationEntry<String> processDescriptionCacheDirectoryEntry = new StringConfigurationEntry("process_description_cache_directory", "Process description cache directory",
+			"Directory holding generated process descriptions, so repositories do not generate them again after a restart (empty = temporary directory)", false, "");
 
 	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(protocolEntry, hostnameEntry, hostportEntry,
 			computationTimeoutEntry, weppappPathEntry, repoReloadIntervalEntry, includeDataInputsInResponseEntry,
-			cacheCapabilitesEntry, responseURLFilterEnabledEntry, minPoolSizeEntry, maxPoolSizeEntry, keepAliveSecondsEntry, maxQueuedTasksEntry);
+			cacheCapabilitesEntry, responseURLFilterEnabledEntry, minPoolSizeEntry, maxPoolSizeEntry, keepAliveSecondsEntry, maxQueuedTasksEntry,
+			inputFetchPoolSizeEntry, inputFetchMaxPerHostEntry, proxyHostEntry, proxyPortEntry,
+			inlineDataSpoolThresholdEntry, statusUpdateIntervalEntry, statusUpdatePercentStepEntry,
+			asyncPoolSizeEntry, processConcurrencyLimitEntry, processConcurrencyLimitsEntry, processPrioritiesEntry,
+			schemaCacheDirectoryEntry, schemaCacheSizeEntry, indentXMLEntry, processDescriptionCacheDirectoryEntry);
 
 	private String hostname;
 	private String protocol;
@@ -91,6 +125,21 @@ public class Server implements ConfigurationModule {
 	private int maxPoolSize;
 	private int keepAliveSeconds;
 	private int maxQueuedTasks;
+	private int inputFetchPoolSize;
+	private int inputFetchMaxPerHost;
+	private String proxyHost;
+	private int proxyPort;
+	private int inlineDataSpoolThreshold;
+	private int statusUpdateInterval;
+	private int statusUpdatePercentStep;
+	private int asyncPoolSize;
+	private int processConcurrencyLimit;
+	private String processConcurrencyLimits;
+	private String processPriorities;
+	private String schemaCacheDirectory;
+	private int schemaCacheSize;
+	private boolean indentXML;
+	private String processDescriptionCacheDirectory;
 
     public Server() {
         //
@@ -257,4 +306,139 @@ public class Server implements ConfigurationModule {
 		this.maxQueuedTasks = maxQueuedTasks;
 	}
 
+	public int getInputFetchPoolSize() {
+		return inputFetchPoolSize;
+	}
+
+	@ConfigurationKey(key = "input_fetch_pool_size")
+	public void setInputFetchPoolSize(int inputFetchPoolSize) {
+		this.inputFetchPoolSize = inputFetchPoolSize;
+	}
+
+	public int getInputFetchMaxPerHost() {
+		return inputFetchMaxPerHost;
+	}
+
+	@ConfigurationKey(key = "input_fetch_max_per_host")
+	public void setInputFetchMaxPerHost(int inputFetchMaxPerHost) {
+		this.inputFetchMaxPerHost = inputFetchMaxPerHost;
+	}
+
+	public String getProxyHost() {
+		return proxyHost;
+	}
+
+	@ConfigurationKey(key = "proxy_host")
+	public void setProxyHost(String proxyHost) {
+		this.proxyHost = proxyHost;
+	}
+
+	public int getProxyPort() {
+		return proxyPort;
+	}
+
+	@ConfigurationKey(key = "proxy_port")
+	public void setProxyPort(int proxyPort) {
+		this.proxyPort = proxyPort;
+	}
+
+	public int getInlineDataSpoolThreshold() {
+		return inlineDataSpoolThreshold;
+	}
+
+	@ConfigurationKey(key = "inline_data_spool_threshold")
+	public void setInlineDataSpoolThreshold(int inlineDataSpoolThreshold) {
+		this.inlineDataSpoolThreshold = inlineDataSpoolThreshold;
+	}
+
+	public int getStatusUpdateInterval() {
+		return statusUpdateInterval;
+	}
+
+	@ConfigurationKey(key = "status_update_interval")
+	public void setStatusUpdateInterval(int statusUpdateInterval) {
+		this.statusUpdateInterval = statusUpdateInterval;
+	}
+
+	public int getStatusUpdatePercentStep() {
+		return statusUpdatePercentStep;
+	}
+
+	@ConfigurationKey(key = "status_update_percent_step")
+	public void setStatusUpdatePercentStep(int statusUpdatePercentStep) {
+		this.statusUpdatePercentStep = statusUpdatePercentStep;
+	}
+
+	public int getAsyncPoolSize() {
+		return asyncPoolSize;
+	}
+
+	@ConfigurationKey(key = "async_pool_size")
+	public void setAsyncPoolSize(int asyncPoolSize) {
+		this.asyncPoolSize = asyncPoolSize;
+	}
+
+	public int getProcessConcurrencyLimit() {
+		return processConcurrencyLimit;
+	}
+
+	@ConfigurationKey(key = "process_concurrency_limit")
+	public void setProcessConcurrencyLimit(int processConcurrencyLimit) {
+		this.processConcurrencyLimit = processConcurrencyLimit;
+	}
+
+	public String getProcessConcurrencyLimits() {
+		return processConcurrencyLimits;
+	}
+
+	@ConfigurationKey(key = "process_concurrency_limits")
+	public void setProcessConcurrencyLimits(String processConcurrencyLimits) {
+		this.processConcurrencyLimits = processConcurrencyLimits;
+	}
+
+	public String getProcessPriorities() {
+		return processPriorities;
+	}
+
+	@ConfigurationKey(key = "process_priorities")
+	public void setProcessPriorities(String processPriorities) {
+		this.processPriorities = processPriorities;
+	}
+
+	public String getSchemaCacheDirectory() {
+		return schemaCacheDirectory;
+	}
+
+	@ConfigurationKey(key = "schema_cache_directory")
+	public void setSchemaCacheDirectory(String schemaCacheDirectory) {
+		this.schemaCacheDirectory = schemaCacheDirectory;
+	}
+
+	public int getSchemaCacheSize() {
+		return schemaCacheSize;
+	}
+
+	@ConfigurationKey(key = "schema_cache_size")
+	public void setSchemaCacheSize(int schemaCacheSize) {
+		this.schemaCacheSize = schemaCacheSize;
+	}
+
+	public boolean isIndentXML() {
+		return indentXML;
+	}
+
+	@ConfigurationKey(key = "indent_xml")
+	public void setIndentXML(boolean indentXML) {
+		this.indentXML = indentXML;
+	}
+
+	public String getProcessDescriptionCacheDirectory() {
+		return processDescriptionCacheDirectory;
+	}
+
+	@ConfigurationKey(key = "process_description_cache_directory")
+	public void setProcessDescriptionCacheDirectory(String processDescriptionCacheDirectory) {
+		this.processDescriptionCacheDirectory = processDescriptionCacheDirectory;
+	}
+
 }
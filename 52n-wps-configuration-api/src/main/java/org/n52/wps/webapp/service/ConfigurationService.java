@@ -225,4 +225,13 @@ public interface ConfigurationService {
 	 *            the encoding of the format entry
 	 */
 	void deleteFormatEntry(String moduleClassName, String mimeType, String schema, String encoding);
+
+	/**
+	 * Get the configuration revision. The revision is incremented whenever a module status, a module value, an
+	 * algorithm entry or a format entry is changed, so callers can detect that data derived from the configuration is
+	 * outdated.
+	 * 
+	 * @return the current revision
+	 */
+	long getConfigurationRevision();
 }
@@ -37,6 +37,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 
@@ -87,6 +88,8 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 
 	private Map<String, ConfigurationModule> allConfigurationModules;
 
+	private final AtomicLong configurationRevision = new AtomicLong();
+
 	/*
 	 * Sync configuration modules entries and values with the database
 	 */
@@ -181,6 +184,7 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 		ConfigurationModule module = getConfigurationModule(moduleClassName);
 		module.setActive(status);
 		configurationDAO.updateConfigurationModuleStatus(module);
+		configurationRevision.incrementAndGet();
 		LOGGER.debug("Module '{}' with status '{}' has been set and saved to the database.", moduleClassName, status);
 	}
 
@@ -228,7 +232,7 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 
 		saveConfigurationModuleValuesToDatabase(module);
 		passConfigurationModuleValuesToMembers(module);
-
+		configurationRevision.incrementAndGet();
 	}
 
 	/*
@@ -483,6 +487,7 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 		if (entry != null) {
 			entry.setActive(status);
 			configurationDAO.updateAlgorithmEntry(moduleClassName, algorithm, status);
+			configurationRevision.incrementAndGet();
 			LOGGER.debug("Algorithm '{}' in module '{}' with status '{}' has been set and saved to the database.",
 					algorithm, moduleClassName, status);
 		}
@@ -526,6 +531,7 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 		AlgorithmEntry algorithmEntry = new AlgorithmEntry(algorithmName, status);		
 		ConfigurationModule module = getConfigurationModule(moduleClassName);		
 		module.getAlgorithmEntries().add(algorithmEntry);		
+		configurationRevision.incrementAndGet();
 		LOGGER.debug(
 				"Algorithm '{}' with status '{}' has been added to module '{}' and saved to the database.",
 				algorithmName, status, moduleClassName);
@@ -546,12 +552,14 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 				break;
 			}
 		}
+		configurationRevision.incrementAndGet();
 	}
 
 	@Override
 	public void setFormatEntry(String moduleClassName, String mimeType, String schema,
 			String encoding, boolean status) {
 		configurationDAO.updateFormatEntry(moduleClassName, mimeType, schema, encoding, status);
+		configurationRevision.incrementAndGet();
 		LOGGER.debug(
 				"Format with mime type '{}', schema '{}', encoding '{}' and status '{}' of module '{}' has been updated.",
 				mimeType, schema, encoding, status, moduleClassName);	
@@ -565,6 +573,7 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 		FormatEntry formatEntry = new FormatEntry(mimeType, schema, encoding, status);	
 		ConfigurationModule module = getConfigurationModule(moduleClassName);		
 		module.getFormatEntries().add(formatEntry);
+		configurationRevision.incrementAndGet();
 		LOGGER.debug(
 				"Format with mime type '{}', schema '{}', encoding '{}' and status '{}' has been added to module '{}' and saved to the database.",
 				mimeType, schema, encoding, status, moduleClassName);	
@@ -587,5 +596,11 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 				break;
 			}
 		}
+		configurationRevision.incrementAndGet();
+	}
+
+	@Override
+	public long getConfigurationRevision() {
+		return configurationRevision.get();
 	}
 }
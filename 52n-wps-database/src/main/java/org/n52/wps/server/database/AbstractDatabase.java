@@ -28,8 +28,12 @@
  */
 package org.n52.wps.server.database;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -287,6 +291,36 @@ public abstract class AbstractDatabase implements IDatabase{
 	public synchronized String storeComplexValue(String id, InputStream stream, String type, String mimeType) {
 		return insertResultEntity(stream, id, type, mimeType);
 	}
+
+	/**
+	 * The value is buffered in a temporary file, as it has to be inserted from
+	 * an InputStream.
+	 */
+	@Override
+	public String storeComplexValue(String id, ComplexValueWriter writer, String type, String mimeType) {
+		File file = null;
+		try {
+			file = File.createTempFile("complexvalue", ".tmp");
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+			try {
+				writer.writeTo(out);
+			} finally {
+				out.close();
+			}
+			// the file is deleted as soon as the stream is closed
+			InputStream in = new SelfCleaningFileInputStream(file);
+			try {
+				return storeComplexValue(id, in, type, mimeType);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			if (file != null) {
+				file.delete();
+			}
+			throw new RuntimeException("Error storing complex value for " + id, e);
+		}
+	}
 	
 	/**
 	 * The URL referencing the location from which the ExecuteResponse can be retrieved. 
@@ -421,7 +455,15 @@ public abstract class AbstractDatabase implements IDatabase{
 		return null;
 	}
 
-    @Override
+	/**
+	 * Responses are not wiped from the database.
+	 */
+	@Override
+	public long getRetentionPeriod() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
 	public File lookupResponseAsFile(String id) {
 		return null;
 	}
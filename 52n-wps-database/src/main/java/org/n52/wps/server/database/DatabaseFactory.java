@@ -186,6 +186,12 @@ public class DatabaseFactory implements IDatabase
 		return DatabaseFactory.database.storeComplexValue(id, stream, type, mimeType);
 	}
 	
+	@Override
+    public String storeComplexValue(String id, ComplexValueWriter writer, String type, String mimeType) {
+		// not synchronized, writing the value may take long
+		return DatabaseFactory.database.storeComplexValue(id, writer, type, mimeType);
+	}
+	
 	/**
 	 * The URL referencing the location from which the ExecuteResponse can be retrieved. 
 	 * If "status" is "true" in the Execute request, the ExecuteResponse should also be 
@@ -212,6 +218,11 @@ public class DatabaseFactory implements IDatabase
 		return DatabaseFactory.database.getDatabaseName();
 	}
 
+    @Override
+	public long getRetentionPeriod() {
+		return DatabaseFactory.database.getRetentionPeriod();
+	}
+
     @Override
 	public String getMimeTypeForStoreResponse(String id) {
 		return DatabaseFactory.database.getMimeTypeForStoreResponse(id);
@@ -37,21 +37,31 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import net.opengis.wps.x20.ResultDocument;
-import net.opengis.wps.x20.StatusInfoDocument;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.xmlbeans.XmlException;
-import org.apache.xmlbeans.XmlObject;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.n52.wps.commons.MIMEUtil;
 import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.commons.WPSConfig;
@@ -62,8 +72,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.Striped;
 
 /*
+ * Responses are stored in sub directories of the base directory, chosen by a
+ * hash of the id, so that no directory holds more than a fraction of the
+ * entries. The latest response index, MIME type and content length of each
+ * id are kept in an in-memory index, which is rebuilt from the files at
+ * startup and falls back to the files for ids not indexed yet. Stores for
+ * the same id are serialized by a lock stripe, lookups are not locked.
+ *
  * @author tkunicki (Thomas Kunicki, USGS)
  *
  */
@@ -95,6 +113,14 @@ public final class FlatFileDatabase implements IDatabase {
     private final static String SUFFIX_GZIP = "gz";
     private final static String SUFFIX_PROPERTIES = "properties";
 
+    private final static String MIME_TYPE_RESPONSE = "text/xml";
+
+    // number of locks shared by the ids of stored responses
+    private final static int LOCK_STRIPES = 64;
+
+    // responses are spread over 256 sub directories named 00 to ff
+    private final static Pattern PATTERN_SHARD = Pattern.compile("[0-9a-f]{2}");
+
     // If the delimiter changes, examine Patterns below.
     private final static Joiner JOINER = Joiner.on(".");
 
@@ -121,12 +147,17 @@ public final class FlatFileDatabase implements IDatabase {
 
     protected final boolean gzipComplexValues;
 
-    protected final Object storeResponseSerialNumberLock;
+    private final Striped<Lock> responseLocks = Striped.lock(LOCK_STRIPES);
+
+    private final ConcurrentMap<String, IndexEntry> indexEntries = new ConcurrentHashMap<String, IndexEntry>();
 
-    protected final boolean indentXML = true;
+    // stored XML is indented for debugging only, it is copied as it is otherwise
+    protected final boolean indentXML;
 
     protected final Timer wipeTimer;
 
+    private final long retentionPeriod;
+
     protected FlatFileDatabase() {
 
         FlatFileDatabaseConfigurationModule flatFileDatabaseConfigurationModule = (FlatFileDatabaseConfigurationModule) WPSConfig.getInstance().getConfigurationManager().getConfigurationServices().getConfigurationModule(FlatFileDatabaseConfigurationModule.class.getName());
@@ -147,6 +178,7 @@ public final class FlatFileDatabase implements IDatabase {
             LOGGER.info("Results database does not exist, creating.", baseDirectoryPath);
             baseDirectory.mkdirs();
         }
+        migrateUnshardedEntries();
 
         if (propertyUtil.extractBoolean(KEY_DATABASE_WIPE_ENABLED, DEFAULT_DATABASE_WIPE_ENABLED)) {
             
@@ -155,15 +187,25 @@ public final class FlatFileDatabase implements IDatabase {
 
             wipeTimer = new Timer(getClass().getSimpleName() + " File Wiper", true);
             wipeTimer.scheduleAtFixedRate(new FlatFileDatabase.WipeTimerTask(thresholdMillis), 0, periodMillis);
+            retentionPeriod = thresholdMillis;
             LOGGER.info("Started {} file wiper timer; period {} ms, threshold {} ms",
                     new Object[] {getDatabaseName(),periodMillis,thresholdMillis});
         } else {
             wipeTimer = null;
+            retentionPeriod = Long.MAX_VALUE;
         }
 
         gzipComplexValues = propertyUtil.extractBoolean(KEY_DATABASE_COMPLEX_GZIP, DEFAULT_DATABASE_COMPLEX_GZIP);
+        indentXML = server.isIndentXML();
 
-        storeResponseSerialNumberLock = new Object();
+        Thread indexThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                rebuildIndex();
+            }
+        }, getClass().getSimpleName() + " Index");
+        indexThread.setDaemon(true);
+        indexThread.start();
     }
 
     @Override
@@ -176,11 +218,16 @@ public final class FlatFileDatabase implements IDatabase {
         return getClass().getSimpleName();
     }
 
+    @Override
+    public long getRetentionPeriod() {
+        return retentionPeriod;
+    }
+
     @Override
     public void insertRequest(String id, InputStream inputStream, boolean xml) {
         // store request in response directory...
         File responseDirectory = generateResponseDirectory(id);
-        responseDirectory.mkdir();
+        responseDirectory.mkdirs();
         BufferedOutputStream outputStream = null;
         try {
             if (xml) {
@@ -190,7 +237,7 @@ public final class FlatFileDatabase implements IDatabase {
                                 responseDirectory,
                                 JOINER.join("request", SUFFIX_XML)),
                         false));
-                XMLUtil.copyXML(inputStream, outputStream, indentXML);
+                copyXML(inputStream, outputStream);
             } else {
                 outputStream = new BufferedOutputStream(
                         new FileOutputStream(
@@ -259,14 +306,12 @@ public final class FlatFileDatabase implements IDatabase {
         // request is stored in response directory...
         File responseDirectory = generateResponseDirectory(id);
         if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_XML));
-                if ( !requestAsFile.exists()) {
-                    requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_PROPERTIES));
-                }
-                if ( !requestAsFile.exists()) {
-                    requestAsFile = null;
-                }
+            requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_XML));
+            if ( !requestAsFile.exists()) {
+                requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_PROPERTIES));
+            }
+            if ( !requestAsFile.exists()) {
+                requestAsFile = null;
             }
         }
         return requestAsFile;
@@ -275,25 +320,24 @@ public final class FlatFileDatabase implements IDatabase {
     @Override
     public File lookupResponseAsFile(String id) {
         File responseFile = null;
+        IndexEntry entry = getIndexEntry(id);
+        if (entry == null) {
+            return null;
+        }
         // if response resolved to directory, this means the response is a status update
-        File responseDirectory = generateResponseDirectory(id);
-        if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                return findLatestResponseFile(responseDirectory);
-            }
+        if (entry.isResponseDirectory()) {
+            return entry.latestResponseIndex < 0 ? null
+                    : generateResponseFile(generateResponseDirectory(id), entry.latestResponseIndex);
         }
         else {
-            String mimeType = getMimeTypeForStoreResponse(id);
-            if (mimeType != null) {
-                // ignore gzipComplexValues in case file was stored when value
-                // was inconsistent with current value;
-                responseFile = generateComplexDataFile(id, mimeType, false);
-                if ( !responseFile.exists()) {
-                    responseFile = generateComplexDataFile(id, mimeType, true);
-                }
-                if ( !responseFile.exists()) {
-                    responseFile = null;
-                }
+            // ignore gzipComplexValues in case file was stored when value
+            // was inconsistent with current value;
+            responseFile = generateComplexDataFile(id, entry.mimeType, false);
+            if ( !responseFile.exists()) {
+                responseFile = generateComplexDataFile(id, entry.mimeType, true);
+            }
+            if ( !responseFile.exists()) {
+                responseFile = null;
             }
         }
         return responseFile;
@@ -307,11 +351,27 @@ public final class FlatFileDatabase implements IDatabase {
     }
 
     @Override
-    public String storeComplexValue(String id, InputStream resultInputStream, String type, String mimeType) {
+    public String storeComplexValue(String id, final InputStream resultInputStream, String type, String mimeType) {
+        try {
+            return storeComplexValue(id, new ComplexValueWriter() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    IOUtils.copyLarge(resultInputStream, out);
+                }
+            }, type, mimeType);
+        }
+        finally {
+            IOUtils.closeQuietly(resultInputStream);
+        }
+    }
+
+    @Override
+    public String storeComplexValue(String id, ComplexValueWriter writer, String type, String mimeType) {
 
         String resultId = JOINER.join(id, UUID.randomUUID().toString());
         try {
             File resultFile = generateComplexDataFile(resultId, mimeType, gzipComplexValues);
+            resultFile.getParentFile().mkdirs();
             File mimeTypeFile = generateComplexDataMimeTypeFile(resultId);
             File contentLengthFile = generateComplexDataContentLengthFile(resultId);
 
@@ -319,14 +379,14 @@ public final class FlatFileDatabase implements IDatabase {
 
             long contentLength = -1;
 
-            OutputStream resultOutputStream = null;
+            CountingOutputStream resultOutputStream = null;
             try {
-                resultOutputStream = gzipComplexValues ? new GZIPOutputStream(new FileOutputStream(resultFile))
-                                                      : new BufferedOutputStream(new FileOutputStream(resultFile));
-                contentLength = IOUtils.copyLarge(resultInputStream, resultOutputStream);
+                resultOutputStream = new CountingOutputStream(gzipComplexValues ? new GZIPOutputStream(new FileOutputStream(resultFile))
+                                                      : new BufferedOutputStream(new FileOutputStream(resultFile)));
+                writer.writeTo(resultOutputStream);
+                contentLength = resultOutputStream.getByteCount();
             }
             finally {
-                IOUtils.closeQuietly(resultInputStream);
                 IOUtils.closeQuietly(resultOutputStream);
             }
 
@@ -348,6 +408,8 @@ public final class FlatFileDatabase implements IDatabase {
                 IOUtils.closeQuietly(contentLengthOutputStream);
             }
 
+            indexEntries.put(resultId, IndexEntry.forComplexValue(mimeType, contentLength));
+
             LOGGER.debug("completed storage of complex value for {} as {}", id, resultFile.getPath());
 
         }
@@ -363,29 +425,28 @@ public final class FlatFileDatabase implements IDatabase {
         try {
             File responseTempFile;
             File responseFile;
-            synchronized (storeResponseSerialNumberLock) {
-                File responseDirectory = generateResponseDirectory(id);
-                responseDirectory.mkdir();
-                int responseIndex = findLatestResponseIndex(responseDirectory, true);
-                if (responseIndex < 0) {
-                    responseIndex = 0;
-                }
-                else {
-                    responseIndex++;
+            int responseIndex;
+            File responseDirectory = generateResponseDirectory(id);
+            Lock lock = responseLocks.get(id);
+            lock.lock();
+            try {
+                responseDirectory.mkdirs();
+                IndexEntry entry = getIndexEntry(id);
+                if (entry == null || !entry.isResponseDirectory()) {
+                    entry = IndexEntry.forResponseDirectory(-1, 0, -1);
                 }
+                responseIndex = entry.nextResponseIndex;
+                // reserve the index so that the reponse serial number is correctly
+                // incremented if this method is called again for this reponse
+                // before this reponse is completed.
+                indexEntries.put(id, entry.withNextResponseIndex(responseIndex + 1));
                 responseFile = generateResponseFile(responseDirectory, responseIndex);
                 responseTempFile = generateResponseTempFile(responseDirectory, responseIndex);
-                try {
-                    // create the file so that the reponse serial number is correctly
-                    // incremented if this method is called again for this reponse
-                    // before this reponse is completed.
-                    responseTempFile.createNewFile();
-                }
-                catch (IOException e) {
-                    throw new RuntimeException("Error storing response to {}", e);
-                }
                 LOGGER.debug("Creating temp file for {} as {}", id, responseTempFile.getPath());
             }
+            finally {
+                lock.unlock();
+            }
             InputStream responseInputStream = null;
             OutputStream responseOutputStream = null;
             try {
@@ -394,16 +455,25 @@ public final class FlatFileDatabase implements IDatabase {
                 // In order to allow the prior response to be available we write
                 // to a temp file and rename these when completed. Large responses
                 // can cause the call below to take a significant amount of time.
-                XMLUtil.copyXML(responseInputStream, responseOutputStream, indentXML);
+                copyXML(responseInputStream, responseOutputStream);
             }
             finally {
                 IOUtils.closeQuietly(responseInputStream);
                 IOUtils.closeQuietly(responseOutputStream);
             }
 
-            synchronized (storeResponseSerialNumberLock) {
+            lock.lock();
+            try {
                 responseTempFile.renameTo(responseFile);
                 LOGGER.debug("Renamed temp file for {} to {}", id, responseFile.getPath());
+                IndexEntry entry = getIndexEntry(id);
+                // a later response may have been completed first
+                if (entry != null && entry.latestResponseIndex < responseIndex) {
+                    indexEntries.put(id, entry.withLatestResponse(responseIndex, responseFile.length()));
+                }
+            }
+            finally {
+                lock.unlock();
             }
 
             return generateRetrieveResultURL(id);
@@ -424,62 +494,14 @@ public final class FlatFileDatabase implements IDatabase {
 
     @Override
     public String getMimeTypeForStoreResponse(String id) {
-
-        File responseDirectory = generateResponseDirectory(id);
-        if (responseDirectory.exists()) {
-            return "text/xml";
-        }
-        else {
-            File mimeTypeFile = generateComplexDataMimeTypeFile(id);
-            if (mimeTypeFile.canRead()) {
-                InputStream mimeTypeInputStream = null;
-                try {
-                    mimeTypeInputStream = new FileInputStream(mimeTypeFile);
-                    return IOUtils.toString(mimeTypeInputStream);
-                }
-                catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                finally {
-                    IOUtils.closeQuietly(mimeTypeInputStream);
-                }
-            }
-        }
-        return null;
+        IndexEntry entry = getIndexEntry(id);
+        return entry == null ? null : entry.mimeType;
     }
 
     @Override
     public long getContentLengthForStoreResponse(String id) {
-
-        File responseDirectory = generateResponseDirectory(id);
-        if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                File responseFile = findLatestResponseFile(responseDirectory);
-                return responseFile.length();
-            }
-        }
-        else {
-            File contentLengthFile = generateComplexDataContentLengthFile(id);
-            if (contentLengthFile.canRead()) {
-                InputStream contentLengthInputStream = null;
-                try {
-                    contentLengthInputStream = new FileInputStream(contentLengthFile);
-                    return Long.parseLong(IOUtils.toString(contentLengthInputStream));
-                }
-                catch (IOException e) {
-                    LOGGER.error("Unable to extract content-length for response id {} from {}, exception message: {}",
-                                 new Object[] {id, contentLengthFile.getAbsolutePath(), e.getMessage()});
-                }
-                catch (NumberFormatException e) {
-                    LOGGER.error("Unable to parse content-length for response id {} from {}, exception message: {}",
-                                 new Object[] {id, contentLengthFile.getAbsolutePath(), e.getMessage()});
-                }
-                finally {
-                    IOUtils.closeQuietly(contentLengthInputStream);
-                }
-            }
-            return -1;
-        }
+        IndexEntry entry = getIndexEntry(id);
+        return entry == null ? -1 : entry.contentLength;
     }
 
     @Override
@@ -494,36 +516,29 @@ public final class FlatFileDatabase implements IDatabase {
             LOGGER.debug("Response file for {} is {}", request_id, responseFile.getPath());
             try {
 
-                InputStream inputStream = responseFile.getName().endsWith(SUFFIX_GZIP) ? new GZIPInputStream(new FileInputStream(responseFile)) : new FileInputStream(responseFile);
-                
                 /*
                  * Check if status doc
                  * Status docs and result docs are saved in the same folder and
                  * there is no other possibility to differentiate between them other than the following
                  */
-                XmlObject object;
-                try {
-                    object = XmlObject.Factory.parse(inputStream);
-                } catch (XmlException e) {
-                    LOGGER.error("Could not look up status. XMLException while trying to parse xml file.", e);
-                    //check exception code
+                QName documentElement = readDocumentElementName(responseFile);
+                if (documentElement == null) {
+                    LOGGER.error("Could not look up status. Could not read document element of {}", responseFile);
                     throw new ExceptionReport("Status info for specified JobID not found.", ExceptionReport.NO_APPLICABLE_CODE, "JobID");
                 }
 
-                if (object instanceof StatusInfoDocument) {
-                    return object.newInputStream();
-                } else if (object instanceof ResultDocument) {
+                File statusFile = responseFile;
+                if (documentElement.equals(ResultDocument.type.getDocumentElementName())) {
 
                     LOGGER.info("Last response file not of type status info document.");
 
                     File responseDirectory = generateResponseDirectory(request_id);
 
-                    int lastFileIndex = findLatestResponseIndex(responseDirectory, false);
-
-                    File latestStatusFile = generateResponseFile(responseDirectory, lastFileIndex - 1);
+                    int lastFileIndex = getIndexEntry(request_id).latestResponseIndex;
 
-                    inputStream = latestStatusFile.getName().endsWith(SUFFIX_GZIP) ? new GZIPInputStream(new FileInputStream(latestStatusFile)) : new FileInputStream(latestStatusFile);
+                    statusFile = generateResponseFile(responseDirectory, lastFileIndex - 1);
                 }
+                InputStream inputStream = statusFile.getName().endsWith(SUFFIX_GZIP) ? new GZIPInputStream(new FileInputStream(statusFile)) : new FileInputStream(statusFile);
                 return inputStream;
             } catch (FileNotFoundException ex) {
                 // should never get here due to checks above...
@@ -536,6 +551,220 @@ public final class FlatFileDatabase implements IDatabase {
         return null;
     }
 
+    private void copyXML(InputStream inputStream, OutputStream outputStream) throws IOException {
+        if (indentXML) {
+            XMLUtil.copyXML(inputStream, outputStream, true);
+        }
+        else {
+            IOUtils.copyLarge(inputStream, outputStream);
+        }
+    }
+
+    /**
+     * @return the name of the document element of the response file, read
+     *         without parsing the whole document, or <code>null</code> if the
+     *         file is not well-formed
+     */
+    private QName readDocumentElementName(File responseFile) throws IOException {
+        InputStream inputStream = responseFile.getName().endsWith(SUFFIX_GZIP) ? new GZIPInputStream(new FileInputStream(responseFile)) : new FileInputStream(responseFile);
+        XMLStreamReader reader = null;
+        try {
+            reader = XMLUtil.getInputFactory().createXMLStreamReader(inputStream);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return reader.getName();
+                }
+            }
+            return null;
+        }
+        catch (XMLStreamException e) {
+            LOGGER.error("Could not read document element of " + responseFile, e);
+            return null;
+        }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                }
+                catch (XMLStreamException e) { /* ignore */
+                }
+            }
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * @return the indexed state of the id, read from the files if the id is
+     *         not indexed yet, or <code>null</code> if nothing is stored for
+     *         the id
+     */
+    private IndexEntry getIndexEntry(String id) {
+        IndexEntry entry = indexEntries.get(id);
+        if (entry == null) {
+            Lock lock = responseLocks.get(id);
+            lock.lock();
+            try {
+                entry = indexEntries.get(id);
+                if (entry == null) {
+                    entry = readIndexEntry(id);
+                    if (entry != null) {
+                        indexEntries.put(id, entry);
+                    }
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return entry;
+    }
+
+    private IndexEntry readIndexEntry(String id) {
+        File responseDirectory = generateResponseDirectory(id);
+        if (responseDirectory.isDirectory()) {
+            int latestResponseIndex = findLatestResponseIndex(responseDirectory, false);
+            int nextResponseIndex = Math.max(findLatestResponseIndex(responseDirectory, true) + 1, 0);
+            if (latestResponseIndex < 0) {
+                return IndexEntry.forResponseDirectory(-1, nextResponseIndex, -1);
+            }
+            long contentLength = generateResponseFile(responseDirectory, latestResponseIndex).length();
+            return IndexEntry.forResponseDirectory(latestResponseIndex, nextResponseIndex, contentLength);
+        }
+        File mimeTypeFile = generateComplexDataMimeTypeFile(id);
+        if (mimeTypeFile.canRead()) {
+            String mimeType;
+            InputStream mimeTypeInputStream = null;
+            try {
+                mimeTypeInputStream = new FileInputStream(mimeTypeFile);
+                mimeType = IOUtils.toString(mimeTypeInputStream);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                IOUtils.closeQuietly(mimeTypeInputStream);
+            }
+            return IndexEntry.forComplexValue(mimeType, readContentLength(id));
+        }
+        return null;
+    }
+
+    private long readContentLength(String id) {
+        File contentLengthFile = generateComplexDataContentLengthFile(id);
+        if (contentLengthFile.canRead()) {
+            InputStream contentLengthInputStream = null;
+            try {
+                contentLengthInputStream = new FileInputStream(contentLengthFile);
+                return Long.parseLong(IOUtils.toString(contentLengthInputStream));
+            }
+            catch (IOException e) {
+                LOGGER.error("Unable to extract content-length for response id {} from {}, exception message: {}",
+                             new Object[] {id, contentLengthFile.getAbsolutePath(), e.getMessage()});
+            }
+            catch (NumberFormatException e) {
+                LOGGER.error("Unable to parse content-length for response id {} from {}, exception message: {}",
+                             new Object[] {id, contentLengthFile.getAbsolutePath(), e.getMessage()});
+            }
+            finally {
+                IOUtils.closeQuietly(contentLengthInputStream);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indexes all stored responses. Ids that were looked up or stored in the
+     * meantime are not read again.
+     */
+    private void rebuildIndex() {
+        long start = System.currentTimeMillis();
+        File[] shards = baseDirectory.listFiles();
+        if (shards == null) {
+            return;
+        }
+        for (File shard : shards) {
+            if ( !isShardDirectory(shard)) {
+                continue;
+            }
+            File[] files = shard.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String id = getIdOfFile(file);
+                if (id != null && !indexEntries.containsKey(id)) {
+                    getIndexEntry(id);
+                }
+            }
+        }
+        LOGGER.info("Indexed {} stored responses in {} ms", indexEntries.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Moves responses stored before sub directories were used into their
+     * sub directory.
+     */
+    private void migrateUnshardedEntries() {
+        File[] files = baseDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // group the files by the id they belong to in one pass
+        Map<String, List<File>> filesById = new HashMap<String, List<File>>();
+        for (File file : files) {
+            String id = getIdOfFile(file);
+            if (id != null && !isShardDirectory(file)) {
+                filesById.put(id, new ArrayList<File>());
+            }
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (filesById.containsKey(file.getName())) {
+                    filesById.get(file.getName()).add(file);
+                }
+                continue;
+            }
+            // a complex value file is named <id>.<suffix>
+            String name = file.getName();
+            for (int dot = name.indexOf('.'); dot > 0; dot = name.indexOf('.', dot + 1)) {
+                List<File> group = filesById.get(name.substring(0, dot));
+                if (group != null) {
+                    group.add(file);
+                    break;
+                }
+            }
+        }
+        for (Map.Entry<String, List<File>> entry : filesById.entrySet()) {
+            File shard = generateShardDirectory(entry.getKey());
+            shard.mkdirs();
+            for (File file : entry.getValue()) {
+                file.renameTo(new File(shard, file.getName()));
+            }
+        }
+        if ( !filesById.isEmpty()) {
+            LOGGER.info("Moved {} stored responses into sub directories of {}", filesById.size(), baseDirectory);
+        }
+    }
+
+    /**
+     * @return the id a response directory or the MIME type file of a
+     *         complex value belongs to, <code>null</code> for other files
+     */
+    private String getIdOfFile(File file) {
+        if (file.isDirectory()) {
+            return file.getName();
+        }
+        String mimeTypeSuffix = "." + SUFFIX_MIMETYPE;
+        if (file.getName().endsWith(mimeTypeSuffix)) {
+            return file.getName().substring(0, file.getName().length() - mimeTypeSuffix.length());
+        }
+        return null;
+    }
+
+    private boolean isShardDirectory(File file) {
+        return file.isDirectory() && PATTERN_SHARD.matcher(file.getName()).matches();
+    }
+
     private int findLatestResponseIndex(File responseDirectory, boolean includeTemp) {
         int responseIndex = Integer.MIN_VALUE;
         for (File file : responseDirectory.listFiles()) {
@@ -551,11 +780,6 @@ public final class FlatFileDatabase implements IDatabase {
         return responseIndex;
     }
 
-    private File findLatestResponseFile(File responseDirectory) {
-        int responseIndex = findLatestResponseIndex(responseDirectory, false);
-        return responseIndex < 0 ? null : generateResponseFile(responseDirectory, responseIndex);
-    }
-
     private File generateResponseFile(File responseDirectory, int index) {
         return new File(responseDirectory, JOINER.join(index, SUFFIX_XML));
     }
@@ -564,22 +788,69 @@ public final class FlatFileDatabase implements IDatabase {
         return new File(responseDirectory, JOINER.join(index, SUFFIX_XML, SUFFIX_TEMP));
     }
 
+    private File generateShardDirectory(String id) {
+        return new File(baseDirectory, String.format("%02x", id.hashCode() & 0xff));
+    }
+
     private File generateResponseDirectory(String id) {
-        return new File(baseDirectory, id);
+        return new File(generateShardDirectory(id), id);
     }
 
     private File generateComplexDataFile(String id, String mimeType, boolean gzip) {
         String fileName = gzip ? JOINER.join(id, MIMEUtil.getSuffixFromMIMEType(mimeType), SUFFIX_GZIP)
                               : JOINER.join(id, MIMEUtil.getSuffixFromMIMEType(mimeType));
-        return new File(baseDirectory, fileName);
+        return new File(generateShardDirectory(id), fileName);
     }
 
     private File generateComplexDataMimeTypeFile(String id) {
-        return new File(baseDirectory, JOINER.join(id, SUFFIX_MIMETYPE));
+        return new File(generateShardDirectory(id), JOINER.join(id, SUFFIX_MIMETYPE));
     }
 
     private File generateComplexDataContentLengthFile(String id) {
-        return new File(baseDirectory, JOINER.join(id, SUFFIX_CONTENT_LENGTH));
+        return new File(generateShardDirectory(id), JOINER.join(id, SUFFIX_CONTENT_LENGTH));
+    }
+
+    /**
+     * The indexed state of a response directory or a complex value.
+     */
+    private static final class IndexEntry {
+
+        // index of the latest completed response, -1 if there is none
+        final int latestResponseIndex;
+
+        // index for the next response to store, -1 for complex values
+        final int nextResponseIndex;
+
+        final String mimeType;
+
+        final long contentLength;
+
+        private IndexEntry(int latestResponseIndex, int nextResponseIndex, String mimeType, long contentLength) {
+            this.latestResponseIndex = latestResponseIndex;
+            this.nextResponseIndex = nextResponseIndex;
+            this.mimeType = mimeType;
+            this.contentLength = contentLength;
+        }
+
+        static IndexEntry forResponseDirectory(int latestResponseIndex, int nextResponseIndex, long contentLength) {
+            return new IndexEntry(latestResponseIndex, nextResponseIndex, MIME_TYPE_RESPONSE, contentLength);
+        }
+
+        static IndexEntry forComplexValue(String mimeType, long contentLength) {
+            return new IndexEntry(-1, -1, mimeType, contentLength);
+        }
+
+        boolean isResponseDirectory() {
+            return nextResponseIndex >= 0;
+        }
+
+        IndexEntry withNextResponseIndex(int index) {
+            return new IndexEntry(latestResponseIndex, index, mimeType, contentLength);
+        }
+
+        IndexEntry withLatestResponse(int index, long length) {
+            return new IndexEntry(index, nextResponseIndex, mimeType, length);
+        }
     }
 
     private class WipeTimerTask extends TimerTask {
@@ -593,6 +864,14 @@ public final class FlatFileDatabase implements IDatabase {
         @Override
         public void run() {
             wipe(baseDirectory, thresholdMillis);
+            File[] shards = baseDirectory.listFiles();
+            if (shards != null) {
+                for (File shard : shards) {
+                    if (isShardDirectory(shard)) {
+                        wipe(shard, thresholdMillis);
+                    }
+                }
+            }
         }
 
         private void wipe(File rootFile, long thresholdMillis) {
@@ -606,13 +885,21 @@ public final class FlatFileDatabase implements IDatabase {
             File[] files = rootFile.listFiles();
             if (files != null) {
                 for (File file : files) {
+                    if (isShardDirectory(file)) {
+                        // wiped separately, a shard is never old as a whole
+                        continue;
+                    }
                     long lastModifiedMillis = file.lastModified();
                     long ageMillis = currentTimeMillis - lastModifiedMillis;
                     if (ageMillis > thresholdMillis) {
                         LOGGER.info("Deleting {}, last modified date is {}",
                                     file.getName(),
                                     iso8601DateFormat.format(new Date(lastModifiedMillis)));
+                        String id = getIdOfFile(file);
                         delete(file);
+                        if (id != null) {
+                            indexEntries.remove(id);
+                        }
                         if (file.exists()) {
                             LOGGER.warn("Deletion of {} failed", file.getName());
                         }
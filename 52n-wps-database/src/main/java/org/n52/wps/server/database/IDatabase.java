@@ -74,6 +74,10 @@ public interface IDatabase {
 	
 	public String storeComplexValue(String id, InputStream stream, String type, String mimeType);
 	
+	// Store a complex value that is written directly to the database, without
+	// buffering it in a temporary file first if the database supports that.
+	public String storeComplexValue(String id, ComplexValueWriter writer, String type, String mimeType);
+	
 	// The URL referencing the location from which the ExecuteResponse can be retrieved. 
 	// If "status" is "true" in the Execute request, the ExecuteResponse should also be 
 	// found here as soon as the process returns the initial response to the client. 
@@ -97,5 +101,9 @@ public interface IDatabase {
     public File lookupRequestAsFile(String id);
 
 	public File lookupResponseAsFile(String id);
+
+	// The time in milli seconds stored responses and outputs are kept at
+	// least, Long.MAX_VALUE if they are never wiped.
+	public long getRetentionPeriod();
 	
 }
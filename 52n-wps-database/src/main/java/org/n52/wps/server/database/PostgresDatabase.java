@@ -31,11 +31,14 @@ package org.n52.wps.server.database;
 import static org.n52.wps.server.database.AbstractDatabase.getDatabaseProperties;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
@@ -43,37 +46,41 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.UUID;
 import java.util.zip.GZIPInputStream;
 
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
-import javax.sql.DataSource;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.database.connection.ConnectionHandler;
+import org.n52.wps.server.database.connection.JNDIConnectionHandler;
+import org.n52.wps.server.database.connection.PooledConnectionHandler;
 import org.n52.wps.webapp.entities.Server;
 
 import com.google.common.base.Joiner;
 
 /**
  *Uses the Postgres database to store and retrieve data.
+ *
+ * Every call borrows its own connection from a pool and prepares its own
+ * statements, so concurrent jobs and status requests do not wait for each
+ * other. The pool is either provided by the container (if a JNDI name is
+ * configured) or created with the configured maximum size.
  * @author isuftin (Ivan Suftin, USGS)
  */
 public class PostgresDatabase extends AbstractDatabase {
@@ -81,21 +88,33 @@ public class PostgresDatabase extends AbstractDatabase {
     private static final Logger LOGGER = LoggerFactory.getLogger(PostgresDatabase.class);
     private static PostgresDatabase db;
     private static String connectionURL = null;
-    private static Connection conn = null;
+    private static ConnectionHandler connectionHandler = null;
     private final static String KEY_DATABASE_ROOT = "org.n52.wps.server.database";
     private final static String KEY_DATABASE_PATH = "path";
     private final static String KEY_DATABASE_WIPE_ENABLED = "wipe.enabled";
     private final static String KEY_DATABASE_WIPE_PERIOD = "wipe.period";
     private final static String KEY_DATABASE_WIPE_THRESHOLD = "wipe.threshold";
+    private final static String KEY_DATABASE_CONNECTION_POOL_SIZE = "connection.pool.size";
     private final static boolean DEFAULT_DATABASE_WIPE_ENABLED = true;
     private final static long DEFAULT_DATABASE_WIPE_PERIOD = 1000 * 60 * 60;
     private final static long DEFAULT_DATABASE_WIPE_THRESHOLD = 1000 * 60 * 60 * 24 * 7;
+    private final static long DEFAULT_DATABASE_CONNECTION_POOL_SIZE = 10;
     private final static String SUFFIX_GZIP = "gz";
     private final static String DEFAULT_DATABASE_PATH
             = Joiner.on(File.separator).join(
                     System.getProperty("java.io.tmpdir", "."),
                     "Database",
                     "Results");
+    // documents up to this size are passed to the driver without a temporary file
+    private final static int IN_MEMORY_THRESHOLD = 1024 * 1024;
+    // number of rows the wiper deletes per statement and transaction
+    private final static int WIPE_BATCH_SIZE = 1000;
+    // SQL state of a violated unique or primary key constraint
+    private final static String UNIQUE_VIOLATION = "23505";
+    private final static String oldOutputsString = "SELECT REQUEST_ID FROM RESULTS "
+            + "WHERE REQUEST_DATE < (?) AND LOWER(REQUEST_ID) LIKE '%output%'";
+    private final static String wipeString = "DELETE FROM RESULTS WHERE REQUEST_ID IN "
+            + "(SELECT REQUEST_ID FROM RESULTS WHERE REQUEST_DATE < (?) LIMIT " + WIPE_BATCH_SIZE + ")";
     private static File BASE_DIRECTORY;
     protected final String baseResultURL;
     public static final String pgCreationString = "CREATE TABLE RESULTS ("
@@ -104,8 +123,9 @@ public class PostgresDatabase extends AbstractDatabase {
             + "RESPONSE_TYPE VARCHAR(100), "
             + "RESPONSE TEXT, "
             + "RESPONSE_MIMETYPE VARCHAR(100))";
-    protected final Object storeResponseSerialNumberLock;
     protected final Timer wipeTimer;
+    private final long retentionPeriod;
+    private final int connectionPoolSize;
 
     private PostgresDatabase() {
         try {
@@ -113,9 +133,6 @@ public class PostgresDatabase extends AbstractDatabase {
             PostgresDatabase.connectionURL = "jdbc:postgresql:" + getDatabasePath() + "/" + getDatabaseName();
             LOGGER.debug("Database connection URL is: " + PostgresDatabase.connectionURL);
 
-            // Create lock object
-            storeResponseSerialNumberLock = new Object();
-
             PostgresDatabaseConfigurationModule flatFileDatabaseConfigurationModule = (PostgresDatabaseConfigurationModule) WPSConfig.getInstance().getConfigurationManager().getConfigurationServices().getConfigurationModule(PostgresDatabaseConfigurationModule.class.getName());
 
         	Server server = WPSConfig.getInstance().getServerConfigurationModule();
@@ -125,6 +142,8 @@ public class PostgresDatabase extends AbstractDatabase {
 
             PropertyUtil propertyUtil = new PropertyUtil(flatFileDatabaseConfigurationModule, KEY_DATABASE_ROOT);
 
+            connectionPoolSize = (int) propertyUtil.extractLong(KEY_DATABASE_CONNECTION_POOL_SIZE, DEFAULT_DATABASE_CONNECTION_POOL_SIZE);
+
             // Create database wiper task
             if (propertyUtil.extractBoolean(KEY_DATABASE_WIPE_ENABLED, DEFAULT_DATABASE_WIPE_ENABLED)) {
                 long periodMillis = propertyUtil.extractPeriodAsMillis(KEY_DATABASE_WIPE_PERIOD, DEFAULT_DATABASE_WIPE_PERIOD);
@@ -132,10 +151,12 @@ public class PostgresDatabase extends AbstractDatabase {
 
                 wipeTimer = new Timer(getClass().getSimpleName() + " Postgres Wiper", true);
                 wipeTimer.scheduleAtFixedRate(new PostgresDatabase.WipeTimerTask(thresholdMillis), 15000, periodMillis);
+                retentionPeriod = thresholdMillis;
                 LOGGER.info("Started {} Postgres wiper timer; period {} ms, threshold {} ms",
                         new Object[]{getDatabaseName(), periodMillis, thresholdMillis});
             } else {
                 wipeTimer = null;
+                retentionPeriod = Long.MAX_VALUE;
             }
         } catch (ClassNotFoundException cnf_ex) {
             LOGGER.error("Database class could not be loaded", cnf_ex);
@@ -148,16 +169,13 @@ public class PostgresDatabase extends AbstractDatabase {
             PostgresDatabase.db = new PostgresDatabase();
         }
 
-        if (db.getConnection() == null) {
-            if (!PostgresDatabase.createConnection()) {
+        if (PostgresDatabase.connectionHandler == null) {
+            if (!PostgresDatabase.createConnectionHandler(db.connectionPoolSize)) {
                 throw new RuntimeException("Creating database connection failed.");
             }
             if (!PostgresDatabase.createResultTable()) {
                 throw new RuntimeException("Creating result table failed.");
             }
-            if (!PostgresDatabase.createPreparedStatements()) {
-                throw new RuntimeException("Creating prepared statements failed.");
-            }
         }
 
         PostgresDatabaseConfigurationModule flatFileDatabaseConfigurationModule = (PostgresDatabaseConfigurationModule) WPSConfig.getInstance().getConfigurationManager().getConfigurationServices().getConfigurationModule(PostgresDatabaseConfigurationModule.class.getName());
@@ -174,169 +192,184 @@ public class PostgresDatabase extends AbstractDatabase {
         return PostgresDatabase.db;
     }
 
-    private static boolean createConnection() {
-        Properties props = new Properties();
-        DataSource dataSource;
+    private static boolean createConnectionHandler(int poolSize) {
         String jndiName = getDatabaseProperties("jndiName");
         String username = getDatabaseProperties("username");
         String password = getDatabaseProperties("password");
 
         if (jndiName != null) {
-            InitialContext context;
             try {
-                context = new InitialContext();
-                dataSource = (DataSource) context.lookup("java:comp/env/jdbc/" + jndiName);
-                PostgresDatabase.conn = dataSource.getConnection();
-                PostgresDatabase.conn.setAutoCommit(false);
-                LOGGER.info("Connected to WPS database.");
+                // the container pools the connections of its data sources
+                PostgresDatabase.connectionHandler = new JNDIConnectionHandler(jndiName);
             } catch (NamingException e) {
                 LOGGER.error("Could not connect to or create the database.", e);
                 return false;
-            } catch (SQLException e) {
-                LOGGER.error("Could not connect to or create the database.", e);
-                return false;
             }
         } else {
-            props.setProperty("create", "true");
-            props.setProperty("user", username);
-            props.setProperty("password", password);
-            PostgresDatabase.conn = null;
-            try {
-                PostgresDatabase.conn = DriverManager.getConnection(
-                        PostgresDatabase.connectionURL, props);
-                PostgresDatabase.conn.setAutoCommit(false);
-                LOGGER.info("Connected to WPS database.");
-            } catch (SQLException e) {
-                LOGGER.error("Could not connect to or create the database.", e);
-                return false;
+            Properties props = new Properties();
+            if (username != null) {
+                props.setProperty("user", username);
             }
+            if (password != null) {
+                props.setProperty("password", password);
+            }
+            PostgresDatabase.connectionHandler = new PooledConnectionHandler("org.postgresql.Driver",
+                    PostgresDatabase.connectionURL, props, poolSize);
+        }
+        Connection conn = null;
+        try {
+            conn = PostgresDatabase.connectionHandler.getConnection();
+            LOGGER.info("Connected to WPS database, pool size {}.", jndiName != null ? "managed by the container" : poolSize);
+        } catch (SQLException e) {
+            LOGGER.error("Could not connect to or create the database.", e);
+            PostgresDatabase.closeConnectionHandler();
+            return false;
+        } finally {
+            close(conn);
         }
         return true;
     }
 
     @Override
-    public synchronized void insertRequest(String id, InputStream inputStream, boolean xml) {
+    public void insertRequest(String id, InputStream inputStream, boolean xml) {
         insertResultEntity(inputStream, "REQ_" + id, "ExecuteRequest", xml ? "text/xml" : "text/plain");
     }
 
     @Override
-    public synchronized String insertResponse(String id, InputStream inputStream) {
+    public String insertResponse(String id, InputStream inputStream) {
         return insertResultEntity(inputStream, id, "ExecuteResponse", "text/xml");
     }
 
     @Override
-    protected synchronized String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
-        Timestamp timestamp = new Timestamp(Calendar.getInstance().getTimeInMillis());
-        FileInputStream fis = null;
-        Boolean storingOutput = null != id && id.toLowerCase().contains("output");
-        Boolean saveResultsToDB = Boolean.parseBoolean(getDatabaseProperties("saveResultsToDB"));
-        String filename = storingOutput ? id : UUID.randomUUID().toString();
-        Path filePath = new File(BASE_DIRECTORY, filename).toPath();
+    public String storeComplexValue(String id, InputStream stream, String type, String mimeType) {
+        return insertResultEntity(stream, id, type, mimeType);
+    }
+
+    @Override
+    protected String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        boolean storingOutput = null != id && id.toLowerCase().contains("output");
+        boolean saveResultsToDB = isSaveResultsToDB();
+        ResponseContent content = null;
 
         try {
-            filePath = Files.createFile(filePath);
-            Files.copy(stream, filePath, StandardCopyOption.REPLACE_EXISTING);
-            fis = new FileInputStream(filePath.toFile());
-
-            AbstractDatabase.insertSQL.setString(INSERT_COLUMN_REQUEST_ID, id);
-            AbstractDatabase.insertSQL.setTimestamp(INSERT_COLUMN_REQUEST_DATE, timestamp);
-            AbstractDatabase.insertSQL.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
-            AbstractDatabase.insertSQL.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
-
-            if (storingOutput) {
-                if (!saveResultsToDB) {
-                    byte[] filePathByteArray = filePath.toUri().toString().getBytes();
-                    AbstractDatabase.insertSQL.setAsciiStream(INSERT_COLUMN_RESPONSE, new ByteArrayInputStream(filePathByteArray), filePathByteArray.length);
-                } else {
-                    AbstractDatabase.insertSQL.setAsciiStream(INSERT_COLUMN_RESPONSE, fis, (int) filePath.toFile().length());
-                }
+            if (storingOutput && !saveResultsToDB) {
+                // The file is served on request, the database only references it
+                Path filePath = new File(BASE_DIRECTORY, id).toPath();
+                Files.copy(stream, filePath, StandardCopyOption.REPLACE_EXISTING);
+                content = new ResponseContent(filePath.toUri().toString());
             } else {
-                AbstractDatabase.insertSQL.setAsciiStream(INSERT_COLUMN_RESPONSE, fis, (int) filePath.toFile().length());
+                content = new ResponseContent(stream);
             }
-
-            AbstractDatabase.insertSQL.executeUpdate();
-            getConnection().commit();
+            insert(id, timestamp, type, mimeType, content);
         } catch (SQLException e) {
             LOGGER.error("Could not insert Response into database.", e);
         } catch (IOException e) {
             LOGGER.error("Could not insert Response into database.", e);
         } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    LOGGER.error("Could not close file input stream", e);
-                }
-            }
-
-            // If we are storing output, we want to only delete the file if we're
-            // storing the results to the database. Otherwise, don't delete the
-            // file since that will be served on request
-            if (filePath != null) {
-                try {
-                    if (storingOutput) {
-                        if (saveResultsToDB) {
-                            Files.deleteIfExists(filePath);
-                        }
-                    } else {
-                        Files.deleteIfExists(filePath);
-                    }
-                } catch (IOException e) {
-                    LOGGER.error("Could not delete file: " + filePath.toString(), e);
-                }
-            }
+            IOUtils.closeQuietly(content);
         }
         return generateRetrieveResultURL(id);
     }
 
+    private void insert(String id, Timestamp timestamp, String type, String mimeType, ResponseContent content)
+            throws SQLException, IOException {
+        Connection conn = null;
+        PreparedStatement insertSQL = null;
+        try {
+            conn = PostgresDatabase.connectionHandler.getConnection();
+            insertSQL = conn.prepareStatement(insertionString);
+            insertSQL.setString(INSERT_COLUMN_REQUEST_ID, id);
+            insertSQL.setTimestamp(INSERT_COLUMN_REQUEST_DATE, timestamp);
+            insertSQL.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
+            insertSQL.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
+            content.setParameter(insertSQL, INSERT_COLUMN_RESPONSE);
+            insertSQL.executeUpdate();
+        } finally {
+            close(insertSQL);
+            close(conn);
+        }
+    }
+
     @Override
-    public synchronized void updateResponse(String id, InputStream stream) {
-        Path tempFilePath = null;
-        FileInputStream fis = null;
+    public void updateResponse(String id, InputStream stream) {
+        ResponseContent content = null;
         try {
-            tempFilePath = Files.createTempFile(UUID.randomUUID().toString(), null);
-            Files.copy(stream, tempFilePath, StandardCopyOption.REPLACE_EXISTING);
-            fis = new FileInputStream(tempFilePath.toFile());
-
-            AbstractDatabase.updateSQL.setString(UPDATE_COLUMN_REQUEST_ID, id);
-            AbstractDatabase.updateSQL.setAsciiStream(UPDATE_COLUMN_RESPONSE, fis, (int) tempFilePath.toFile().length());
-            AbstractDatabase.updateSQL.executeUpdate();
-            getConnection().commit();
+            content = new ResponseContent(stream);
+            update(id, content);
         } catch (SQLException e) {
             LOGGER.error("Could not insert Response into database", e);
         } catch (IOException e) {
             LOGGER.error("Could not insert Response into database", e);
         } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    LOGGER.error("Could not close file input stream", e);
-                }
+            IOUtils.closeQuietly(content);
+        }
+    }
+
+    /**
+     * Updates the response if it exists already, and only inserts it
+     * otherwise. Unlike {@link AbstractDatabase#storeResponse(String, InputStream)}
+     * this does not read the stored response to find out. If another thread
+     * inserts the same response in between, the insert violates the primary
+     * key and the response is updated instead.
+     */
+    @Override
+    public String storeResponse(String id, InputStream stream) {
+        ResponseContent content = null;
+        try {
+            content = new ResponseContent(stream);
+            if (update(id, content) > 0) {
+                return null;
             }
-            if (tempFilePath != null) {
-                try {
-                    Files.deleteIfExists(tempFilePath);
-                } catch (IOException e) {
-                    LOGGER.error("Could not delete file: " + tempFilePath.toString(), e);
+            try {
+                insert(id, new Timestamp(System.currentTimeMillis()), "ExecuteResponse", "text/xml", content);
+                return generateRetrieveResultURL(id);
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
                 }
+                LOGGER.debug("Response {} was inserted concurrently, updating it.", id);
             }
+            update(id, content);
+        } catch (SQLException e) {
+            LOGGER.error("Could not store Response in database", e);
+        } catch (IOException e) {
+            LOGGER.error("Could not store Response in database", e);
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
+        return null;
+    }
+
+    private int update(String id, ResponseContent content) throws SQLException, IOException {
+        Connection conn = null;
+        PreparedStatement updateSQL = null;
+        try {
+            conn = PostgresDatabase.connectionHandler.getConnection();
+            updateSQL = conn.prepareStatement(updateString);
+            updateSQL.setString(UPDATE_COLUMN_REQUEST_ID, id);
+            content.setParameter(updateSQL, UPDATE_COLUMN_RESPONSE);
+            return updateSQL.executeUpdate();
+        } finally {
+            close(updateSQL);
+            close(conn);
         }
     }
 
     private static boolean createResultTable() {
+        Connection conn = null;
         try {
+            conn = PostgresDatabase.connectionHandler.getConnection();
             ResultSet rs;
-            DatabaseMetaData meta = PostgresDatabase.conn.getMetaData();
+            DatabaseMetaData meta = conn.getMetaData();
             rs = meta.getTables(null, null, "results", new String[]{"TABLE"});
             if (!rs.next()) {
                 LOGGER.info("Table RESULTS does not yet exist.");
-                Statement st = PostgresDatabase.conn.createStatement();
+                Statement st = conn.createStatement();
                 st.executeUpdate(PostgresDatabase.pgCreationString);
+                st.close();
 
-                PostgresDatabase.conn.commit();
-
-                meta = PostgresDatabase.conn.getMetaData();
+                meta = conn.getMetaData();
 
                 rs = meta.getTables(null, null, "results", new String[]{"TABLE"});
                 if (rs.next()) {
@@ -349,104 +382,59 @@ public class PostgresDatabase extends AbstractDatabase {
         } catch (SQLException e) {
             LOGGER.error("Connection to the Postgres database failed: " + e.getMessage());
             return false;
+        } finally {
+            close(conn);
         }
         return true;
     }
 
-    private static boolean createPreparedStatements() {
-        try {
-            PostgresDatabase.closePreparedStatements();
-            PostgresDatabase.insertSQL = PostgresDatabase.conn.prepareStatement(insertionString);
-            PostgresDatabase.selectSQL = PostgresDatabase.conn.prepareStatement(selectionString);
-            PostgresDatabase.updateSQL = PostgresDatabase.conn.prepareStatement(updateString);
-        } catch (SQLException e) {
-            LOGGER.error("Could not create the prepared statements.", e);
-            return false;
-        }
-        return true;
-    }
-
-    private static boolean closePreparedStatements() {
-        try {
-            if (PostgresDatabase.insertSQL != null) {
-                PostgresDatabase.insertSQL.close();
-                PostgresDatabase.insertSQL = null;
-            }
-            if (PostgresDatabase.selectSQL != null) {
-                PostgresDatabase.selectSQL.close();
-                PostgresDatabase.selectSQL = null;
-            }
-            if (PostgresDatabase.updateSQL != null) {
-                PostgresDatabase.updateSQL.close();
-                PostgresDatabase.updateSQL = null;
+    private static void closeConnectionHandler() {
+        if (PostgresDatabase.connectionHandler instanceof PooledConnectionHandler) {
+            try {
+                ((PooledConnectionHandler) PostgresDatabase.connectionHandler).close();
+            } catch (SQLException e) {
+                LOGGER.warn("Postgres database connection pool was not closed successfully", e);
             }
-        } catch (SQLException e) {
-            LOGGER.error("Prepared statements could not be closed.", e);
-            return false;
         }
-        return true;
+        PostgresDatabase.connectionHandler = null;
     }
 
     @Override
     public void shutdown() {
-        boolean isClosedPreparedStatements = false;
-        boolean isClosedConnection = false;
-
-        try {
-            if (PostgresDatabase.conn != null) {
-                isClosedPreparedStatements = closePreparedStatements();
-                Properties props = new Properties();
-                props.setProperty("shutdown", "true");
-                PostgresDatabase.conn = DriverManager.getConnection(PostgresDatabase.connectionURL, props);
-                PostgresDatabase.conn.close();
-                PostgresDatabase.conn = null;
-                isClosedConnection = true;
-                PostgresDatabase.db = null;
-            }
-        } catch (SQLException e) {
-            LOGGER.error("Error occured while closing Postgres database connection: "
-                    + "closed prepared statements?" + isClosedPreparedStatements
-                    + ";closed connection?" + isClosedConnection, e);
-            return;
-        } finally {
-            try {
-                if (PostgresDatabase.conn != null) {
-                    try {
-                        PostgresDatabase.conn.close();
-                    } catch (SQLException e) {
-                        LOGGER.warn("Postgres database connection was not closed successfully during shutdown", e);
-                    }
-                    PostgresDatabase.conn = null;
-                }
-            } finally {
-                System.gc();
+        synchronized (PostgresDatabase.class) {
+            if (wipeTimer != null) {
+                wipeTimer.cancel();
             }
+            closeConnectionHandler();
+            PostgresDatabase.db = null;
         }
         LOGGER.info("Postgres database connection is closed succesfully");
     }
 
+    @Override
+    public InputStream lookupRequest(String request_id) {
+        return toInputStream(select("REQ_" + request_id, 1));
+    }
+
     @Override
     public InputStream lookupResponse(String id) {
         InputStream result = null;
         if (null != id) {
-            if (!id.toLowerCase().contains("output")) {
-                result = super.lookupResponse(id);
+            if (!id.toLowerCase().contains("output") || isSaveResultsToDB()) {
+                result = toInputStream(select(id, 1));
             } else {
-                if (Boolean.parseBoolean(getDatabaseProperties("saveResultsToDB"))) {
-                    result = super.lookupResponse(id);
-                } else {
-                    File responseFile = lookupResponseAsFile(id);
-                    if (responseFile != null && responseFile.exists()) {
-                        LOGGER.debug("Response file for {} is {}", id, responseFile.getPath());
-                        try {
-                            result = responseFile.getName().endsWith(SUFFIX_GZIP) ? new GZIPInputStream(new FileInputStream(responseFile))
-                                    : new FileInputStream(responseFile);
-                        } catch (FileNotFoundException e) {
-                            LOGGER.warn("Response not found for id " + id, e);
-                        } catch (IOException e) {
-                            LOGGER.warn("Error processing response for id " + id, e);
-                        }
+                File responseFile = lookupResponseAsFile(id);
+                if (responseFile != null && responseFile.exists()) {
+                    LOGGER.debug("Response file for {} is {}", id, responseFile.getPath());
+                    try {
+                        result = responseFile.getName().endsWith(SUFFIX_GZIP) ? new GZIPInputStream(new FileInputStream(responseFile))
+                                : new FileInputStream(responseFile);
+                    } catch (FileNotFoundException e) {
+                        LOGGER.warn("Response not found for id " + id, e);
+                    } catch (IOException e) {
+                        LOGGER.warn("Error processing response for id " + id, e);
                     }
+                } else {
                     LOGGER.warn("Response not found for id {}", id);
                 }
             }
@@ -456,26 +444,155 @@ public class PostgresDatabase extends AbstractDatabase {
 
     @Override
     public File lookupResponseAsFile(String id) {
-        File result = null;
-        InputStream responseStream = super.lookupResponse(id);
+        String fileLocation = select(id, 1);
+        if (fileLocation == null) {
+            return null;
+        }
         try {
-            String fileLocation = IOUtils.toString(responseStream);
-            result = new File(new URI(fileLocation));
-        } catch (IOException e) {
-            LOGGER.warn("Could not get file location for response file for id " + id, e);
+            return new File(new URI(fileLocation));
         } catch (URISyntaxException e) {
             LOGGER.warn("Could not get file location for response file for id " + id, e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Could not get file location for response file for id " + id, e);
+        }
+        return null;
+    }
+
+    @Override
+    public String getMimeTypeForStoreResponse(String id) {
+        return select(id, 2);
+    }
+
+    /**
+     * @return the given column of the selection for the id, or
+     *         <code>null</code> if there is no such row
+     */
+    private String select(String id, int column) {
+        Connection conn = null;
+        PreparedStatement selectSQL = null;
+        ResultSet res = null;
+        try {
+            conn = PostgresDatabase.connectionHandler.getConnection();
+            selectSQL = conn.prepareStatement(selectionString);
+            selectSQL.setString(SELECT_COLUMN_RESPONSE, id);
+            res = selectSQL.executeQuery();
+            if (!res.next()) {
+                LOGGER.warn("Query did not return a valid result for {}.", id);
+                return null;
+            }
+            // the driver holds text values in memory anyway, so the
+            // connection can be returned before the result is read
+            return res.getString(column);
+        } catch (SQLException e) {
+            LOGGER.error("SQLException with request_id: " + id
+                    + "and message: " + e.getMessage());
+            return null;
         } finally {
-            if (null != responseStream) {
-                try {
-                    responseStream.close();
-                } catch (IOException e) {
-                    LOGGER.debug("Could not close input stream", e);
-                }
+            close(res);
+            close(selectSQL);
+            close(conn);
+        }
+    }
+
+    private static InputStream toInputStream(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new ByteArrayInputStream(value.getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isSaveResultsToDB() {
+        return Boolean.parseBoolean(getDatabaseProperties("saveResultsToDB"));
+    }
+
+    private static void close(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Could not return database connection", e);
             }
         }
+    }
 
-        return result;
+    private static void close(Statement statement) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Could not close prepared statement", e);
+            }
+        }
+    }
+
+    private static void close(ResultSet rs) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Could not close result set", e);
+            }
+        }
+    }
+
+    /**
+     * A response document to be written to the RESPONSE column. Small
+     * documents are kept in memory, larger ones are buffered in a temporary
+     * file and streamed to the driver, so that they can be sent again when
+     * an update finds no row to update or an insert finds the row inserted.
+     */
+    private static class ResponseContent implements Closeable {
+
+        private final String value;
+
+        private final DeferredFileOutputStream buffer;
+
+        private final List<Closeable> readers = new ArrayList<Closeable>();
+
+        ResponseContent(String value) {
+            this.value = value;
+            this.buffer = null;
+        }
+
+        ResponseContent(InputStream stream) throws IOException {
+            this.value = null;
+            this.buffer = new DeferredFileOutputStream(IN_MEMORY_THRESHOLD, "wps-response", null, null);
+            try {
+                IOUtils.copy(stream, buffer);
+            } finally {
+                buffer.close();
+            }
+        }
+
+        void setParameter(PreparedStatement statement, int column) throws SQLException, IOException {
+            if (value != null) {
+                statement.setString(column, value);
+            } else if (buffer.isInMemory()) {
+                statement.setString(column, new String(buffer.getData(), "UTF-8"));
+            } else {
+                // the byte length is an upper bound of the character length,
+                // the driver reads until the end of the stream
+                Reader reader = new InputStreamReader(new FileInputStream(buffer.getFile()), "UTF-8");
+                readers.add(reader);
+                statement.setCharacterStream(column, reader, (int) Math.min(buffer.getFile().length(), Integer.MAX_VALUE));
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Closeable reader : readers) {
+                IOUtils.closeQuietly(reader);
+            }
+            if (buffer != null && !buffer.isInMemory()) {
+                if (!buffer.getFile().delete()) {
+                    LOGGER.warn("Could not delete file: " + buffer.getFile());
+                }
+            }
+        }
     }
 
     private class WipeTimerTask extends TimerTask {
@@ -488,31 +605,28 @@ public class PostgresDatabase extends AbstractDatabase {
 
         @Override
         public void run() {
-            Boolean savingResultsToDB = Boolean.parseBoolean(getDatabaseProperties("saveResultsToDB"));
-            wipe(thresholdMillis, savingResultsToDB);
+            if (PostgresDatabase.connectionHandler == null) {
+                return;
+            }
+            wipe(thresholdMillis, isSaveResultsToDB());
         }
 
         private void wipe(long thresholdMillis, Boolean saveResultsToDB) {
-            // SimpleDataFormat is not thread-safe.
-            long currentTimeMillis = System.currentTimeMillis();
             LOGGER.info(getDatabaseName() + " Postgres wiper, checking for records older than {} ms",
                     thresholdMillis);
+            Timestamp threshold = new Timestamp(System.currentTimeMillis() - thresholdMillis);
 
-            List<String> oldRecords = findOldRecords(currentTimeMillis, thresholdMillis);
-            if (oldRecords.size() > 0) {
-                // Clean up files on disk if needed
-                if (!saveResultsToDB) {
-                    for (String recordId : oldRecords) {
-                        if (recordId.toLowerCase().contains("output")) {
-                            deleteFileOnDisk(recordId);
-                        }
-                    }
+            // Clean up files on disk if needed
+            if (!saveResultsToDB) {
+                for (String recordId : findOldOutputs(threshold)) {
+                    deleteFileOnDisk(recordId);
                 }
+            }
 
-                // Clean up records in database
-                Integer recordsDeleted = deleteRecords(oldRecords);
+            // Clean up records in database
+            Integer recordsDeleted = deleteRecords(threshold);
+            if (recordsDeleted > 0) {
                 LOGGER.info("Cleaned {} records from database", recordsDeleted);
-
             }
         }
 
@@ -533,79 +647,65 @@ public class PostgresDatabase extends AbstractDatabase {
             return deleted;
         }
 
-        private Integer deleteRecords(List<String> recordIds) {
+        /**
+         * Deletes the old records in batches, each in its own transaction,
+         * so that concurrent writes are not blocked for the whole wipe.
+         */
+        private Integer deleteRecords(Timestamp threshold) {
             Integer deletedRecordsCount = 0;
+            Connection conn = null;
             PreparedStatement deleteStatement = null;
 
-            StringBuilder builder = new StringBuilder();
-            for (int i = 0; i < recordIds.size(); i++) {
-                builder.append("?,");
-            }
-
             try {
-
-                String deleteStatementString = "DELETE FROM RESULTS "
-                        + "WHERE RESULTS.REQUEST_ID IN (" + builder.deleteCharAt(builder.length() - 1).toString() + ")";
-                deleteStatement = PostgresDatabase.conn.prepareStatement(deleteStatementString);
-
-                int idIdx = 1;
-                for (String id : recordIds) {
-                    deleteStatement.setString(idIdx, id);
-                    idIdx++;
-                }
-                deletedRecordsCount = deleteStatement.executeUpdate();
-                PostgresDatabase.conn.commit();
+                conn = PostgresDatabase.connectionHandler.getConnection();
+                deleteStatement = conn.prepareStatement(wipeString);
+                deleteStatement.setTimestamp(1, threshold);
+                int deleted;
+                do {
+                    deleted = deleteStatement.executeUpdate();
+                    deletedRecordsCount += deleted;
+                } while (deleted == WIPE_BATCH_SIZE);
             } catch (SQLException ex) {
                 LOGGER.warn("Could not delete rows from Postgres database", ex);
             } finally {
-                if (null != deleteStatement) {
-                    try {
-                        deleteStatement.close();
-                    } catch (SQLException e) {
-                        LOGGER.warn("Postgres Wiper: Could not close prepared statement", e);
-                    }
-                }
+                close(deleteStatement);
+                close(conn);
             }
 
             return deletedRecordsCount;
         }
 
-        private List<String> findOldRecords(long currentTimeMillis, long threshold) {
+        private List<String> findOldOutputs(Timestamp threshold) {
+            Connection conn = null;
             PreparedStatement lookupStatement = null;
             ResultSet rs = null;
             List<String> matchingRecords = new ArrayList<String>();
             try {
-                long ageMillis = currentTimeMillis - thresholdMillis;
-                String lookupStatementString = "SELECT * FROM "
-                        + "(SELECT REQUEST_ID, EXTRACT(EPOCH FROM REQUEST_DATE) * 1000 AS TIMESTAMP "
-                        + "FROM RESULTS) items "
-                        + "WHERE TIMESTAMP < ?";
-                lookupStatement = PostgresDatabase.conn.prepareStatement(lookupStatementString);
-                lookupStatement.setLong(1, ageMillis);
+                conn = PostgresDatabase.connectionHandler.getConnection();
+                // a fetch size is only respected within a transaction
+                conn.setAutoCommit(false);
+                lookupStatement = conn.prepareStatement(oldOutputsString);
+                lookupStatement.setFetchSize(WIPE_BATCH_SIZE);
+                lookupStatement.setTimestamp(1, threshold);
                 rs = lookupStatement.executeQuery();
 
                 while (rs.next()) {
                     matchingRecords.add(rs.getString(1));
                 }
-
             } catch (SQLException ex) {
-                LOGGER.warn("");
+                LOGGER.warn("Postgres Wiper: Could not look up old records", ex);
             } finally {
-                if (null != rs) {
+                close(rs);
+                close(lookupStatement);
+                if (conn != null) {
                     try {
-                        rs.close();
+                        // ends the read only transaction
+                        conn.setAutoCommit(true);
                     } catch (SQLException e) {
-                        LOGGER.warn("Postgres Wiper: Could not close result set", e);
-                    }
-                }
-
-                if (null != lookupStatement) {
-                    try {
-                        lookupStatement.close();
-                    } catch (SQLException e) {
-                        LOGGER.warn("Postgres Wiper: Could not close prepared statement", e);
+                        LOGGER.warn("Postgres Wiper: Could not end transaction", e);
                     }
                 }
+                close(conn);
             }
             return matchingRecords;
         }
@@ -617,9 +717,23 @@ public class PostgresDatabase extends AbstractDatabase {
         return baseResultURL + id;
     }
 
+    @Override
+    public long getRetentionPeriod() {
+        return retentionPeriod;
+    }
+
+    /**
+     * @return a connection of the pool, which has to be closed by the caller,
+     *         or <code>null</code> if no connection is available
+     */
     @Override
     public Connection getConnection() {
-        return PostgresDatabase.conn;
+        try {
+            return PostgresDatabase.connectionHandler.getConnection();
+        } catch (SQLException e) {
+            LOGGER.error("Could not get a database connection", e);
+            return null;
+        }
     }
 
     @Override
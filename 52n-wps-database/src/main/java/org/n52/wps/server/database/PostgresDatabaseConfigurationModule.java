@@ -38,6 +38,7 @@ import org.n52.wps.webapp.api.ConfigurationModule;
 import org.n52.wps.webapp.api.FormatEntry;
 import org.n52.wps.webapp.api.types.BooleanConfigurationEntry;
 import org.n52.wps.webapp.api.types.ConfigurationEntry;
+import org.n52.wps.webapp.api.types.IntegerConfigurationEntry;
 import org.n52.wps.webapp.api.types.StringConfigurationEntry;
 
 public class PostgresDatabaseConfigurationModule implements ConfigurationModule {
@@ -50,20 +51,26 @@ public class PostgresDatabaseConfigurationModule implements ConfigurationModule
 	
 	private String wipeThreshold;
 	
+	private int connectionPoolSize;
+	
 	private final String isWipeEnabledKey = "wipe.enabled";
 	
 	private final String wipePeriodKey = "wipe.period";
 	
 	private final String wipeThresholdKey = "wipe.threshold";
 	
+	private final String connectionPoolSizeKey = "connection.pool.size";
+	
 	private ConfigurationEntry<Boolean> wipeEnabledEntry = new BooleanConfigurationEntry(isWipeEnabledKey, "Database wipe enabled", "Enable database wiping based on values below",
 			false, true);
 	private ConfigurationEntry<String> wipePeriodEntry = new StringConfigurationEntry(wipePeriodKey, "Wipe period",
 			"How often to scan database (PT1H = every hour)", false, "PT1H");
 	private ConfigurationEntry<String> wipeThresholdEntry = new StringConfigurationEntry(wipeThresholdKey, "Wipe threshold",
 			"Delete files older than this period (P7D = 7 days)", false, "P7D");
+	private ConfigurationEntry<Integer> connectionPoolSizeEntry = new IntegerConfigurationEntry(connectionPoolSizeKey, "Connection pool size",
+			"Maximum number of open database connections (not used if the connection is looked up via JNDI)", false, 10);
 
-	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(wipeEnabledEntry, wipePeriodEntry, wipeThresholdEntry);
+	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(wipeEnabledEntry, wipePeriodEntry, wipeThresholdEntry, connectionPoolSizeEntry);
 	
 	@Override
 	public String getModuleName() {
@@ -127,4 +134,13 @@ public class PostgresDatabaseConfigurationModule implements ConfigurationModule
 		this.wipeThreshold = wipeThreshold;
 	}
 
+	public int getConnectionPoolSize() {
+		return connectionPoolSize;
+	}
+
+	@ConfigurationKey(key = connectionPoolSizeKey)
+	public void setConnectionPoolSize(int connectionPoolSize) {
+		this.connectionPoolSize = connectionPoolSize;
+	}
+
 }
@@ -0,0 +1,81 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.apache.commons.dbcp.BasicDataSource;
+
+/**
+ * Hands out connections from a DBCP pool, used if the container does not
+ * provide a pooled data source via JNDI.
+ */
+public class PooledConnectionHandler implements ConnectionHandler {
+
+	private final BasicDataSource dataSource;
+
+	/**
+	 * @param driverClassName
+	 *            the JDBC driver
+	 * @param dbConnectionURL
+	 *            the JDBC URL of the database
+	 * @param dbProps
+	 *            the connection properties, including user and password
+	 * @param poolSize
+	 *            the maximum number of open connections
+	 */
+	public PooledConnectionHandler(String driverClassName, String dbConnectionURL, Properties dbProps, int poolSize) {
+		dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(driverClassName);
+		dataSource.setUrl(dbConnectionURL);
+		for (String name : dbProps.stringPropertyNames()) {
+			dataSource.addConnectionProperty(name, dbProps.getProperty(name));
+		}
+		dataSource.setMaxActive(poolSize);
+		dataSource.setMaxIdle(poolSize);
+		dataSource.setDefaultAutoCommit(true);
+		dataSource.setValidationQuery("SELECT 1");
+		dataSource.setTestOnBorrow(true);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return dataSource.getConnection();
+	}
+
+	/**
+	 * Closes all idle connections of the pool. Connections in use are closed
+	 * when they are returned.
+	 */
+	public void close() throws SQLException {
+		dataSource.close();
+	}
+}
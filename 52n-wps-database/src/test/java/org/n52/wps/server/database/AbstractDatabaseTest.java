@@ -0,0 +1,136 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Tests storing complex values that are written by the caller, see
+ * {@link AbstractDatabase#storeComplexValue(String, ComplexValueWriter, String, String)}.
+ */
+public class AbstractDatabaseTest {
+
+	private static final byte[] VALUE = "<value>52North</value>".getBytes();
+
+	@Test
+	public void testWrittenValueIsStored() {
+		int files = countTemporaryFiles();
+		TestDatabase database = new TestDatabase();
+		String url = database.storeComplexValue("output", new ComplexValueWriter() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				for (byte b : VALUE) {
+					out.write(b);
+				}
+			}
+		}, "ComplexValue", "text/xml");
+
+		assertEquals("url:output", url);
+		assertArrayEquals(VALUE, database.stored);
+		assertEquals(files, countTemporaryFiles());
+	}
+
+	@Test
+	public void testFailingWriterStoresNothing() {
+		int files = countTemporaryFiles();
+		TestDatabase database = new TestDatabase();
+		try {
+			database.storeComplexValue("output", new ComplexValueWriter() {
+				@Override
+				public void writeTo(OutputStream out) throws IOException {
+					out.write(VALUE, 0, 4);
+					throw new IOException("generator failed");
+				}
+			}, "ComplexValue", "text/xml");
+			fail("the failure of the writer is not reported");
+		} catch (RuntimeException e) {
+			assertEquals("generator failed", e.getCause().getMessage());
+		}
+		assertNull(database.stored);
+		assertEquals(files, countTemporaryFiles());
+	}
+
+	private static int countTemporaryFiles() {
+		String[] files = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("complexvalue");
+			}
+		});
+		return files == null ? 0 : files.length;
+	}
+
+	/**
+	 * Keeps the inserted value instead of writing it to a database.
+	 */
+	private static class TestDatabase extends AbstractDatabase {
+
+		private byte[] stored;
+
+		@Override
+		protected String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
+			try {
+				stored = IOUtils.toByteArray(stream);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return "url:" + id;
+		}
+
+		@Override
+		public InputStream lookupStatus(String request_id) {
+			return null;
+		}
+
+		@Override
+		public Connection getConnection() {
+			return null;
+		}
+
+		@Override
+		public String getConnectionURL() {
+			return null;
+		}
+
+	}
+
+}
@@ -29,16 +29,22 @@
 package org.n52.wps.server.grass;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.IAlgorithmRepository;
 import org.n52.wps.server.ProcessDescription;
+import org.n52.wps.server.ProcessDescriptionCache;
 import org.n52.wps.server.grass.configurationmodule.GrassProcessRepositoryCM;
 import org.n52.wps.server.grass.util.GRASSWPSConfigVariables;
 import org.n52.wps.webapp.api.AlgorithmEntry;
@@ -57,8 +63,15 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 	private static Logger LOGGER = LoggerFactory.getLogger(GrassProcessRepository.class);
 	private Map<String, ProcessDescription> registeredProcesses;
 	private Map<String, Boolean> processesAddonFlagMap;
+	// the executables or scripts of the processes
+	private Map<String, File> processFiles;
+	private GrassProcessDescriptionCreator creator;
 	private final String fileSeparator = System.getProperty("file.separator");
 	private ConfigurationModule grassConfigModule;
+	// processes whose description could not be created, they are not tried
+	// again until the repositories are reloaded, which creates a new repository
+	private final Set<String> failedProcesses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<String, Object> descriptionLocks = new ConcurrentHashMap<String, Object>();
 	public static String tmpDir;
 	public static String grassHome;
 	public static String pythonHome;
@@ -68,8 +81,9 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 	public static String addonPath;
 
 	public GrassProcessRepository() {
-		registeredProcesses = new HashMap<String, ProcessDescription>();
+		registeredProcesses = new ConcurrentHashMap<String, ProcessDescription>();
 		processesAddonFlagMap = new HashMap<String, Boolean>();
+		processFiles = new HashMap<String, File>();
 		// check if the repository is active
 		
 		grassConfigModule = WPSConfig.getInstance().getConfigurationModuleForClass(this.getClass().getName(), ConfigurationCategory.REPOSITORY);
@@ -170,7 +184,7 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 			}			
 			
 			// initialize after properties are fetched
-			GrassProcessDescriptionCreator creator = new GrassProcessDescriptionCreator();
+			creator = new GrassProcessDescriptionCreator();
 
 			File processDirectory = new File(grassHome + fileSeparator + "bin");
 
@@ -178,29 +192,19 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 
 				String[] processes = processDirectory.list();
 
-				for (String process : processes) {
+				for (String fileName : processes) {
 
+					String process = fileName;
 					if (process.endsWith(".exe")) {
 						process = process.replace(".exe", "");
 					}
 					if (processList.contains(process)) {
 
-						ProcessDescription pDescType;
-						try {
-							pDescType = creator
-									.createDescribeProcessType(process, false);
-							if (pDescType != null) {
-								registeredProcesses.put(process, pDescType);
-								processesAddonFlagMap.put(process, false);
-								LOGGER.info("GRASS process " + process
-										+ " added.");
-							}
-						} catch (Exception e) {
-							LOGGER.warn("Could not add Grass process : "
-									+ process
-									+ ". Errors while creating process description");
-							LOGGER.error(e.getMessage(), e);
-						}
+						// descriptions are created on first use
+						processesAddonFlagMap.put(process, false);
+						processFiles.put(process, new File(processDirectory, fileName));
+						LOGGER.info("GRASS process " + process
+								+ " added.");
 
 					} else {
 						LOGGER.info("Did not add GRASS process : " + process +". Not in Repository properties or not active.");
@@ -218,8 +222,9 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 
 				String[] processes = addonDirectory.list();
 
-				for (String process : processes) {
+				for (String fileName : processes) {
 
+					String process = fileName;
 					if (process.endsWith(".py")) {
 						process = process.replace(".py", "");
 					}
@@ -231,26 +236,14 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 					}
 					if (processList.contains(process)) {
 
-						ProcessDescription pDescType;
-						try {
-							if(registeredProcesses.keySet().contains(process)){
-								LOGGER.info("Skipping duplicate process " + process);
-								continue;
-							}
-							pDescType = creator
-									.createDescribeProcessType(process, true);
-							if (pDescType != null) {
-								registeredProcesses.put(process, pDescType);
-								processesAddonFlagMap.put(process, true);
-								LOGGER.info("GRASS Addon process " + process
-										+ " added.");
-							}
-						} catch (Exception e) {
-							LOGGER.warn("Could not add Grass Addon process : "
-									+ process
-									+ ". Errors while creating process description");
-							LOGGER.error(e.getMessage(), e);
+						if(processesAddonFlagMap.containsKey(process)){
+							LOGGER.info("Skipping duplicate process " + process);
+							continue;
 						}
+						processesAddonFlagMap.put(process, true);
+						processFiles.put(process, new File(addonDirectory, fileName));
+						LOGGER.info("GRASS Addon process " + process
+								+ " added.");
 
 					} else {
 						LOGGER.info("Did not add GRASS Addon process : " + process +". Not in Repository properties or not active.");
@@ -276,7 +269,7 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 			throw new RuntimeException("Could not allocate process");
 		}
 		return new GrassProcessDelegator(processID,
-				registeredProcesses.get(processID), processesAddonFlagMap.get(processID));
+				getDescription(processID), processesAddonFlagMap.get(processID));
 
 	}
 
@@ -323,11 +316,66 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 	@Override
 	public ProcessDescription getProcessDescription(String processID) {
 		if (getAlgorithmNames().contains(processID)) {
-			return registeredProcesses.get(processID);
+			return getDescription(processID);
 		}
 		return null;
 	}
 
+	/**
+	 * Creates the description of a process on first use. Running the GRASS
+	 * module is avoided if a description for the same executable is stored in
+	 * the {@link ProcessDescriptionCache}.
+	 */
+	private ProcessDescription getDescription(String processID) {
+		ProcessDescription description = registeredProcesses.get(processID);
+		if (description != null || !processFiles.containsKey(processID) || failedProcesses.contains(processID)) {
+			return description;
+		}
+		// only callers of the same process wait, the others are not blocked
+		synchronized (getDescriptionLock(processID)) {
+			description = registeredProcesses.get(processID);
+			if (description != null || failedProcesses.contains(processID)) {
+				return description;
+			}
+			ProcessDescriptionCache cache = ProcessDescriptionCache.getInstance();
+			String repository = getClass().getName();
+			String checksum = null;
+			try {
+				checksum = cache.checksum(processFiles.get(processID),
+						ProcessDescriptionCache.getCodeSourceFile(GrassProcessDescriptionCreator.class));
+				description = cache.get(repository, processID, checksum);
+			} catch (IOException e) {
+				LOGGER.warn("Could not compute checksum of process " + processID + ".", e);
+			}
+			if (description == null) {
+				try {
+					description = creator.createDescribeProcessType(processID, processesAddonFlagMap.get(processID));
+				} catch (Exception e) {
+					LOGGER.warn("Could not create description of Grass process : "
+							+ processID);
+					LOGGER.error(e.getMessage(), e);
+					failedProcesses.add(processID);
+					return null;
+				}
+				if (description == null) {
+					failedProcesses.add(processID);
+					return null;
+				}
+				if (checksum != null) {
+					cache.put(repository, processID, checksum, description);
+				}
+			}
+			registeredProcesses.put(processID, description);
+			return description;
+		}
+	}
+
+	private Object getDescriptionLock(String processID) {
+		Object lock = new Object();
+		Object existing = descriptionLocks.putIfAbsent(processID, lock);
+		return existing != null ? existing : lock;
+	}
+
 	@Override
 	public void shutdown() {
 		// TODO Auto-generated method stub
@@ -0,0 +1,182 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler;
+
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
+import javax.media.jai.TileScheduler;
+
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.factory.Hints;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.modules.RasterConfigurationModule;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The JAI tile cache and tile scheduler shared by all raster parsers and
+ * generators. They are configured once from the
+ * {@link RasterConfigurationModule}, parsers and generators must not change
+ * them, as that would affect all running computations.
+ * 
+ * GeoTIFF inputs are read through the JAI ImageRead operation, so only the
+ * tiles a computation touches are loaded into the tile cache.
+ */
+public class RasterResources {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(RasterResources.class);
+
+	private static final int DEFAULT_TILE_CACHE_MEMORY = 256;
+
+	private static final int DEFAULT_TILE_SIZE = 512;
+
+	private static final int DEFAULT_PREFETCH_PARALLELISM = 1;
+
+	// tiles of TIFF images have to be a multiple of 16 pixels wide and high
+	private static final int MIN_TILE_SIZE = 16;
+
+	private static RasterResources instance;
+
+	private final TileCache tileCache;
+
+	private final TileScheduler tileScheduler;
+
+	private final int tileSize;
+
+	public static synchronized RasterResources getInstance() {
+		if (instance == null) {
+			int memory = DEFAULT_TILE_CACHE_MEMORY;
+			int parallelism = Runtime.getRuntime().availableProcessors();
+			int prefetchParallelism = DEFAULT_PREFETCH_PARALLELISM;
+			int tileSize = DEFAULT_TILE_SIZE;
+			RasterConfigurationModule module = getConfigurationModule();
+			if (module != null) {
+				if (module.getTileCacheMemory() > 0) {
+					memory = module.getTileCacheMemory();
+				}
+				if (module.getTileSchedulerParallelism() > 0) {
+					parallelism = module.getTileSchedulerParallelism();
+				}
+				if (module.getTileSchedulerPrefetchParallelism() > 0) {
+					prefetchParallelism = module.getTileSchedulerPrefetchParallelism();
+				}
+				if (module.getTileSize() > 0) {
+					tileSize = module.getTileSize();
+				}
+			}
+			instance = new RasterResources(JAI.getDefaultInstance(), memory * 1024L * 1024L, parallelism,
+					prefetchParallelism, tileSize);
+		}
+		return instance;
+	}
+
+	private static RasterConfigurationModule getConfigurationModule() {
+		if (WPSConfig.getInstance().getConfigurationManager() == null) {
+			return null;
+		}
+		return (RasterConfigurationModule) WPSConfig.getInstance().getConfigurationManager()
+				.getConfigurationServices().getConfigurationModule(RasterConfigurationModule.class.getName());
+	}
+
+	public RasterResources(JAI jai, long tileCacheMemory, int parallelism, int prefetchParallelism, int tileSize) {
+		this.tileCache = jai.getTileCache();
+		this.tileCache.setMemoryCapacity(tileCacheMemory);
+		this.tileScheduler = jai.getTileScheduler();
+		this.tileScheduler.setParallelism(parallelism);
+		this.tileScheduler.setPrefetchParallelism(prefetchParallelism);
+		this.tileSize = Math.max(Integer.highestOneBit(tileSize), MIN_TILE_SIZE);
+		LOGGER.info("Using a tile cache of {} bytes, {} tile scheduler threads and tiles of up to {} pixels",
+				new Object[] { tileCacheMemory, parallelism, this.tileSize });
+	}
+
+	/**
+	 * @return hints for GeoTools readers, using the shared tile cache and
+	 *         scheduler
+	 */
+	public Hints createReadHints() {
+		Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.TRUE);
+		hints.put(JAI.KEY_TILE_CACHE, tileCache);
+		hints.put(JAI.KEY_TILE_SCHEDULER, tileScheduler);
+		return hints;
+	}
+
+	/**
+	 * @return parameters that let a coverage reader load tiles on demand
+	 *         instead of the whole image
+	 */
+	public GeneralParameterValue[] createReadParameters() {
+		ParameterValue<Boolean> useImageRead = AbstractGridFormat.USE_JAI_IMAGEREAD.createValue();
+		useImageRead.setValue(Boolean.TRUE);
+		ParameterValue<String> suggestedTileSize = AbstractGridFormat.SUGGESTED_TILE_SIZE.createValue();
+		suggestedTileSize.setValue(tileSize + "," + tileSize);
+		return new GeneralParameterValue[] { useImageRead, suggestedTileSize };
+	}
+
+	/**
+	 * @return the edge length of square tiles for writing an image of the
+	 *         given size
+	 */
+	public int getTileSize(int width, int height) {
+		return getTileSize(width, height, tileSize);
+	}
+
+	/**
+	 * @return the smallest power of two that covers the larger dimension of the
+	 *         image, but at least 16 and at most the maximum tile size
+	 */
+	public static int getTileSize(int width, int height, int maxTileSize) {
+		int size = MIN_TILE_SIZE;
+		while (size < maxTileSize && size < Math.max(width, height)) {
+			size <<= 1;
+		}
+		return Math.min(size, Math.max(maxTileSize, MIN_TILE_SIZE));
+	}
+
+}
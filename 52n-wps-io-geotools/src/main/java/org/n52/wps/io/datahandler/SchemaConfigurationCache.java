@@ -0,0 +1,246 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.xsd.XSDSchema;
+import org.geotools.gml3.ApplicationSchemaConfiguration;
+import org.geotools.xml.Configuration;
+import org.geotools.xml.Encoder;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.SchemaMirror;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Shares compiled application schema configurations between all GML parsers
+ * and generators. Resolving and compiling an application schema is expensive,
+ * so each namespace and remote schema location is compiled once from the local
+ * copy held by the {@link SchemaMirror}. The least recently used configurations
+ * are dropped when the configured schema cache size is exceeded.
+ * <p>
+ * Only http and https locations are cached, keyed by their normalized form.
+ * Local schemas, e.g. next to the temporary file of a request, are compiled
+ * for each call. Schemas that could not be compiled are remembered for a while
+ * so that later requests do not wait for the same timeouts again.
+ * <p>
+ * The GeoTools and EMF schema objects are not thread-safe. Parsers must hold
+ * the lock of a returned configuration while they use it. Encoders are
+ * created by {@link #createEncoder(String, String)} with a configuration of
+ * their own, so encoding does not lock.
+ */
+public class SchemaConfigurationCache {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(SchemaConfigurationCache.class);
+
+	private static final int DEFAULT_SIZE = 50;
+
+	private static final long FAILURE_TTL_MINUTES = 10;
+
+	private static SchemaConfigurationCache instance;
+
+	private final Cache<String, Configuration> configurations;
+
+	private final Cache<String, Boolean> failures;
+
+	private final SchemaMirror mirror;
+
+	public static synchronized SchemaConfigurationCache getInstance() {
+		if (instance == null) {
+			int size = DEFAULT_SIZE;
+			Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
+			if (serverConfig != null && serverConfig.getSchemaCacheSize() > 0) {
+				size = serverConfig.getSchemaCacheSize();
+			}
+			instance = new SchemaConfigurationCache(SchemaMirror.getInstance(), size);
+		}
+		return instance;
+	}
+
+	public SchemaConfigurationCache(SchemaMirror mirror, int size) {
+		this(mirror, size, FAILURE_TTL_MINUTES, TimeUnit.MINUTES);
+	}
+
+	public SchemaConfigurationCache(SchemaMirror mirror, int size, long failureTtl, TimeUnit unit) {
+		this.mirror = mirror;
+		this.configurations = CacheBuilder.newBuilder().maximumSize(size).build();
+		this.failures = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(failureTtl, unit).build();
+	}
+
+	/**
+	 * Returns the compiled configuration of an application schema.
+	 * 
+	 * @param namespace
+	 *            the target namespace of the schema
+	 * @param schemaLocation
+	 *            the location of the schema as referenced by the documents
+	 * @return the configuration, shared if the schema is remote, or
+	 *         <code>null</code> if the schema could not be compiled recently
+	 */
+	public Configuration getApplicationSchemaConfiguration(final String namespace, final String schemaLocation) {
+		final URI location = toRemoteLocation(schemaLocation);
+		if (location == null) {
+			try {
+				return compile(namespace, schemaLocation);
+			} catch (IOException e) {
+				LOGGER.warn("Could not compile schema " + schemaLocation, e);
+				return null;
+			} catch (RuntimeException e) {
+				LOGGER.warn("Could not compile schema " + schemaLocation, e);
+				return null;
+			}
+		}
+		String key = namespace + " " + location;
+		if (failures.getIfPresent(key) != null) {
+			LOGGER.debug("Schema {} failed to compile recently, it is not retried yet.", location);
+			return null;
+		}
+		try {
+			return configurations.get(key, new Callable<Configuration>() {
+				@Override
+				public Configuration call() throws IOException {
+					return compile(namespace, mirror.resolve(location.toString()));
+				}
+			});
+		} catch (ExecutionException e) {
+			return failed(key, e.getCause());
+		} catch (UncheckedExecutionException e) {
+			return failed(key, e.getCause());
+		}
+	}
+
+	/**
+	 * Creates an encoder for documents of an application schema. The encoder
+	 * has a configuration of its own, only the compiled schema is shared.
+	 * 
+	 * @param namespace
+	 *            the target namespace of the schema
+	 * @param schemaLocation
+	 *            the location of the schema as referenced by the documents
+	 * @return the encoder, or <code>null</code> if the schema could not be
+	 *         compiled recently
+	 */
+	public Encoder createEncoder(String namespace, String schemaLocation) {
+		Configuration shared = getApplicationSchemaConfiguration(namespace, schemaLocation);
+		if (shared == null) {
+			return null;
+		}
+		try {
+			XSDSchema schema = shared.getXSD().getSchema();
+			return new Encoder(new ApplicationSchemaConfiguration(namespace, shared.getXSD().getSchemaLocation()), schema);
+		} catch (IOException e) {
+			LOGGER.warn("Could not compile schema " + schemaLocation, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Drops all compiled configurations and remembered failures, e.g. after
+	 * schemas were updated.
+	 */
+	public void clear() {
+		configurations.invalidateAll();
+		failures.invalidateAll();
+	}
+
+	private Configuration failed(String key, Throwable cause) {
+		LOGGER.warn("Could not compile schema " + key + ", it is not retried for a while.", cause);
+		failures.put(key, Boolean.TRUE);
+		return null;
+	}
+
+	private static Configuration compile(String namespace, String schemaLocation) throws IOException {
+		Configuration configuration = new ApplicationSchemaConfiguration(namespace, schemaLocation);
+		// compile now, not while the first document is parsed
+		configuration.getXSD().getSchema();
+		return configuration;
+	}
+
+	/**
+	 * Normalizes a http or https schema location, so that different spellings
+	 * of the same location share one configuration.
+	 * 
+	 * @return the normalized location, or <code>null</code> if it is not a
+	 *         remote location
+	 */
+	static URI toRemoteLocation(String schemaLocation) {
+		if (schemaLocation == null) {
+			return null;
+		}
+		try {
+			URI uri = new URI(schemaLocation.trim());
+			String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+			if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+				return null;
+			}
+			int port = uri.getPort();
+			if ("http".equals(scheme) && port == 80 || "https".equals(scheme) && port == 443) {
+				port = -1;
+			}
+			String path = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+			return new URI(scheme, uri.getUserInfo(), uri.getHost().toLowerCase(Locale.ROOT), port, path,
+					uri.getQuery(), null).normalize();
+		} catch (URISyntaxException e) {
+			LOGGER.debug("Schema location {} is not a valid URI, it is not cached.", schemaLocation);
+			return null;
+		}
+	}
+
+}
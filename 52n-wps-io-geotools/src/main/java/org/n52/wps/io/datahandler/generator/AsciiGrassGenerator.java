@@ -86,7 +86,7 @@ public class AsciiGrassGenerator extends AbstractGenerator {
 		String fileName = "temp" + UUID.randomUUID();
 		File outputFile = File.createTempFile(fileName, ".tmp");
 		outputFile.deleteOnExit();
-		this.finalizeFiles.add(outputFile); // mark file for final delete
+		registerTempFile(outputFile); // mark file for final delete
 		GridCoverageWriter writer;
 		try {
 			writer = new ArcGridWriter(outputFile);
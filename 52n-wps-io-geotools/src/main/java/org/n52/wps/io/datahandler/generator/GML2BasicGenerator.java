@@ -171,7 +171,7 @@ public class GML2BasicGenerator extends AbstractGenerator {
 	public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
 		
 		File tempFile = File.createTempFile("gml2", "xml");
-		finalizeFiles.add(tempFile);
+		registerTempFile(tempFile);
 		FileWriter fw = new FileWriter(tempFile);
 		write(data, fw);
 		fw.close();
@@ -47,6 +47,7 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -65,13 +66,12 @@ import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.GMLConfiguration;
-import org.geotools.xml.Configuration;
 import org.n52.wps.io.GTHelper;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
+import org.n52.wps.io.datahandler.SchemaConfigurationCache;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
@@ -100,22 +100,20 @@ public class GML3BasicGenerator extends AbstractGenerator {
         	schemaLocation = SchemaRepository.getSchemaLocation(namespace);
         }
        
-        Configuration configuration = null;
         org.geotools.xml.Encoder encoder = null;
-        if(schemaLocation==null || namespace==null){
+        if(schemaLocation!=null && namespace!=null){
+        	// an encoder of its own, only the compiled schema is shared
+        	encoder = SchemaConfigurationCache.getInstance().createEncoder(namespace, schemaLocation);
+        }
+        if(encoder==null){
         	namespace = "http://www.opengis.net/gml";
         	schemaLocation = "http://schemas.opengis.net/gml/3.1.1/base/feature.xsd";
-        	configuration = new GMLConfiguration();//new ApplicationSchemaConfiguration(namespace, schemaLocation);
             
-            encoder = new org.geotools.xml.Encoder(configuration );
+            encoder = new org.geotools.xml.Encoder(new GMLConfiguration());
             encoder.setNamespaceAware(true);
             encoder.setSchemaLocation("http://www.opengis.net/gml", "http://schemas.opengis.net/gml/3.1.1/base/feature.xsd");
            
         }else{
-        	
-        	configuration = new ApplicationSchemaConfiguration(namespace, schemaLocation);
-        	    
-            encoder = new org.geotools.xml.Encoder(configuration );
             encoder.setNamespaceAware(true);
             encoder.setSchemaLocation("http://www.opengis.net/gml http://schemas.opengis.net/gml/3.1.1/base/feature.xsd", namespace + " " + schemaLocation);
                       
@@ -125,7 +123,7 @@ public class GML3BasicGenerator extends AbstractGenerator {
         //use the gml namespace with the FeatureCollection element to start parsing the collection
         QName ns = new QName("http://www.opengis.net/gml","FeatureCollection","wfs");
         try{
-            encoder.encode(correctFeatureCollection, ns, os);           
+            encoder.encode(correctFeatureCollection, ns, os);
         }catch(IOException e){
         	LOGGER.error("Exception while trying to encode FeatureCollection.", e);
         	throw new RuntimeException(e);
@@ -133,14 +131,22 @@ public class GML3BasicGenerator extends AbstractGenerator {
 		
 	}
 
+	@Override
+	public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+		this.writeToStream(data, out);
+	}
+
 	@Override
 	public InputStream generateStream(final IData data, String mimeType, String schema) throws IOException {
 		String uuid = UUID.randomUUID().toString();
 		File file = File.createTempFile("gml3"+uuid, ".xml");
-		FileOutputStream outputStream = new FileOutputStream(file);
-		this.writeToStream(data, outputStream);
-		outputStream.flush();
-		outputStream.close();
+		registerTempFile(file);
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			this.writeToStream(data, outputStream);
+		} finally {
+			outputStream.close();
+		}
 		if(file.length() <= 0) {
 			return null;
 		}
@@ -51,6 +51,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.n52.wps.io.IOUtils;
 import org.n52.wps.io.data.IData;
@@ -83,6 +84,17 @@ public class GTBinZippedSHPGenerator extends AbstractGenerator {
 		return stream;
 	}
 
+	@Override
+	public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+		GTBinDirectorySHPGenerator directoryShp = new GTBinDirectorySHPGenerator();
+		File shapeDirectory = directoryShp.writeFeatureCollectionToDirectory(data);
+		if (shapeDirectory != null && shapeDirectory.isDirectory()) {
+			File[] files = shapeDirectory.listFiles();
+			IOUtils.zip(out, files);
+			IOUtils.deleteResources(files);
+		}
+	}
+
 	private File createZippedShapefile(File shapeDirectory) throws IOException {
 		if (shapeDirectory != null && shapeDirectory.isDirectory()) {
 			File[] files = shapeDirectory.listFiles();
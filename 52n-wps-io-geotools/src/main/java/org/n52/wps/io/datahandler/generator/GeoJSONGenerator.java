@@ -47,27 +47,42 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
-import org.geotools.data.simple.SimpleFeatureCollection;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
+import org.opengis.feature.simple.SimpleFeature;
 
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * This class generates a GeoJSON String representation out of a JTS Geometry.
+ * Feature collections are written feature by feature, so they are never held
+ * in memory as a whole.
  * @author BenjaminPross(bpross-52n)
  *
  */
 public class GeoJSONGenerator extends AbstractGenerator {
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	public GeoJSONGenerator(){
 		super();
 		supportedIDataTypes.add(JTSGeometryBinding.class);
@@ -78,25 +93,17 @@ public class GeoJSONGenerator extends AbstractGenerator {
 	public InputStream generateStream(IData data, String mimeType, String schema)
 			throws IOException {
 		
-		if(data instanceof JTSGeometryBinding){
-			Geometry g = ((JTSGeometryBinding)data).getPayload();
-			
-			File tempFile = File.createTempFile("wps", "json");
-			finalizeFiles.add(tempFile); // mark for final delete
-			
-			 new GeometryJSON().write(g, tempFile);
-					
-			InputStream is = new FileInputStream(tempFile);
-			
-			return is;
-		}else if(data instanceof GTVectorDataBinding){
-			
-			SimpleFeatureCollection f = (SimpleFeatureCollection)data.getPayload();
+		if(data instanceof JTSGeometryBinding || data instanceof GTVectorDataBinding){
 			
 			File tempFile = File.createTempFile("wps", "json");
-			finalizeFiles.add(tempFile); // mark for final delete
+			registerTempFile(tempFile); // mark for final delete
 			
-			 new FeatureJSON().writeFeatureCollection(f, tempFile);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+			try {
+				writeTo(data, mimeType, schema, out);
+			} finally {
+				out.close();
+			}
 					
 			InputStream is = new FileInputStream(tempFile);
 			
@@ -106,4 +113,52 @@ public class GeoJSONGenerator extends AbstractGenerator {
 		return null;
 	}
 
+	@Override
+	public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+		if(data instanceof JTSGeometryBinding){
+			Geometry g = ((JTSGeometryBinding)data).getPayload();
+			
+			Writer writer = new OutputStreamWriter(new CloseShieldOutputStream(out), UTF8);
+			try {
+				new GeometryJSON().write(g, writer);
+			} finally {
+				writer.close();
+			}
+		}else if(data instanceof GTVectorDataBinding){
+			writeFeatureCollection(((GTVectorDataBinding)data).getPayload(), out);
+		}
+	}
+
+	/**
+	 * Writes the features of the collection one after another as GeoJSON
+	 * feature collection. The stream is flushed, but not closed.
+	 */
+	public void writeFeatureCollection(FeatureCollection<?, ?> collection, OutputStream out) throws IOException {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+		// FeatureJSON must not close the writer after each feature
+		Writer featureWriter = new FilterWriter(writer) {
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+		FeatureJSON featureJSON = new FeatureJSON();
+		writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+		FeatureIterator<?> features = collection.features();
+		try {
+			boolean first = true;
+			while (features.hasNext()) {
+				if (!first) {
+					writer.write(',');
+				}
+				featureJSON.writeFeature((SimpleFeature) features.next(), featureWriter);
+				first = false;
+			}
+		} finally {
+			features.close();
+		}
+		writer.write("]}");
+		writer.flush();
+	}
+
 }
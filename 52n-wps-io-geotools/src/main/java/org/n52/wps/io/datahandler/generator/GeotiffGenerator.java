@@ -47,15 +47,16 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
-import javax.media.jai.JAI;
-
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
@@ -67,6 +68,7 @@ import org.geotools.gce.geotiff.GeoTiffWriter;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 import org.n52.wps.io.data.binding.complex.GeotiffBinding;
+import org.n52.wps.io.datahandler.RasterResources;
 import org.opengis.coverage.grid.GridCoverage;
 import org.opengis.parameter.GeneralParameterValue;
 import org.opengis.parameter.ParameterValueGroup;
@@ -91,7 +93,7 @@ public class GeotiffGenerator  extends AbstractGenerator {
 			String tmpDirPath = System.getProperty("java.io.tmpdir");			
 			String fileName = tmpDirPath + File.separatorChar + "temp" + UUID.randomUUID() + ".tmp";
 			File outputFile = new File(fileName);
-			this.finalizeFiles.add(outputFile); // mark file for final delete
+			registerTempFile(outputFile); // mark file for final delete
 			
 			try {
 				geoTiffWriter = new GeoTiffWriter(outputFile);
@@ -115,6 +117,28 @@ public class GeotiffGenerator  extends AbstractGenerator {
 		
 		return stream;
 	}
+
+	@Override
+	public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+		if(data instanceof GTRasterDataBinding){
+			GridCoverage coverage = ((GTRasterDataBinding)data).getPayload();
+			// the writer buffers the image in an ImageOutputStream and does not close out
+			GeoTiffWriter geoTiffWriter = new GeoTiffWriter(out);
+			try {
+				writeGeotiff(geoTiffWriter, coverage);
+			} finally {
+				geoTiffWriter.dispose();
+			}
+		}
+		if(data instanceof GeotiffBinding){
+			InputStream geotiff = new FileInputStream(((GeotiffBinding)data).getPayload());
+			try {
+				IOUtils.copyLarge(geotiff, out);
+			} finally {
+				geotiff.close();
+			}
+		}
+	}
 	
 	private void writeGeotiff(GeoTiffWriter geoTiffWriter, GridCoverage coverage){
 		GeoTiffFormat format = new GeoTiffFormat();
@@ -124,15 +148,11 @@ public class GeotiffGenerator  extends AbstractGenerator {
 		wp.setCompressionMode(GeoTiffWriteParams.MODE_EXPLICIT);
 		wp.setCompressionType("LZW"); 
 		wp.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
-		int width = ((GridCoverage2D) coverage).getRenderedImage().getWidth();
-		int tileWidth = 1024;
-		if(width<2048){
-			tileWidth = new Double(Math.sqrt(width)).intValue();
-		}
-		wp.setTiling(tileWidth, tileWidth);
+		RenderedImage image = ((GridCoverage2D) coverage).getRenderedImage();
+		int tileSize = RasterResources.getInstance().getTileSize(image.getWidth(), image.getHeight());
+		wp.setTiling(tileSize, tileSize);
 		ParameterValueGroup paramWrite = format.getWriteParameters();
 		paramWrite.parameter(AbstractGridFormat.GEOTOOLS_WRITE_PARAMS.getName().toString()).setValue(wp);
-		JAI.getDefaultInstance().getTileCache().setMemoryCapacity(256*1024*1024);
 		
 		try {
 			geoTiffWriter.write(coverage, (GeneralParameterValue[])paramWrite.values().toArray(new
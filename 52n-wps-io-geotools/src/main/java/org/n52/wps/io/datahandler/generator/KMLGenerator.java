@@ -84,7 +84,7 @@ public class KMLGenerator extends AbstractGenerator {
 		InputStream stream = null;
 		try {
 			tempFile = File.createTempFile("kml", "xml");
-			this.finalizeFiles.add(tempFile);
+			registerTempFile(tempFile);
 			FileOutputStream outputStream = new FileOutputStream(tempFile);
 			this.writeToStream(data, outputStream);
 			outputStream.flush();
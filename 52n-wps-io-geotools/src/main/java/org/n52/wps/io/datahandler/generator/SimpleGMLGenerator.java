@@ -102,7 +102,7 @@ public class SimpleGMLGenerator extends AbstractGenerator {
 		
 		try {
 			tempFile = File.createTempFile("gml", "xml");
-			this.finalizeFiles.add(tempFile);
+			registerTempFile(tempFile);
 			FileOutputStream outputStream = new FileOutputStream(tempFile);
 			this.writeToStream(data, outputStream);
 			outputStream.flush();
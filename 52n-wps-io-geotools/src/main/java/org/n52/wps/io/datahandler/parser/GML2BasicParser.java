@@ -49,43 +49,30 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.DefaultFeatureCollections;
-import org.geotools.feature.GeometryAttributeImpl;
-import org.geotools.feature.type.GeometryDescriptorImpl;
-import org.geotools.feature.type.GeometryTypeImpl;
-import org.geotools.filter.identity.GmlObjectIdImpl;
 import org.geotools.gml2.GMLConfiguration;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.xml.Configuration;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
-import org.opengis.feature.GeometryAttribute;
+import org.n52.wps.io.datahandler.SchemaConfigurationCache;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.GeometryDescriptor;
-import org.opengis.feature.type.GeometryType;
-import org.opengis.filter.identity.Identifier;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
-import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * This parser handles xml files compliant to GML2.
@@ -104,28 +91,15 @@ public class GML2BasicParser extends AbstractParser {
 	public GTVectorDataBinding parse(InputStream stream, String mimeType,
 			String schema) {
 
-		FileOutputStream fos = null;
 		try {
 			File tempFile = File.createTempFile(UUID.randomUUID().toString(),
 					".gml2");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while (i != -1) {
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			registerTempFile(tempFile); // mark for final delete
+			FileUtils.copyInputStreamToFile(stream, tempFile);
 			GTVectorDataBinding data = parseXML(tempFile);
 
 			return data;
 		} catch (IOException e) {
-			if (fos != null)
-				try {
-					fos.close();
-				} catch (Exception e1) {
-				}
 			throw new IllegalArgumentException("Error while creating tempFile",
 					e);
 		}
@@ -152,27 +126,38 @@ public class GML2BasicParser extends AbstractParser {
 		if (schemaLocation != null && schematypeTuple.getNamespaceURI() != null) {
 			SchemaRepository.registerSchemaLocation(
 					schematypeTuple.getNamespaceURI(), schemaLocation);
-			configuration = new ApplicationSchemaConfiguration(
-					schematypeTuple.getNamespaceURI(), schemaLocation);
-		} else {
+			configuration = SchemaConfigurationCache.getInstance()
+					.getApplicationSchemaConfiguration(
+							schematypeTuple.getNamespaceURI(), schemaLocation);
+		}
+		if (configuration == null) {
 			configuration = new GMLConfiguration();
 			shouldSetParserStrict = false;
 		}
 
-		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(
-				configuration);
+		// stream the features while they are iterated, if possible
+		SimpleFeatureCollection streamed = StreamingFeatureCollection.open(
+				file, configuration, shouldSetParserStrict);
+		if (streamed != null) {
+			return streamed;
+		}
 
 		// parse
 		SimpleFeatureCollection fc = DefaultFeatureCollections.newCollection();
 		try {
 			Object parsedData = null;
 			try {
-				parser.setStrict(shouldSetParserStrict);
-				parsedData = parser.parse(new FileInputStream(file));
+				// cached configurations are shared and not thread-safe
+				synchronized (configuration) {
+					org.geotools.xml.Parser parser = new org.geotools.xml.Parser(
+							configuration);
+					parser.setStrict(shouldSetParserStrict);
+					parsedData = parser.parse(new FileInputStream(file));
+				}
 			} catch (SAXException e5) {
 				// assume the xsd containing the schema was not found
 				configuration = new GMLConfiguration();
-				parser = new org.geotools.xml.Parser(configuration);
+				org.geotools.xml.Parser parser = new org.geotools.xml.Parser(configuration);
 				parser.setStrict(false);
 				parsedData = parser.parse(new FileInputStream(file));
 			}
@@ -207,52 +192,8 @@ public class GML2BasicParser extends AbstractParser {
 
 			SimpleFeatureIterator featureIterator = fc.features();
 			while (featureIterator.hasNext()) {
-				SimpleFeature feature = (SimpleFeature) featureIterator.next();
-				if (feature.getDefaultGeometry() == null) {
-					Collection<org.opengis.feature.Property> properties = feature
-							.getProperties();
-					for (org.opengis.feature.Property property : properties) {
-						try {
-
-							Geometry g = (Geometry) property.getValue();
-							if (g != null) {
-								GeometryAttribute oldGeometryDescriptor = feature
-										.getDefaultGeometryProperty();
-								GeometryType type = new GeometryTypeImpl(
-										property.getName(),
-										(Class<?>) oldGeometryDescriptor
-												.getType().getBinding(),
-										oldGeometryDescriptor.getType()
-												.getCoordinateReferenceSystem(),
-										oldGeometryDescriptor.getType()
-												.isIdentified(),
-										oldGeometryDescriptor.getType()
-												.isAbstract(),
-										oldGeometryDescriptor.getType()
-												.getRestrictions(),
-										oldGeometryDescriptor.getType()
-												.getSuper(),
-										oldGeometryDescriptor.getType()
-												.getDescription());
-
-								GeometryDescriptor newGeometryDescriptor = new GeometryDescriptorImpl(
-										type, property.getName(), 0, 1, true,
-										null);
-								Identifier identifier = new GmlObjectIdImpl(
-										feature.getID());
-								GeometryAttributeImpl geo = new GeometryAttributeImpl(
-										(Object) g, newGeometryDescriptor,
-										identifier);
-								feature.setDefaultGeometryProperty(geo);
-								feature.setDefaultGeometry(g);
-
-							}
-						} catch (ClassCastException e) {
-							// do nothing
-						}
-
-					}
-				}
+				StreamingFeatureCollection
+						.fixDefaultGeometry(featureIterator.next());
 			}
 			return fc;
 		} catch (Exception e) {
@@ -265,11 +206,7 @@ public class GML2BasicParser extends AbstractParser {
 
 	private QName determineFeatureTypeSchema(File file) {
 		try {
-			GML2Handler handler = new GML2Handler();
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			factory.setNamespaceAware(true);
-			factory.newSAXParser().parse(new FileInputStream(file),
-					(DefaultHandler) handler);
+			GML2Handler handler = GML2Handler.parseRootElement(file);
 			String schemaUrl = handler.getSchemaUrl();
 			String namespaceURI = handler.getNameSpaceURI();
 			return new QName(namespaceURI, schemaUrl);
@@ -48,11 +48,11 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.UUID;
 
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -75,24 +75,15 @@ public class GML2BasicParser4Files extends AbstractParser {
 	
 	public GenericFileDataWithGTBinding parse(InputStream stream, String mimeType, String schema) {
 		
-		FileOutputStream fos = null;
-		try{
+		try {
 			File tempFile = File.createTempFile(UUID.randomUUID().toString(), ".gml2");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while(i != -1){
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			registerTempFile(tempFile); // mark for final delete
+			FileUtils.copyInputStreamToFile(stream, tempFile);
 			GenericFileDataWithGTBinding data = parseXML(tempFile);
 			
 			return data;
 		}
 		catch(IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
@@ -47,10 +47,17 @@
  */
 package org.n52.wps.io.datahandler.parser;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,11 +71,18 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public class GML2Handler extends DefaultHandler {
 	
+	/**
+	 * Thrown to end parsing after the root element, the schema location is
+	 * all this handler needs.
+	 */
+	private static final SAXException ROOT_ELEMENT_READ = new SAXException("root element read");
+
 	private Logger LOGGER = LoggerFactory.getLogger(GML2Handler.class);
 	// private static String SCHEMA = "http://www.opengis.net/wfs";
 	private String  schemaUrl;
 	private String nameSpaceURI;
 	private boolean rootVisited = false;
+	private boolean stopAfterRoot = false;
 	private Map<String, String> namespaces = new HashMap<String, String>();
 	
 	@Override
@@ -82,6 +96,13 @@ public class GML2Handler extends DefaultHandler {
 			return;
 		}
 		rootVisited = true;
+		readSchemaLocation(attributes);
+		if (stopAfterRoot) {
+			throw ROOT_ELEMENT_READ;
+		}
+	}
+
+	private void readSchemaLocation(Attributes attributes) {
 		String schemaLocationAttr = attributes.getValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation");
 		if(schemaLocationAttr == null) {
 			LOGGER.debug("schemaLocation attribute is not set correctly with namespace");
@@ -90,6 +111,10 @@ public class GML2Handler extends DefaultHandler {
 				schemaLocationAttr = attributes.getValue("schemaLocation");
 			}
 		}
+		if(schemaLocationAttr == null) {
+			LOGGER.debug("root element has no schemaLocation attribute");
+			return;
+		}
 		String[] locationStrings = schemaLocationAttr.replace("  ", " ").split(" ");
 		if(locationStrings.length % 2 != 0) {
 			LOGGER.debug("schemaLocation does not reference locations correctly, odd number of whitespace separated addresses");
@@ -120,7 +145,29 @@ public class GML2Handler extends DefaultHandler {
 		return nameSpaceURI;
 	}
 
-	
-	
+	/**
+	 * Reads the schema location from the root element of the file. The rest
+	 * of the document is not parsed.
+	 * 
+	 * @return the handler holding the schema location
+	 */
+	public static GML2Handler parseRootElement(File file) throws IOException, SAXException,
+			ParserConfigurationException {
+		GML2Handler handler = new GML2Handler();
+		handler.stopAfterRoot = true;
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			factory.newSAXParser().parse(in, handler);
+		} catch (SAXException e) {
+			if (e != ROOT_ELEMENT_READ) {
+				throw e;
+			}
+		} finally {
+			in.close();
+		}
+		return handler;
+	}
 
 }
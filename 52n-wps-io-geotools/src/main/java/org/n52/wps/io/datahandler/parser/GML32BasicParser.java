@@ -49,43 +49,31 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
-import org.geotools.feature.GeometryAttributeImpl;
-import org.geotools.feature.type.GeometryDescriptorImpl;
-import org.geotools.feature.type.GeometryTypeImpl;
-import org.geotools.filter.identity.GmlObjectIdImpl;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.v3_2.GMLConfiguration;
 import org.geotools.xml.Configuration;
 import org.geotools.xml.Parser;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
-import org.opengis.feature.GeometryAttribute;
-import org.opengis.feature.Property;
+import org.n52.wps.io.datahandler.SchemaConfigurationCache;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.type.GeometryDescriptor;
-import org.opengis.feature.type.GeometryType;
-import org.opengis.filter.identity.Identifier;
 import org.xml.sax.SAXException;
 
-import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * This parser handles xml files for GML 3.2.1
@@ -110,24 +98,15 @@ public class GML32BasicParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 
-		FileOutputStream fos = null;
 		try {
 			File tempFile = File.createTempFile("wps", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while (i != -1) {
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			registerTempFile(tempFile); // mark for final delete
+			FileUtils.copyInputStreamToFile(stream, tempFile);
 
 			QName schematypeTuple = determineFeatureTypeSchema(tempFile);
 			return parse(new FileInputStream(tempFile), schematypeTuple);
 		}
 		catch (IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
@@ -137,11 +116,14 @@ public class GML32BasicParser extends AbstractParser {
 			configuration = resolveConfiguration(schematypeTuple);
 		}
 
-		Parser parser = new Parser(configuration);
-		parser.setStrict(true);
-
 		//parse
-		FeatureCollection fc = resolveFeatureCollection(parser, input);
+		FeatureCollection fc;
+		// cached configurations are shared and not thread-safe
+		synchronized (configuration) {
+			Parser parser = new Parser(configuration);
+			parser.setStrict(true);
+			fc = resolveFeatureCollection(parser, input);
+		}
 
 		GTVectorDataBinding data = new GTVectorDataBinding(fc);
 
@@ -168,36 +150,7 @@ public class GML32BasicParser extends AbstractParser {
 
 			FeatureIterator featureIterator = fc.features();
 			while (featureIterator.hasNext()) {
-				SimpleFeature feature = (SimpleFeature) featureIterator.next();
-				
-				if (feature.getDefaultGeometry() == null) {
-					Collection<Property> properties = feature.getProperties();
-					for (Property property : properties){
-						try {
-							Geometry g = (Geometry) property.getValue();
-							if (g != null) {
-								GeometryAttribute oldGeometryDescriptor = feature.getDefaultGeometryProperty();
-								GeometryType type = new GeometryTypeImpl(property.getName(), (Class<?>) oldGeometryDescriptor.getType().getBinding(),
-										oldGeometryDescriptor.getType().getCoordinateReferenceSystem(),
-										oldGeometryDescriptor.getType().isIdentified(),
-										oldGeometryDescriptor.getType().isAbstract(),
-										oldGeometryDescriptor.getType().getRestrictions(),
-										oldGeometryDescriptor.getType().getSuper()
-										,oldGeometryDescriptor.getType().getDescription());
-
-								GeometryDescriptor newGeometryDescriptor = new GeometryDescriptorImpl(type, property.getName(), 0, 1, true, null);
-								Identifier identifier = new GmlObjectIdImpl(feature.getID());
-								GeometryAttributeImpl geo = new GeometryAttributeImpl((Object) g, newGeometryDescriptor, identifier);
-								feature.setDefaultGeometryProperty(geo);
-								feature.setDefaultGeometry(g);
-
-							}
-						} catch (ClassCastException e){
-							//do nothing
-						}
-
-					}
-				}
+				StreamingFeatureCollection.fixDefaultGeometry((SimpleFeature) featureIterator.next());
 			}
 		} catch (IOException e) {
 			LOGGER.warn(e.getMessage(), e);
@@ -226,7 +179,10 @@ public class GML32BasicParser extends AbstractParser {
 			} else {
 				if (schemaLocation != null && schematypeTuple.getNamespaceURI()!=null){
 					SchemaRepository.registerSchemaLocation(schematypeTuple.getNamespaceURI(), schemaLocation);
-					configuration =  new ApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
+					configuration =  SchemaConfigurationCache.getInstance().getApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
+					if (configuration == null) {
+						configuration = new GMLConfiguration();
+					}
 				} else {
 					configuration = new GMLConfiguration();
 				}
@@ -240,11 +196,7 @@ public class GML32BasicParser extends AbstractParser {
 
 	private QName determineFeatureTypeSchema(File file) {
 		try {
-			GML2Handler handler = new GML2Handler();
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			factory.setNamespaceAware(true);
-
-			factory.newSAXParser().parse(new FileInputStream(file), handler); 
+			GML2Handler handler = GML2Handler.parseRootElement(file);
 
 			String schemaUrl = handler.getSchemaUrl(); 
 
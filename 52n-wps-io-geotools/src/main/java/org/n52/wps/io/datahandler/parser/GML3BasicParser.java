@@ -49,7 +49,6 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -58,8 +57,8 @@ import java.util.HashMap;
 import java.util.List;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.collection.ListFeatureCollection;
@@ -67,25 +66,14 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
-import org.geotools.feature.GeometryAttributeImpl;
-import org.geotools.feature.type.GeometryDescriptorImpl;
-import org.geotools.feature.type.GeometryTypeImpl;
-import org.geotools.filter.identity.GmlObjectIdImpl;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xml.Configuration;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
-import org.opengis.feature.GeometryAttribute;
+import org.n52.wps.io.datahandler.SchemaConfigurationCache;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.GeometryDescriptor;
-import org.opengis.feature.type.GeometryType;
-import org.opengis.filter.identity.Identifier;
-import org.xml.sax.helpers.DefaultHandler;
-
-import com.vividsolutions.jts.geom.Geometry;
 
 
 /**
@@ -105,23 +93,14 @@ public class GML3BasicParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 
-		FileOutputStream fos = null;
 		try{
 			File tempFile = File.createTempFile("wps", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while(i != -1){
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			registerTempFile(tempFile); // mark for final delete
+			FileUtils.copyInputStreamToFile(stream, tempFile);
 			GTVectorDataBinding data = parseXML(tempFile);
 			return data;
 		}
 		catch(IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
@@ -149,19 +128,15 @@ public class GML3BasicParser extends AbstractParser {
 	public SimpleFeatureCollection parseFeatureCollection(File file){
 		QName schematypeTuple = determineFeatureTypeSchema(file);
 		
-		boolean schemaLocationIsRelative = false;
-		if (!(schematypeTuple.getLocalPart().contains("://") || schematypeTuple.getLocalPart().contains("file:"))) {
-			schemaLocationIsRelative = true;
-		}
+		Configuration configuration = new GMLConfiguration();
 		
-		Configuration configuration = null;
-		
-		boolean shouldSetParserStrict = true;
+		boolean shouldSetParserStrict = false;
 		if(schematypeTuple != null) {
 			
 			String schemaLocation =  schematypeTuple.getLocalPart();
+			shouldSetParserStrict = true;
 			
-			if (schemaLocationIsRelative) {
+			if (!(schemaLocation.contains("://") || schemaLocation.contains("file:"))) {
 				schemaLocation = new File(file.getParentFile(), schemaLocation).getAbsolutePath();
 			}
 			
@@ -171,7 +146,11 @@ public class GML3BasicParser extends AbstractParser {
 			}else{			
 				if(schemaLocation!= null && schematypeTuple.getNamespaceURI()!=null){
 					SchemaRepository.registerSchemaLocation(schematypeTuple.getNamespaceURI(), schemaLocation);
-					configuration =  new ApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
+					configuration =  SchemaConfigurationCache.getInstance().getApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
+					if (configuration == null) {
+						configuration = new GMLConfiguration();
+						shouldSetParserStrict = false;
+					}
 				}else{
 					configuration = new GMLConfiguration();
 					shouldSetParserStrict = false;
@@ -179,10 +158,6 @@ public class GML3BasicParser extends AbstractParser {
 			}
 		}
 		
-		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(configuration);
-		
-		parser.setStrict(shouldSetParserStrict);
-		
 		//parse		
 		SimpleFeatureCollection fc = parseFeatureCollection(file, configuration, shouldSetParserStrict);
 		
@@ -190,7 +165,10 @@ public class GML3BasicParser extends AbstractParser {
 	}
 	
 	/**
-	 * Method to parse a SimpleFeatureCollection out of a file. 
+	 * Method to parse a SimpleFeatureCollection out of a file. The features
+	 * are streamed from the file while the collection is iterated, if the
+	 * document is not parsed strictly and contains features of one type.
+	 * Otherwise it is parsed as a whole.
 	 * 
 	 * @param file File containing a SimpleFeatureCollection
 	 * @param configuration The Configuration for the Parser
@@ -199,14 +177,28 @@ public class GML3BasicParser extends AbstractParser {
 	 */
 	public SimpleFeatureCollection parseFeatureCollection(File file, Configuration configuration, boolean shouldSetParserStrict){
 		
-		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(configuration);
-		
-		parser.setStrict(shouldSetParserStrict);
+		SimpleFeatureCollection streamed = StreamingFeatureCollection.open(file, configuration, shouldSetParserStrict);
+		if (streamed != null) {
+			return streamed;
+		}
+		return parseDocument(file, configuration, shouldSetParserStrict);
+	}
+	
+	/**
+	 * Parses the whole file and keeps all features in memory.
+	 */
+	private SimpleFeatureCollection parseDocument(File file, Configuration configuration, boolean shouldSetParserStrict){
 		
 		//parse		
 		SimpleFeatureCollection fc = DefaultFeatureCollections.newCollection();
 		try {
-			Object parsedData =  parser.parse( new FileInputStream(file));
+			Object parsedData;
+			// cached configurations are shared and not thread-safe
+			synchronized (configuration) {
+				org.geotools.xml.Parser parser = new org.geotools.xml.Parser(configuration);
+				parser.setStrict(shouldSetParserStrict);
+				parsedData = parser.parse(new FileInputStream(file));
+			}
 			if(parsedData instanceof FeatureCollection){
 				fc = (SimpleFeatureCollection) parsedData;				
 			}else if(parsedData instanceof HashMap){
@@ -260,29 +252,7 @@ public class GML3BasicParser extends AbstractParser {
 		
 		FeatureIterator<?> featureIterator = fc.features();
 		while(featureIterator.hasNext()){
-			SimpleFeature feature = (SimpleFeature) featureIterator.next();
-			if(feature.getDefaultGeometry()==null){
-				Collection<org.opengis.feature.Property>properties = feature.getProperties();
-				for(org.opengis.feature.Property property : properties){
-					try{						
-						Geometry g = (Geometry)property.getValue();
-						if(g!=null){
-							GeometryAttribute oldGeometryDescriptor = feature.getDefaultGeometryProperty();
-							GeometryType type = new GeometryTypeImpl(property.getName(),(Class<?>)oldGeometryDescriptor.getType().getBinding(),oldGeometryDescriptor.getType().getCoordinateReferenceSystem(),oldGeometryDescriptor.getType().isIdentified(),oldGeometryDescriptor.getType().isAbstract(),oldGeometryDescriptor.getType().getRestrictions(),oldGeometryDescriptor.getType().getSuper(),oldGeometryDescriptor.getType().getDescription());
-																
-							GeometryDescriptor newGeometryDescriptor = new GeometryDescriptorImpl(type,property.getName(),0,1,true,null);
-							Identifier identifier = new GmlObjectIdImpl(feature.getID());
-							GeometryAttributeImpl geo = new GeometryAttributeImpl((Object)g,newGeometryDescriptor, identifier);
-							feature.setDefaultGeometryProperty(geo);
-							feature.setDefaultGeometry(g);
-							
-						}
-					}catch(ClassCastException e){
-						//do nothing
-					}
-					
-				}
-			}
+			StreamingFeatureCollection.fixDefaultGeometry((SimpleFeature) featureIterator.next());
 		}
 		} catch (Exception e) {
 			LOGGER.error("Exception while handling parsed GML.", e);
@@ -293,10 +263,7 @@ public class GML3BasicParser extends AbstractParser {
 		
 	private QName determineFeatureTypeSchema(File file) {
 		try {
-			GML2Handler handler = new GML2Handler();
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			factory.setNamespaceAware(true);
-			factory.newSAXParser().parse(new FileInputStream(file), (DefaultHandler)handler); 
+			GML2Handler handler = GML2Handler.parseRootElement(file);
 			String schemaUrl = handler.getSchemaUrl(); 
 			if(schemaUrl == null){
 				return null;
@@ -79,7 +79,7 @@ public class GTBinZippedSHPParser extends AbstractParser {
 			String fileName = "tempfile" + UUID.randomUUID() + ".zip";
 			String tmpDirPath = System.getProperty("java.io.tmpdir");
 			File tempFile = new File(tmpDirPath + File.separatorChar + fileName);
-			finalizeFiles.add(tempFile); // mark tempFile for final delete
+			registerTempFile(tempFile); // mark tempFile for final delete
 			try {
 				FileOutputStream outputStream = new FileOutputStream(tempFile);
 				byte buf[] = new byte[4096];
@@ -90,17 +90,16 @@ public class GTBinZippedSHPParser extends AbstractParser {
 				outputStream.close();
 				stream.close();
 			} catch (FileNotFoundException e) {
-				System.gc();
 				throw new RuntimeException(e);
 			} catch (IOException e1) {
-				System.gc();
 				throw new RuntimeException(e1);
 			}
 			File shp = IOUtils.unzip(tempFile, "shp").get(0);
+			// deletes the shapefile with all its sidecar files
+			registerTempFile(shp.getParentFile());
 			DataStore store = new ShapefileDataStore(shp.toURI().toURL());
 			SimpleFeatureCollection features = store.getFeatureSource(
 					store.getTypeNames()[0]).getFeatures();
-			System.gc();
 			
 			return new GTVectorDataBinding(features);
 		} catch (IOException e) {
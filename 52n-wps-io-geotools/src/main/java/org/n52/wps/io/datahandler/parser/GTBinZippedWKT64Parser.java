@@ -106,7 +106,7 @@ public class GTBinZippedWKT64Parser extends AbstractParser {
 			String fileName = "tempfile" + UUID.randomUUID() + ".zip";
 			String tmpDirPath = System.getProperty("java.io.tmpdir");
 			File tempFile = new File(tmpDirPath + File.separatorChar + fileName);
-			finalizeFiles.add(tempFile); // mark tempFile for final delete
+			registerTempFile(tempFile); // mark tempFile for final delete
 			try {
 				FileOutputStream outputStream = new FileOutputStream(tempFile);
 				byte buf[] = new byte[4096];
@@ -117,19 +117,19 @@ public class GTBinZippedWKT64Parser extends AbstractParser {
 				outputStream.close();
 				stream.close();
 			} catch (FileNotFoundException e) {
-				System.gc();
 				LOGGER.error(e.getMessage(), e);
 				throw new RuntimeException(e);
 			} catch (IOException e) {
 				LOGGER.error(e.getMessage(), e);
-				System.gc();
 				throw new RuntimeException(e);
 			}			
 			
-			finalizeFiles.add(tempFile); // mark for final delete
 			stream.close();
 			List<File> wktFiles = IOUtils.unzip(tempFile, "wkt");
-			finalizeFiles.addAll(wktFiles); // mark for final delete
+			if (wktFiles != null && !wktFiles.isEmpty()) {
+				// deletes all unzipped files with their directory
+				registerTempFile(wktFiles.get(0).getParentFile());
+			}
 			
 			if (wktFiles == null || wktFiles.size() == 0) {
 				throw new RuntimeException(
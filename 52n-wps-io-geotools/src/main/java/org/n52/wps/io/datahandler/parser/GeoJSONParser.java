@@ -47,22 +47,31 @@
  */
 package org.n52.wps.io.datahandler.parser;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
+import org.n52.wps.io.datahandler.parser.StreamingFeatureCollection.FeatureStream;
+import org.n52.wps.io.datahandler.parser.StreamingFeatureCollection.FeatureStreamFactory;
 import org.opengis.feature.simple.SimpleFeature;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -72,6 +81,11 @@ import com.vividsolutions.jts.geom.GeometryCollection;
  * 
  * 
  * This class parses json into JTS geometries.
+ * 
+ * The input is copied to a temporary file and the type of the GeoJSON object
+ * is detected from its top level members. Feature collections are not read
+ * into memory but streamed from the file by a
+ * {@link StreamingFeatureCollection}.
  *         
  *  @author BenjaminPross(bpross-52n)
  * 
@@ -80,6 +94,16 @@ public class GeoJSONParser extends AbstractParser {
 
 	private static Logger LOGGER = LoggerFactory.getLogger(GeoJSONParser.class);
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String FEATURE_COLLECTION = "FeatureCollection";
+
+	private static final String FEATURE = "Feature";
+
+	private static final String GEOMETRY_COLLECTION = "GeometryCollection";
+
+	private static final String GEOMETRY = "Geometry";
+
 	public GeoJSONParser() {
 		super();
 		supportedIDataTypes.add(JTSGeometryBinding.class);
@@ -89,19 +113,21 @@ public class GeoJSONParser extends AbstractParser {
 	@Override
 	public IData parse(InputStream input, String mimeType, String schema) {
 
-		String geojsonstring = "";
-
-		String line = "";
-
-		BufferedReader breader = new BufferedReader(
-				new InputStreamReader(input));
-
+		final File file;
+		String type;
 		try {
-			while ((line = breader.readLine()) != null) {
-				geojsonstring = geojsonstring.concat(line);
+			file = File.createTempFile("geojson", ".json");
+			registerTempFile(file);
+			FileUtils.copyInputStreamToFile(input, file);
+			Reader reader = open(file);
+			try {
+				type = detectType(reader);
+			} finally {
+				reader.close();
 			}
 		} catch (IOException e) {
 			LOGGER.error("Exception while reading inputstream.", e);
+			return null;
 		} finally {
 			try {
 				input.close();
@@ -110,59 +136,80 @@ public class GeoJSONParser extends AbstractParser {
 			}
 		}
 
-		if (geojsonstring.contains("FeatureCollection")) {
+		if (FEATURE_COLLECTION.equals(type)) {
 
-			try {
-				FeatureCollection<?, ?> featureCollection = new FeatureJSON()
-						.readFeatureCollection(geojsonstring);
+			StreamingFeatureCollection streamed = StreamingFeatureCollection.open(new FeatureStreamFactory() {
+				@Override
+				public FeatureStream open() throws IOException {
+					return new GeoJSONFeatureStream(GeoJSONParser.open(file));
+				}
+			});
+			if (streamed != null) {
+				return new GTVectorDataBinding(streamed);
+			}
 
-				return new GTVectorDataBinding(featureCollection);
+			try {
+				Reader reader = open(file);
+				try {
+					FeatureCollection<?, ?> featureCollection = new FeatureJSON()
+							.readFeatureCollection(reader);
 
+					return new GTVectorDataBinding(featureCollection);
+				} finally {
+					reader.close();
+				}
 			} catch (IOException e) {
 				LOGGER.info("Could not read FeatureCollection from inputstream");
 			}
 
-		} else if (geojsonstring.contains("Feature")) {
+		} else if (FEATURE.equals(type)) {
 
 			try {
-				SimpleFeature feature = new FeatureJSON().readFeature(geojsonstring);
+				Reader reader = open(file);
+				try {
+					SimpleFeature feature = new FeatureJSON().readFeature(reader);
 
-				List<SimpleFeature> featureList = new ArrayList<SimpleFeature>();
+					List<SimpleFeature> featureList = new ArrayList<SimpleFeature>();
 
-				featureList.add(feature);
-				
-				ListFeatureCollection featureCollection = new ListFeatureCollection(
-						feature.getFeatureType(), featureList);
+					featureList.add(feature);
 
-				return new GTVectorDataBinding(featureCollection);
+					ListFeatureCollection featureCollection = new ListFeatureCollection(
+							feature.getFeatureType(), featureList);
 
+					return new GTVectorDataBinding(featureCollection);
+				} finally {
+					reader.close();
+				}
 			} catch (IOException e) {
 				LOGGER.info("Could not read Feature from inputstream");
 			}
 
-		} else if (geojsonstring.contains("GeometryCollection")) {
+		} else if (GEOMETRY_COLLECTION.equals(type)) {
 
 			try {
-				GeometryCollection g = new GeometryJSON().readGeometryCollection(geojsonstring);
-
-				return new JTSGeometryBinding(g);
+				Reader reader = open(file);
+				try {
+					GeometryCollection g = new GeometryJSON().readGeometryCollection(reader);
 
+					return new JTSGeometryBinding(g);
+				} finally {
+					reader.close();
+				}
 			} catch (IOException e) {
 				LOGGER.info("Could not read GeometryCollection from inputstream.");
 			}
 
-		} else if(geojsonstring.contains("Point") || 
-				geojsonstring.contains("LineString") ||
-				geojsonstring.contains("Polygon") ||
-				geojsonstring.contains("MultiPoint") ||
-				geojsonstring.contains("MultiLineString") ||
-				geojsonstring.contains("MultiPolygon")){
+		} else if (type != null) {
 
 			try {
-				Geometry g = new GeometryJSON().read(geojsonstring);
-
-				return new JTSGeometryBinding(g);
+				Reader reader = open(file);
+				try {
+					Geometry g = new GeometryJSON().read(reader);
 
+					return new JTSGeometryBinding(g);
+				} finally {
+					reader.close();
+				}
 			} catch (IOException e) {
 				LOGGER.info("Could not read single Geometry from inputstream.");
 			}
@@ -172,4 +219,115 @@ public class GeoJSONParser extends AbstractParser {
 		return null;
 	}
 
+	private static Reader open(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), UTF8));
+	}
+
+	/**
+	 * Detects the type of the GeoJSON object from the members of the top
+	 * level object. The value of the "type" member is returned if it comes
+	 * first, otherwise the type is derived from the first member that is
+	 * specific to one type. Nested values are skipped without being parsed.
+	 * 
+	 * @return the GeoJSON type, {@link #GEOMETRY} for an unknown geometry
+	 *         type or <code>null</code> if the input is no GeoJSON object
+	 */
+	static String detectType(Reader reader) throws IOException {
+		int depth = 0;
+		boolean expectKey = false;
+		String key = null;
+		int c;
+		while ((c = reader.read()) != -1) {
+			switch (c) {
+			case '{':
+			case '[':
+				depth++;
+				expectKey = c == '{' && depth == 1;
+				break;
+			case '}':
+			case ']':
+				depth--;
+				if (depth <= 0) {
+					return null;
+				}
+				break;
+			case ',':
+				expectKey = depth == 1;
+				break;
+			case '"':
+				String string = readString(reader);
+				if (depth != 1) {
+					break;
+				}
+				if (expectKey) {
+					key = string;
+					expectKey = false;
+					if ("features".equals(key)) {
+						return FEATURE_COLLECTION;
+					} else if ("geometries".equals(key)) {
+						return GEOMETRY_COLLECTION;
+					} else if ("geometry".equals(key) || "properties".equals(key)) {
+						return FEATURE;
+					} else if ("coordinates".equals(key)) {
+						return GEOMETRY;
+					}
+				} else if ("type".equals(key)) {
+					return string;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return null;
+	}
+
+	private static String readString(Reader reader) throws IOException {
+		StringBuilder string = new StringBuilder();
+		int c;
+		while ((c = reader.read()) != -1 && c != '"') {
+			if (c == '\\') {
+				c = reader.read();
+			}
+			string.append((char) c);
+		}
+		return string.toString();
+	}
+
+	/**
+	 * Reads the features of a GeoJSON feature collection one by one.
+	 */
+	private static class GeoJSONFeatureStream implements FeatureStream {
+
+		private final Reader reader;
+
+		private final FeatureIterator<SimpleFeature> features;
+
+		GeoJSONFeatureStream(Reader reader) throws IOException {
+			this.reader = reader;
+			try {
+				this.features = new FeatureJSON().streamFeatureCollection(reader);
+			} catch (IOException e) {
+				reader.close();
+				throw e;
+			}
+		}
+
+		@Override
+		public SimpleFeature read() {
+			return features.hasNext() ? features.next() : null;
+		}
+
+		@Override
+		public void close() {
+			features.close();
+			try {
+				reader.close();
+			} catch (IOException e) {
+				LOGGER.debug("Could not close " + e.getMessage());
+			}
+		}
+
+	}
+
 }
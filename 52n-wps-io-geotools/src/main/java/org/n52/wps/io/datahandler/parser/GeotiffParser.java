@@ -47,22 +47,21 @@
  */
 package org.n52.wps.io.datahandler.parser;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
-import javax.media.jai.JAI;
-
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.data.DataSourceException;
-import org.geotools.factory.Hints;
 import org.geotools.gce.geotiff.GeoTiffReader;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
+import org.n52.wps.io.datahandler.RasterResources;
 
 public class GeotiffParser extends AbstractParser {
 	
@@ -80,21 +79,17 @@ public class GeotiffParser extends AbstractParser {
 		File tempFile;
 		
 		try {
+			// the coverage reads its tiles from this file on demand, so it is
+			// only deleted when the execution is finished
             tempFile = File.createTempFile("tempfile" + UUID.randomUUID(),"tmp");
-            finalizeFiles.add(tempFile); // mark for final delete
-			FileOutputStream outputStream = new FileOutputStream(tempFile);
-			byte buf[] = new byte[4096];
-			int len;
-			while ((len = input.read(buf)) > 0) {
-				outputStream.write(buf, 0, len);
+            registerTempFile(tempFile); // mark for final delete
+			OutputStream outputStream = new FileOutputStream(tempFile);
+			try {
+				IOUtils.copyLarge(input, outputStream);
+			} finally {
+				outputStream.close();
+				input.close();
 			}
-			
-			outputStream.flush();
-			outputStream.close();
-			input.close();
-		} catch (FileNotFoundException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new RuntimeException(e);
 		} catch (IOException e1) {
 			LOGGER.error(e1.getMessage(), e1);
 			throw new RuntimeException(e1);
@@ -104,23 +99,52 @@ public class GeotiffParser extends AbstractParser {
 
 	}
 	
-	private GTRasterDataBinding parseTiff(File file){
-		JAI.getDefaultInstance().getTileCache().setMemoryCapacity(256*1024*1024);
-		
-		Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER,
-				Boolean.TRUE);
-		GeoTiffReader reader;
+	/**
+	 * Reads the coverage lazily, its tiles are loaded into the shared tile
+	 * cache when they are used. The coverage and the reader keep the file
+	 * open, so they are disposed when the execution is finished, before the
+	 * file is deleted.
+	 */
+	static GTRasterDataBinding parseTiff(File file){
+		RasterResources resources = RasterResources.getInstance();
+		GeoTiffReader reader = null;
 		try {
-			reader = new GeoTiffReader(file, hints);
-			GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
+			reader = new GeoTiffReader(file, resources.createReadHints());
+			GridCoverage2D coverage = (GridCoverage2D) reader.read(resources.createReadParameters());
+			registerResource(new CoverageResource(reader, coverage));
 			return new GTRasterDataBinding(coverage);
-		} catch (DataSourceException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new RuntimeException(e);
 		} catch (IOException e) {
+			if (reader != null) {
+				reader.dispose();
+			}
 			LOGGER.error(e.getMessage(), e);
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Disposes a lazily read coverage and its reader, which releases the
+	 * image input stream on the file.
+	 */
+	private static class CoverageResource implements Closeable {
+
+		private final GeoTiffReader reader;
+
+		private final GridCoverage2D coverage;
+
+		CoverageResource(GeoTiffReader reader, GridCoverage2D coverage) {
+			this.reader = reader;
+			this.coverage = coverage;
+		}
+
+		@Override
+		public void close() {
+			try {
+				coverage.dispose(true);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
 }
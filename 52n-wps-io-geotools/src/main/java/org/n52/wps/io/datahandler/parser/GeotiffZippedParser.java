@@ -54,9 +54,6 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.factory.Hints;
-import org.geotools.gce.geotiff.GeoTiffReader;
 import org.n52.wps.io.IOUtils;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 
@@ -75,14 +72,16 @@ public class GeotiffZippedParser extends AbstractParser {
 		File zippedFile;
 		try {
 			zippedFile = IOUtils.writeStreamToFile(input, "zip");
-			finalizeFiles.add(zippedFile); // mark for final delete
+			registerTempFile(zippedFile); // mark for final delete
 		
 			List<File> files = IOUtils.unzipAll(zippedFile);
-			finalizeFiles.addAll(files); // mark for final delete
+			for (File file : files) {
+				registerTempFile(file); // mark for final delete
+			}
 			
 			for(File file : files){
 				if(file.getName().toLowerCase().endsWith(".tif") || file.getName().toLowerCase().endsWith(".tiff")){
-					return parseTiff(file);
+					return GeotiffParser.parseTiff(file);
 				}
 			}
 			
@@ -91,19 +90,5 @@ public class GeotiffZippedParser extends AbstractParser {
 		}
 		throw new RuntimeException("Could not parse zipped geotiff.");
 	}
-	
-	private GTRasterDataBinding parseTiff(File file){
-		Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER,
-				Boolean.TRUE);
-		GeoTiffReader reader;
-		try {
-			reader = new GeoTiffReader(file, hints);
-			GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
-			return new GTRasterDataBinding(coverage);
-		} catch (Exception e) {
-			LOGGER.error("Exception while trying to create GTRasterDataBinding out of tiff.", e);
-			throw new RuntimeException(e);
-		} 
-	}
 
 }
@@ -48,10 +48,10 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.commons.io.FileUtils;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.kml.KMLConfiguration;
 import org.geotools.xml.Configuration;
@@ -72,23 +72,14 @@ public class KMLParser extends AbstractParser {
 	
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 		
-		FileOutputStream fos = null;
-		try{
+		try {
 			File tempFile = File.createTempFile("kml", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while(i != -1){
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			registerTempFile(tempFile); // mark for final delete
+			FileUtils.copyInputStreamToFile(stream, tempFile);
 			GTVectorDataBinding data = parseXML(tempFile);
 			return data;
 		}
 		catch(IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
@@ -0,0 +1,402 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.parser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.GeometryAttributeImpl;
+import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.feature.type.GeometryDescriptorImpl;
+import org.geotools.feature.type.GeometryTypeImpl;
+import org.geotools.filter.identity.GmlObjectIdImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.xml.Configuration;
+import org.geotools.xml.PullParser;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.GeometryType;
+import org.opengis.filter.identity.Identifier;
+import org.opengis.geometry.BoundingBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A feature collection that reads its features from a file on demand instead
+ * of holding them in memory. Every iterator reads the file again, so the
+ * collection can be iterated several times.
+ * 
+ * When the collection is opened, the file is read once to compute size and
+ * bounds and to check that all features are of the same type. Documents with
+ * features of different types are not streamed, the caller parses them as a
+ * whole. Features that only wrap other features, e.g. a feature collection
+ * parsed as feature, are left out.
+ * 
+ * The collection is only valid during the execution that parsed it: parsers
+ * register the file as temporary file of the running execution, so it is
+ * deleted when the execution is finished. For the same reason, the collection
+ * must not be cached beyond the execution; the parsed data cache of the
+ * reference cache only keeps memory based data. Iterating the collection
+ * after its file was deleted fails with a {@link IllegalStateException}.
+ */
+public class StreamingFeatureCollection extends AbstractFeatureCollection {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(StreamingFeatureCollection.class);
+
+	/**
+	 * A single pass over the features of a file.
+	 */
+	public interface FeatureStream {
+
+		/**
+		 * @return the next feature, <code>null</code> at the end of the file
+		 * @throws IOException
+		 *             if the file cannot be read or parsed
+		 */
+		SimpleFeature read() throws IOException;
+
+		void close();
+
+	}
+
+	/**
+	 * Opens a new pass for every iterator of the collection.
+	 */
+	public interface FeatureStreamFactory {
+
+		FeatureStream open() throws IOException;
+
+	}
+
+	private final FeatureStreamFactory streams;
+
+	private final int size;
+
+	private final ReferencedEnvelope bounds;
+
+	private StreamingFeatureCollection(FeatureStreamFactory streams, SimpleFeatureType type, int size,
+			ReferencedEnvelope bounds) {
+		super(type);
+		this.streams = streams;
+		this.size = size;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Opens a collection of all simple features in the GML file.
+	 * 
+	 * @param strict
+	 *            whether the document has to be parsed strictly. The features
+	 *            are streamed with a {@link PullParser}, which does not parse
+	 *            strictly, so strictly parsed documents are not streamed.
+	 * @return the collection or <code>null</code> if the file has to be parsed
+	 *         as a whole
+	 */
+	public static StreamingFeatureCollection open(final File file, final Configuration configuration, boolean strict) {
+		if (strict) {
+			return null;
+		}
+		return open(new FeatureStreamFactory() {
+			@Override
+			public FeatureStream open() throws IOException {
+				if (!file.exists()) {
+					throw new IllegalStateException("The file " + file.getName()
+							+ " backing the feature collection was deleted with the execution that parsed it");
+				}
+				return new XMLFeatureStream(file, configuration);
+			}
+		});
+	}
+
+	/**
+	 * Opens a collection of the features read by the given streams.
+	 * 
+	 * @return the collection or <code>null</code> if the features could not be
+	 *         streamed, there are no features or they are of different types
+	 */
+	public static StreamingFeatureCollection open(FeatureStreamFactory streams) {
+		FeatureStream stream = null;
+		try {
+			stream = streams.open();
+			SimpleFeatureType type = null;
+			ReferencedEnvelope envelope = null;
+			int count = 0;
+			for (SimpleFeature feature = stream.read(); feature != null; feature = stream.read()) {
+				if (wrapsFeatures(feature)) {
+					continue;
+				}
+				if (type == null) {
+					type = feature.getFeatureType();
+					envelope = new ReferencedEnvelope(type.getCoordinateReferenceSystem());
+				} else if (!type.equals(feature.getFeatureType())) {
+					LOGGER.debug("Features of different types, parsing the whole document.");
+					return null;
+				}
+				BoundingBox featureBounds = fixDefaultGeometry(feature).getBounds();
+				if (featureBounds != null && !featureBounds.isEmpty()) {
+					envelope.include(featureBounds);
+				}
+				count++;
+			}
+			if (type == null) {
+				return null;
+			}
+			return new StreamingFeatureCollection(streams, type, count, envelope);
+		} catch (Exception e) {
+			LOGGER.debug("Could not stream features, parsing the whole document.", e);
+			return null;
+		} finally {
+			if (stream != null) {
+				stream.close();
+			}
+		}
+	}
+
+	@Override
+	protected Iterator<SimpleFeature> openIterator() {
+		try {
+			return new FeatureStreamIterator(streams.open());
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read features", e);
+		}
+	}
+
+	@Override
+	protected void closeIterator(Iterator<SimpleFeature> close) {
+		if (close instanceof FeatureStreamIterator) {
+			((FeatureStreamIterator) close).close();
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public ReferencedEnvelope getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return <code>true</code> if the feature contains other features
+	 */
+	private static boolean wrapsFeatures(SimpleFeature feature) {
+		for (Object value : feature.getAttributes()) {
+			if (value instanceof FeatureCollection) {
+				return true;
+			}
+			if (value instanceof Collection) {
+				for (Object element : (Collection<?>) value) {
+					if (element instanceof SimpleFeature) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets the first geometry property as default geometry if the feature has
+	 * none.
+	 */
+	static SimpleFeature fixDefaultGeometry(SimpleFeature feature) {
+		if (feature.getDefaultGeometry() != null) {
+			return feature;
+		}
+		Collection<Property> properties = feature.getProperties();
+		for (Property property : properties) {
+			try {
+				Geometry g = (Geometry) property.getValue();
+				if (g != null) {
+					GeometryAttribute oldGeometryDescriptor = feature.getDefaultGeometryProperty();
+					GeometryType type = new GeometryTypeImpl(property.getName(), (Class<?>) oldGeometryDescriptor.getType().getBinding(),
+							oldGeometryDescriptor.getType().getCoordinateReferenceSystem(),
+							oldGeometryDescriptor.getType().isIdentified(),
+							oldGeometryDescriptor.getType().isAbstract(),
+							oldGeometryDescriptor.getType().getRestrictions(),
+							oldGeometryDescriptor.getType().getSuper(),
+							oldGeometryDescriptor.getType().getDescription());
+
+					GeometryDescriptor newGeometryDescriptor = new GeometryDescriptorImpl(type, property.getName(), 0, 1, true, null);
+					Identifier identifier = new GmlObjectIdImpl(feature.getID());
+					GeometryAttributeImpl geo = new GeometryAttributeImpl((Object) g, newGeometryDescriptor, identifier);
+					feature.setDefaultGeometryProperty(geo);
+					feature.setDefaultGeometry(g);
+				}
+			} catch (ClassCastException e) {
+				// do nothing
+			}
+		}
+		return feature;
+	}
+
+
+	private static class FeatureStreamIterator implements Iterator<SimpleFeature> {
+
+		private final FeatureStream stream;
+
+		private SimpleFeature next;
+
+		private boolean finished = false;
+
+		FeatureStreamIterator(FeatureStream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !finished) {
+				SimpleFeature feature;
+				try {
+					feature = stream.read();
+				} catch (IOException e) {
+					close();
+					throw new RuntimeException("Could not read features", e);
+				}
+				if (feature == null) {
+					close();
+				} else if (!wrapsFeatures(feature)) {
+					next = fixDefaultGeometry(feature);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public SimpleFeature next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			SimpleFeature feature = next;
+			next = null;
+			return feature;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		void close() {
+			if (!finished) {
+				finished = true;
+				stream.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Reads the features of a GML document with a {@link PullParser}. Unlike
+	 * the StreamingParser, it parses in the reading thread, so parse errors
+	 * reach the reader and nothing is left running if the reader stops early.
+	 */
+	private static class XMLFeatureStream implements FeatureStream {
+
+		private final InputStream input;
+
+		private final PullParser parser;
+
+		/**
+		 * Cached configurations are shared and not thread-safe, so the parser
+		 * only runs while their lock is held.
+		 */
+		private final Configuration configuration;
+
+		XMLFeatureStream(File file, Configuration configuration) throws IOException {
+			this.input = new BufferedInputStream(new FileInputStream(file));
+			this.configuration = configuration;
+			try {
+				synchronized (configuration) {
+					parser = new PullParser(configuration, input, SimpleFeature.class);
+				}
+			} catch (RuntimeException e) {
+				close();
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public SimpleFeature read() throws IOException {
+			synchronized (configuration) {
+				try {
+					return (SimpleFeature) parser.parse();
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e);
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				input.close();
+			} catch (IOException e) {
+				LOGGER.debug("Could not close " + e.getMessage());
+			}
+		}
+
+	}
+
+}
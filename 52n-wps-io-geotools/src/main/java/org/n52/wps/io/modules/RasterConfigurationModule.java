@@ -0,0 +1,170 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.modules;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.n52.wps.webapp.api.AlgorithmEntry;
+import org.n52.wps.webapp.api.ConfigurationCategory;
+import org.n52.wps.webapp.api.ConfigurationKey;
+import org.n52.wps.webapp.api.ConfigurationModule;
+import org.n52.wps.webapp.api.FormatEntry;
+import org.n52.wps.webapp.api.types.ConfigurationEntry;
+import org.n52.wps.webapp.api.types.IntegerConfigurationEntry;
+
+/**
+ * Settings of the JAI tile cache and tile scheduler shared by all raster
+ * parsers and generators.
+ * 
+ * @see org.n52.wps.io.datahandler.RasterResources
+ */
+public class RasterConfigurationModule implements ConfigurationModule {
+
+	private boolean isActive = true;
+
+	private int tileCacheMemory;
+
+	private int tileSchedulerParallelism;
+
+	private int tileSchedulerPrefetchParallelism;
+
+	private int tileSize;
+
+	private final String tileCacheMemoryKey = "tile_cache_memory";
+
+	private final String tileSchedulerParallelismKey = "tile_scheduler_parallelism";
+
+	private final String tileSchedulerPrefetchParallelismKey = "tile_scheduler_prefetch_parallelism";
+
+	private final String tileSizeKey = "tile_size";
+
+	private ConfigurationEntry<Integer> tileCacheMemoryEntry = new IntegerConfigurationEntry(tileCacheMemoryKey, "Tile cache memory",
+			"Memory of the tile cache shared by all raster computations (in mega bytes)", true, 256);
+	private ConfigurationEntry<Integer> tileSchedulerParallelismEntry = new IntegerConfigurationEntry(tileSchedulerParallelismKey, "Tile scheduler parallelism",
+			"Number of threads computing tiles (0 = number of processors)", true, 0);
+	private ConfigurationEntry<Integer> tileSchedulerPrefetchParallelismEntry = new IntegerConfigurationEntry(tileSchedulerPrefetchParallelismKey, "Tile prefetch parallelism",
+			"Number of threads prefetching tiles", true, 1);
+	private ConfigurationEntry<Integer> tileSizeEntry = new IntegerConfigurationEntry(tileSizeKey, "Tile size",
+			"Maximum width and height of tiles read from and written to GeoTIFF files, rounded down to a power of two", true, 512);
+
+	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(tileCacheMemoryEntry,
+			tileSchedulerParallelismEntry, tileSchedulerPrefetchParallelismEntry, tileSizeEntry);
+
+	@Override
+	public String getModuleName() {
+		return "Raster configuration";
+	}
+
+	@Override
+	public boolean isActive() {
+		return isActive;
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		isActive = active;
+	}
+
+	@Override
+	public ConfigurationCategory getCategory() {
+		return ConfigurationCategory.GENERAL;
+	}
+
+	@Override
+	public List<? extends ConfigurationEntry<?>> getConfigurationEntries() {
+		return configurationEntries;
+	}
+
+	@Override
+	public List<AlgorithmEntry> getAlgorithmEntries() {
+		return null;
+	}
+
+	@Override
+	public List<FormatEntry> getFormatEntries() {
+		return null;
+	}
+
+	public int getTileCacheMemory() {
+		return tileCacheMemory;
+	}
+
+	@ConfigurationKey(key = tileCacheMemoryKey)
+	public void setTileCacheMemory(int tileCacheMemory) {
+		this.tileCacheMemory = tileCacheMemory;
+	}
+
+	public int getTileSchedulerParallelism() {
+		return tileSchedulerParallelism;
+	}
+
+	@ConfigurationKey(key = tileSchedulerParallelismKey)
+	public void setTileSchedulerParallelism(int tileSchedulerParallelism) {
+		this.tileSchedulerParallelism = tileSchedulerParallelism;
+	}
+
+	public int getTileSchedulerPrefetchParallelism() {
+		return tileSchedulerPrefetchParallelism;
+	}
+
+	@ConfigurationKey(key = tileSchedulerPrefetchParallelismKey)
+	public void setTileSchedulerPrefetchParallelism(int tileSchedulerPrefetchParallelism) {
+		this.tileSchedulerPrefetchParallelism = tileSchedulerPrefetchParallelism;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	@ConfigurationKey(key = tileSizeKey)
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+}
@@ -58,6 +58,7 @@ import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
 import org.n52.wps.io.datahandler.generator.GeoJSONGenerator;
 import org.n52.wps.io.datahandler.parser.GeoJSONParser;
+import org.n52.wps.io.datahandler.parser.StreamingFeatureCollection;
 
 /**
  * Test class for GeoJSON parser and generator
@@ -263,6 +264,45 @@ public class GeoJSONParserGeneratorTest extends AbstractTestCase<GeoJSONGenerato
 		
 	}	
 	
+	@Test
+	public void testFeaturesOfDifferentTypesAreKept() throws IOException {
+		
+		String featureCollectionString = "{\"type\":\"FeatureCollection\",\"features\":["
+				+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[102.0,0.5]},\"properties\":{\"prop0\":\"value0\"}},"
+				+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[103.0,1.5]},\"properties\":{\"prop1\":1.5}}]}";
+		
+		GeoJSONParser theParser = new GeoJSONParser();
+		
+		IData theBinding = theParser.parse(new ByteArrayInputStream(featureCollectionString.getBytes("UTF-8")),
+				theParser.getSupportedFormats()[0], null);
+		
+		Assert.assertFalse(theBinding.getPayload() instanceof StreamingFeatureCollection);
+		Assert.assertEquals(2, ((GTVectorDataBinding) theBinding).getPayload().size());
+	}
+	
+	@Test
+	public void testFeatureCollectionIsStreamed() throws IOException {
+		
+		String featureCollectionString = "{\"type\":\"FeatureCollection\",\"features\":["
+				+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[102.0,0.5]},\"properties\":{\"prop0\":\"value0\"}},"
+				+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[103.0,1.5]},\"properties\":{\"prop0\":\"value1\"}}]}";
+		
+		GeoJSONParser theParser = new GeoJSONParser();
+		
+		String mimetype = theParser.getSupportedFormats()[0];
+		
+		IData theBinding = theParser.parse(new ByteArrayInputStream(featureCollectionString.getBytes("UTF-8")), mimetype, null);
+		
+		Assert.assertTrue(theBinding.getPayload() instanceof StreamingFeatureCollection);
+		Assert.assertEquals(2, ((GTVectorDataBinding) theBinding).getPayload().size());
+		
+		InputStream is = dataHandler.generateStream(theBinding, mimetype, null);
+		
+		IData theGeneratedParsedBinding = theParser.parse(is, mimetype, null);
+		
+		Assert.assertEquals(2, ((GTVectorDataBinding) theGeneratedParsedBinding).getPayload().size());
+	}
+	
 	@Override
 	protected void initializeDataHandler() {
 		dataHandler = new GeoJSONGenerator();		
@@ -0,0 +1,133 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.test.datahandler;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
+import javax.media.jai.TileScheduler;
+
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.io.datahandler.RasterResources;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+
+/**
+ * Tests tile and tile cache sizing of the {@link RasterResources}.
+ */
+public class RasterResourcesTest {
+
+	private long memoryCapacity;
+
+	private int parallelism;
+
+	private int prefetchParallelism;
+
+	@Before
+	public void setUp() {
+		TileCache tileCache = JAI.getDefaultInstance().getTileCache();
+		TileScheduler tileScheduler = JAI.getDefaultInstance().getTileScheduler();
+		memoryCapacity = tileCache.getMemoryCapacity();
+		parallelism = tileScheduler.getParallelism();
+		prefetchParallelism = tileScheduler.getPrefetchParallelism();
+	}
+
+	@After
+	public void tearDown() {
+		JAI.getDefaultInstance().getTileCache().setMemoryCapacity(memoryCapacity);
+		JAI.getDefaultInstance().getTileScheduler().setParallelism(parallelism);
+		JAI.getDefaultInstance().getTileScheduler().setPrefetchParallelism(prefetchParallelism);
+	}
+
+	@Test
+	public void testTileSizeCoversSmallImages() {
+		assertEquals(16, RasterResources.getTileSize(1, 1, 512));
+		assertEquals(16, RasterResources.getTileSize(16, 10, 512));
+		assertEquals(32, RasterResources.getTileSize(17, 10, 512));
+		assertEquals(128, RasterResources.getTileSize(100, 120, 512));
+		assertEquals(256, RasterResources.getTileSize(10, 200, 512));
+	}
+
+	@Test
+	public void testTileSizeIsLimited() {
+		assertEquals(512, RasterResources.getTileSize(513, 10, 512));
+		assertEquals(512, RasterResources.getTileSize(10000, 10000, 512));
+		assertEquals(16, RasterResources.getTileSize(10000, 10000, 8));
+		assertEquals(16, RasterResources.getTileSize(10000, 10000, 0));
+	}
+
+	@Test
+	public void testConfiguredTileSizeIsRoundedToAPowerOfTwo() {
+		assertEquals("256,256", getSuggestedTileSize(new RasterResources(JAI.getDefaultInstance(), 1024, 1, 1, 300)));
+		assertEquals("512,512", getSuggestedTileSize(new RasterResources(JAI.getDefaultInstance(), 1024, 1, 1, 512)));
+		assertEquals("16,16", getSuggestedTileSize(new RasterResources(JAI.getDefaultInstance(), 1024, 1, 1, 10)));
+		assertEquals(256, new RasterResources(JAI.getDefaultInstance(), 1024, 1, 1, 300).getTileSize(1000, 1000));
+	}
+
+	@Test
+	public void testTileCacheAndSchedulerAreConfigured() {
+		new RasterResources(JAI.getDefaultInstance(), 64L * 1024 * 1024, 3, 2, 512);
+		assertEquals(64L * 1024 * 1024, JAI.getDefaultInstance().getTileCache().getMemoryCapacity());
+		assertEquals(3, JAI.getDefaultInstance().getTileScheduler().getParallelism());
+		assertEquals(2, JAI.getDefaultInstance().getTileScheduler().getPrefetchParallelism());
+	}
+
+	private String getSuggestedTileSize(RasterResources resources) {
+		for (GeneralParameterValue parameter : resources.createReadParameters()) {
+			if (parameter.getDescriptor().getName().equals(AbstractGridFormat.SUGGESTED_TILE_SIZE.getName())) {
+				return (String) ((ParameterValue<?>) parameter).getValue();
+			}
+		}
+		return null;
+	}
+
+}
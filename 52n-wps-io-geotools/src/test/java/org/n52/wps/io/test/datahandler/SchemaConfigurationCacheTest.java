@@ -0,0 +1,183 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.test.datahandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.xml.Configuration;
+import org.geotools.xml.Encoder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.wps.io.SchemaMirror;
+import org.n52.wps.io.datahandler.SchemaConfigurationCache;
+
+/**
+ * Tests the keys and the failure handling of the
+ * {@link SchemaConfigurationCache}.
+ */
+public class SchemaConfigurationCacheTest {
+
+	private static final String NAMESPACE = "http://www.52north.org/test";
+
+	private static final String SCHEMA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\""
+			+ " targetNamespace=\"" + NAMESPACE + "\" elementFormDefault=\"qualified\">"
+			+ "<xs:element name=\"value\" type=\"xs:string\"/></xs:schema>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File schema;
+
+	private CountingMirror mirror;
+
+	@Before
+	public void setUp() throws IOException {
+		schema = folder.newFile("test.xsd");
+		FileUtils.writeStringToFile(schema, SCHEMA, "UTF-8");
+		mirror = new CountingMirror(folder.newFolder("mirror"), schema.getAbsolutePath());
+	}
+
+	@Test
+	public void testSpellingsOfOneLocationShareTheConfiguration() {
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(mirror, 10);
+		Configuration configuration = cache.getApplicationSchemaConfiguration(NAMESPACE,
+				"http://www.52north.org/schemas/test.xsd");
+		assertNotNull(configuration);
+		assertSame(configuration, cache.getApplicationSchemaConfiguration(NAMESPACE,
+				"HTTP://WWW.52north.org:80/schemas/../schemas/./test.xsd"));
+		assertEquals(1, mirror.resolved);
+	}
+
+	@Test
+	public void testLocalSchemasAreNotCached() {
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(mirror, 10);
+		Configuration configuration = cache.getApplicationSchemaConfiguration(NAMESPACE, schema.getAbsolutePath());
+		assertNotNull(configuration);
+		assertNotSame(configuration, cache.getApplicationSchemaConfiguration(NAMESPACE, schema.getAbsolutePath()));
+		assertEquals(0, mirror.resolved);
+	}
+
+	@Test
+	public void testEncodersShareOnlyTheCompiledSchema() {
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(mirror, 10);
+		String location = "http://www.52north.org/schemas/test.xsd";
+		Encoder first = cache.createEncoder(NAMESPACE, location);
+		Encoder second = cache.createEncoder(NAMESPACE, location);
+		assertNotNull(first);
+		assertNotSame(first.getConfiguration(), second.getConfiguration());
+		assertSame(first.getSchema(), second.getSchema());
+		assertEquals(1, mirror.resolved);
+	}
+
+	@Test
+	public void testFailuresAreNotRetriedBeforeTheyExpire() throws InterruptedException {
+		mirror.failing = true;
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(mirror, 10, 200, TimeUnit.MILLISECONDS);
+		String location = "http://www.52north.org/schemas/test.xsd";
+		assertNull(cache.getApplicationSchemaConfiguration(NAMESPACE, location));
+		assertNull(cache.getApplicationSchemaConfiguration(NAMESPACE, location));
+		assertEquals(1, mirror.resolved);
+
+		mirror.failing = false;
+		Thread.sleep(400);
+		assertNotNull(cache.getApplicationSchemaConfiguration(NAMESPACE, location));
+		assertEquals(2, mirror.resolved);
+	}
+
+	@Test
+	public void testClearForgetsFailures() {
+		mirror.failing = true;
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(mirror, 10);
+		String location = "http://www.52north.org/schemas/test.xsd";
+		assertNull(cache.getApplicationSchemaConfiguration(NAMESPACE, location));
+
+		mirror.failing = false;
+		cache.clear();
+		assertNotNull(cache.getApplicationSchemaConfiguration(NAMESPACE, location));
+		assertEquals(2, mirror.resolved);
+	}
+
+	/**
+	 * Resolves every location to a local schema and counts the calls.
+	 */
+	private static class CountingMirror extends SchemaMirror {
+
+		private final String location;
+
+		private int resolved;
+
+		private boolean failing;
+
+		CountingMirror(File directory, String location) {
+			super(directory);
+			this.location = location;
+		}
+
+		@Override
+		public String resolve(String schemaLocation) {
+			resolved++;
+			if (failing) {
+				throw new IllegalStateException("Could not fetch " + schemaLocation);
+			}
+			return location;
+		}
+
+	}
+
+}
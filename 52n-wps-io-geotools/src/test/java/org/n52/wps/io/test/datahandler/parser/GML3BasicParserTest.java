@@ -54,10 +54,16 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 
+import org.apache.commons.io.FileUtils;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.gml3.GMLConfiguration;
 import org.junit.Assert;
 import org.junit.Test;
+import org.n52.wps.commons.context.ExecutionContext;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.datahandler.parser.GML3BasicParser;
+import org.n52.wps.io.datahandler.parser.StreamingFeatureCollection;
 import org.n52.wps.io.test.datahandler.AbstractTestCase;
 
 public class GML3BasicParserTest extends AbstractTestCase<GML3BasicParser> {
@@ -103,6 +109,75 @@ public class GML3BasicParserTest extends AbstractTestCase<GML3BasicParser> {
 
 	}
 
+	@Test
+	public void testFeaturesAreStreamed() throws Exception {
+
+		if(!isDataHandlerActive()){
+			return;
+		}
+
+		FeatureCollection<?, ?> features = dataHandler.parseFeatureCollection(getTestFile(), new GMLConfiguration(), false);
+		Assert.assertTrue(features instanceof StreamingFeatureCollection);
+
+		// the collection can be iterated more than once
+		Assert.assertEquals(features.size(), count(features));
+		Assert.assertEquals(features.size(), count(features));
+		Assert.assertTrue(features.size() > 0);
+	}
+
+	@Test
+	public void testStrictDocumentsAreNotStreamed() throws Exception {
+
+		if(!isDataHandlerActive()){
+			return;
+		}
+
+		// the pull parser cannot parse strictly, so the document is parsed as a whole
+		Assert.assertNull(StreamingFeatureCollection.open(getTestFile(), new GMLConfiguration(), true));
+	}
+
+	@Test
+	public void testFeaturesAreNotReadableAfterTheExecution() throws Exception {
+
+		if(!isDataHandlerActive()){
+			return;
+		}
+
+		ExecutionContext context = new ExecutionContext();
+		File file = File.createTempFile("features", ".xml");
+		FileUtils.copyFile(getTestFile(), file);
+		context.registerTemporaryFile(file);
+
+		FeatureCollection<?, ?> features = dataHandler.parseFeatureCollection(file, new GMLConfiguration(), false);
+		Assert.assertTrue(count(features) > 0);
+		context.close();
+		try {
+			count(features);
+			Assert.fail("The features were read from a deleted file");
+		} catch (IllegalStateException e) {
+			// expected, the file was deleted with the execution
+		}
+	}
+
+	private File getTestFile() throws UnsupportedEncodingException {
+		return new File(URLDecoder.decode(projectRoot
+				+ "/52n-wps-io-geotools/src/test/resources/spearfish_restricted_sites_gml3.xml", "UTF-8"));
+	}
+
+	private int count(FeatureCollection<?, ?> features) {
+		int count = 0;
+		FeatureIterator<?> iterator = features.features();
+		try {
+			while (iterator.hasNext()) {
+				iterator.next();
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+
 	@Override
 	protected void initializeDataHandler() {
 		dataHandler = new GML3BasicParser();
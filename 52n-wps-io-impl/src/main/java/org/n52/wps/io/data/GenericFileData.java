@@ -199,7 +199,6 @@ public class GenericFileData {
 
 		fos.close();
 		is.close();
-		System.gc();
 
 		return fileName;
 	}
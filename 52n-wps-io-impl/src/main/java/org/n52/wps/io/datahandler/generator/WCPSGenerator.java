@@ -62,7 +62,7 @@ public class WCPSGenerator extends AbstractGenerator {
 		List<byte[]> wcpsoutput = ((ArrayDataBinding)data).getPayload();
 		
 		File tempFile = File.createTempFile("wcps", ".bin");
-		this.finalizeFiles.add(tempFile);
+		registerTempFile(tempFile);
 		FileOutputStream fos = new FileOutputStream(tempFile);
 		
 		for (byte[] currentArray : wcpsoutput){
@@ -16,9 +16,13 @@
  */
 package org.n52.wps.io;
 
+import java.io.Closeable;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.webapp.api.FormatEntry;
 import org.n52.wps.webapp.api.types.ConfigurationEntry;
 
@@ -50,8 +54,7 @@ public abstract class AbstractIOHandler implements IOHandler {
 	 * Returns true if the given format is supported, else false.
 	 */ 
 	public boolean isSupportedFormat(String format) {
-	    String[] sf = getSupportedFormats();
-		for(String f : sf) {
+		for(String f : supportedFormats) {
 			if (f.equalsIgnoreCase(format)) {
 				return true;
 			}
@@ -119,7 +122,7 @@ public abstract class AbstractIOHandler implements IOHandler {
 	}
 	
 	public boolean isSupportedEncoding(String encoding){
-		for (String currentEncoding : this.getSupportedEncodings()){
+		for (String currentEncoding : supportedEncodings){
 			if (currentEncoding.equalsIgnoreCase(encoding)){
 				return true;
 			}
@@ -143,6 +146,33 @@ public abstract class AbstractIOHandler implements IOHandler {
 		
 		return true;
 	}
-	
-}
 
+	/**
+	 * Registers a temporary file or directory written during parsing or
+	 * generation. It is deleted by the {@link ExecutionContext} of the
+	 * running execution when the execution is finished. Outside of an
+	 * execution the file is deleted when the JVM exits.
+	 */
+	protected void registerTempFile(File file) {
+		ExecutionContext context = ExecutionContextFactory.getContext(false);
+		if (context != null) {
+			context.registerTemporaryFile(file);
+		} else {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Registers a resource opened during parsing or generation, e.g. a reader
+	 * of a temporary file. It is closed by the {@link ExecutionContext} of the
+	 * running execution before the temporary files are deleted. Outside of an
+	 * execution the resource is left to the caller.
+	 */
+	protected static void registerResource(Closeable resource) {
+		ExecutionContext context = ExecutionContextFactory.getContext(false);
+		if (context != null) {
+			context.registerResource(resource);
+		}
+	}
+
+}
@@ -35,7 +35,7 @@ public class GeneratorFactory {
 	private static GeneratorFactory factory;
 	private static Logger LOGGER = LoggerFactory.getLogger(GeneratorFactory.class);
 	
-	private List<IGenerator> registeredGenerators;
+	private volatile IOHandlerIndex<IGenerator> registeredGenerators = new IOHandlerIndex<IGenerator>(new ArrayList<IGenerator>());
 	
 	/**
 	 * This factory provides all available {@link Generators} to WPS.
@@ -65,7 +65,7 @@ public class GeneratorFactory {
 	}
 
     private void loadAllGenerators(Map<String, ConfigurationModule> generatorMap){
-        registeredGenerators = new ArrayList<IGenerator>();
+        List<IGenerator> generators = new ArrayList<IGenerator>();
 		for(String currentGeneratorName : generatorMap.keySet()) {
 
 //			// remove inactive properties
@@ -101,9 +101,11 @@ public class GeneratorFactory {
 			}
 			if(generator != null) {
 				LOGGER.info("Generator class registered: " + generatorClass);
-				registeredGenerators.add(generator);
+				generators.add(generator);
 			}
 		}
+		// replace generators and cached lookups at once
+		registeredGenerators = new IOHandlerIndex<IGenerator>(generators);
     }
 
 	public static GeneratorFactory getInstance() {
@@ -121,22 +123,16 @@ public class GeneratorFactory {
 			encoding = IOHandler.DEFAULT_ENCODING;
 		}
 		
-		for(IGenerator generator : registeredGenerators) {
-			Class<?>[] supportedBindings = generator.getSupportedDataBindings();
-			for(Class<?> clazz : supportedBindings){
-				if(clazz.equals(outputInternalClass)) {
-					if(generator.isSupportedSchema(schema) && generator.isSupportedEncoding(encoding) && generator.isSupportedFormat(format)){
-						return generator;
-					}
-				}
-			}
+		IGenerator generator = registeredGenerators.get(outputInternalClass, format, schema, encoding);
+		if(generator != null){
+			return generator;
 		}
 		//TODO: try a chaining approach, by calculation all permutations and look for matches.
 		return null;
 	}
 
 	public List<IGenerator> getAllGenerators() {
-		return registeredGenerators;
+		return registeredGenerators.getHandlers();
 	}
 
 	
@@ -0,0 +1,166 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable index of the registered parsers or generators by their supported
+ * data bindings. Lookups by binding, format, schema and encoding are cached,
+ * including lookups without a result. The factories replace the whole index
+ * when the configuration changes, so the cache never outlives the handlers it
+ * was built for.
+ * 
+ * The handler returned for a lookup is the same the former linear search
+ * returned: the first registered handler supporting all of the given values.
+ */
+final class IOHandlerIndex<T extends IOHandler> {
+
+	/**
+	 * Formats and schemas are taken from requests, so the cache is bounded.
+	 */
+	private static final int MAX_CACHED_LOOKUPS = 1024;
+
+	private final List<T> handlers;
+
+	private final Map<Class<?>, List<T>> handlersByBinding;
+
+	private final ConcurrentMap<LookupKey, Lookup<T>> lookups = new ConcurrentHashMap<LookupKey, Lookup<T>>();
+
+	IOHandlerIndex(List<T> handlers) {
+		this.handlers = Collections.unmodifiableList(new ArrayList<T>(handlers));
+		Map<Class<?>, List<T>> byBinding = new LinkedHashMap<Class<?>, List<T>>();
+		for (T handler : handlers) {
+			for (Class<?> binding : handler.getSupportedDataBindings()) {
+				List<T> bindingHandlers = byBinding.get(binding);
+				if (bindingHandlers == null) {
+					bindingHandlers = new ArrayList<T>();
+					byBinding.put(binding, bindingHandlers);
+				}
+				if (!bindingHandlers.contains(handler)) {
+					bindingHandlers.add(handler);
+				}
+			}
+		}
+		this.handlersByBinding = byBinding;
+	}
+
+	List<T> getHandlers() {
+		return handlers;
+	}
+
+	/**
+	 * @return the first handler supporting all given values, <code>null</code>
+	 *         if there is none
+	 */
+	T get(Class<?> binding, String format, String schema, String encoding) {
+		LookupKey key = new LookupKey(binding, format, schema, encoding);
+		Lookup<T> lookup = lookups.get(key);
+		if (lookup == null) {
+			lookup = new Lookup<T>(find(binding, format, schema, encoding));
+			if (lookups.size() >= MAX_CACHED_LOOKUPS) {
+				lookups.clear();
+			}
+			lookups.putIfAbsent(key, lookup);
+		}
+		return lookup.handler;
+	}
+
+	private T find(Class<?> binding, String format, String schema, String encoding) {
+		List<T> candidates = handlersByBinding.get(binding);
+		if (candidates == null) {
+			return null;
+		}
+		for (T handler : candidates) {
+			if (handler.isSupportedSchema(schema) && handler.isSupportedEncoding(encoding)
+					&& handler.isSupportedFormat(format)) {
+				return handler;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Holds the result of a lookup, which may be <code>null</code>.
+	 */
+	private static final class Lookup<T> {
+
+		private final T handler;
+
+		Lookup(T handler) {
+			this.handler = handler;
+		}
+
+	}
+
+	/**
+	 * Formats, schemas and encodings are compared ignoring case by the
+	 * handlers, so the key does as well.
+	 */
+	private static final class LookupKey {
+
+		private final Class<?> binding;
+
+		private final String format;
+
+		private final String schema;
+
+		private final String encoding;
+
+		LookupKey(Class<?> binding, String format, String schema, String encoding) {
+			this.binding = binding;
+			this.format = normalize(format);
+			this.schema = normalize(schema);
+			this.encoding = normalize(encoding);
+		}
+
+		private static String normalize(String value) {
+			return value == null ? null : value.toLowerCase(Locale.ROOT);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof LookupKey)) {
+				return false;
+			}
+			LookupKey other = (LookupKey) obj;
+			return equal(binding, other.binding) && equal(format, other.format) && equal(schema, other.schema)
+					&& equal(encoding, other.encoding);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = binding == null ? 0 : binding.hashCode();
+			hash = 31 * hash + (format == null ? 0 : format.hashCode());
+			hash = 31 * hash + (schema == null ? 0 : schema.hashCode());
+			return 31 * hash + (encoding == null ? 0 : encoding.hashCode());
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+	}
+
+}
@@ -22,7 +22,6 @@ import static org.apache.commons.io.IOUtils.copyLarge;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -38,16 +37,15 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
 import org.apache.commons.codec.binary.Base64InputStream;
-import org.apache.xpath.XPathAPI;
+import org.n52.wps.commons.XMLUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 public class IOUtils {
@@ -110,17 +108,19 @@ public class IOUtils {
             DOMException,
             TransformerException {
 
-        // ToDo: look at StAX to stream XML parsing instead of in memory DOM
-        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(stream);
-        String binaryContent = XPathAPI.selectSingleNode(document.getFirstChild(), "text()").getTextContent();
-
-        InputStream byteStream = null;
+        // the text is decoded while it is read, the document is never held in memory
+        XMLTextInputStream text;
+        try {
+            text = new XMLTextInputStream(XMLUtil.getInputFactory().createXMLStreamReader(stream));
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Could not read Base64 XML content", e);
+        }
         try {
-            byteStream = new ByteArrayInputStream(binaryContent.getBytes());
-            return writeBase64ToFile(byteStream, extension);
+            return writeBase64ToFile(text, extension);
         }
         finally {
-            closeQuietly(byteStream);
+            closeQuietly(text);
         }
     }
 
@@ -140,7 +140,33 @@ public class IOUtils {
     private static File zipIt(boolean deleteAfterwards, File... files) throws IOException, FileNotFoundException {
         File zip = File.createTempFile("zip" + UUID.randomUUID(), ".zip");
 
-        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        OutputStream out = new FileOutputStream(zip);
+        try {
+            zip(out, files);
+        }
+        finally {
+            out.close();
+        }
+
+        if (deleteAfterwards)
+            deleteResources(files);
+
+        return zip;
+    }
+
+    /**
+     * Writes the files as zip archive to the given stream. The stream is not closed, so the archive can be
+     * written directly to a response.
+     * 
+     * @param output
+     *        the stream to write the archive to
+     * @param files
+     *        the files to add to the archive, missing files are skipped
+     * @throws IOException
+     *         if reading the files or writing the archive fails
+     */
+    public static void zip(OutputStream output, File... files) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(output);
 
         byte[] buffer = new byte[BUFFER_SIZE];
         for (File file : files) {
@@ -161,12 +187,7 @@ public class IOUtils {
             in.close();
         }
 
-        if (deleteAfterwards)
-            deleteResources(files);
-
-        out.close();
-
-        return zip;
+        out.finish();
     }
 
     public static File zipDirectory(File directory) throws IOException {
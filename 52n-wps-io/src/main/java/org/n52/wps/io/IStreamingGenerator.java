@@ -0,0 +1,48 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.n52.wps.io.data.IData;
+
+/**
+ * Generators that write their output directly to a stream, e.g. the response
+ * to the client or the store of the database, instead of providing it as
+ * {@link java.io.InputStream}. This avoids writing the output to a temporary
+ * file and reading it again.
+ * 
+ * {@link org.n52.wps.io.datahandler.generator.AbstractGenerator} bridges to
+ * {@link #generateStream(IData, String, String)} for generators that do not
+ * write to streams themselves.
+ */
+public interface IStreamingGenerator extends IGenerator {
+
+	/**
+	 * Generates the output data produced by an IAlgorithm and writes it to the
+	 * given stream. The stream is not closed.
+	 */
+	public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException;
+
+	/**
+	 * Generates the output data produced by an IAlgorithm, encodes it in
+	 * Base64 and writes it to the given stream. The stream is not closed.
+	 */
+	public void writeBase64To(IData data, String mimeType, String schema, OutputStream out) throws IOException;
+
+}
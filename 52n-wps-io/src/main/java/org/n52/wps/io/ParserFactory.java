@@ -41,7 +41,7 @@ public class ParserFactory {
 	private static ParserFactory factory;
 	private static Logger LOGGER = LoggerFactory.getLogger(ParserFactory.class);
 	
-	private List<IParser> registeredParsers;
+	private volatile IOHandlerIndex<IParser> registeredParsers = new IOHandlerIndex<IParser>(new ArrayList<IParser>());
 	
 	/**
 	 * This factory provides all available {@link IParser} to WPS.
@@ -71,7 +71,7 @@ public class ParserFactory {
 	}
     
     private void loadAllParsers(Map<String, ConfigurationModule> parserMap){
-        registeredParsers = new ArrayList<IParser>();
+        List<IParser> parsers = new ArrayList<IParser>();
 		for(String currentParserName : parserMap.keySet()) {
 			
 			ConfigurationModule currentParser = parserMap.get(currentParserName);
@@ -110,9 +110,11 @@ public class ParserFactory {
 			if(parser != null) {
 				
 				LOGGER.info("Parser class registered: " + parserClass);
-				registeredParsers.add(parser);
+				parsers.add(parser);
 			}
 		}
+		// replace parsers and cached lookups at once
+		registeredParsers = new IOHandlerIndex<IParser>(parsers);
     }
 
 	public static ParserFactory getInstance() {
@@ -131,16 +133,10 @@ public class ParserFactory {
 		}
 		
 		//first, look if we can find a direct way		
-		for(IParser parser : registeredParsers) {
-			Class<?>[] supportedClasses = parser.getSupportedDataBindings();
-			for(Class<?> clazz : supportedClasses){
-				if(clazz.equals(requiredInputClass)) {
-					if(parser.isSupportedSchema(schema) &&	parser.isSupportedEncoding(encoding) && parser.isSupportedFormat(format)) {
-						LOGGER.info("Matching parser found: " + parser);
-						return parser;
-					}
-				}
-			}
+		IParser parser = registeredParsers.get(requiredInputClass, format, schema, encoding);
+		if(parser != null) {
+			LOGGER.debug("Matching parser found: " + parser);
+			return parser;
 		}
 		
 		//no parser could be found
@@ -150,6 +146,6 @@ public class ParserFactory {
 	}
 
 	public List<IParser> getAllParsers() {
-		return registeredParsers;
+		return registeredParsers.getHandlers();
 	}
 }
@@ -0,0 +1,248 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps local copies of remote XML schemas, so application schemas are not
+ * downloaded again for every request. A schema is mirrored together with all
+ * schemas it imports or includes; their schemaLocation attributes are rewritten
+ * to point to the local copies. Imports of the GML, XLink and SMIL namespaces
+ * are left alone, the GML libraries bring their own copies of these schemas.
+ * 
+ * Copies are stored below the mirror directory as host/path. Schemas that are
+ * not yet mirrored are taken from the bundled catalog, classpath resources with
+ * the same layout below /schemas, before they are downloaded. For servers
+ * without internet access the mirror directory can be filled in advance.
+ */
+public class SchemaMirror {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(SchemaMirror.class);
+
+	private static final String MIRROR_DIRECTORY_NAME = "52n-wps-schemas";
+
+	private static final String CATALOG_PATH = "/schemas/";
+
+	private static final int CONNECT_TIMEOUT = 10000;
+
+	private static final int READ_TIMEOUT = 30000;
+
+	/**
+	 * Namespaces that are resolved by the GML libraries themselves.
+	 */
+	private static final List<String> PROVIDED_NAMESPACES = Arrays.asList("http://www.opengis.net/gml",
+			"http://www.opengis.net/gml/3.2", "http://www.w3.org/1999/xlink", "http://www.w3.org/2001/SMIL20/",
+			"http://www.w3.org/2001/SMIL20/Language");
+
+	private static SchemaMirror instance;
+
+	private final File directory;
+
+	private final DocumentBuilderFactory documentBuilderFactory;
+
+	public static synchronized SchemaMirror getInstance() {
+		if (instance == null) {
+			File directory = null;
+			Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
+			if (serverConfig != null && serverConfig.getSchemaCacheDirectory() != null
+					&& !serverConfig.getSchemaCacheDirectory().trim().isEmpty()) {
+				directory = new File(serverConfig.getSchemaCacheDirectory().trim());
+			} else {
+				directory = new File(System.getProperty("java.io.tmpdir"), MIRROR_DIRECTORY_NAME);
+			}
+			instance = new SchemaMirror(directory);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param directory
+	 *            the directory holding the local copies, created if necessary
+	 */
+	public SchemaMirror(File directory) {
+		this.directory = directory;
+		this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		this.documentBuilderFactory.setNamespaceAware(true);
+		this.documentBuilderFactory.setExpandEntityReferences(false);
+	}
+
+	/**
+	 * Returns the location of the local copy of a schema. Schemas that are not
+	 * mirrored yet are copied first.
+	 * 
+	 * @param schemaLocation
+	 *            the location of the schema
+	 * @return the file URI of the local copy, or the given location if it is
+	 *         not a HTTP URL or could not be mirrored
+	 */
+	public String resolve(String schemaLocation) {
+		URL url = toRemoteURL(schemaLocation);
+		if (url == null) {
+			return schemaLocation;
+		}
+		File local = getLocalFile(url);
+		if (!local.exists()) {
+			try {
+				local = mirror(url);
+			} catch (IOException e) {
+				LOGGER.warn("Could not mirror schema " + schemaLocation + ", using the remote schema.", e);
+				return schemaLocation;
+			}
+		}
+		return local.toURI().toString();
+	}
+
+	/**
+	 * @return the file the copy of the schema is stored in
+	 */
+	File getLocalFile(URL url) {
+		StringBuilder path = new StringBuilder(url.getHost());
+		if (url.getPort() != -1) {
+			path.append('_').append(url.getPort());
+		}
+		String file = url.getPath();
+		if (file.isEmpty() || file.endsWith("/")) {
+			file += "index.xsd";
+		}
+		path.append(file);
+		if (url.getQuery() != null) {
+			path.append('_').append(url.getQuery().replaceAll("[^A-Za-z0-9._-]", "_"));
+		}
+		// never leave the mirror directory
+		String normalized = path.toString().replace("..", "_");
+		return new File(directory, normalized.replace('/', File.separatorChar));
+	}
+
+	private synchronized File mirror(URL url) throws IOException {
+		return mirror(url, new HashSet<String>());
+	}
+
+	private File mirror(URL url, Set<String> visited) throws IOException {
+		File target = getLocalFile(url);
+		if (target.exists() || !visited.add(url.toExternalForm())) {
+			return target;
+		}
+		Document schema = load(url);
+		rewriteLocations(schema, url, "import", visited);
+		rewriteLocations(schema, url, "include", visited);
+		rewriteLocations(schema, url, "redefine", visited);
+
+		// write to a temporary file first, so a half written copy is never used
+		FileUtils.forceMkdir(target.getParentFile());
+		File temp = new File(target.getParentFile(), target.getName() + ".part");
+		try {
+			TransformerFactory.newInstance().newTransformer().transform(new DOMSource(schema), new StreamResult(temp));
+		} catch (TransformerException e) {
+			FileUtils.deleteQuietly(temp);
+			throw new IOException("Could not store schema " + url, e);
+		}
+		if (!temp.renameTo(target)) {
+			FileUtils.deleteQuietly(temp);
+			if (!target.exists()) {
+				throw new IOException("Could not store schema " + url + " in " + target);
+			}
+		}
+		LOGGER.info("Mirrored schema {} to {}", url, target);
+		return target;
+	}
+
+	private void rewriteLocations(Document schema, URL base, String elementName, Set<String> visited)
+			throws IOException {
+		NodeList elements = schema.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, elementName);
+		for (int i = 0; i < elements.getLength(); i++) {
+			Element element = (Element) elements.item(i);
+			String location = element.getAttribute("schemaLocation");
+			if (location.isEmpty() || PROVIDED_NAMESPACES.contains(element.getAttribute("namespace"))) {
+				continue;
+			}
+			URL dependency = new URL(base, location);
+			if (toRemoteURL(dependency.toExternalForm()) == null) {
+				continue;
+			}
+			File local = mirror(dependency, visited);
+			element.setAttribute("schemaLocation", local.toURI().toString());
+		}
+	}
+
+	private Document load(URL url) throws IOException {
+		InputStream in = getClass().getResourceAsStream(CATALOG_PATH + getCatalogPath(url));
+		if (in == null) {
+			URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(CONNECT_TIMEOUT);
+			connection.setReadTimeout(READ_TIMEOUT);
+			in = connection.getInputStream();
+		}
+		try {
+			return documentBuilderFactory.newDocumentBuilder().parse(in, url.toExternalForm());
+		} catch (SAXException e) {
+			throw new IOException("Could not parse schema " + url, e);
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Could not parse schema " + url, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private String getCatalogPath(URL url) {
+		return directory.toURI().relativize(getLocalFile(url).toURI()).getPath();
+	}
+
+	private static URL toRemoteURL(String location) {
+		if (location == null) {
+			return null;
+		}
+		try {
+			URL url = new URL(location);
+			if ("http".equalsIgnoreCase(url.getProtocol()) || "https".equalsIgnoreCase(url.getProtocol())) {
+				return url;
+			}
+		} catch (MalformedURLException e) {
+			// a relative location or file name
+		}
+		return null;
+	}
+
+}
@@ -16,41 +16,41 @@
  */
 package org.n52.wps.io;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Maps namespaces of application schemas to their locations and GML versions.
+ * Used from all parsing and generating threads, so the maps are concurrent
+ * instead of synchronized.
+ */
 public class SchemaRepository {
 
-	private static Map<String, String> repository;
-	private static Map<String, String> gmlNamespaces;
+	private static final ConcurrentMap<String, String> repository = new ConcurrentHashMap<String, String>();
+	private static final ConcurrentMap<String, String> gmlNamespaces = new ConcurrentHashMap<String, String>();
 	
-	public static synchronized String getSchemaLocation(String namespaceURI){
-		if (repository==null) {
-			repository = new HashMap<String, String>();
+	public static String getSchemaLocation(String namespaceURI){
+		if (namespaceURI == null) {
+			return null;
 		}
 		return repository.get(namespaceURI);
-		
 	}
 	
-	public static synchronized void registerSchemaLocation(String namespaceURI, String schemaLocation){
-		if (repository==null) {
-			repository = new HashMap<String, String>();
+	public static void registerSchemaLocation(String namespaceURI, String schemaLocation){
+		if (namespaceURI != null && schemaLocation != null) {
+			repository.put(namespaceURI, schemaLocation);
 		}
-		repository.put(namespaceURI,schemaLocation);
-		
 	}
 	
-	public static synchronized void registerGMLVersion(String namespaceURI, String gmlNamespace){
-		if (gmlNamespaces==null) {
-			gmlNamespaces = new HashMap<String, String>();
+	public static void registerGMLVersion(String namespaceURI, String gmlNamespace){
+		if (namespaceURI != null && gmlNamespace != null) {
+			gmlNamespaces.put(namespaceURI, gmlNamespace);
 		}
-		gmlNamespaces.put(namespaceURI, gmlNamespace);
-		
 	}
 
-	public static synchronized String getGMLNamespaceForSchema(String namespace) {
-		if (gmlNamespaces==null) {
-			gmlNamespaces = new HashMap<String, String>();
+	public static String getGMLNamespaceForSchema(String namespace) {
+		if (namespace == null) {
+			return null;
 		}
 		return gmlNamespaces.get(namespace);
 	}
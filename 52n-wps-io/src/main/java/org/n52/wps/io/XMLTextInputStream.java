@@ -0,0 +1,149 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streams the text content of an XML element as US-ASCII bytes, read event by
+ * event from a StAX reader. The text of nested elements is included, markup
+ * is skipped. This lets inline Base64 content be decoded while it is parsed,
+ * without collecting it in a String first.
+ * 
+ * Characters outside of US-ASCII cannot be part of Base64 content, reading
+ * them fails with an {@link IOException}.
+ */
+public class XMLTextInputStream extends InputStream {
+
+	private final XMLStreamReader reader;
+
+	private int depth;
+
+	private boolean finished = false;
+
+	private char[] text;
+
+	private int textStart;
+
+	private int textEnd;
+
+	/**
+	 * @param reader
+	 *            a reader positioned at the start of the document or the start
+	 *            tag of the element whose text is read; the text ends with the
+	 *            end of that element
+	 */
+	public XMLTextInputStream(XMLStreamReader reader) {
+		this.reader = reader;
+		this.depth = reader.getEventType() == XMLStreamConstants.START_ELEMENT ? 1 : 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return toByte(text[textStart++]);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int count = Math.min(len, textEnd - textStart);
+		for (int i = 0; i < count; i++) {
+			b[off + i] = (byte) toByte(text[textStart++]);
+		}
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not close XML reader", e);
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if there is no more text
+	 */
+	private boolean fill() throws IOException {
+		while (textStart >= textEnd) {
+			if (finished || !next()) {
+				finished = true;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves to the next event and makes its text available.
+	 * 
+	 * @return <code>false</code> if the element or document has ended
+	 */
+	private boolean next() throws IOException {
+		try {
+			if (!reader.hasNext()) {
+				return false;
+			}
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				return depth > 0;
+			case XMLStreamConstants.END_DOCUMENT:
+				return false;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				// the array may be reused by the reader, so it is consumed
+				// before the next event
+				text = reader.getTextCharacters();
+				textStart = reader.getTextStart();
+				textEnd = textStart + reader.getTextLength();
+				break;
+			default:
+				break;
+			}
+			return true;
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not read XML text", e);
+		}
+	}
+
+	private static int toByte(char c) throws IOException {
+		if (c > 127) {
+			throw new IOException("Unexpected character in Base64 content: " + c);
+		}
+		return c;
+	}
+
+}
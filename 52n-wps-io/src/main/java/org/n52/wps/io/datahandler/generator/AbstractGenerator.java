@@ -16,32 +16,32 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
 
 import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.AbstractIOHandler;
 import org.n52.wps.io.IGenerator;
 import org.n52.wps.io.IOHandler;
+import org.n52.wps.io.IStreamingGenerator;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.webapp.api.FormatEntry;
 
 /**
+ * Generators only have to implement
+ * {@link #generateStream(IData, String, String)}, writing to streams is
+ * bridged by copying the generated stream. Generators that can write their
+ * output directly should override {@link #writeTo(IData, String, String, OutputStream)}.
+ * 
  * @author Matthias Mueller, TU Dresden
  *
  */
-public abstract class AbstractGenerator extends AbstractIOHandler implements IGenerator {
-	
-	/**
-	 * A list of files that shall be deleted by destructor.
-	 * Convenience mechanism to delete temporary files that had
-	 * to be written during the generation procedure.
-	 */
-	protected List<File> finalizeFiles;
+public abstract class AbstractGenerator extends AbstractIOHandler implements IStreamingGenerator {
 	
 	public AbstractGenerator(){
 		super();
@@ -69,24 +69,32 @@ public abstract class AbstractGenerator extends AbstractIOHandler implements IGe
 			}			
 		}
 		
-		finalizeFiles = new ArrayList<File>();
 	}
 	
 	public InputStream generateBase64Stream(IData data, String mimeType, String schema) throws IOException {
 		return new Base64InputStream(generateStream(data, mimeType, schema), true);
 	}
-	
-	/**
-	 * Destructor deletes generated temporary files.
-	 */
-	@Override
-	protected void finalize() throws Throwable {
-		
-		for (File currentFile : finalizeFiles){
-			currentFile.delete();
+
+	public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+		InputStream stream = generateStream(data, mimeType, schema);
+		if (stream == null) {
+			return;
+		}
+		try {
+			IOUtils.copyLarge(stream, out);
+		} finally {
+			stream.close();
+		}
+	}
+
+	public void writeBase64To(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+		// closing the Base64 stream writes the last block, but must not close out
+		OutputStream base64 = new Base64OutputStream(new CloseShieldOutputStream(out), true);
+		try {
+			writeTo(data, mimeType, schema, base64);
+		} finally {
+			base64.close();
 		}
-		
-		super.finalize();
 	}
 
 }
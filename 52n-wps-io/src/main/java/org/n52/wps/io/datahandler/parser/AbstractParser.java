@@ -16,10 +16,7 @@
  */
 package org.n52.wps.io.datahandler.parser;
 
-import java.io.File;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.apache.commons.codec.binary.Base64InputStream;
 import org.n52.wps.commons.WPSConfig;
@@ -35,13 +32,6 @@ import org.n52.wps.webapp.api.FormatEntry;
  */
 public abstract class AbstractParser extends AbstractIOHandler implements IParser{
 	
-	/**
-	 * A list of files that shall be deleted by destructor.
-	 * Convenience mechanism to delete temporary files that had
-	 * to be written during the generation procedure.
-	 */
-	protected List<File> finalizeFiles;
-	
 	public AbstractParser(){
 		super();
 		
@@ -68,25 +58,11 @@ public abstract class AbstractParser extends AbstractIOHandler implements IParse
 				supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
 			}			
 		}
-		finalizeFiles = new ArrayList<File>();
 	}
 
 	@Override
 	public IData parseBase64(InputStream input, String mimeType, String schema) {
 		return parse(new Base64InputStream(input), mimeType, schema);
 	}
-	
-	/**
-	 * Destructor deletes generated temporary files.
-	 */
-	@Override
-	protected void finalize() throws Throwable {
-		
-		for (File currentFile : finalizeFiles){
-			currentFile.delete();
-		}
-		
-		super.finalize();
-	}
 
 }
@@ -0,0 +1,78 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests lookups of parsers and generators in the {@link IOHandlerIndex}.
+ */
+public class IOHandlerIndexTest {
+
+	@Test
+	public void testFirstMatchingHandlerIsReturned() {
+		TestHandler xml = new TestHandler(String.class, "text/xml", "http://schema");
+		TestHandler otherXml = new TestHandler(String.class, "text/xml", "http://schema");
+		TestHandler json = new TestHandler(Integer.class, "application/json", null);
+		IOHandlerIndex<TestHandler> index = new IOHandlerIndex<TestHandler>(Arrays.asList(xml, otherXml, json));
+
+		assertSame(xml, index.get(String.class, "text/xml", "http://schema", IOHandler.DEFAULT_ENCODING));
+		assertSame(xml, index.get(String.class, "TEXT/XML", "http://schema", "utf-8"));
+		assertSame(json, index.get(Integer.class, "application/json", null, IOHandler.DEFAULT_ENCODING));
+		assertEquals(3, index.getHandlers().size());
+	}
+
+	@Test
+	public void testMissingHandlerIsCached() {
+		TestHandler xml = new TestHandler(String.class, "text/xml", null);
+		IOHandlerIndex<TestHandler> index = new IOHandlerIndex<TestHandler>(Arrays.asList(xml));
+
+		assertNull(index.get(String.class, "application/json", null, IOHandler.DEFAULT_ENCODING));
+		assertNull(index.get(Integer.class, "text/xml", null, IOHandler.DEFAULT_ENCODING));
+		xml.lookups = 0;
+		assertNull(index.get(String.class, "application/json", null, IOHandler.DEFAULT_ENCODING));
+		assertEquals(0, xml.lookups);
+	}
+
+	private static class TestHandler extends AbstractIOHandler {
+
+		private int lookups = 0;
+
+		TestHandler(Class<?> binding, String format, String schema) {
+			supportedIDataTypes.add(binding);
+			supportedFormats.add(format);
+			if (schema != null) {
+				supportedSchemas.add(schema);
+			}
+			supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
+		}
+
+		@Override
+		public boolean isSupportedSchema(String schema) {
+			lookups++;
+			return super.isSupportedSchema(schema);
+		}
+
+	}
+
+}
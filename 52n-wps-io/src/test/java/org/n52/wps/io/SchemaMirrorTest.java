@@ -0,0 +1,76 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests mirroring of schemas from the bundled catalog by the
+ * {@link SchemaMirror}.
+ */
+public class SchemaMirrorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SchemaMirror mirror;
+
+	@Before
+	public void setUp() throws IOException {
+		mirror = new SchemaMirror(folder.newFolder("schemas"));
+	}
+
+	@Test
+	public void testSchemaIsMirroredWithIncludes() throws IOException {
+		String location = mirror.resolve("http://example.org/app/app.xsd");
+		File local = new File(URI.create(location));
+		assertTrue(local.exists());
+		assertEquals(mirror.getLocalFile(new URL("http://example.org/app/app.xsd")), local);
+
+		String schema = FileUtils.readFileToString(local, "UTF-8");
+		File types = mirror.getLocalFile(new URL("http://example.org/app/types/types.xsd"));
+		assertTrue(types.exists());
+		assertTrue(schema.contains("schemaLocation=\"" + types.toURI() + "\""));
+		// GML is resolved by the GML libraries
+		assertTrue(schema.contains("schemaLocation=\"http://schemas.opengis.net/gml/3.1.1/base/feature.xsd\""));
+	}
+
+	@Test
+	public void testLocalLocationsAreNotMirrored() {
+		assertEquals("app.xsd", mirror.resolve("app.xsd"));
+		assertEquals("file:/tmp/app.xsd", mirror.resolve("file:/tmp/app.xsd"));
+	}
+
+	@Test
+	public void testLocalFileStaysInMirror() throws IOException {
+		File local = mirror.getLocalFile(new URL("http://example.org:8080/a/../../../etc/app.xsd?version=1"));
+		assertTrue(local.getCanonicalPath().startsWith(folder.getRoot().getCanonicalPath()));
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+/**
+ * Tests reading the text of XML elements with the {@link XMLTextInputStream}.
+ */
+public class XMLTextInputStreamTest {
+
+	@Test
+	public void testTextOfDocumentIsRead() throws Exception {
+		assertEquals("SGVs\nbG8=", read(reader("<ComplexData encoding=\"base64\">SGVs&#10;<![CDATA[bG8=]]></ComplexData>")));
+	}
+
+	@Test
+	public void testMarkupIsSkipped() throws Exception {
+		assertEquals("SGVsbG8=", read(reader("<a><xml-fragment xmlns:x=\"urn:x\">SGVs<!-- c -->bG8=</xml-fragment></a>")));
+	}
+
+	@Test
+	public void testTextEndsWithElement() throws Exception {
+		XMLStreamReader reader = reader("<a><b>SGVs<c>bG8=</c></b><d>ignored</d></a>");
+		reader.nextTag();
+		reader.nextTag();
+		assertEquals("SGVsbG8=", read(reader));
+	}
+
+	@Test
+	public void testLongTextIsRead() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			text.append("QUJD");
+		}
+		assertEquals(text.toString(), read(reader("<a>" + text + "</a>")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNonASCIITextFails() throws Exception {
+		read(reader("<a>SGVsä</a>"));
+	}
+
+	private XMLStreamReader reader(String xml) throws XMLStreamException, IOException {
+		return XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml.getBytes("UTF-8")), "UTF-8");
+	}
+
+	private String read(XMLStreamReader reader) throws IOException {
+		InputStream in = new XMLTextInputStream(reader);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1000];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toString("US-ASCII");
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io.test.datahandler.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.datahandler.generator.AbstractGenerator;
+import org.n52.wps.webapp.api.ConfigurationManager;
+import org.n52.wps.webapp.common.AbstractITClass;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * Tests that writing generated data to streams produces the same bytes as the
+ * generated streams of the {@link AbstractGenerator}.
+ */
+public class AbstractGeneratorTest extends AbstractITClass {
+
+	// not a multiple of three and longer than one Base64 line
+	private static final int SIZE = 10001;
+
+	private byte[] bytes;
+
+	@Before
+	public void setUp() {
+		MockMvcBuilders.webAppContextSetup(this.wac).build();
+		WPSConfig.getInstance().setConfigurationManager(this.wac.getBean(ConfigurationManager.class));
+		bytes = new byte[SIZE];
+		new Random(52).nextBytes(bytes);
+	}
+
+	@Test
+	public void testWriteToEqualsGenerateStream() throws IOException {
+		for (AbstractGenerator generator : generators()) {
+			assertArrayEquals(read(generator.generateStream(new Data(), "application/octet-stream", null)),
+					write(generator, false));
+		}
+	}
+
+	@Test
+	public void testWriteBase64ToEqualsGenerateBase64Stream() throws IOException {
+		for (AbstractGenerator generator : generators()) {
+			assertArrayEquals(read(generator.generateBase64Stream(new Data(), "application/octet-stream", null)),
+					write(generator, true));
+		}
+	}
+
+	@Test
+	public void testStreamIsNotClosed() throws IOException {
+		for (AbstractGenerator generator : generators()) {
+			ClosingStream out = new ClosingStream();
+			generator.writeTo(new Data(), "application/octet-stream", null, out);
+			generator.writeBase64To(new Data(), "application/octet-stream", null, out);
+			assertEquals(0, out.closed);
+		}
+	}
+
+	@Test
+	public void testNoGeneratedStreamWritesNothing() throws IOException {
+		AbstractGenerator generator = new StreamGenerator() {
+			@Override
+			public InputStream generateStream(IData data, String mimeType, String schema) {
+				return null;
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		generator.writeTo(new Data(), "application/octet-stream", null, out);
+		assertEquals(0, out.size());
+	}
+
+	private AbstractGenerator[] generators() {
+		return new AbstractGenerator[] { new StreamGenerator(), new WritingGenerator() };
+	}
+
+	private byte[] write(AbstractGenerator generator, boolean base64) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (base64) {
+			generator.writeBase64To(new Data(), "application/octet-stream", null, out);
+		} else {
+			generator.writeTo(new Data(), "application/octet-stream", null, out);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Only generates streams, writing is bridged by the
+	 * {@link AbstractGenerator}.
+	 */
+	private class StreamGenerator extends AbstractGenerator {
+
+		@Override
+		public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
+			return new ByteArrayInputStream(bytes);
+		}
+
+	}
+
+	/**
+	 * Writes the data itself, byte by byte.
+	 */
+	private class WritingGenerator extends StreamGenerator {
+
+		@Override
+		public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+			for (byte b : bytes) {
+				out.write(b);
+			}
+		}
+
+	}
+
+	private static class Data implements IData {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Object getPayload() {
+			return null;
+		}
+
+		@Override
+		public Class<?> getSupportedClass() {
+			return Object.class;
+		}
+
+	}
+
+	private static class ClosingStream extends ByteArrayOutputStream {
+
+		private int closed = 0;
+
+		@Override
+		public void close() throws IOException {
+			closed++;
+			super.close();
+		}
+
+	}
+
+}
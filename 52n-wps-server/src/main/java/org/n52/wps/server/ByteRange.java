@@ -0,0 +1,124 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An inclusive range of bytes of a stored result, as requested by a HTTP
+ * <code>Range</code> header.
+ */
+final class ByteRange {
+
+    private static final String UNIT = "bytes=";
+
+    private final long start;
+
+    private final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @return the value of the <code>Content-Range</code> header for this
+     *         range of a result with the given length
+     */
+    String toContentRange(long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * Parses the value of a <code>Range</code> header.
+     * 
+     * @param header
+     *            the header value, may be <code>null</code>
+     * @param length
+     *            the length of the result
+     * @return <code>null</code> if the header is missing or malformed, so
+     *         that it has to be ignored, an empty list if none of the ranges
+     *         can be satisfied, the satisfiable ranges in the order of the
+     *         header otherwise
+     */
+    static List<ByteRange> parse(String header, long length) {
+        if (header == null || !header.startsWith(UNIT)) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<ByteRange>();
+        for (String spec : header.substring(UNIT.length()).split(",")) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.length() == 0) {
+                    // suffix range, the last n bytes
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    if (suffixLength > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(length - suffixLength, 0), length - 1));
+                    }
+                } else {
+                    long start = Long.parseLong(first);
+                    long end = last.length() == 0 ? length - 1 : Long.parseLong(last);
+                    if (start < 0 || (last.length() > 0 && end < start)) {
+                        return null;
+                    }
+                    if (start < length) {
+                        ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges.isEmpty() ? Collections.<ByteRange> emptyList() : ranges;
+    }
+
+}
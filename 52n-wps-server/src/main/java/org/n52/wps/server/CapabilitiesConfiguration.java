@@ -50,6 +50,7 @@ import net.opengis.wps.x100.ProcessOfferingsDocument.ProcessOfferings;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.handler.ResponseCache;
 import org.n52.wps.webapp.api.ConfigurationManager;
 import org.n52.wps.webapp.entities.Server;
 import org.slf4j.Logger;
@@ -182,6 +183,7 @@ public class CapabilitiesConfiguration {
                 return getInstance(false);
             }
             loadingStrategy = strategy;
+            ResponseCache.getInstance().invalidate();
             return getInstance(true);
         }
         finally {
@@ -334,6 +336,7 @@ public class CapabilitiesConfiguration {
      */
     public static void reloadSkeleton() throws XmlException, IOException {
         getInstance(true);
+        ResponseCache.getInstance().invalidate();
     }
 
     /**
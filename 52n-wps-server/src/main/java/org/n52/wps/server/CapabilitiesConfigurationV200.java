@@ -63,6 +63,7 @@ import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.handler.ResponseCache;
 import org.n52.wps.webapp.api.ConfigurationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -195,6 +196,7 @@ public class CapabilitiesConfigurationV200 {
                 return getInstance(false);
             }
             loadingStrategy = strategy;
+            ResponseCache.getInstance().invalidate();
             return getInstance(true);
         }
         finally {
@@ -362,6 +364,7 @@ public class CapabilitiesConfigurationV200 {
      */
     public static void reloadSkeleton() throws XmlException, IOException {
         getInstance(true);
+        ResponseCache.getInstance().invalidate();
     }
 
     /**
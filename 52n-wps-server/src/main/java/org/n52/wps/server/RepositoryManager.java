@@ -32,11 +32,18 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.webapp.api.ClassKnowingModule;
+import org.n52.wps.webapp.api.ConfigurationManager;
 import org.n52.wps.webapp.api.ConfigurationModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +57,10 @@ public class RepositoryManager {
 	private static RepositoryManager instance;
 	private static Logger LOGGER = LoggerFactory.getLogger(RepositoryManager.class);
 	private Map<String, IAlgorithmRepository> repositories;
+	// replaced as a whole, lookups never lock
+	private volatile RepositorySnapshot snapshot;
+	// incremented whenever a new snapshot is published
+	private volatile long revision = 0;
 	private ProcessIDRegistry globalProcessIDs = ProcessIDRegistry.getInstance();
 	private UpdateThread updateThread;
 	
@@ -101,9 +112,14 @@ public class RepositoryManager {
 			
 			if(repository instanceof ClassKnowingModule){
 				repositoryClassName = ((ClassKnowingModule)repository).getClassName();
-				repositoryNames.add(repositoryClassName);
 				if(!repositories.containsKey(repositoryClassName)){
-					loadRepository(repository.getClass().getCanonicalName(), repositoryClassName, repositoryMap);
+					IAlgorithmRepository algorithmRepository = loadRepository(repository.getClass().getCanonicalName(), repositoryClassName, repositoryMap);
+					if(algorithmRepository != null){
+						repositories.put(repositoryClassName, algorithmRepository);
+					}
+				}
+				if(repositories.containsKey(repositoryClassName)){
+					repositoryNames.add(repositoryClassName);
 				}
 			}
 			
@@ -112,31 +128,111 @@ public class RepositoryManager {
 		return repositoryNames;
 	}
 	
-    private void loadAllRepositories(){
-        repositories = new HashMap<String, IAlgorithmRepository>();
-        LOGGER.debug("Loading all repositories: {} (doing a gc beforehand...)", repositories);//FIXME not sure log statement makes a lot of sense
+	/**
+	 * Loads all repositories concurrently, as some of them take long to
+	 * initialize. The previous repositories are used until all are loaded.
+	 */
+    private synchronized void loadAllRepositories(){
+        LOGGER.debug("Loading all repositories.");
 
-        System.gc();
+		final Map<String, ConfigurationModule> repositoryMap = WPSConfig.getInstance().getRegisteredAlgorithmRepositoryConfigModules();
+		Map<String, Future<IAlgorithmRepository>> loadingRepositories = new LinkedHashMap<String, Future<IAlgorithmRepository>>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, repositoryMap.size()));
+		try {
+			for (final String repositoryName : repositoryMap.keySet()) {
 
-		Map<String, ConfigurationModule> repositoryMap = WPSConfig.getInstance().getRegisteredAlgorithmRepositoryConfigModules();
-			
-		for (String repositoryName : repositoryMap.keySet()) {
+				ConfigurationModule repository = repositoryMap.get(repositoryName);
 
-			ConfigurationModule repository = repositoryMap.get(repositoryName);
-			
-			String repositoryClassName = "";
+				if (repository instanceof ClassKnowingModule) {
+					final String repositoryClassName = ((ClassKnowingModule) repository)
+							.getClassName();
+					loadingRepositories.put(repositoryClassName, executor.submit(new Callable<IAlgorithmRepository>() {
+						public IAlgorithmRepository call() {
+							return loadRepository(repositoryName, repositoryClassName, repositoryMap);
+						}
+					}));
+				}else{
+					LOGGER.warn("Repository {} not instanceof ClassKnowingModule. Will not load it.", repositoryName);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
 
-			if (repository instanceof ClassKnowingModule) {
-				repositoryClassName = ((ClassKnowingModule) repository)
-						.getClassName();				
-				 loadRepository(repositoryName, repositoryClassName, repositoryMap);
-			}else{
-				LOGGER.warn("Repository {} not instanceof ClassKnowingModule. Will not load it.", repositoryName);
+		Map<String, IAlgorithmRepository> loadedRepositories = new HashMap<String, IAlgorithmRepository>();
+		for (Map.Entry<String, Future<IAlgorithmRepository>> loadingRepository : loadingRepositories.entrySet()) {
+			try {
+				IAlgorithmRepository algorithmRepository = loadingRepository.getValue().get();
+				if (algorithmRepository != null) {
+					loadedRepositories.put(loadingRepository.getKey(), algorithmRepository);
+				}
+			} catch (ExecutionException e) {
+				LOGGER.warn("An error occured while registering AlgorithmRepository: " + loadingRepository.getKey(),
+						e.getCause());
+			} catch (InterruptedException e) {
+				LOGGER.warn("Interrupted while loading AlgorithmRepository: {}", loadingRepository.getKey());
+				Thread.currentThread().interrupt();
 			}
 		}
+		repositories = loadedRepositories;
+		updateSnapshot();
     }
+
+	/**
+	 * Builds a new snapshot of the active repositories and publishes it.
+	 * Lookups running concurrently keep using the previous snapshot.
+	 */
+	private synchronized RepositorySnapshot updateSnapshot() {
+		// read the revision first, a change during the update leads to another one
+		long configurationRevision = getConfigurationRevision();
+		List<IAlgorithmRepository> activeRepositories = new ArrayList<IAlgorithmRepository>();
+		for (String repositoryClassName : getRepositoryNames()) {
+			activeRepositories.add(repositories.get(repositoryClassName));
+		}
+		RepositorySnapshot newSnapshot = new RepositorySnapshot(configurationRevision, activeRepositories);
+		snapshot = newSnapshot;
+		this.revision++;
+		return newSnapshot;
+	}
+
+	/**
+	 * @return the current snapshot, updated first if the configuration has
+	 *         changed since it was taken
+	 */
+	private RepositorySnapshot getSnapshot() {
+		RepositorySnapshot current = snapshot;
+		if (current.getConfigurationRevision() == getConfigurationRevision()) {
+			return current;
+		}
+		synchronized (this) {
+			current = snapshot;
+			if (current.getConfigurationRevision() == getConfigurationRevision()) {
+				return current;
+			}
+			LOGGER.debug("Configuration changed, updating the repository snapshot.");
+			return updateSnapshot();
+		}
+	}
+
+	/**
+	 * Updates the snapshot after processes were added to or removed from a
+	 * repository at runtime, e.g. by a transactional deployment. Cached
+	 * descriptions and bindings of the processes are dropped.
+	 */
+	public void processesChanged() {
+		LOGGER.debug("Processes changed, updating the repository snapshot.");
+		updateSnapshot();
+	}
+
+	private static long getConfigurationRevision() {
+		ConfigurationManager configurationManager = WPSConfig.getInstance().getConfigurationManager();
+		if (configurationManager == null) {
+			return 0;
+		}
+		return configurationManager.getConfigurationServices().getConfigurationRevision();
+	}
 	
-	private void loadRepository(String repositoryName, String repositoryClassName, Map<String, ConfigurationModule> repositoryMap) {
+	private IAlgorithmRepository loadRepository(String repositoryName, String repositoryClassName, Map<String, ConfigurationModule> repositoryMap) {
 		LOGGER.debug("Loading repository: {}", repositoryName);
 
 		if(repositoryMap == null){
@@ -148,7 +244,7 @@ public class RepositoryManager {
 
 		if (repository.isActive() == false) {
 			LOGGER.warn("Repository {} not active. Will not load it.", repositoryName);
-			return;
+			return null;
 		}
 
 		try {
@@ -162,7 +258,7 @@ public class RepositoryManager {
 			
 			LOGGER.info("Algorithm Repository {} initialized",
 					repositoryClassName);
-			repositories.put(repositoryClassName, algorithmRepository);
+			return algorithmRepository;
 		} catch (InstantiationException e) {
 			LOGGER.warn(
 					"An error occured while registering AlgorithmRepository: {}",
@@ -185,6 +281,7 @@ public class RepositoryManager {
 					"An error occured while registering AlgorithmRepository: {}",
 					repositoryClassName, e.getMessage());
 		}
+		return null;
 	}
     
 	public static RepositoryManager getInstance(){
@@ -220,14 +317,11 @@ public class RepositoryManager {
 	 * @throws Exception
 	 */
 	public IAlgorithm getAlgorithm(String className){
-		
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-			if(repository.containsAlgorithm(className)){
-				return repository.getAlgorithm(className);
-			}
+		IAlgorithmRepository repository = getRepositoryForAlgorithm(className);
+		if(repository == null){
+			return null;
 		}
-		return null;
+		return repository.getAlgorithm(className);
 	}
 	
 	/**
@@ -235,45 +329,28 @@ public class RepositoryManager {
 	 * @return allAlgorithms
 	 */
 	public List<String> getAlgorithms(){
-		List<String> allAlgorithmNamesCollection = new ArrayList<String>();
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-			allAlgorithmNamesCollection.addAll(repository.getAlgorithmNames());
-		}
-		return allAlgorithmNamesCollection;
-		
+		return new ArrayList<String>(getSnapshot().getAlgorithmNames());
 	}
 
 	public boolean containsAlgorithm(String algorithmName) {
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-			if(repository.containsAlgorithm(algorithmName)){
-				return true;
-			}
-		}
-		return false;
+		return getRepositoryForAlgorithm(algorithmName) != null;
 	}
 	
+	/**
+	 * Processes are looked up in the current snapshot only, repositories are
+	 * not asked. Processes added or removed at runtime become visible with
+	 * the next snapshot, see {@link #processesChanged()}.
+	 */
 	public IAlgorithmRepository getRepositoryForAlgorithm(String algorithmName){
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-			if(repository.containsAlgorithm(algorithmName)){
-				return repository;
-			}
-		}
-		return null;
+		return getSnapshot().getRepository(algorithmName);
 	}
 	
 	public Class<?> getInputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
-		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
-		return algorithm.getInputDataType(inputIdentifier);
-		
+		return getSnapshot().getInputDataType(algorithmIdentifier, inputIdentifier);
 	}
 	
 	public Class<?> getOutputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
-		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
-		return algorithm.getOutputDataType(inputIdentifier);
-		
+		return getSnapshot().getOutputDataType(algorithmIdentifier, inputIdentifier);
 	}
 	
 	public boolean registerAlgorithm(String id, IAlgorithmRepository repository){
@@ -291,32 +368,28 @@ public class RepositoryManager {
 	}
 	
 	public IAlgorithmRepository getAlgorithmRepository(String name){
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-		   if(repository.getClass().getName().equals(name)){
-			   return repository;
-		  }
-	  }
-	return null;
+		return getSnapshot().getRepositoryForClassName(name);
 	}
 
 	public IAlgorithmRepository getRepositoryForClassName(
 			String className) {
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-			if(repository.getClass().getName().equals(className)){
-				return repository;
-			}
-		}
-		return null;
+		return getSnapshot().getRepositoryForClassName(className);
+	}
+	
+	/**
+	 * @return a number that changes whenever the repositories are reloaded
+	 *         or the configuration is changed, i.e. whenever the offered
+	 *         processes or their descriptions may have changed
+	 */
+	public long getRevision(){
+		getSnapshot();
+		return revision;
 	}
 	
 	public ProcessDescription getProcessDescription(String processClassName){
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
-			if(repository.containsAlgorithm(processClassName)){
-				return repository.getProcessDescription(processClassName);
-			}
+		ProcessDescription description = getSnapshot().getProcessDescription(processClassName);
+		if(description != null){
+			return description;
 		}
 		return new ProcessDescription();
 	}
@@ -367,8 +440,7 @@ public class RepositoryManager {
 
 	public void shutdown() {
         LOGGER.debug("Shutting down all repositories..");
-		for (String repositoryClassName : getRepositoryNames()) {
-			IAlgorithmRepository repository = repositories.get(repositoryClassName);
+		for (IAlgorithmRepository repository : getSnapshot().getRepositories()) {
 			repository.shutdown();
 		}
 	}
@@ -0,0 +1,185 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable view of the active algorithm repositories and the processes they
+ * offer. The {@link RepositoryManager} builds a new snapshot whenever the
+ * repositories are reloaded or the configuration changes and publishes it
+ * atomically, so lookups need neither locking nor a scan over all
+ * repositories.
+ *
+ * Process descriptions and binding types are resolved on first use and kept
+ * for the lifetime of the snapshot.
+ */
+final class RepositorySnapshot {
+
+	private final long configurationRevision;
+
+	private final List<IAlgorithmRepository> repositories;
+
+	private final Map<String, IAlgorithmRepository> repositoriesByClassName;
+
+	private final Map<String, ProcessEntry> processes;
+
+	private final List<String> algorithmNames;
+
+	/**
+	 * @param configurationRevision
+	 *            the configuration revision the repositories were taken from
+	 * @param repositories
+	 *            the active repositories in lookup order, a process offered by
+	 *            several repositories is taken from the first one
+	 */
+	RepositorySnapshot(long configurationRevision, List<IAlgorithmRepository> repositories) {
+		this.configurationRevision = configurationRevision;
+		this.repositories = Collections.unmodifiableList(new ArrayList<IAlgorithmRepository>(repositories));
+		Map<String, IAlgorithmRepository> byClassName = new HashMap<String, IAlgorithmRepository>();
+		Map<String, ProcessEntry> entries = new HashMap<String, ProcessEntry>();
+		List<String> names = new ArrayList<String>();
+		for (IAlgorithmRepository repository : repositories) {
+			if (!byClassName.containsKey(repository.getClass().getName())) {
+				byClassName.put(repository.getClass().getName(), repository);
+			}
+			for (String name : repository.getAlgorithmNames()) {
+				if (!entries.containsKey(name)) {
+					entries.put(name, new ProcessEntry(repository));
+				}
+				names.add(name);
+			}
+		}
+		this.repositoriesByClassName = byClassName;
+		this.processes = entries;
+		this.algorithmNames = Collections.unmodifiableList(names);
+	}
+
+	long getConfigurationRevision() {
+		return configurationRevision;
+	}
+
+	/**
+	 * @return the active repositories in lookup order
+	 */
+	List<IAlgorithmRepository> getRepositories() {
+		return repositories;
+	}
+
+	IAlgorithmRepository getRepositoryForClassName(String className) {
+		return repositoriesByClassName.get(className);
+	}
+
+	/**
+	 * @return the names of all processes, in repository order
+	 */
+	List<String> getAlgorithmNames() {
+		return algorithmNames;
+	}
+
+	/**
+	 * @return the repository offering the process or <code>null</code> if the
+	 *         process was not offered when the snapshot was taken
+	 */
+	IAlgorithmRepository getRepository(String processID) {
+		ProcessEntry entry = processes.get(processID);
+		return entry == null ? null : entry.repository;
+	}
+
+	/**
+	 * @return the description of the process or <code>null</code> if the
+	 *         process was not offered when the snapshot was taken
+	 */
+	ProcessDescription getProcessDescription(String processID) {
+		ProcessEntry entry = processes.get(processID);
+		if (entry == null) {
+			return null;
+		}
+		ProcessDescription description = entry.description;
+		if (description == null) {
+			// concurrent callers may both ask the repository, which is harmless
+			description = entry.repository.getProcessDescription(processID);
+			entry.description = description;
+		}
+		return description;
+	}
+
+	/**
+	 * @return the binding class of the input, <code>null</code> if the process
+	 *         was not offered when the snapshot was taken
+	 */
+	Class<?> getInputDataType(String processID, String inputID) {
+		ProcessEntry entry = processes.get(processID);
+		return entry == null ? null : entry.getDataType(processID, inputID, true);
+	}
+
+	/**
+	 * @return the binding class of the output, <code>null</code> if the process
+	 *         was not offered when the snapshot was taken
+	 */
+	Class<?> getOutputDataType(String processID, String outputID) {
+		ProcessEntry entry = processes.get(processID);
+		return entry == null ? null : entry.getDataType(processID, outputID, false);
+	}
+
+	private static class ProcessEntry {
+
+		private final IAlgorithmRepository repository;
+
+		private final Map<String, Class<?>> inputTypes = new ConcurrentHashMap<String, Class<?>>();
+
+		private final Map<String, Class<?>> outputTypes = new ConcurrentHashMap<String, Class<?>>();
+
+		private volatile ProcessDescription description;
+
+		ProcessEntry(IAlgorithmRepository repository) {
+			this.repository = repository;
+		}
+
+		Class<?> getDataType(String processID, String id, boolean input) {
+			Map<String, Class<?>> types = input ? inputTypes : outputTypes;
+			Class<?> type = types.get(id);
+			if (type == null) {
+				IAlgorithm algorithm = repository.getAlgorithm(processID);
+				type = input ? algorithm.getInputDataType(id) : algorithm.getOutputDataType(id);
+				if (type != null) {
+					types.put(id, type);
+				}
+			}
+			return type;
+		}
+
+	}
+
+}
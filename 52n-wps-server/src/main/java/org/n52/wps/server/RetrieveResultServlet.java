@@ -28,19 +28,32 @@
  */
 package org.n52.wps.server;
 
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.n52.wps.commons.MIMEUtil;
+import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.commons.XMLUtil;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.database.IDatabase;
@@ -64,11 +77,22 @@ public class RetrieveResultServlet {
     // This is required for URL generation for response documents.
     public final static String SERVLET_PATH = "RetrieveResultServlet";
 
-    // TODO: in future parameterize
-    private final boolean indentXML = false;
-    
     private final int uuid_length = 36;
 
+    // results stored by the FlatFileDatabase with this suffix are gzipped
+    private final static String SUFFIX_GZIP = ".gz";
+
+    // a Range header with more ranges is ignored and the whole result is sent
+    private final static int MAX_RANGES = 16;
+
+    // request attributes of Tomcat to let the connector send a file without copying it
+    private final static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final static String CRLF = "\r\n";
+
     public RetrieveResultServlet() {
         LOGGER.debug("NEW {}", this);
     }
@@ -92,22 +116,25 @@ public class RetrieveResultServlet {
 
         if (StringUtils.isEmpty(id)) {
             errorResponse("id parameter missing", response);
+        } else if (!isIDValid(id)) {
+            errorResponse("id parameter not valid", response);
         } else {
 
-        	if(!isIDValid(id)){
-        		errorResponse("id parameter not valid", response);
-        	}
-        	
             IDatabase db = DatabaseFactory.getDatabase();
             String mimeType = db.getMimeTypeForStoreResponse(id);
             long contentLength = db.getContentLengthForStoreResponse(id);
-            
+            File file = db.lookupResponseAsFile(id);
+            if (file != null && !file.isFile()) {
+                file = null;
+            }
+
             InputStream inputStream = null;
-            OutputStream outputStream = null;
             try {
-                inputStream = db.lookupResponse(id);
+                if (file == null) {
+                    inputStream = db.lookupResponse(id);
+                }
 
-                if (inputStream == null) {
+                if (file == null && inputStream == null) {
                     errorResponse("id " + id + " is unknown to server", response);
                 } else if (mimeType == null) {
                     errorResponse("Unable to determine mime-type for id " + id, response);
@@ -129,46 +156,147 @@ public class RetrieveResultServlet {
 
                     if ("xml".equals(suffix)) {
 
-                        // NOTE:  We don't set "Content-Length" header, xml may be modified
-
                         // need these to work around aggressive IE 8 caching.
                         response.addHeader("Cache-Control", "no-cache, no-store");
                         response.addHeader("Pragma", "no-cache");
                         response.addHeader("Expires", "-1");
 
+                        ResultSource source = new ResultSource(db, id, file, inputStream, contentLength, false);
                         try {
-                            outputStream = response.getOutputStream();
-                        } catch (IOException e) {
-                            throw new IOException("Error obtaining output stream for response", e);
+                            writeXMLResult(response, source);
+                        } finally {
+                            source.close();
                         }
-                        copyResponseAsXML(inputStream, outputStream, useAttachment || indentXML, id);
                     } else {
-
-                        if (contentLength > -1) {
-                            // Can't use response.setContentLength(...) as it accepts an int (max of 2^31 - 1) ?!
-                            // response.setContentLength(contentLength);
-                            response.setHeader("Content-Length", Long.toString(contentLength));
-                        } else {
-                            LOGGER.warn("Content-Length unknown for response to id {}", id);
-                        }
-
+                        ResultSource source = new ResultSource(db, id, file, inputStream, contentLength,
+                                file != null && file.getName().endsWith(SUFFIX_GZIP)
+                                        && request.getHeader("Range") == null && acceptsGzip(request));
                         try {
-                            outputStream = response.getOutputStream();
-                        } catch (IOException e) {
-                            throw new IOException("Error obtaining output stream for response", e);
+                            writeResult(request, response, source, mimeType);
+                        } finally {
+                            source.close();
                         }
-                        copyResponseStream(inputStream, outputStream, id, contentLength);
                     }
                 }
             } catch (Exception e) {
                 logException(e);
             } finally {
                 IOUtils.closeQuietly(inputStream);
-                IOUtils.closeQuietly(outputStream);
             }
         }
     }
 
+    /**
+     * Writes an XML result as it is stored. It is only parsed to indent it if
+     * that is configured for debugging.
+     */
+    protected void writeXMLResult(HttpServletResponse response, ResultSource source) throws IOException {
+        String id = source.getId();
+        if (WPSConfig.getInstance().getServerConfigurationModule().isIndentXML()) {
+            // NOTE:  We don't set "Content-Length" header, xml is modified
+            copyResponseAsXML(source.open(), getOutputStream(response), true, id);
+        } else if (source.hasFile() && source.getLength() > -1) {
+            // files are replaced as a whole, so the length is the one of the sent file
+            long length = source.getLength();
+            response.setHeader("Content-Length", Long.toString(length));
+            source.copy(0, length, getOutputStream(response));
+            LOGGER.info("{} bytes written in response to id {}", length, id);
+        } else {
+            copyResponseStream(source.open(), getOutputStream(response), id, -1);
+        }
+    }
+
+    /**
+     * Writes a result that is not XML. A strong entity tag allows clients to
+     * revalidate the result, byte ranges of it can be requested to resume
+     * downloads. Results stored gzipped are sent as they are to clients
+     * accepting that encoding.
+     */
+    protected void writeResult(HttpServletRequest request, HttpServletResponse response, ResultSource source,
+            String mimeType) throws IOException {
+        String id = source.getId();
+        long length = source.getLength();
+        String eTag = source.getETag();
+
+        if (source.isGzipped()) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        response.setHeader("ETag", eTag);
+        if (matchesETag(request.getHeader("If-None-Match"), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (source.isEncoded()) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+
+        List<ByteRange> ranges = null;
+        if (length > -1) {
+            response.setHeader("Accept-Ranges", "bytes");
+            String ifRange = request.getHeader("If-Range");
+            if (ifRange == null || ifRange.trim().equals(eTag)) {
+                ranges = ByteRange.parse(request.getHeader("Range"), length);
+            }
+            if (ranges != null && ranges.size() > MAX_RANGES) {
+                LOGGER.info("Ignoring {} ranges requested for id {}", ranges.size(), id);
+                ranges = null;
+            }
+        } else {
+            LOGGER.warn("Content-Length unknown for response to id {}", id);
+        }
+
+        if (ranges == null) {
+            if (length > -1) {
+                // Can't use response.setContentLength(...) as it accepts an int (max of 2^31 - 1) ?!
+                response.setHeader("Content-Length", Long.toString(length));
+                if (source.sendFile(request, 0, length)) {
+                    LOGGER.info("{} bytes handed to the connector in response to id {}", length, id);
+                    return;
+                }
+                source.copy(0, length, getOutputStream(response));
+                LOGGER.info("{} bytes written in response to id {}", length, id);
+            } else {
+                copyResponseStream(source.open(), getOutputStream(response), id, length);
+            }
+        } else if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+        } else if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.toContentRange(length));
+            response.setHeader("Content-Length", Long.toString(range.getLength()));
+            if (!source.sendFile(request, range.getStart(), range.getLength())) {
+                source.copy(range.getStart(), range.getLength(), getOutputStream(response));
+            }
+            LOGGER.info("{} of {} bytes written in response to id {}", new Object[] {range.getLength(), length, id});
+        } else {
+            String boundary = UUID.randomUUID().toString();
+            List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+            long partLength = 0;
+            for (ByteRange range : ranges) {
+                byte[] partHeader = ("--" + boundary + CRLF
+                        + "Content-Type: " + mimeType + CRLF
+                        + "Content-Range: " + range.toContentRange(length) + CRLF + CRLF).getBytes("ISO-8859-1");
+                partHeaders.add(partHeader);
+                partLength += partHeader.length + range.getLength() + CRLF.length();
+            }
+            byte[] end = ("--" + boundary + "--" + CRLF).getBytes("ISO-8859-1");
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            response.setHeader("Content-Length", Long.toString(partLength + end.length));
+            OutputStream outputStream = getOutputStream(response);
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                outputStream.write(partHeaders.get(i));
+                source.copy(range.getStart(), range.getLength(), outputStream);
+                outputStream.write(CRLF.getBytes("ISO-8859-1"));
+            }
+            outputStream.write(end);
+            LOGGER.info("{} ranges written in response to id {}", ranges.size(), id);
+        }
+    }
+
     protected void errorResponse(String error, HttpServletResponse response) throws IOException {
         response.setContentType("text/html");
         response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -212,6 +340,51 @@ public class RetrieveResultServlet {
         }
     }
 
+    private OutputStream getOutputStream(HttpServletResponse response) throws IOException {
+        try {
+            return response.getOutputStream();
+        } catch (IOException e) {
+            throw new IOException("Error obtaining output stream for response", e);
+        }
+    }
+
+    private boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].replace(" ", "");
+                    if (parameter.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void logException(Exception exception) {
         StringBuilder errorBuilder = new StringBuilder(exception.getMessage());
         Throwable cause = getRootCause(exception);
@@ -265,4 +438,166 @@ public class RetrieveResultServlet {
 			return false;
 		}
 	}
+
+    /**
+     * The bytes of a stored result. Results stored as files are copied by
+     * their file channel, other results are read from the database.
+     */
+    protected static class ResultSource {
+
+        private final IDatabase db;
+
+        private final String id;
+
+        private final File file;
+
+        private final long contentLength;
+
+        // the file is gzipped and sent as it is
+        private final boolean encoded;
+
+        private InputStream stream;
+
+        private long position = 0;
+
+        private FileChannel channel;
+
+        ResultSource(IDatabase db, String id, File file, InputStream stream, long contentLength, boolean encoded) {
+            this.db = db;
+            this.id = id;
+            this.file = file;
+            this.stream = stream;
+            this.contentLength = contentLength;
+            this.encoded = encoded;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        boolean hasFile() {
+            return file != null;
+        }
+
+        boolean isGzipped() {
+            return file != null && file.getName().endsWith(SUFFIX_GZIP);
+        }
+
+        boolean isEncoded() {
+            return encoded;
+        }
+
+        /**
+         * @return the length of the sent bytes, -1 if unknown
+         */
+        long getLength() {
+            return file != null && (encoded || !isGzipped()) ? file.length() : contentLength;
+        }
+
+        /**
+         * @return a strong entity tag, distinct for the gzipped and the
+         *         decoded representation of a result
+         */
+        String getETag() {
+            StringBuilder eTag = new StringBuilder("\"").append(id);
+            if (file != null) {
+                eTag.append('-').append(Long.toHexString(file.lastModified()));
+            }
+            if (encoded) {
+                eTag.append("-gzip");
+            }
+            return eTag.append('"').toString();
+        }
+
+        /**
+         * @return an unread stream of the decoded result
+         */
+        InputStream open() throws IOException {
+            if (stream != null && position == 0) {
+                return stream;
+            }
+            IOUtils.closeQuietly(stream);
+            position = 0;
+            if (file == null) {
+                stream = db.lookupResponse(id);
+                if (stream == null) {
+                    throw new IOException("Response for id " + id + " disappeared");
+                }
+            } else if (isGzipped() && !encoded) {
+                stream = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+            } else {
+                stream = new BufferedInputStream(new FileInputStream(file));
+            }
+            return stream;
+        }
+
+        /**
+         * Lets Tomcat send the bytes of the file from the kernel, if the
+         * connector supports it.
+         * 
+         * @return <code>false</code> if the bytes have to be copied
+         */
+        boolean sendFile(HttpServletRequest request, long start, long length) {
+            if (file == null || (isGzipped() && !encoded)
+                    || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                return false;
+            }
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, Long.valueOf(start));
+            request.setAttribute(SENDFILE_END, Long.valueOf(start + length));
+            return true;
+        }
+
+        /**
+         * Copies a range of the sent bytes.
+         */
+        void copy(long start, long length, OutputStream out) throws IOException {
+            try {
+                if (file != null && (encoded || !isGzipped())) {
+                    transfer(start, length, out);
+                    return;
+                }
+                if (stream == null || start < position) {
+                    // a previous range was behind this one
+                    open();
+                }
+                InputStream in = stream;
+                IOUtils.skipFully(in, start - position);
+                position = start;
+                BoundedInputStream range = new BoundedInputStream(in, length);
+                range.setPropagateClose(false);
+                long copied = IOUtils.copyLarge(range, out);
+                position += copied;
+                if (copied < length) {
+                    throw new EOFException(String.format("Response for id %s ended after %d bytes", id, position));
+                }
+            } catch (IOException e) {
+                throw new IOException(String.format("Error writing bytes %d-%d of response for id %s", start,
+                        start + length - 1, id), e);
+            }
+        }
+
+        private void transfer(long start, long length, OutputStream out) throws IOException {
+            if (channel == null) {
+                channel = new RandomAccessFile(file, "r").getChannel();
+            }
+            WritableByteChannel target = Channels.newChannel(out);
+            long end = start + length;
+            long transferred = start;
+            while (transferred < end) {
+                long count = channel.transferTo(transferred, end - transferred, target);
+                if (count <= 0) {
+                    throw new EOFException(String.format("File of response for id %s ended after %d bytes", id,
+                            transferred));
+                }
+                transferred += count;
+            }
+        }
+
+        void close() {
+            IOUtils.closeQuietly(stream);
+            IOUtils.closeQuietly(channel);
+        }
+    }
+
 }
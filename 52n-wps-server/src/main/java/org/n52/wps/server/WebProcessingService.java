@@ -31,13 +31,10 @@ package org.n52.wps.server;
 // FvK: added Property Change Listener support
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringWriter;
-import java.net.URLDecoder;
 import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
@@ -55,7 +52,11 @@ import org.n52.wps.io.GeneratorFactory;
 import org.n52.wps.io.ParserFactory;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.database.IDatabase;
+import org.n52.wps.server.handler.FormURLDecodingInputStream;
+import org.n52.wps.server.handler.LimitedInputStream;
 import org.n52.wps.server.handler.RequestHandler;
+import org.n52.wps.server.handler.ResponseCache.CachedResponse;
+import org.n52.wps.server.request.strategy.ReferenceHttpClient;
 import org.n52.wps.util.XMLBeansHelper;
 import org.n52.wps.webapp.api.ConfigurationCategory;
 import org.n52.wps.webapp.api.ConfigurationManager;
@@ -209,9 +210,15 @@ public class WebProcessingService implements ServletContextAware, ServletConfigA
             String mimeType = handler.getResponseMimeType();
             requestedVersion = handler.getRequestedVersion();         
             res.setContentType(mimeType);
-            handler.handle();
+            CachedResponse cachedResponse = handler.getCachedResponse();
+            if (cachedResponse != null) {
+                writeCachedResponse(req, res, out, cachedResponse, true);
+            }
+            else {
+                handler.handle();
 
-            res.setStatus(HttpServletResponse.SC_OK);
+                res.setStatus(HttpServletResponse.SC_OK);
+            }
         }
         catch (ExceptionReport e) {
             handleException(e, res, requestedVersion);
@@ -231,7 +238,7 @@ public class WebProcessingService implements ServletContextAware, ServletConfigA
 
     @RequestMapping(method = RequestMethod.POST)
     protected void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
-        BufferedReader reader = null;
+        LimitedInputStream limitedStream = null;
 
         String requestedVersion = null;
         
@@ -248,59 +255,50 @@ public class WebProcessingService implements ServletContextAware, ServletConfigA
                 ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
                         + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
                 handleException(er, res, "2.0.0");
+                return;
             }
 
             LOGGER.debug("Received POST: Content-Type = " + contentType + ", Character-Encoding = " + characterEncoding
                     + ", Content-Length = " + contentLength);
 
-            int requestSize = 0;
-
-            StringWriter writer = contentLength > 0 ? new StringWriter(contentLength) : new StringWriter();
-            reader = req.getReader();
-            char[] buffer = new char[8192];
-            int read;
-            while ( (read = reader.read(buffer)) != -1 && requestSize < MAXIMUM_REQUEST_SIZE) {
-                writer.write(buffer, 0, read);
-                requestSize += read;
-            }
-
-            LOGGER.debug("POST request contained  " + requestSize + " characters");
-
-            // Protect against denial of service attacks.
-            if (requestSize >= MAXIMUM_REQUEST_SIZE && reader.read() > -1) {
-                LOGGER.warn("POST request rejected, request size of " + requestSize + " too large.");
-                ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
-                        + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
-                handleException(er, res, "2.0.0");
-            }
-
-            String documentString = writer.toString();
+            // Protect against denial of service attacks, the body is never buffered as a whole.
+            limitedStream = new LimitedInputStream(req.getInputStream(), MAXIMUM_REQUEST_SIZE);
+            InputStream requestStream = limitedStream;
 
             // Perform URL decoding, if necessary
             if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
-                if (documentString.startsWith(SPECIAL_XML_POST_VARIABLE + "=")) {
-                    // This is a hack to permit xml to be easily submitted via a form POST.
-                    // By convention, we are allowing users to post xml if they name it
-                    // with a POST parameter "request" although this is not
-                    // valid per the specification.
-                    documentString = documentString.substring(SPECIAL_XML_POST_VARIABLE.length() + 1);
-                    LOGGER.debug("POST request form variable removed");
-                }
-                documentString = URLDecoder.decode(documentString, characterEncoding);
-                LOGGER.debug("Decoded of POST:\n" + documentString + "\n");
+                // This is a hack to permit xml to be easily submitted via a form POST.
+                // By convention, we are allowing users to post xml if they name it
+                // with a POST parameter "request" although this is not
+                // valid per the specification. The form variable is removed while decoding.
+                requestStream = new FormURLDecodingInputStream(limitedStream, SPECIAL_XML_POST_VARIABLE);
+                LOGGER.debug("Decoding URL encoded POST request");
             }
 
-            RequestHandler handler = new RequestHandler(new ByteArrayInputStream(documentString.getBytes("UTF-8")),
-                                                        res.getOutputStream());
+            OutputStream out = res.getOutputStream();
+            RequestHandler handler = new RequestHandler(requestStream, out);
+            LOGGER.debug("POST request contained " + limitedStream.getCount() + " bytes");
             requestedVersion = handler.getRequestedVersion();
             String mimeType = handler.getResponseMimeType();
             res.setContentType(mimeType);
 
-            handler.handle();
+            CachedResponse cachedResponse = handler.getCachedResponse();
+            if (cachedResponse != null) {
+                writeCachedResponse(req, res, out, cachedResponse, false);
+            }
+            else {
+                handler.handle();
 
-            res.setStatus(HttpServletResponse.SC_OK);
+                res.setStatus(HttpServletResponse.SC_OK);
+            }
         }
         catch (ExceptionReport e) {
+            if (limitedStream != null && limitedStream.isLimitExceeded()) {
+                LOGGER.warn("POST request rejected, request size too large.");
+                e = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
+                        + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
+                requestedVersion = "2.0.0";
+            }
             handleException(e, res, requestedVersion);
         }
         catch (Exception e) {
@@ -312,10 +310,56 @@ public class WebProcessingService implements ServletContextAware, ServletConfigA
                 res.flushBuffer();
             }
 
-            if (reader != null) {
-                reader.close();
+            if (limitedStream != null) {
+                limitedStream.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a cached GetCapabilities or DescribeProcess response. It is sent gzip compressed if the client
+     * accepts it and the response is not rewritten by the {@link ResponseURLFilter}. GET requests get the
+     * validators of the response and are answered with 304 Not Modified if the client's copy is still valid.
+     */
+    private static void writeCachedResponse(HttpServletRequest req,
+                                            HttpServletResponse res,
+                                            OutputStream out,
+                                            CachedResponse cachedResponse,
+                                            boolean conditional) throws IOException {
+        // the filter rewrites the content, so it can neither be compressed nor its length be known
+        boolean filtered = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule().isResponseURLFilterEnabled();
+        boolean gzip = !filtered && req.getHeader("Accept-Encoding") != null
+                && req.getHeader("Accept-Encoding").indexOf("gzip") >= 0;
+        res.setHeader("Vary", "Accept-Encoding");
+        if (conditional) {
+            // clients have to revalidate, as processes may change at any time
+            res.setHeader("Cache-Control", "no-cache");
+            res.setHeader("ETag", cachedResponse.getEntityTag(gzip));
+            res.setDateHeader("Last-Modified", cachedResponse.getLastModified());
+            if (cachedResponse.isNotModified(req.getHeader("If-None-Match"), getIfModifiedSince(req))) {
+                res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
             }
         }
+        byte[] content = gzip ? cachedResponse.getGzippedContent() : cachedResponse.getContent();
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+        }
+        if ( !filtered) {
+            res.setContentLength(content.length);
+        }
+        res.setStatus(HttpServletResponse.SC_OK);
+        out.write(content);
+    }
+
+    private static long getIfModifiedSince(HttpServletRequest req) {
+        try {
+            return req.getDateHeader("If-Modified-Since");
+        }
+        catch (IllegalArgumentException e) {
+            LOGGER.debug("Ignoring invalid If-Modified-Since header {}", req.getHeader("If-Modified-Since"));
+            return -1;
+        }
     }
 
     private static void handleException(ExceptionReport exception, HttpServletResponse res, String version) {
@@ -346,6 +390,7 @@ public class WebProcessingService implements ServletContextAware, ServletConfigA
         LOGGER.debug("Finalizing {}", this);
         super.finalize();
         DatabaseFactory.getDatabase().shutdown();
+        ReferenceHttpClient.shutdown();
     }
 
 	@Override
@@ -0,0 +1,656 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import net.opengis.wps.x20.ComplexDataType;
+import net.opengis.wps.x20.InputDescriptionType;
+import net.opengis.wps.x20.ProcessOfferingDocument.ProcessOffering;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.xmlbeans.XmlObject;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.util.XMLBeansHelper;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.stax.WstxOutputFactory;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Parses POST requests while keeping large inline complex data out of
+ * memory. The content of a wps:ComplexData (WPS 1.0.0) element, or of a
+ * wps:Data (WPS 2.0) element of an input the process describes as complex
+ * data, is written to a spool file once it exceeds the configured
+ * threshold. In the parsed request the content is then replaced by a
+ * processing instruction holding the id of the spool file, which the
+ * {@link org.n52.wps.server.request.InputHandler} uses to stream the content
+ * into the parser.
+ *
+ * Spool files are deleted once they are read or if the request is rejected.
+ * Each instance spools into a directory of its own, so servers sharing the
+ * temporary directory do not touch each other's files.
+ */
+public class ComplexDataSpool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ComplexDataSpool.class);
+
+	public static final String PROCESSING_INSTRUCTION_TARGET = "n52-spooled-data";
+
+	private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+	private static final String SPOOL_DIRECTORY_NAME = "wps-inline-data";
+
+	private static final int DEFAULT_THRESHOLD_KB = 1024;
+
+	private static ComplexDataSpool instance;
+
+	private final ConcurrentMap<String, File> spoolFiles = new ConcurrentHashMap<String, File>();
+
+	private final File directory;
+
+	private final int threshold;
+
+	private final XMLOutputFactory outputFactory;
+
+	public static synchronized ComplexDataSpool getInstance() {
+		if (instance == null) {
+			int thresholdKB = DEFAULT_THRESHOLD_KB;
+			Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
+			if (serverConfig != null) {
+				thresholdKB = serverConfig.getInlineDataSpoolThreshold();
+			}
+			File directory = null;
+			try {
+				directory = java.nio.file.Files.createTempDirectory(SPOOL_DIRECTORY_NAME + "-").toFile();
+				// spool files are deleted when read, only the directory is left
+				directory.deleteOnExit();
+			} catch (IOException e) {
+				LOGGER.error("Could not create spool directory, inline data is not spooled.", e);
+				thresholdKB = 0;
+			}
+			instance = new ComplexDataSpool(directory, thresholdKB > 0 ? thresholdKB * 1024 : 0);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param directory
+	 *            the existing directory for the spool files
+	 * @param threshold
+	 *            the size in bytes above which complex data is spooled, 0
+	 *            disables spooling
+	 */
+	public ComplexDataSpool(File directory, int threshold) {
+		this.directory = directory;
+		this.threshold = threshold;
+		this.outputFactory = new WstxOutputFactory();
+		this.outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+		// the content of complex data is a fragment, e.g. plain base64 text
+		this.outputFactory.setProperty(WstxOutputProperties.P_OUTPUT_VALIDATE_STRUCTURE, Boolean.FALSE);
+	}
+
+	/**
+	 * Parses a request into a namespace aware DOM, spooling large complex
+	 * data.
+	 *
+	 * @param is
+	 *            the request
+	 * @return the request document
+	 * @throws SAXException
+	 *             if the request is not well formed
+	 * @throws IOException
+	 *             if the request cannot be read or the spool file cannot be
+	 *             written
+	 */
+	public Document parse(InputStream is) throws SAXException, IOException {
+		TransformerHandler handler;
+		try {
+			handler = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+		} catch (TransformerConfigurationException e) {
+			throw new SAXException(e);
+		}
+		DOMResult result = new DOMResult();
+		handler.setResult(result);
+		parse(is, handler);
+		return (Document) result.getNode();
+	}
+
+	/**
+	 * Parses a request and passes it to a content handler, spooling large
+	 * complex data. Comments and other lexical events are not passed on.
+	 *
+	 * @param is
+	 *            the request
+	 * @param handler
+	 *            the handler building the request object
+	 * @return the ids of the spooled content, to be released if the request
+	 *         is not executed
+	 * @throws SAXException
+	 *             if the request is not well formed
+	 * @throws IOException
+	 *             if the request cannot be read or the spool file cannot be
+	 *             written
+	 */
+	public List<String> parse(InputStream is, ContentHandler handler) throws SAXException, IOException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		SpoolingFilter filter = new SpoolingFilter();
+		boolean parsed = false;
+		try {
+			filter.setParent(factory.newSAXParser().getXMLReader());
+			filter.setContentHandler(handler);
+			filter.parse(new InputSource(is));
+			parsed = true;
+			return filter.spooledIds;
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		} finally {
+			if (!parsed) {
+				filter.abort();
+			}
+		}
+	}
+
+	/**
+	 * @param complexDataNode
+	 *            a wps:ComplexData or wps:Data node
+	 * @return the id of the spooled content, or <code>null</code> if the
+	 *         content is inline
+	 */
+	public static String getSpoolId(Node complexDataNode) {
+		NodeList children = complexDataNode.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node child = children.item(i);
+			if (child.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE
+					&& PROCESSING_INSTRUCTION_TARGET.equals(child.getNodeName())) {
+				return child.getNodeValue().trim();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Opens spooled content. The spool file is deleted when the stream is
+	 * closed.
+	 *
+	 * @param id
+	 *            the id of the spooled content
+	 * @return the content
+	 * @throws IOException
+	 *             if there is no such content
+	 */
+	public InputStream open(final String id) throws IOException {
+		final File file = spoolFiles.get(id);
+		if (file == null) {
+			throw new IOException("No spooled data for id " + id);
+		}
+		return new FilterInputStream(new FileInputStream(file)) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					release(id);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Computes the SHA-256 hash of spooled content, the content is kept.
+	 *
+	 * @param id
+	 *            the id of the spooled content
+	 * @return the hex encoded hash
+	 * @throws IOException
+	 *             if there is no such content
+	 */
+	public String getContentHash(String id) throws IOException {
+		File file = spoolFiles.get(id);
+		if (file == null) {
+			throw new IOException("No spooled data for id " + id);
+		}
+		return Files.hash(file, Hashing.sha256()).toString();
+	}
+
+	/**
+	 * Deletes spooled content.
+	 *
+	 * @param id
+	 *            the id of the spooled content
+	 */
+	public void release(String id) {
+		File file = spoolFiles.remove(id);
+		if (file != null) {
+			FileUtils.deleteQuietly(file);
+		}
+	}
+
+	/**
+	 * Deletes all content spooled while parsing a request that is not
+	 * executed.
+	 *
+	 * @param ids
+	 *            the ids returned by {@link #parse(InputStream, ContentHandler)}
+	 */
+	public void release(List<String> ids) {
+		for (String id : ids) {
+			release(id);
+		}
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Checks whether an input of a WPS 2.0 request holds complex data. The
+	 * wps:Data element of such requests carries literal and bounding box
+	 * data as well, which is only told apart by the process description.
+	 *
+	 * @param processId
+	 *            the identifier of the executed process
+	 * @param inputId
+	 *            the id of the input
+	 * @return <code>true</code> if the process describes the input as
+	 *         complex data
+	 */
+	protected boolean isComplexInput(String processId, String inputId) {
+		XmlObject description = RepositoryManager.getInstance().getProcessDescription(processId)
+				.getProcessDescriptionType(WPSConfig.VERSION_200);
+		if (!(description instanceof ProcessOffering)) {
+			return false;
+		}
+		InputDescriptionType input = XMLBeansHelper.findInputByID(inputId,
+				((ProcessOffering) description).getProcess());
+		return input != null && input.getDataDescription() instanceof ComplexDataType;
+	}
+
+	private static String getPrefix(String qName) {
+		int index = qName.indexOf(':');
+		return index < 0 ? "" : qName.substring(0, index);
+	}
+
+
+	/**
+	 * A recorded SAX event inside complex data.
+	 */
+	private interface Event {
+		void replay(ContentHandler handler) throws SAXException;
+	}
+
+	/**
+	 * Passes all events to the content handler. The content of complex data
+	 * is written to a spool stream and recorded. If the spool stream stays
+	 * below the threshold, the recorded events are passed on at the end of
+	 * the complex data, otherwise they are dropped and replaced by the
+	 * processing instruction.
+	 */
+	private class SpoolingFilter extends XMLFilterImpl {
+
+		private final List<String> spooledIds = new ArrayList<String>();
+
+		private final NamespaceSupport namespaces = new NamespaceSupport();
+
+		private final List<String[]> pendingPrefixes = new ArrayList<String[]>();
+
+		/** ids of the enclosing WPS 2.0 inputs, innermost first */
+		private final LinkedList<String> inputIds = new LinkedList<String>();
+
+		/** the identifier of the process in a WPS 2.0 request */
+		private StringBuilder processId;
+
+		private boolean inProcessId;
+
+		private File spoolFile;
+
+		private DeferredFileOutputStream spoolStream;
+
+		private XMLStreamWriter writer;
+
+		/** recorded content of the complex data, null once spooled */
+		private List<Event> events;
+
+		/** depth inside complex data, the content of complex data is 0 */
+		private int depth;
+
+		@Override
+		public void setProperty(String name, Object value) throws SAXNotRecognizedException,
+				SAXNotSupportedException {
+			if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+				// lexical events would bypass the spooling
+				return;
+			}
+			super.setProperty(name, value);
+		}
+
+		@Override
+		public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
+			pendingPrefixes.add(new String[] { prefix, uri });
+			if (writer == null) {
+				super.startPrefixMapping(prefix, uri);
+			} else {
+				record(new Event() {
+					@Override
+					public void replay(ContentHandler handler) throws SAXException {
+						handler.startPrefixMapping(prefix, uri);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void endPrefixMapping(final String prefix) throws SAXException {
+			if (writer == null) {
+				super.endPrefixMapping(prefix);
+			} else {
+				record(new Event() {
+					@Override
+					public void replay(ContentHandler handler) throws SAXException {
+						handler.endPrefixMapping(prefix);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, Attributes atts)
+				throws SAXException {
+			namespaces.pushContext();
+			for (String[] prefix : pendingPrefixes) {
+				namespaces.declarePrefix(prefix[0], prefix[1]);
+			}
+
+			if (writer == null) {
+				pendingPrefixes.clear();
+				super.startElement(uri, localName, qName, atts);
+				if (XMLBeansHelper.NS_WPS_2_0.equals(uri) && "Input".equals(localName)) {
+					inputIds.addFirst(atts.getValue("id"));
+				} else if (XMLBeansHelper.NS_OWS_2_0.equals(uri) && "Identifier".equals(localName)
+						&& processId == null && inputIds.isEmpty()) {
+					processId = new StringBuilder();
+					inProcessId = true;
+				}
+				if (threshold > 0 && isComplexData(uri, localName)) {
+					startSpooling();
+				}
+				return;
+			}
+
+			try {
+				writer.writeStartElement(getPrefix(qName), localName, uri);
+				if (depth == 0) {
+					// declare everything in scope, the content may use
+					// prefixes in attribute values or text
+					Enumeration<?> inScope = namespaces.getPrefixes();
+					while (inScope.hasMoreElements()) {
+						String prefix = (String) inScope.nextElement();
+						if (!"xml".equals(prefix)) {
+							writer.writeNamespace(prefix, namespaces.getURI(prefix));
+						}
+					}
+				} else {
+					for (String[] prefix : pendingPrefixes) {
+						if (prefix[0].length() > 0) {
+							writer.writeNamespace(prefix[0], prefix[1]);
+						}
+					}
+				}
+				for (int i = 0; i < atts.getLength(); i++) {
+					String attributeURI = atts.getURI(i);
+					if (attributeURI == null || attributeURI.length() == 0) {
+						writer.writeAttribute(atts.getLocalName(i), atts.getValue(i));
+					} else {
+						writer.writeAttribute(getPrefix(atts.getQName(i)), attributeURI, atts.getLocalName(i),
+								atts.getValue(i));
+					}
+				}
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+			pendingPrefixes.clear();
+			depth++;
+			final Attributes attributes = new AttributesImpl(atts);
+			record(new Event() {
+				@Override
+				public void replay(ContentHandler handler) throws SAXException {
+					handler.startElement(uri, localName, qName, attributes);
+				}
+			});
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+			namespaces.popContext();
+			if (writer == null) {
+				super.endElement(uri, localName, qName);
+				if (XMLBeansHelper.NS_WPS_2_0.equals(uri) && "Input".equals(localName)) {
+					inputIds.removeFirst();
+				}
+				inProcessId = false;
+				return;
+			}
+			if (depth == 0) {
+				// end of the complex data element itself
+				finishSpooling();
+				super.endElement(uri, localName, qName);
+				return;
+			}
+			try {
+				writer.writeEndElement();
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+			depth--;
+			record(new Event() {
+				@Override
+				public void replay(ContentHandler handler) throws SAXException {
+					handler.endElement(uri, localName, qName);
+				}
+			});
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (writer == null) {
+				super.characters(ch, start, length);
+				if (inProcessId) {
+					processId.append(ch, start, length);
+				}
+				return;
+			}
+			try {
+				writer.writeCharacters(ch, start, length);
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+			if (events != null) {
+				final char[] copy = new char[length];
+				System.arraycopy(ch, start, copy, 0, length);
+				record(new Event() {
+					@Override
+					public void replay(ContentHandler handler) throws SAXException {
+						handler.characters(copy, 0, copy.length);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			characters(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(final String target, final String data) throws SAXException {
+			if (PROCESSING_INSTRUCTION_TARGET.equals(target)) {
+				// only the spool may reference spool files
+				return;
+			}
+			if (writer == null) {
+				super.processingInstruction(target, data);
+				return;
+			}
+			try {
+				writer.writeProcessingInstruction(target, data);
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+			record(new Event() {
+				@Override
+				public void replay(ContentHandler handler) throws SAXException {
+					handler.processingInstruction(target, data);
+				}
+			});
+		}
+
+		private boolean isComplexData(String uri, String localName) {
+			if (XMLBeansHelper.NS_WPS_1_0_0.equals(uri)) {
+				return "ComplexData".equals(localName);
+			}
+			// only the data of top level inputs is described by the process
+			return XMLBeansHelper.NS_WPS_2_0.equals(uri) && "Data".equals(localName) && processId != null
+					&& inputIds.size() == 1 && inputIds.getFirst() != null
+					&& isComplexInput(processId.toString().trim(), inputIds.getFirst());
+		}
+
+		private void record(Event event) {
+			if (events == null) {
+				return;
+			}
+			if (spoolStream.isThresholdExceeded()) {
+				// too large, the content goes to the spool file only
+				events = null;
+				return;
+			}
+			events.add(event);
+		}
+
+		private void startSpooling() throws SAXException {
+			spoolFile = new File(directory, UUID.randomUUID().toString());
+			spoolStream = new DeferredFileOutputStream(threshold, spoolFile);
+			try {
+				writer = outputFactory.createXMLStreamWriter(spoolStream, "UTF-8");
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+			events = new ArrayList<Event>();
+			depth = 0;
+		}
+
+		private void finishSpooling() throws SAXException {
+			try {
+				writer.flush();
+				writer.close();
+				spoolStream.close();
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+			List<Event> recorded = events;
+			writer = null;
+			events = null;
+			if (recorded == null) {
+				String id = spoolFile.getName();
+				spoolFiles.put(id, spoolFile);
+				spooledIds.add(id);
+				LOGGER.debug("Spooled {} bytes of inline data to {}", spoolStream.getByteCount(), spoolFile);
+				super.processingInstruction(PROCESSING_INSTRUCTION_TARGET, id);
+			} else {
+				// small enough to be kept in memory
+				FileUtils.deleteQuietly(spoolFile);
+				ContentHandler handler = getContentHandler();
+				for (Event event : recorded) {
+					event.replay(handler);
+				}
+			}
+			spoolStream = null;
+			spoolFile = null;
+		}
+
+		private void abort() {
+			if (writer != null) {
+				try {
+					writer.close();
+					spoolStream.close();
+				} catch (XMLStreamException e) {
+					LOGGER.debug("Could not close spool writer", e);
+				} catch (IOException e) {
+					LOGGER.debug("Could not close spool stream", e);
+				}
+				FileUtils.deleteQuietly(spoolFile);
+				writer = null;
+			}
+			release(spooledIds);
+		}
+	}
+
+}
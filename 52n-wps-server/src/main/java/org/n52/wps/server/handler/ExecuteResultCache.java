@@ -0,0 +1,303 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.AbstractDescriptorAlgorithm;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.IAlgorithm;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.database.DatabaseFactory;
+import org.n52.wps.server.database.IDatabase;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.n52.wps.webapp.api.ConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Memoizes the responses to synchronous Execute requests of processes that are
+ * declared deterministic. A repeated request with the same inputs and
+ * requested outputs is answered with the memoized response, without fetching
+ * and parsing the inputs, running the process and generating the outputs
+ * again. See {@link ExecuteRequest#getMemoizationKey()} for how requests are
+ * compared. Responses that carry the job ID of their execution are not
+ * memoized.
+ *
+ * Outputs requested as reference are not copied. The memoized response refers
+ * to the outputs the first execution stored in the database, so the time to
+ * live is limited to the retention period of the database.
+ *
+ * The configuration is read again for every request, a changed configuration
+ * replaces the cache by a new, empty one.
+ *
+ * Responses are memoized for a revision of the offered processes. When the
+ * revision changes, all memoized responses are discarded.
+ */
+public class ExecuteResultCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecuteResultCache.class);
+
+	private static ExecuteResultCache instance;
+
+	private final Cache<String, byte[]> responses;
+
+	private final long maxSize;
+
+	private final long timeToLive;
+
+	private final int maxResponseSize;
+
+	private final ConcurrentMap<String, Boolean> deterministicProcesses = new ConcurrentHashMap<String, Boolean>();
+
+	private volatile long revision = Long.MIN_VALUE;
+
+	/**
+	 * @return the cache, or <code>null</code> if memoization of results is
+	 *         not enabled
+	 */
+	public static synchronized ExecuteResultCache getInstance() {
+		ExecuteResultCacheConfigurationModule config = getConfigurationModule();
+		if (config == null || !config.isActive()) {
+			if (instance != null) {
+				LOGGER.info("Stopped memoizing results of deterministic processes");
+				instance = null;
+			}
+			return null;
+		}
+		long maxSize = config.getMaxCacheSize() * 1024L * 1024L;
+		long timeToLive = clampTimeToLive(config.getTimeToLive() * 1000L, getRetentionPeriod());
+		int maxResponseSize = config.getMaxResponseSize() * 1024;
+		if (instance == null || instance.maxSize != maxSize || instance.timeToLive != timeToLive
+				|| instance.maxResponseSize != maxResponseSize) {
+			instance = new ExecuteResultCache(maxSize, timeToLive, maxResponseSize);
+			LOGGER.info("Memoizing results of deterministic processes for {} seconds", timeToLive / 1000);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param timeToLive
+	 *            the configured time to live in milli seconds
+	 * @param retentionPeriod
+	 *            the time in milli seconds the database keeps stored outputs
+	 * @return the time to live, at most the retention period
+	 */
+	static long clampTimeToLive(long timeToLive, long retentionPeriod) {
+		if (timeToLive > retentionPeriod) {
+			LOGGER.warn("The time to live of memoized results is limited to the retention period of {} ms of the database",
+					retentionPeriod);
+			return retentionPeriod;
+		}
+		return timeToLive;
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum size of all memoized responses in bytes, least
+	 *            recently used responses are removed first
+	 * @param timeToLive
+	 *            time to live of a memoized response in milli seconds
+	 * @param maxResponseSize
+	 *            maximum size of a single response in bytes, larger responses
+	 *            are not memoized
+	 */
+	public ExecuteResultCache(long maxSize, long timeToLive, int maxResponseSize) {
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+		this.maxResponseSize = maxResponseSize;
+		this.responses = CacheBuilder.newBuilder().maximumWeight(maxSize)
+				.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS).weigher(new Weigher<String, byte[]>() {
+					@Override
+					public int weigh(String key, byte[] response) {
+						return response.length;
+					}
+				}).build();
+	}
+
+	/**
+	 * @param request
+	 *            the request
+	 * @return the key of the request, or <code>null</code> if its response is
+	 *         not memoized: the request is asynchronous, the process is not
+	 *         deterministic, the response carries a job ID or the content of
+	 *         an input is not known
+	 * @throws ExceptionReport
+	 *             if the inputs cannot be read
+	 */
+	public String getKey(ExecuteRequest request) throws ExceptionReport {
+		long currentRevision = RepositoryManager.getInstance().getRevision();
+		if (revision != currentRevision) {
+			synchronized (this) {
+				if (revision != currentRevision) {
+					responses.invalidateAll();
+					deterministicProcesses.clear();
+					revision = currentRevision;
+				}
+			}
+		}
+		if (request.isStoreResponse() || !isDeterministic(request.getAlgorithmIdentifier())) {
+			return null;
+		}
+		String key = request.getMemoizationKey();
+		// responses of an outdated revision stored concurrently are never hit
+		return key == null ? null : currentRevision + ":" + key;
+	}
+
+	/**
+	 * @param key
+	 *            the key of the request
+	 * @return the memoized response, or <code>null</code>
+	 */
+	public byte[] get(String key) {
+		return responses.getIfPresent(key);
+	}
+
+	/**
+	 * Records a response while it is written to the client.
+	 *
+	 * @param out
+	 *            the stream to the client
+	 * @return the stream to write the response to
+	 */
+	public RecordingOutputStream record(OutputStream out) {
+		return new RecordingOutputStream(out, maxResponseSize);
+	}
+
+	/**
+	 * Memoizes a completely written response. Responses exceeding the maximum
+	 * response size are dropped.
+	 *
+	 * @param key
+	 *            the key of the request
+	 * @param recording
+	 *            the stream the response was written to
+	 */
+	public void put(String key, RecordingOutputStream recording) {
+		byte[] response = recording.getRecording();
+		if (response != null) {
+			responses.put(key, response);
+		} else {
+			LOGGER.debug("Response exceeds {} bytes, it is not memoized", maxResponseSize);
+		}
+	}
+
+	private boolean isDeterministic(String processID) {
+		if (processID == null) {
+			return false;
+		}
+		Boolean deterministic = deterministicProcesses.get(processID);
+		if (deterministic == null) {
+			IAlgorithm algorithm = RepositoryManager.getInstance().getAlgorithm(processID);
+			deterministic = algorithm instanceof AbstractDescriptorAlgorithm
+					&& ((AbstractDescriptorAlgorithm) algorithm).isDeterministic();
+			deterministicProcesses.put(processID, deterministic);
+		}
+		return deterministic;
+	}
+
+	private static long getRetentionPeriod() {
+		IDatabase database = DatabaseFactory.getDatabase();
+		return database == null ? Long.MAX_VALUE : database.getRetentionPeriod();
+	}
+
+	private static ExecuteResultCacheConfigurationModule getConfigurationModule() {
+		ConfigurationManager configurationManager = WPSConfig.getInstance().getConfigurationManager();
+		if (configurationManager == null) {
+			return null;
+		}
+		return (ExecuteResultCacheConfigurationModule) configurationManager.getConfigurationServices()
+				.getConfigurationModule(ExecuteResultCacheConfigurationModule.class.getName());
+	}
+
+	/**
+	 * Passes a response through to the client and keeps a copy, as long as it
+	 * does not exceed the maximum response size.
+	 */
+	public static class RecordingOutputStream extends FilterOutputStream {
+
+		private final int limit;
+
+		private ByteArrayOutputStream recording = new ByteArrayOutputStream();
+
+		RecordingOutputStream(OutputStream out, int limit) {
+			super(out);
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			record(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			record(b, off, len);
+		}
+
+		private void record(byte[] b, int off, int len) {
+			if (recording == null) {
+				return;
+			}
+			if (recording.size() + len > limit) {
+				recording = null;
+			} else {
+				recording.write(b, off, len);
+			}
+		}
+
+		/**
+		 * @return the recorded response, or <code>null</code> if it exceeded
+		 *         the limit
+		 */
+		byte[] getRecording() {
+			return recording == null ? null : recording.toByteArray();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// the stream to the client is closed by the servlet
+			flush();
+		}
+	}
+
+}
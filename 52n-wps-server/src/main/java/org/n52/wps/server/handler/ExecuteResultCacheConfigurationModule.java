@@ -0,0 +1,134 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.n52.wps.webapp.api.AlgorithmEntry;
+import org.n52.wps.webapp.api.ConfigurationCategory;
+import org.n52.wps.webapp.api.ConfigurationKey;
+import org.n52.wps.webapp.api.ConfigurationModule;
+import org.n52.wps.webapp.api.FormatEntry;
+import org.n52.wps.webapp.api.types.ConfigurationEntry;
+import org.n52.wps.webapp.api.types.IntegerConfigurationEntry;
+
+/**
+ * Configures the {@link ExecuteResultCache}. Results are memoized if this
+ * module is active.
+ */
+public class ExecuteResultCacheConfigurationModule implements ConfigurationModule {
+
+	private boolean isActive = false;
+
+	private int maxCacheSize;
+
+	private int timeToLive;
+
+	private int maxResponseSize;
+
+	private final String maxCacheSizeKey = "execute_result_cache.max_size";
+
+	private final String timeToLiveKey = "execute_result_cache.ttl";
+
+	private final String maxResponseSizeKey = "execute_result_cache.max_response_size";
+
+	private ConfigurationEntry<Integer> maxCacheSizeEntry = new IntegerConfigurationEntry(maxCacheSizeKey, "Maximum cache size",
+			"In mega bytes, least recently used results are removed first", true, 256);
+	private ConfigurationEntry<Integer> timeToLiveEntry = new IntegerConfigurationEntry(timeToLiveKey, "Time to live",
+			"In seconds. Referenced outputs are not copied, so this should not exceed the time the database keeps them", true, 3600);
+	private ConfigurationEntry<Integer> maxResponseSizeEntry = new IntegerConfigurationEntry(maxResponseSizeKey, "Maximum response size",
+			"In kilo bytes, larger responses are not memoized", true, 10240);
+
+	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(maxCacheSizeEntry, timeToLiveEntry,
+			maxResponseSizeEntry);
+
+	@Override
+	public String getModuleName() {
+		return "Execute result cache configuration";
+	}
+
+	@Override
+	public boolean isActive() {
+		return isActive;
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		isActive = active;
+	}
+
+	@Override
+	public ConfigurationCategory getCategory() {
+		return ConfigurationCategory.GENERAL;
+	}
+
+	@Override
+	public List<? extends ConfigurationEntry<?>> getConfigurationEntries() {
+		return configurationEntries;
+	}
+
+	@Override
+	public List<AlgorithmEntry> getAlgorithmEntries() {
+		return null;
+	}
+
+	@Override
+	public List<FormatEntry> getFormatEntries() {
+		return null;
+	}
+
+	public int getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	@ConfigurationKey(key = maxCacheSizeKey)
+	public void setMaxCacheSize(int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	public int getTimeToLive() {
+		return timeToLive;
+	}
+
+	@ConfigurationKey(key = timeToLiveKey)
+	public void setTimeToLive(int timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public int getMaxResponseSize() {
+		return maxResponseSize;
+	}
+
+	@ConfigurationKey(key = maxResponseSizeKey)
+	public void setMaxResponseSize(int maxResponseSize) {
+		this.maxResponseSize = maxResponseSize;
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Decodes an application/x-www-form-urlencoded body while it is read, so the
+ * body does not have to be buffered for {@link java.net.URLDecoder}. '+' is
+ * decoded to a space and '%xy' to the byte xy, all other bytes are passed
+ * through. Decoding on byte level keeps the original character encoding of
+ * the body.
+ *
+ * If the body starts with the given form variable followed by '=', this
+ * prefix is removed.
+ */
+public class FormURLDecodingInputStream extends FilterInputStream {
+
+	private final byte[] prefix;
+
+	private boolean prefixChecked = false;
+
+	/**
+	 * @param in
+	 *            the encoded body
+	 * @param variableName
+	 *            the name of the form variable holding the content, may be
+	 *            <code>null</code>
+	 */
+	public FormURLDecodingInputStream(InputStream in, String variableName) {
+		super(new PushbackInputStream(new BufferedInputStream(in),
+				variableName == null ? 1 : variableName.length() + 1));
+		this.prefix = variableName == null ? new byte[0] : toASCII(variableName + "=");
+	}
+
+	@Override
+	public int read() throws IOException {
+		skipPrefix();
+		int b = in.read();
+		if (b == '+') {
+			return ' ';
+		}
+		if (b == '%') {
+			int high = Character.digit(in.read(), 16);
+			int low = Character.digit(in.read(), 16);
+			if (high < 0 || low < 0) {
+				throw new IOException("Illegal escape sequence in URL encoded content");
+			}
+			return (high << 4) + low;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int read = 0;
+		while (read < len) {
+			int c = read();
+			if (c == -1) {
+				break;
+			}
+			b[off + read++] = (byte) c;
+			if (in.available() == 0) {
+				// do not block for more data than the caller needs
+				break;
+			}
+		}
+		return read == 0 ? -1 : read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && read() != -1) {
+			skipped++;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		// escape sequences shrink, so this is an upper bound only
+		return 0;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		// not supported
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	private void skipPrefix() throws IOException {
+		if (prefixChecked) {
+			return;
+		}
+		prefixChecked = true;
+		if (prefix.length == 0) {
+			return;
+		}
+		byte[] start = new byte[prefix.length];
+		int read = 0;
+		while (read < start.length) {
+			int b = in.read();
+			if (b == -1) {
+				break;
+			}
+			start[read++] = (byte) b;
+		}
+		boolean matches = read == prefix.length;
+		for (int i = 0; matches && i < prefix.length; i++) {
+			matches = start[i] == prefix[i];
+		}
+		if (!matches && read > 0) {
+			((PushbackInputStream) in).unread(start, 0, read);
+		}
+	}
+
+	private static byte[] toASCII(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) s.charAt(i);
+		}
+		return bytes;
+	}
+
+}
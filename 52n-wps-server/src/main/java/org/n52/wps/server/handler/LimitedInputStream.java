@@ -0,0 +1,118 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with an {@link IOException} as soon as more than the allowed number of
+ * bytes is read from the wrapped stream. Used to protect the server against
+ * oversized POST requests without buffering them first.
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+	private final long limit;
+
+	private long count = 0;
+
+	private long mark = 0;
+
+	private boolean limitExceeded = false;
+
+	/**
+	 * @param in
+	 *            the stream to limit
+	 * @param limit
+	 *            the maximum number of bytes that may be read
+	 */
+	public LimitedInputStream(InputStream in, long limit) {
+		super(in);
+		this.limit = limit;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			count(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		super.mark(readlimit);
+		mark = count;
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		super.reset();
+		count = mark;
+	}
+
+	/**
+	 * @return <code>true</code> if reading failed because the stream is too
+	 *         long
+	 */
+	public boolean isLimitExceeded() {
+		return limitExceeded;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	private void count(long read) throws IOException {
+		count += read;
+		if (count > limit) {
+			limitExceeded = true;
+			throw new IOException("Stream exceeds the limit of " + limit + " bytes");
+		}
+	}
+
+}
@@ -0,0 +1,439 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Fetches and parses the referenced inputs of an Execute request in parallel.
+ * The pool is shared by all requests and bounded by the server configuration.
+ * In addition, the number of concurrent fetches against a single host is
+ * capped, so one request with many references to the same WFS does not flood
+ * that server. Tasks exceeding the limit of their host wait in a queue of that
+ * host and are only handed to the pool when a task of the same host finished,
+ * so they never occupy a thread of the pool while waiting. The queue of a host
+ * is dropped as soon as the host has no running or waiting tasks, so only the
+ * hosts currently fetched from are tracked. If a task is
+ * submitted while the queue of the pool is full, it is run in the submitting
+ * thread instead of being rejected.
+ *
+ * If one of the tasks of a request fails, all other tasks of the same request
+ * are cancelled and the failure is reported right away.
+ *
+ * The tasks run in the {@link ExecutionContext} of the calling thread, so
+ * temporary files written while parsing are deleted with the execution.
+ */
+public class ReferenceResolutionExecutor extends ThreadPoolExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceResolutionExecutor.class);
+
+	private static final int DEFAULT_POOL_SIZE = 16;
+
+	private static final int DEFAULT_MAX_PER_HOST = 4;
+
+	private static ReferenceResolutionExecutor instance;
+
+	private final ConcurrentMap<String, HostQueue> hostQueues = new ConcurrentHashMap<String, HostQueue>();
+
+	private final int maxPerHost;
+
+	public static synchronized ReferenceResolutionExecutor getInstance() {
+		if (instance == null) {
+			Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
+			instance = new ReferenceResolutionExecutor(
+					positiveOrDefault(serverConfig.getInputFetchPoolSize(), DEFAULT_POOL_SIZE),
+					positiveOrDefault(serverConfig.getInputFetchMaxPerHost(), DEFAULT_MAX_PER_HOST),
+					positiveOrDefault(serverConfig.getMaxQueuedTasks(), 100));
+		}
+		return instance;
+	}
+
+	/**
+	 * Create a ReferenceResolutionExecutor.
+	 *
+	 * @param poolSize
+	 *            the maximum number of parallel fetches
+	 * @param maxPerHost
+	 *            the maximum number of parallel fetches per host
+	 * @param maxQueuedTasks
+	 *            the capacity of the work queue
+	 */
+	public ReferenceResolutionExecutor(int poolSize, int maxPerHost, int maxQueuedTasks) {
+		super(poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(maxQueuedTasks),
+				new ThreadFactoryBuilder().setNameFormat("wps-input-fetch-%d").setDaemon(true).build(),
+				new CallerRunsPolicy());
+		allowCoreThreadTimeOut(true);
+		this.maxPerHost = maxPerHost;
+	}
+
+	/**
+	 * Runs all tasks and returns their results in the order of the tasks.
+	 *
+	 * @param hrefs
+	 *            the referenced URL of each task, used for the per host limit
+	 * @param tasks
+	 *            the tasks fetching and parsing one reference each
+	 * @return the results of the tasks
+	 * @throws ExceptionReport
+	 *             the failure of the first task that failed
+	 */
+	public <T> List<T> resolveAll(List<String> hrefs, List<Callable<T>> tasks) throws ExceptionReport {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (tasks.size() == 1) {
+			// nothing to parallelize, save the hand-over if the host allows
+			HostQueue hostQueue = tryStart(hostOf(hrefs.get(0)));
+			if (hostQueue != null) {
+				try {
+					results.add(call(tasks.get(0)));
+				} finally {
+					finished(hostQueue);
+				}
+				return results;
+			}
+		}
+
+		ExecutionContext context = ExecutionContextFactory.getContext(false);
+
+		BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<Future<T>>();
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				FutureTask<T> future = new CompletionTask<T>(new ContextBoundTask<T>(context, tasks.get(i)),
+						completed);
+				futures.add(future);
+				schedule(hostOf(hrefs.get(i)), future);
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				// fail fast: futures are taken in completion order
+				completed.take().get();
+			}
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			cancelAll(futures);
+			Thread.currentThread().interrupt();
+			throw new ExceptionReport("Interrupted while resolving input references",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (ExecutionException e) {
+			cancelAll(futures);
+			throw toExceptionReport(e.getCause());
+		}
+	}
+
+	private <T> T call(Callable<T> task) throws ExceptionReport {
+		try {
+			return task.call();
+		} catch (Exception e) {
+			throw toExceptionReport(e);
+		}
+	}
+
+	private void cancelAll(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private ExceptionReport toExceptionReport(Throwable t) {
+		if (t instanceof ExceptionReport) {
+			return (ExceptionReport) t;
+		}
+		return new ExceptionReport("Error while resolving input references", ExceptionReport.NO_APPLICABLE_CODE, t);
+	}
+
+	/**
+	 * Hands the task to the pool if its host runs less than the allowed
+	 * number of tasks, queues it for the host otherwise.
+	 */
+	private void schedule(String host, Runnable task) {
+		while (true) {
+			HostQueue hostQueue = queueFor(host);
+			Admission admission = hostQueue.startOrQueue(task);
+			if (admission == Admission.STARTED) {
+				execute(new HostTask(hostQueue, task));
+				return;
+			}
+			if (admission == Admission.QUEUED) {
+				return;
+			}
+			// the queue went idle and is being dropped, use a new one
+			hostQueues.remove(host, hostQueue);
+		}
+	}
+
+	/**
+	 * @return the queue of the host if a task of the host may start now,
+	 *         <code>null</code> otherwise
+	 */
+	private HostQueue tryStart(String host) {
+		while (true) {
+			HostQueue hostQueue = queueFor(host);
+			Admission admission = hostQueue.tryStart();
+			if (admission != Admission.RETIRED) {
+				return admission == Admission.STARTED ? hostQueue : null;
+			}
+			hostQueues.remove(host, hostQueue);
+		}
+	}
+
+	/**
+	 * Hands the next queued task of the host to the pool, if any. Drops the
+	 * queue of the host if it has nothing left to run.
+	 */
+	private void finished(HostQueue hostQueue) {
+		Runnable next = hostQueue.next();
+		if (next != null) {
+			// not while holding the lock of the host, the pool may run the
+			// task in this thread if its queue is full
+			execute(new HostTask(hostQueue, next));
+		}
+		else if (hostQueue.isRetired()) {
+			hostQueues.remove(hostQueue.host, hostQueue);
+		}
+	}
+
+	private HostQueue queueFor(String host) {
+		HostQueue hostQueue = hostQueues.get(host);
+		if (hostQueue == null) {
+			HostQueue newQueue = new HostQueue(host, maxPerHost);
+			hostQueue = hostQueues.putIfAbsent(host, newQueue);
+			if (hostQueue == null) {
+				hostQueue = newQueue;
+			}
+		}
+		return hostQueue;
+	}
+
+	/**
+	 * @return the number of hosts with running or waiting tasks
+	 */
+	int getHostQueueCount() {
+		return hostQueues.size();
+	}
+
+	static String hostOf(String href) {
+		try {
+			String host = new URL(href).getHost();
+			return host == null ? "" : host.toLowerCase();
+		} catch (MalformedURLException e) {
+			LOGGER.debug("Could not determine host of reference {}", href);
+			return "";
+		}
+	}
+
+	private static int positiveOrDefault(int value, int defaultValue) {
+		return value > 0 ? value : defaultValue;
+	}
+
+	/**
+	 * Runs the wrapped task in the execution context of the submitting thread.
+	 * The previous context of the running thread is restored afterwards, as
+	 * the task may run in the submitting thread itself if the queue is full.
+	 */
+	private static class ContextBoundTask<T> implements Callable<T> {
+
+		private final ExecutionContext context;
+
+		private final Callable<T> delegate;
+
+		ContextBoundTask(ExecutionContext context, Callable<T> delegate) {
+			this.context = context;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public T call() throws Exception {
+			ExecutionContext previous = ExecutionContextFactory.getContext(false);
+			if (context != null) {
+				ExecutionContextFactory.registerContext(context);
+			}
+			try {
+				return delegate.call();
+			} finally {
+				if (previous != null) {
+					ExecutionContextFactory.registerContext(previous);
+				} else {
+					ExecutionContextFactory.unregisterContext();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Outcome of handing a task to a {@link HostQueue}.
+	 */
+	private enum Admission {
+		STARTED, QUEUED, RETIRED
+	}
+
+	/**
+	 * Counts the running tasks of a host and keeps the tasks waiting for one
+	 * of them to finish. Once the last task finished, the queue is retired and
+	 * does not take any further tasks.
+	 */
+	private static class HostQueue {
+
+		private final String host;
+
+		private final int maxRunning;
+
+		private final Queue<Runnable> waiting = new LinkedList<Runnable>();
+
+		private int running = 0;
+
+		private boolean retired = false;
+
+		HostQueue(String host, int maxRunning) {
+			this.host = host;
+			this.maxRunning = maxRunning;
+		}
+
+		/**
+		 * @return whether the task may start now or was queued, or that the
+		 *         queue is retired
+		 */
+		synchronized Admission startOrQueue(Runnable task) {
+			if (retired) {
+				return Admission.RETIRED;
+			}
+			if (running < maxRunning) {
+				running++;
+				return Admission.STARTED;
+			}
+			waiting.add(task);
+			return Admission.QUEUED;
+		}
+
+		/**
+		 * @return whether a task may start now, without queueing it otherwise,
+		 *         or that the queue is retired
+		 */
+		synchronized Admission tryStart() {
+			if (retired) {
+				return Admission.RETIRED;
+			}
+			if (running < maxRunning && waiting.isEmpty()) {
+				running++;
+				return Admission.STARTED;
+			}
+			return Admission.QUEUED;
+		}
+
+		/**
+		 * Called when a task finished. Retires the queue if no task is left.
+		 *
+		 * @return the task to start instead, or <code>null</code>
+		 */
+		synchronized Runnable next() {
+			Runnable next = waiting.poll();
+			if (next == null) {
+				running--;
+				retired = running == 0;
+			}
+			return next;
+		}
+
+		synchronized boolean isRetired() {
+			return retired;
+		}
+	}
+
+	/**
+	 * Runs a task of a host and starts the next waiting task of the host
+	 * afterwards. Cancelled tasks return right away.
+	 */
+	private class HostTask implements Runnable {
+
+		private final HostQueue hostQueue;
+
+		private final Runnable delegate;
+
+		HostTask(HostQueue hostQueue, Runnable delegate) {
+			this.hostQueue = hostQueue;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void run() {
+			try {
+				delegate.run();
+			} finally {
+				finished(hostQueue);
+			}
+		}
+	}
+
+	/**
+	 * Adds itself to the queue of completed tasks when done, like the futures
+	 * of an {@link java.util.concurrent.ExecutorCompletionService}.
+	 */
+	private static class CompletionTask<T> extends FutureTask<T> {
+
+		private final BlockingQueue<Future<T>> completed;
+
+		CompletionTask(Callable<T> callable, BlockingQueue<Future<T>> completed) {
+			super(callable);
+			this.completed = completed;
+		}
+
+		@Override
+		protected void done() {
+			completed.add(this);
+		}
+	}
+
+}
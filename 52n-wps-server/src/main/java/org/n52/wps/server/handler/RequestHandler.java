@@ -28,20 +28,34 @@
  */
 package org.n52.wps.server.handler;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.xmlbeans.XmlBeans;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.apache.xmlbeans.XmlSaxHandler;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.XMLUtil;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.request.CapabilitiesRequest;
 import org.n52.wps.server.request.DescribeProcessRequest;
@@ -59,7 +73,7 @@ import org.n52.wps.util.XMLBeansHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 /**
@@ -76,8 +90,11 @@ public class RequestHandler {
 	
     public static final String VERSION_ATTRIBUTE_NAME = "version";
 
+	/** the root element has to start within this many bytes */
+	private static final int ROOT_ELEMENT_LOOKAHEAD = 64 * 1024;
+
 	/** Computation timeout in seconds */
-	protected static RequestExecutor pool = new RequestExecutor();
+	protected static RequestScheduler pool = new RequestScheduler();
 
 	protected OutputStream os;
 
@@ -201,9 +218,11 @@ public class RequestHandler {
 	}
 
 	/**
-	 * Handles requests of type HTTP_POST (currently executeProcess). A Document
-	 * is used to represent the client input. This Document must first be parsed
-	 * from an InputStream.
+	 * Handles requests of type HTTP_POST. The operation is determined from the
+	 * root element, which is read with StAX before the request is parsed.
+	 * Execute requests are parsed into XMLBeans directly, large inline data is
+	 * spooled to disk on the way. All other requests are parsed into a
+	 * Document.
 	 * 
 	 * @param is
 	 *            The client input
@@ -213,60 +232,139 @@ public class RequestHandler {
 	 */
 	public RequestHandler(InputStream is, OutputStream os)
 			throws ExceptionReport {
-		String nodeName, localName, nodeURI = null;
-		Document doc;
 		this.os = os;
-		
-		boolean isCapabilitiesNode = false;
-		
-		try {
-			System.setProperty("javax.xml.parsers.DocumentBuilderFactory", "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
-		
-			DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
-			fac.setNamespaceAware(true);
+		BufferedInputStream stream = new BufferedInputStream(is, ROOT_ELEMENT_LOOKAHEAD);
+		RootElement root = readRootElement(stream);
 
-			// parse the InputStream to create a Document
-			doc = fac.newDocumentBuilder().parse(is);
-			
-			// Get the first non-comment child.
-			Node child = doc.getFirstChild();
-			while(child.getNodeName().compareTo("#comment")==0) {
-				child = child.getNextSibling();
+		/*
+		 * check for service parameter. this has to be present for all requests
+		 */
+		if(root.service == null){
+			throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "service");
+		}else{
+			if(!root.service.equalsIgnoreCase("WPS")){
+				throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.INVALID_PARAMETER_VALUE, "service");
 			}
-			nodeName = child.getNodeName();
-			localName = child.getLocalName();
-			nodeURI = child.getNamespaceURI();
-			Node versionNode = child.getAttributes().getNamedItem("version");
-			
-			/*
-			 * check for service parameter. this has to be present for all requests
-			 */
-			Node serviceNode = child.getAttributes().getNamedItem("service");
-			
-			if(serviceNode == null){
-				throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "service");
-			}else{
-				if(!serviceNode.getNodeValue().equalsIgnoreCase("WPS")){
-					throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.INVALID_PARAMETER_VALUE, "service");
+		}
+		
+		boolean isCapabilitiesNode = root.localName.toLowerCase().contains("capabilities");
+		if(root.version == null && !isCapabilitiesNode) {
+			throw new ExceptionReport("Parameter <version> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "version");
+		}
+		if(!isCapabilitiesNode){
+			requestedVersion = root.version;
+		}
+		/*
+		 * check language, if not supported, return ExceptionReport
+		 * Fix for https://bugzilla.52north.org/show_bug.cgi?id=905
+		 */
+		if(root.language != null){
+			Request.checkLanguageSupported(root.language);
+		}
+		if(!isCapabilitiesNode && !WPSConfig.SUPPORTED_VERSIONS.contains(requestedVersion)) {
+			throw new ExceptionReport("Version not supported." , ExceptionReport.INVALID_PARAMETER_VALUE, "version");
+		}
+
+		// get the request type
+		boolean isV100 = XMLBeansHelper.NS_WPS_1_0_0.equals(root.namespace);
+		if (!isV100 && !XMLBeansHelper.NS_WPS_2_0.equals(root.namespace)) {
+			throw new ExceptionReport("specified namespace is not supported: "
+					+ root.namespace, ExceptionReport.INVALID_PARAMETER_VALUE);
+		}
+
+		ComplexDataSpool spool = ComplexDataSpool.getInstance();
+		if (root.localName.equals("Execute")) {
+			XmlOptions options = new XmlOptions();
+			options.setLoadTrimTextBuffer();
+			XmlSaxHandler handler = XmlBeans.getContextTypeLoader().newXmlSaxHandler(
+					isV100 ? net.opengis.wps.x100.ExecuteDocument.type : net.opengis.wps.x20.ExecuteDocument.type,
+					options);
+			List<String> spooledIds = parse(spool, stream, handler.getContentHandler());
+			boolean accepted = false;
+			try {
+				XmlObject execDom = handler.getObject();
+				if (isV100) {
+					req = new ExecuteRequestV100((net.opengis.wps.x100.ExecuteDocument) execDom);
+					setResponseMimeType((ExecuteRequestV100) req);
+				} else {
+					req = new ExecuteRequestV200((net.opengis.wps.x20.ExecuteDocument) execDom);
+					setResponseMimeType((ExecuteRequestV200) req);
+				}
+				((ExecuteRequest) req).setSpooledIds(spooledIds);
+				accepted = true;
+			} catch (XmlException e) {
+				throw new ExceptionReport("Error while parsing post data",
+						ExceptionReport.MISSING_PARAMETER_VALUE, e);
+			} catch (ClassCastException e) {
+				throw new ExceptionReport("Error while parsing post data",
+						ExceptionReport.MISSING_PARAMETER_VALUE, e);
+			} finally {
+				if (!accepted) {
+					spool.release(spooledIds);
 				}
 			}
-			
-            isCapabilitiesNode = nodeName.toLowerCase().contains("capabilities");
-			if(versionNode == null && !isCapabilitiesNode) {
-				throw new ExceptionReport("Parameter <version> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "version");
+		} else if (root.localName.equals("GetCapabilities")) {
+			req = new CapabilitiesRequest(parse(spool, stream));
+			this.responseMimeType = "text/xml";
+		} else if (root.localName.equals("DescribeProcess")) {
+			Document doc = parse(spool, stream);
+			req = isV100 ? new DescribeProcessRequest(doc) : new DescribeProcessRequestV200(doc);
+			this.responseMimeType = "text/xml";
+		} else {
+			throw new ExceptionReport("The requested Operation not supported or not applicable to the specification: "
+					+ root.localName, ExceptionReport.OPERATION_NOT_SUPPORTED, root.localName);
+		}
+	}
+
+	/**
+	 * Reads the root element with StAX and rewinds the stream afterwards, so
+	 * the request can be parsed with the parser fitting the operation.
+	 */
+	private RootElement readRootElement(BufferedInputStream stream) throws ExceptionReport {
+		stream.mark(ROOT_ELEMENT_LOOKAHEAD);
+		XMLStreamReader reader = null;
+		try {
+			reader = XMLUtil.getInputFactory().createXMLStreamReader(stream);
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+				// skip the prolog
 			}
-			if(!isCapabilitiesNode){
-				requestedVersion = child.getAttributes().getNamedItem("version").getNodeValue();
+			if (!reader.isStartElement()) {
+				throw new ExceptionReport("There went something wrong with parsing the POST data: no root element",
+						ExceptionReport.NO_APPLICABLE_CODE);
 			}
-			/*
-			 * check language, if not supported, return ExceptionReport
-			 * Fix for https://bugzilla.52north.org/show_bug.cgi?id=905
-			 */
-			Node languageNode = child.getAttributes().getNamedItem("language");
-			if(languageNode != null){
-				String language = languageNode.getNodeValue();
-				Request.checkLanguageSupported(language);
+			RootElement root = new RootElement();
+			root.namespace = reader.getNamespaceURI();
+			root.localName = reader.getLocalName();
+			root.service = reader.getAttributeValue(null, "service");
+			root.version = reader.getAttributeValue(null, VERSION_ATTRIBUTE_NAME);
+			root.language = reader.getAttributeValue(null, "language");
+			reader.close();
+			reader = null;
+			stream.reset();
+			return root;
+		} catch (XMLStreamException e) {
+			throw new ExceptionReport(
+					"There went something wrong with parsing the POST data: "
+							+ e.getMessage(),
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (IOException e) {
+			throw new ExceptionReport(
+					"There went something wrong with the network connection.",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					LOGGER.debug("Could not close reader", e);
+				}
 			}
+		}
+	}
+
+	private Document parse(ComplexDataSpool spool, InputStream stream) throws ExceptionReport {
+		try {
+			return spool.parse(stream);
 		} catch (SAXException e) {
 			throw new ExceptionReport(
 					"There went something wrong with parsing the POST data: "
@@ -276,62 +374,23 @@ public class RequestHandler {
 			throw new ExceptionReport(
 					"There went something wrong with the network connection.",
 					ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
+		}
+	}
+
+	private List<String> parse(ComplexDataSpool spool, InputStream stream, ContentHandler handler)
+			throws ExceptionReport {
+		try {
+			return spool.parse(stream, handler);
+		} catch (SAXException e) {
+			throw new ExceptionReport(
+					"There went something wrong with parsing the POST data: "
+							+ e.getMessage(),
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (IOException e) {
 			throw new ExceptionReport(
-					"There is a internal parser configuration error",
+					"There went something wrong with the network connection.",
 					ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
-		//Fix for Bug 904 https://bugzilla.52north.org/show_bug.cgi?id=904
-		if(!isCapabilitiesNode && requestedVersion == null) {
-			throw new ExceptionReport("Parameter <version> not specified." , ExceptionReport.MISSING_PARAMETER_VALUE, "version");
-		}
-		if(!isCapabilitiesNode && !WPSConfig.SUPPORTED_VERSIONS.contains(requestedVersion)) {
-			throw new ExceptionReport("Version not supported." , ExceptionReport.INVALID_PARAMETER_VALUE, "version");
-		}
-		// get the request type
-		
-		if (nodeURI.equals(XMLBeansHelper.NS_WPS_1_0_0)){
-			
-		    if (localName.equals("Execute")) {
-		    	req = new ExecuteRequestV100(doc);
-		    	setResponseMimeType((ExecuteRequestV100)req);
-		    }else if (localName.equals("GetCapabilities")){
-		    	req = new CapabilitiesRequest(doc);
-		    	this.responseMimeType = "text/xml";
-		    } else if (localName.equals("DescribeProcess")) {
-		    	req = new DescribeProcessRequest(doc);
-		    	this.responseMimeType = "text/xml";
-		    	
-		    }  else if(!localName.equals("Execute")){
-		    	throw new ExceptionReport("The requested Operation not supported or not applicable to the specification: "
-		    			+ nodeName, ExceptionReport.OPERATION_NOT_SUPPORTED, localName);
-		    }
-		    else{
-		    	throw new ExceptionReport("specified namespace is not supported: "
-		    			+ nodeURI, ExceptionReport.INVALID_PARAMETER_VALUE);
-		    }
-		}else if (nodeURI.equals(XMLBeansHelper.NS_WPS_2_0)){
-			
-		    if (localName.equals("Execute")) {
-		    	req = new ExecuteRequestV200(doc);
-		    	setResponseMimeType((ExecuteRequestV200)req);
-		    }else if (localName.equals("GetCapabilities")){
-		    	req = new CapabilitiesRequest(doc);
-		    	this.responseMimeType = "text/xml";
-		    } else if (localName.equals("DescribeProcess")) {
-		    	req = new DescribeProcessRequestV200(doc);
-		    	this.responseMimeType = "text/xml";
-		    	
-		    }  else if(!localName.equals("Execute")){
-		    	throw new ExceptionReport("The requested Operation not supported or not applicable to the specification: "
-		    			+ nodeName, ExceptionReport.OPERATION_NOT_SUPPORTED, localName);
-		    }
-		    else{
-		    	throw new ExceptionReport("specified namespace is not supported: "
-		    			+ nodeURI, ExceptionReport.INVALID_PARAMETER_VALUE);
-		    }
-			
-		}
 	}
 
 	/**
@@ -355,15 +414,30 @@ public class RequestHandler {
 			execReq.updateStatusAccepted();
 			
 			ExceptionReport exceptionReport = null;
+			ExecuteResultCache resultCache = ExecuteResultCache.getInstance();
+			String memoizationKey = null;
 			try {
 				if (execReq.isStoreResponse()) {
 					resp = new ExecuteResponse(execReq);
-					InputStream is = resp.getAsStream();
-					IOUtils.copy(is, os);
-					is.close();
+					resp.writeTo(os);
                     pool.submit(execReq);
 					return;
 				}
+				if (resultCache != null) {
+					try {
+						memoizationKey = resultCache.getKey(execReq);
+					} catch (ExceptionReport e) {
+						// the execution reports problems with the inputs
+						LOGGER.debug("Could not compute the memoization key", e);
+					}
+					byte[] memoizedResponse = memoizationKey == null ? null : resultCache.get(memoizationKey);
+					if (memoizedResponse != null) {
+						os.write(memoizedResponse);
+						execReq.releaseResources();
+						LOGGER.info("Served ExecuteRequest from memoized result.");
+						return;
+					}
+				}
 				try {
 					// retrieve status with timeout enabled
 					try {
@@ -404,14 +478,28 @@ public class RequestHandler {
 						throw new ExceptionReport("Problem with handling threads in RequestHandler", ExceptionReport.NO_APPLICABLE_CODE);
 					}
 					if(!execReq.isStoreResponse()) {
-						InputStream is = resp.getAsStream();
-						IOUtils.copy(is, os);
-						is.close();
+						// raw outputs are generated while the response is written, so
+						// their temporary files belong to the execution as well
+						ExecutionContextFactory.registerContext(execReq.getExecutionContext());
+						ExecuteResultCache.RecordingOutputStream recording = null;
+						if (memoizationKey != null && execReq.isSuccessful()) {
+							recording = resultCache.record(os);
+						}
+						try {
+							resp.writeTo(recording != null ? recording : os);
+						} finally {
+							ExecutionContextFactory.unregisterContext();
+							execReq.releaseResources();
+						}
+						if (recording != null) {
+							resultCache.put(memoizationKey, recording);
+						}
 						LOGGER.info("Served ExecuteRequest.");
 					}
 				}
 			} catch (RejectedExecutionException ree) {
                 LOGGER.warn("exception handling ExecuteRequest.", ree);
+                execReq.releaseResources();
 				// server too busy?
 				throw new ExceptionReport(
 						"The requested process was rejected. Maybe the server is flooded with requests.",
@@ -427,9 +515,7 @@ public class RequestHandler {
 			// for GetCapabilities and DescribeProcess:
 			resp = req.call();
 			try {
-				InputStream is = resp.getAsStream();
-				IOUtils.copy(is, os);
-				is.close();
+				resp.writeTo(os);
 			} catch (IOException e) {
 				throw new ExceptionReport("Could not read from response stream.", ExceptionReport.NO_APPLICABLE_CODE);
 			}
@@ -437,6 +523,59 @@ public class RequestHandler {
 		}
 	}
 	
+	/**
+	 * Returns the response to a GetCapabilities or DescribeProcess request
+	 * from the {@link ResponseCache}. The response is generated if it is not
+	 * cached for the current revision of the offered processes.
+	 * 
+	 * @return the cached response, or <code>null</code> if responses to this
+	 *         request are not cached and it has to be served by
+	 *         {@link #handle()}
+	 * @throws ExceptionReport
+	 *             if the response cannot be generated
+	 */
+	public ResponseCache.CachedResponse getCachedResponse() throws ExceptionReport {
+		if (!(req instanceof CapabilitiesRequest || req instanceof DescribeProcessRequest
+				|| req instanceof DescribeProcessRequestV200)) {
+			return null;
+		}
+		// invalid requests must fail, even if a valid one was answered before
+		req.validate();
+		final Request request = req;
+		// all parameters, the cached response must not depend on one left out
+		StringBuilder key = new StringBuilder(request.getClass().getName());
+		for (Map.Entry<String, String> parameter : getParameters().entrySet()) {
+			key.append('\n').append(parameter.getKey()).append('=').append(parameter.getValue());
+		}
+		return ResponseCache.getInstance().get(key.toString(), RepositoryManager.getInstance().getRevision(),
+				new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						request.call().writeTo(out);
+						return out.toByteArray();
+					}
+				});
+	}
+
+	/**
+	 * @return the parameters of the request, sorted by name
+	 */
+	private Map<String, String> getParameters() {
+		Map<String, String> parameters = new TreeMap<String, String>();
+		if (req.getMap() == null) {
+			return parameters;
+		}
+		for (Object name : req.getMap().keySet()) {
+			Object value = req.getMap().get(name);
+			if (value instanceof String[]) {
+				value = StringUtils.join((String[]) value, ",");
+			}
+			parameters.put(String.valueOf(name).toLowerCase(), String.valueOf(value));
+		}
+		return parameters;
+	}
+
 	protected void setResponseMimeType(Request req) {
 		
 		if(req instanceof ExecuteRequestV100){
@@ -473,9 +612,22 @@ public class RequestHandler {
 	public String getRequestedVersion() {
 		return requestedVersion;
 	}
-	
-	
-}
 
+	/**
+	 * The attributes of the root element that determine how a POST request is
+	 * handled.
+	 */
+	private static class RootElement {
 
+		private String namespace;
 
+		private String localName;
+
+		private String service;
+
+		private String version;
+
+		private String language;
+	}
+
+}
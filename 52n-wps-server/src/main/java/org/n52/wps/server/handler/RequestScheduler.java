@@ -0,0 +1,434 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.IAlgorithmRepository;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.n52.wps.server.response.Response;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * After the client Request is accepted, it should be executed. To prevent
+ * resource-exhaustion, the scheduler queues the Requests and handles only a
+ * couple of them at a time.
+ * 
+ * Executions that store their response and all other executions are handled
+ * by separate pools, so that long running asynchronous executions do not
+ * block clients waiting for a synchronous response. Within a pool, queued
+ * executions with a higher priority start first. An execution only starts if
+ * its process, or the repository the concurrency limit is configured for,
+ * runs less than the allowed number of executions. Executions of other
+ * processes can start meanwhile, so a slow process does not block the queue.
+ * 
+ * Priorities and limits are configured for process identifiers or repository
+ * class names, the process identifier takes precedence.
+ */
+public class RequestScheduler {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(RequestScheduler.class);
+
+	private final Lane syncLane;
+
+	private final Lane asyncLane;
+
+	private final int maxQueuedTasks;
+
+	private final int defaultConcurrencyLimit;
+
+	private final Map<String, Integer> concurrencyLimits;
+
+	private final Map<String, Integer> priorities;
+
+	/** running executions per concurrency limit key */
+	private final Map<String, Integer> running = new HashMap<String, Integer>();
+
+	/**
+	 * Creates a scheduler using the server configuration.
+	 */
+	public RequestScheduler() {
+		this(WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule());
+	}
+
+	private RequestScheduler(Server serverConfig) {
+		this(serverConfig.getMinPoolSize(), serverConfig.getMaxPoolSize(), serverConfig.getAsyncPoolSize(),
+				serverConfig.getKeepAliveSeconds(), serverConfig.getMaxQueuedTasks(), serverConfig.getProcessConcurrencyLimit(),
+				parseSettings(serverConfig.getProcessConcurrencyLimits()),
+				parseSettings(serverConfig.getProcessPriorities()));
+	}
+
+	/**
+	 * @param minPoolSize
+	 *            the number of threads for executions not storing their
+	 *            response that are kept even if idle
+	 * @param syncPoolSize
+	 *            the number of threads for executions not storing their
+	 *            response
+	 * @param asyncPoolSize
+	 *            the number of threads for executions storing their response
+	 * @param keepAliveSeconds
+	 *            the time other idle threads are kept
+	 * @param maxQueuedTasks
+	 *            the maximum number of waiting executions per pool
+	 * @param defaultConcurrencyLimit
+	 *            the maximum number of concurrent executions of a process
+	 *            without a configured limit, 0 for unlimited
+	 * @param concurrencyLimits
+	 *            the limits by process identifier or repository class name
+	 * @param priorities
+	 *            the priorities by process identifier or repository class
+	 *            name
+	 */
+	public RequestScheduler(int minPoolSize, int syncPoolSize, int asyncPoolSize, int keepAliveSeconds,
+			int maxQueuedTasks, int defaultConcurrencyLimit, Map<String, Integer> concurrencyLimits,
+			Map<String, Integer> priorities) {
+		int syncSize = Math.max(syncPoolSize, 1);
+		this.syncLane = new Lane("sync", Math.max(Math.min(minPoolSize, syncSize), 0), syncSize, keepAliveSeconds);
+		this.asyncLane = new Lane("async", 0, Math.max(asyncPoolSize, 1), keepAliveSeconds);
+		this.maxQueuedTasks = maxQueuedTasks;
+		this.defaultConcurrencyLimit = defaultConcurrencyLimit;
+		this.concurrencyLimits = concurrencyLimits;
+		this.priorities = priorities;
+	}
+
+	/**
+	 * Queues the request for execution.
+	 * 
+	 * @return the future response
+	 * @throws RejectedExecutionException
+	 *             if the queue of the request's pool is full
+	 */
+	public Future<Response> submit(ExecuteRequest request) {
+		String processId = request.getAlgorithmIdentifier();
+		String repository = concurrencyLimits.isEmpty() && priorities.isEmpty() ? null : getRepositoryName(processId);
+		String limitKey = getKey(concurrencyLimits, processId, repository);
+		Integer limit = concurrencyLimits.get(limitKey);
+		Integer priority = priorities.get(getKey(priorities, processId, repository));
+		Lane lane = request.isStoreResponse() ? asyncLane : syncLane;
+
+		Job job;
+		List<QueuePosition> positions;
+		synchronized (this) {
+			if (lane.pending.size() >= maxQueuedTasks) {
+				throw new RejectedExecutionException("The " + lane.name + " execution queue is full");
+			}
+			job = new Job(request, lane, limitKey, limit == null ? defaultConcurrencyLimit : limit,
+					priority == null ? 0 : priority);
+			enqueue(job);
+			dispatch();
+			positions = getChangedPositions();
+		}
+		report(positions);
+		return job;
+	}
+
+	/**
+	 * Stops all threads after the running executions finished. Queued
+	 * executions are dropped.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			syncLane.pending.clear();
+			asyncLane.pending.clear();
+		}
+		syncLane.executor.shutdown();
+		asyncLane.executor.shutdown();
+	}
+
+	/**
+	 * @return the number of executions waiting in either pool
+	 */
+	public synchronized int getQueueSize() {
+		return syncLane.pending.size() + asyncLane.pending.size();
+	}
+
+	/**
+	 * @return the number of threads of both pools, busy or idle
+	 */
+	int getThreadCount() {
+		return syncLane.executor.getPoolSize() + asyncLane.executor.getPoolSize();
+	}
+
+	/**
+	 * @return the class name of the repository of the process, or
+	 *         <code>null</code>
+	 */
+	protected String getRepositoryName(String processId) {
+		IAlgorithmRepository repository = RepositoryManager.getInstance().getRepositoryForAlgorithm(processId);
+		return repository == null ? null : repository.getClass().getName();
+	}
+
+	private void enqueue(Job job) {
+		// behind all jobs of the same or a higher priority
+		ListIterator<Job> iterator = job.lane.pending.listIterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().priority < job.priority) {
+				iterator.previous();
+				break;
+			}
+		}
+		iterator.add(job);
+	}
+
+	private void dispatch() {
+		dispatch(syncLane);
+		dispatch(asyncLane);
+	}
+
+	private void dispatch(Lane lane) {
+		Iterator<Job> iterator = lane.pending.iterator();
+		while (lane.running < lane.size && iterator.hasNext()) {
+			Job job = iterator.next();
+			int runningForKey = getRunning(job.limitKey);
+			if (job.limit > 0 && runningForKey >= job.limit) {
+				continue;
+			}
+			iterator.remove();
+			lane.running++;
+			running.put(job.limitKey, runningForKey + 1);
+			start(job);
+		}
+	}
+
+	private void start(final Job job) {
+		job.started = System.currentTimeMillis();
+		job.lane.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (job) {
+					// from now on the request reports its own status
+					job.dispatched = true;
+				}
+				try {
+					job.run();
+				} finally {
+					finished(job);
+				}
+			}
+		});
+	}
+
+	private void finished(Job job) {
+		List<QueuePosition> positions;
+		synchronized (this) {
+			Lane lane = job.lane;
+			lane.running--;
+			int runningForKey = getRunning(job.limitKey) - 1;
+			if (runningForKey > 0) {
+				running.put(job.limitKey, runningForKey);
+			} else {
+				running.remove(job.limitKey);
+			}
+			long duration = System.currentTimeMillis() - job.started;
+			lane.averageDuration = lane.averageDuration < 0 ? duration : (lane.averageDuration * 7 + duration) / 8;
+			dispatch();
+			positions = getChangedPositions();
+		}
+		report(positions);
+	}
+
+	private int getRunning(String limitKey) {
+		Integer count = running.get(limitKey);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return the queue positions of asynchronous jobs that changed since
+	 *         they were reported last; only these have a status document
+	 */
+	private List<QueuePosition> getChangedPositions() {
+		List<QueuePosition> positions = new ArrayList<QueuePosition>();
+		long now = System.currentTimeMillis();
+		int position = 1;
+		for (Job job : asyncLane.pending) {
+			if (job.reportedPosition != position) {
+				job.reportedPosition = position;
+				// rough estimate: every thread finishes one job per average duration
+				long estimatedStart = asyncLane.averageDuration < 0 ? -1
+						: now + asyncLane.averageDuration * ((position - 1) / asyncLane.size + 1);
+				positions.add(new QueuePosition(job, position, estimatedStart));
+			}
+			position++;
+		}
+		return positions;
+	}
+
+	private void report(List<QueuePosition> positions) {
+		for (QueuePosition position : positions) {
+			Job job = position.job;
+			synchronized (job) {
+				// skip positions that are outdated by now
+				if (job.dispatched || job.reportedPosition != position.position) {
+					continue;
+				}
+				try {
+					job.request.updateStatusQueued(position.position, position.estimatedStart);
+				} catch (RuntimeException e) {
+					LOGGER.warn("Could not update the queue position of request " + job.request.getUniqueId(), e);
+				}
+			}
+		}
+	}
+
+	private static String getKey(Map<String, Integer> settings, String processId, String repository) {
+		if (settings.containsKey(processId) || repository == null || !settings.containsKey(repository)) {
+			return processId;
+		}
+		return repository;
+	}
+
+	/**
+	 * Parses comma separated identifier=value pairs.
+	 */
+	static Map<String, Integer> parseSettings(String settings) {
+		Map<String, Integer> result = new HashMap<String, Integer>();
+		if (settings == null) {
+			return result;
+		}
+		for (String setting : settings.split(",")) {
+			int separator = setting.lastIndexOf('=');
+			if (setting.trim().isEmpty()) {
+				continue;
+			}
+			if (separator < 0) {
+				LOGGER.warn("Ignoring setting without value: {}", setting);
+				continue;
+			}
+			try {
+				result.put(setting.substring(0, separator).trim(), Integer.valueOf(setting.substring(separator + 1).trim()));
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Ignoring setting with invalid value: {}", setting);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * One pool of threads and its queue.
+	 */
+	private static class Lane {
+
+		final String name;
+
+		final int size;
+
+		final ThreadPoolExecutor executor;
+
+		/** ordered by priority, then by arrival */
+		final LinkedList<Job> pending = new LinkedList<Job>();
+
+		int running = 0;
+
+		long averageDuration = -1;
+
+		Lane(final String name, int coreSize, int size, int keepAliveSeconds) {
+			this.name = name;
+			this.size = size;
+			// the scheduler limits the running jobs to the size of the lane, the
+			// executor is not bounded as a finishing thread dispatches its
+			// successor before it is idle; threads beyond the core size are
+			// stopped when idle for the keep alive time
+			this.executor = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, Math.max(keepAliveSeconds, 1),
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							return new Thread(r, "WPS " + name + " execution " + count.incrementAndGet());
+						}
+					});
+			this.executor.prestartAllCoreThreads();
+		}
+	}
+
+	private static class Job extends FutureTask<Response> {
+
+		final ExecuteRequest request;
+
+		final Lane lane;
+
+		final String limitKey;
+
+		final int limit;
+
+		final int priority;
+
+		/** written while holding the scheduler's monitor */
+		volatile int reportedPosition = 0;
+
+		/** written while holding the job's monitor */
+		boolean dispatched = false;
+
+		long started;
+
+		Job(ExecuteRequest request, Lane lane, String limitKey, int limit, int priority) {
+			super(request);
+			this.request = request;
+			this.lane = lane;
+			this.limitKey = limitKey;
+			this.limit = limit;
+			this.priority = priority;
+		}
+	}
+
+	private static class QueuePosition {
+
+		final Job job;
+
+		final int position;
+
+		final long estimatedStart;
+
+		QueuePosition(Job job, int position, long estimatedStart) {
+			this.job = job;
+			this.position = position;
+			this.estimatedStart = estimatedStart;
+		}
+	}
+
+}
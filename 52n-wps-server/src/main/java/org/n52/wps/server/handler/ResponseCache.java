@@ -0,0 +1,226 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+import org.n52.wps.server.ExceptionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Keeps serialized GetCapabilities and DescribeProcess responses in memory, so
+ * they are not generated and serialized again for every request. Each
+ * response is kept as it is and gzip compressed, together with an entity tag
+ * and the time it was generated, so clients can revalidate their copies with
+ * conditional requests.
+ *
+ * Responses are generated for a revision of the offered processes. When a
+ * response for a newer revision is requested, all older responses are
+ * discarded.
+ */
+public class ResponseCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+
+	/** maximum size of all cached responses in bytes */
+	private static final long MAXIMUM_SIZE = 32 << 20;
+
+	private static ResponseCache instance;
+
+	private final Cache<String, CachedResponse> responses;
+
+	private volatile long revision = Long.MIN_VALUE;
+
+	public static synchronized ResponseCache getInstance() {
+		if (instance == null) {
+			instance = new ResponseCache(MAXIMUM_SIZE);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param maximumSize
+	 *            maximum size of all cached responses in bytes, the least
+	 *            recently used responses are removed if it is exceeded
+	 */
+	public ResponseCache(long maximumSize) {
+		responses = CacheBuilder.newBuilder().maximumWeight(maximumSize)
+				.weigher(new Weigher<String, CachedResponse>() {
+					@Override
+					public int weigh(String key, CachedResponse response) {
+						return response.getContent().length + response.getGzippedContent().length;
+					}
+				}).build();
+	}
+
+	/**
+	 * Returns a cached response. If it is not cached for the given revision,
+	 * it is generated by the loader. Concurrent requests for the same response
+	 * wait for a single loader. Failed responses are not cached.
+	 *
+	 * @param key
+	 *            identifies the response within a revision
+	 * @param revision
+	 *            the current revision of the offered processes
+	 * @param loader
+	 *            generates the serialized response
+	 * @return the cached response
+	 * @throws ExceptionReport
+	 *             if the loader fails
+	 */
+	public CachedResponse get(String key, long revision, final Callable<byte[]> loader) throws ExceptionReport {
+		if (this.revision != revision) {
+			synchronized (this) {
+				if (this.revision != revision) {
+					LOGGER.debug("Revision changed to {}, discarding cached responses", revision);
+					responses.invalidateAll();
+					this.revision = revision;
+				}
+			}
+		}
+		try {
+			// responses of an outdated revision stored concurrently are never hit
+			return responses.get(revision + "\n" + key, new Callable<CachedResponse>() {
+				@Override
+				public CachedResponse call() throws Exception {
+					return new CachedResponse(loader.call());
+				}
+			});
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExceptionReport) {
+				throw (ExceptionReport) e.getCause();
+			}
+			throw new ExceptionReport("Could not generate the response: " + e.getCause().getMessage(),
+					ExceptionReport.NO_APPLICABLE_CODE, e.getCause());
+		} catch (UncheckedExecutionException e) {
+			throw (RuntimeException) e.getCause();
+		} catch (ExecutionError e) {
+			throw (Error) e.getCause();
+		}
+	}
+
+	/**
+	 * Discards all cached responses, e.g. after the capabilities skeleton was
+	 * reloaded.
+	 */
+	public void invalidate() {
+		responses.invalidateAll();
+	}
+
+	/**
+	 * A serialized response with its validators.
+	 */
+	public static class CachedResponse {
+
+		private static final String GZIP_SUFFIX = "-gzip";
+
+		private final byte[] content;
+
+		private final byte[] gzippedContent;
+
+		private final String hash;
+
+		private final long lastModified;
+
+		public CachedResponse(byte[] content) throws IOException {
+			this.content = content;
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 4 + 64);
+			GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+			gzip.write(content);
+			gzip.close();
+			this.gzippedContent = buffer.toByteArray();
+			this.hash = Hashing.sha1().hashBytes(content).toString();
+			// HTTP dates have a resolution of seconds
+			this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		public byte[] getGzippedContent() {
+			return gzippedContent;
+		}
+
+		/**
+		 * @param gzipped
+		 *            if the gzip compressed content is sent
+		 * @return the quoted entity tag of the content
+		 */
+		public String getEntityTag(boolean gzipped) {
+			return "\"" + hash + (gzipped ? GZIP_SUFFIX : "") + "\"";
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Evaluates the preconditions of a conditional GET request.
+		 * If-Modified-Since is only evaluated if If-None-Match is missing.
+		 *
+		 * @param ifNoneMatch
+		 *            the If-None-Match header, may be <code>null</code>
+		 * @param ifModifiedSince
+		 *            the If-Modified-Since header in milliseconds, -1 if it is
+		 *            missing
+		 * @return <code>true</code> if the client's copy is still valid and
+		 *         304 Not Modified can be sent
+		 */
+		public boolean isNotModified(String ifNoneMatch, long ifModifiedSince) {
+			if (ifNoneMatch != null) {
+				for (String tag : ifNoneMatch.split(",")) {
+					tag = tag.trim();
+					if (tag.startsWith("W/")) {
+						tag = tag.substring(2);
+					}
+					// both codings represent the same entity
+					if (tag.equals("*") || tag.equals(getEntityTag(false)) || tag.equals(getEntityTag(true))) {
+						return true;
+					}
+				}
+				return false;
+			}
+			return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+		}
+	}
+
+}
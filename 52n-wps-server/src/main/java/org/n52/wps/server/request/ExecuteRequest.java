@@ -28,11 +28,15 @@
  */
 package org.n52.wps.server.request;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
+import org.n52.wps.commons.context.ExecutionContext;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.handler.ComplexDataSpool;
 import org.n52.wps.server.observerpattern.ISubject;
 import org.n52.wps.server.response.ExecuteResponseBuilder;
 import org.w3c.dom.Document;
@@ -42,6 +46,11 @@ import org.w3c.dom.Document;
  */
 public abstract class ExecuteRequest extends Request{
 
+	private volatile ExecutionContext executionContext;
+
+	private volatile List<String> spooledIds = Collections.emptyList();
+
+	private volatile boolean successful = false;
 	
 	public ExecuteRequest(Document doc) throws ExceptionReport {
 		super(doc);
@@ -70,10 +79,80 @@ public abstract class ExecuteRequest extends Request{
     
 	public abstract  void updateStatusAccepted();
 	
+	/**
+	 * Updates the status of an accepted request that waits for execution.
+	 * 
+	 * @param position
+	 *            the position in the queue, starting at 1
+	 * @param estimatedStart
+	 *            the estimated start of the execution in milliseconds since
+	 *            the epoch, or -1 if unknown
+	 */
+	public abstract  void updateStatusQueued(int position, long estimatedStart);
+	
 	public abstract  void updateStatusStarted();
 	
 	public abstract  void updateStatusSuccess();
     
 	public abstract  void updateStatusError(String errorMessage);
-    
-}
\ No newline at end of file
+
+	/**
+	 * Computes the key under which the response to this request is memoized.
+	 * It covers the process, the inputs and the requested outputs.
+	 * 
+	 * @return the key, or <code>null</code> if the response cannot be
+	 *         memoized, e.g. because the content of a referenced input is not
+	 *         known without fetching it
+	 * @throws ExceptionReport
+	 *             if inline data cannot be read
+	 */
+	public abstract String getMemoizationKey() throws ExceptionReport;
+
+	/**
+	 * @return <code>true</code> if the process was executed without errors
+	 */
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	protected void setSuccessful(boolean successful) {
+		this.successful = successful;
+	}
+
+	/**
+	 * @return the context of the execution, <code>null</code> if the
+	 *         execution did not start yet
+	 */
+	public ExecutionContext getExecutionContext() {
+		return executionContext;
+	}
+
+	protected void setExecutionContext(ExecutionContext executionContext) {
+		this.executionContext = executionContext;
+	}
+
+	/**
+	 * @param spooledIds
+	 *            the ids of the inline data the {@link ComplexDataSpool}
+	 *            stored while parsing this request
+	 */
+	public void setSpooledIds(List<String> spooledIds) {
+		this.spooledIds = spooledIds;
+	}
+
+	/**
+	 * Deletes the temporary files of this request: spooled inline data and
+	 * all files registered with the execution context. Called when an
+	 * asynchronous execution finished, or when the response of a synchronous
+	 * execution was sent.
+	 */
+	public void releaseResources() {
+		// parsed inputs may still read spooled data until the context is closed
+		ExecutionContext context = executionContext;
+		if (context != null) {
+			context.close();
+		}
+		ComplexDataSpool.getInstance().release(spooledIds);
+	}
+
+}
@@ -31,6 +31,7 @@ package org.n52.wps.server.request;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
@@ -96,6 +97,11 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 	private ExecuteDocument execDom;
 	private Map<String, IData> returnResults;
 	private ExecuteResponseBuilderV100 execRespType;
+	private final StatusUpdateCoalescer statusUpdates = StatusUpdateCoalescer.newInstance(new Runnable() {
+		public void run() {
+			updatePendingStatus();
+		}
+	});
 	
 	
 
@@ -122,13 +128,31 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 					ExceptionReport.MISSING_PARAMETER_VALUE, e);
 		}
 
+		initialize();
+	}
+
+	/**
+	 * Creates an ExecuteRequest based on an already parsed Execute document
+	 * (HTTP_POST).
+	 *
+	 * @param execDom
+	 *            The clients submission
+	 * @throws ExceptionReport
+	 */
+	public ExecuteRequestV100(ExecuteDocument execDom) throws ExceptionReport {
+		super((Document) execDom.getDomNode());
+		this.execDom = execDom;
+		initialize();
+	}
+
+	private void initialize() throws ExceptionReport {
 		// validate the client input
 		validate();
 
 		// create an initial response
 		execRespType = new ExecuteResponseBuilderV100(this);
-        
-        storeRequest(execDom);
+
+		storeRequest(execDom);
 	}
 
 	/*
@@ -637,6 +661,7 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 	public Response call() throws ExceptionReport {
         IAlgorithm algorithm = null;
         Map<String, List<IData>> inputMap = null;
+        boolean responsePending = false;
 		try {
 			ExecutionContext context;
 			if (getExecute().isSetResponseForm()) {
@@ -647,6 +672,7 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 			else {
 				context = new ExecutionContext();
 			}
+			setExecutionContext(context);
 	
 				// register so that any function that calls ExecuteContextFactory.getContext() gets the instance registered with this thread
 			ExecutionContextFactory.registerContext(context);
@@ -693,6 +719,9 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
                 updateStatusError(errorMessage);
             } else {
                 updateStatusSuccess();
+                setSuccessful(true);
+                // the response is generated after the execution
+                responsePending = !isStoreResponse();
             }
 		} catch(Throwable e) {
             String errorMessage = null;
@@ -719,6 +748,9 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
         } finally {
 			//  you ***MUST*** call this or else you will have a PermGen ClassLoader memory leak due to ThreadLocal use
 			ExecutionContextFactory.unregisterContext();
+            if (!responsePending) {
+                releaseResources();
+            }
             if (algorithm instanceof ISubject) {
                 ((ISubject)algorithm).removeObserver(this);
             }
@@ -758,6 +790,41 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 		return null;
 	}
 	
+	public String getMemoizationKey() throws ExceptionReport {
+		Execute execute = getExecute();
+		RequestDigest digest = new RequestDigest().add(WPSConfig.VERSION_100).add(getAlgorithmIdentifier())
+				.add(execute.getLanguage())
+				.add(execute.isSetResponseForm() ? execute.getResponseForm().xmlText() : null);
+		InputType[] inputs = new InputType[0];
+		if (execute.getDataInputs() != null) {
+			inputs = execute.getDataInputs().getInputArray();
+		}
+		try {
+			for (InputType input : inputs) {
+				String hash;
+				if (input.getData() != null && input.getData().getComplexData() != null) {
+					ComplexDataType complexData = input.getData().getComplexData();
+					hash = RequestDigest.hashComplexData(complexData, complexData.getMimeType(),
+							complexData.getEncoding(), complexData.getSchema());
+				} else if (input.getData() != null) {
+					// literal and bounding box data
+					hash = RequestDigest.hash(input.getData().xmlText());
+				} else if (input.getReference() != null) {
+					hash = RequestDigest.hashReference(new InputReference(input));
+				} else {
+					hash = null;
+				}
+				if (hash == null) {
+					return null;
+				}
+				digest.addInput(input.getIdentifier().getStringValue(), hash);
+			}
+		} catch (IOException e) {
+			throw new ExceptionReport("Error while reading inline data", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+		return digest.getKey();
+	}
+
 	/**
 	 * Gets the Execute that is associated with this Request
 	 * 
@@ -809,9 +876,22 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 	}
 
 	
-	public void update(ISubject subject) {
+	public synchronized void update(ISubject subject) {
 		Object state = subject.getState();
-		LOGGER.info("Update received from Subject, state changed to : " + state);
+		if (statusUpdates.isDue(state)) {
+			updateProgress(state);
+		}
+	}
+
+	private synchronized void updatePendingStatus() {
+		Object state = statusUpdates.takePending();
+		if (state != null) {
+			updateProgress(state);
+		}
+	}
+
+	private void updateProgress(Object state) {
+		LOGGER.debug("Update received from Subject, state changed to : " + state);
 		StatusType status = StatusType.Factory.newInstance();
 		
 		int percentage = 0;
@@ -821,7 +901,14 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 		}else if(state instanceof String){
 			status.addNewProcessStarted().setStringValue((String)state);
 		}
-		updateStatus(status);
+		// the response only changes in its status until the process finished
+		getExecuteResponseBuilder().setStatus(status);
+		try {
+			storeResponse();
+		} catch (ExceptionReport e) {
+			LOGGER.error("Update of process status failed.", e);
+			throw new RuntimeException(e);
+		}
 	}
     
 	public void updateStatusAccepted() {
@@ -830,6 +917,17 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 		updateStatus(status);
 	}
 	
+	public void updateStatusQueued(int position, long estimatedStart) {
+		StringBuilder message = new StringBuilder("Process Accepted, position ").append(position).append(" in queue");
+		if (estimatedStart >= 0) {
+			long seconds = Math.max(0, (estimatedStart - System.currentTimeMillis()) / 1000);
+			message.append(", estimated start in ").append(seconds).append(" seconds");
+		}
+		StatusType status = StatusType.Factory.newInstance();
+		status.setProcessAccepted(message.toString());
+		updateStatus(status);
+	}
+	
 	public void updateStatusStarted() {
         StatusType status = StatusType.Factory.newInstance();
         status.addNewProcessStarted().setPercentCompleted(0);
@@ -853,26 +951,31 @@ public class ExecuteRequestV100 extends ExecuteRequest implements IObserver  {
 		updateStatus(status);
 	}
 	
-	private void updateStatus(StatusType status) {
+	private synchronized void updateStatus(StatusType status) {
 		getExecuteResponseBuilder().setStatus(status);
         try {
             getExecuteResponseBuilder().update();
-            if (isStoreResponse()) {
-                ExecuteResponse executeResponse = new ExecuteResponse(this);
-                InputStream is = null;
-                try {
-                    is = executeResponse.getAsStream();
-                    DatabaseFactory.getDatabase().storeResponse(
-                            getUniqueId().toString(), is);
-                } finally {
-                    IOUtils.closeQuietly(is);
-                }
-            }
+            storeResponse();
+            statusUpdates.stored(status.isSetProcessStarted() ? status.getProcessStarted().getPercentCompleted() : null);
         } catch (ExceptionReport e) {
             LOGGER.error("Update of process status failed.", e);
             throw new RuntimeException(e);
         }
 	}
+
+	private void storeResponse() throws ExceptionReport {
+        if (isStoreResponse()) {
+            ExecuteResponse executeResponse = new ExecuteResponse(this);
+            InputStream is = null;
+            try {
+                is = executeResponse.getAsStream();
+                DatabaseFactory.getDatabase().storeResponse(
+                        getUniqueId().toString(), is);
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        }
+	}
     
     private void storeRequest(ExecuteDocument executeDocument) {
         InputStream is = null;
@@ -28,13 +28,17 @@
  */
 package org.n52.wps.server.request;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 
+import net.opengis.wps.x20.DataDocument.Data;
 import net.opengis.wps.x20.DataInputType;
 import net.opengis.wps.x20.ExecuteDocument;
 import net.opengis.wps.x20.ExecuteRequestType;
+import net.opengis.wps.x20.OutputDefinitionType;
 import net.opengis.wps.x20.ProcessOfferingDocument.ProcessOffering;
 import net.opengis.wps.x20.StatusInfoDocument.StatusInfo;
 
@@ -69,6 +73,11 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 	private ExecuteDocument execDom;
 	private Map<String, IData> returnResults;
 	private ExecuteResponseBuilderV200 execRespType;
+	private final StatusUpdateCoalescer statusUpdates = StatusUpdateCoalescer.newInstance(new Runnable() {
+		public void run() {
+			updatePendingStatus();
+		}
+	});
 	private boolean rawData;
 
 	/**
@@ -94,6 +103,24 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 					ExceptionReport.MISSING_PARAMETER_VALUE, e);
 		}
 
+		initialize();
+	}
+
+	/**
+	 * Creates an ExecuteRequest based on an already parsed Execute document
+	 * (HTTP_POST).
+	 *
+	 * @param execDom
+	 *            The clients submission
+	 * @throws ExceptionReport
+	 */
+	public ExecuteRequestV200(ExecuteDocument execDom) throws ExceptionReport {
+		super((Document) execDom.getDomNode());
+		this.execDom = execDom;
+		initialize();
+	}
+
+	private void initialize() throws ExceptionReport {
 		// validate the client input
 		validate();
 
@@ -168,9 +195,11 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 	public Response call() throws ExceptionReport {
 		IAlgorithm algorithm = null;
 		Map<String, List<IData>> inputMap = null;
+		boolean responsePending = false;
 		try {
 			//TODO add outputs to execution context
 			ExecutionContext context = new ExecutionContext();
+			setExecutionContext(context);
 			
 			// register so that any function that calls
 			// ExecuteContextFactory.getContext() gets the instance registered
@@ -211,6 +240,9 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 //				updateStatusError(errorMessage);
 			} else {
 				updateStatusSuccess();
+				setSuccessful(true);
+				// the response is generated after the execution
+				responsePending = !isStoreResponse();
 			}
 		} catch (Throwable e) {
 			String errorMessage = null;
@@ -243,6 +275,9 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 			// you ***MUST*** call this or else you will have a PermGen
 			// ClassLoader memory leak due to ThreadLocal use
 			ExecutionContextFactory.unregisterContext();
+			if (!responsePending) {
+				releaseResources();
+			}
 			if (algorithm instanceof ISubject) {
 				((ISubject) algorithm).removeObserver(this);
 			}
@@ -281,6 +316,41 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 		return null;
 	}
 
+	public String getMemoizationKey() throws ExceptionReport {
+		if (!isRawData()) {
+			// result documents carry the job ID of their execution
+			return null;
+		}
+		ExecuteRequestType execute = getExecute();
+		RequestDigest digest = new RequestDigest().add(WPSConfig.VERSION_200).add(getAlgorithmIdentifier())
+				.add(String.valueOf(execute.getMode())).add(String.valueOf(execute.getResponse()));
+		for (OutputDefinitionType output : execute.getOutputArray()) {
+			digest.add(output.xmlText());
+		}
+		try {
+			for (DataInputType input : execute.getInputArray()) {
+				String hash;
+				if (input.getData() != null) {
+					// literal values are wrapped in wps:Data as well
+					Data data = input.getData();
+					hash = RequestDigest.hashComplexData(data, data.getMimeType(), data.getEncoding(),
+							data.getSchema());
+				} else if (input.getReference() != null) {
+					hash = RequestDigest.hashReference(new InputReference(input));
+				} else {
+					hash = null;
+				}
+				if (hash == null) {
+					return null;
+				}
+				digest.addInput(input.getId(), hash);
+			}
+		} catch (IOException e) {
+			throw new ExceptionReport("Error while reading inline data", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+		return digest.getKey();
+	}
+
 	public Map<String, IData> getAttachedResult() {
 		return returnResults;
 	}
@@ -293,9 +363,22 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 		return rawData;
 	}
 
-	public void update(ISubject subject) {
+	public synchronized void update(ISubject subject) {
 		Object state = subject.getState();
-		LOGGER.info("Update received from Subject, state changed to : " + state);
+		if (statusUpdates.isDue(state)) {
+			updateProgress(state);
+		}
+	}
+
+	private synchronized void updatePendingStatus() {
+		Object state = statusUpdates.takePending();
+		if (state != null) {
+			updateProgress(state);
+		}
+	}
+
+	private void updateProgress(Object state) {
+		LOGGER.debug("Update received from Subject, state changed to : " + state);
 		
 		StatusInfo status = StatusInfo.Factory.newInstance();
 
@@ -305,7 +388,15 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 			status.setPercentCompleted(percentage);
 		}
 		status.setStatus(ExecuteResponseBuilderV200.Status.Running.toString());
-		updateStatus(status);
+		// the status info document is complete without updating the result
+		status.setJobID(getUniqueId().toString());
+		getExecuteResponseBuilder().setStatus(status);
+		try {
+			storeResponse();
+		} catch (ExceptionReport e) {
+			LOGGER.error("Update of process status failed.", e);
+			throw new RuntimeException(e);
+		}
 	}
 
 	public void updateStatusAccepted() {		
@@ -314,6 +405,18 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 		updateStatus(status);
 	}
 
+	public void updateStatusQueued(int position, long estimatedStart) {
+		StatusInfo status = StatusInfo.Factory.newInstance();
+		status.setStatus(ExecuteResponseBuilderV200.Status.Accepted.toString());
+		if (estimatedStart >= 0) {
+			// no need to ask for the status before the process started
+			Calendar nextPoll = Calendar.getInstance();
+			nextPoll.setTimeInMillis(estimatedStart);
+			status.setNextPoll(nextPoll);
+		}
+		updateStatus(status);
+	}
+
 	public void updateStatusSuccess() {		
 		StatusInfo status = StatusInfo.Factory.newInstance();
 		status.setStatus(ExecuteResponseBuilderV200.Status.Succeeded.toString());
@@ -333,28 +436,33 @@ public class ExecuteRequestV200 extends ExecuteRequest implements IObserver {
 		updateStatus(status);
 	}
 
-	private void updateStatus(StatusInfo status) {
+	private synchronized void updateStatus(StatusInfo status) {
 		status.setJobID(getUniqueId().toString());
 		getExecuteResponseBuilder().setStatus(status);
 		try {
 			getExecuteResponseBuilder().update();
-//			if (isStoreResponse()) {
-				ExecuteResponse executeResponse = new ExecuteResponse(this);
-				InputStream is = null;
-				try {
-					is = executeResponse.getAsStream();
-					DatabaseFactory.getDatabase().storeResponse(
-							getUniqueId().toString(), is);
-				} finally {
-					IOUtils.closeQuietly(is);
-				}
-//			}
+			storeResponse();
+			statusUpdates.stored(status.isSetPercentCompleted() ? status.getPercentCompleted() : null);
 		} catch (ExceptionReport e) {
 			LOGGER.error("Update of process status failed.", e);
 			throw new RuntimeException(e);
 		}
 	}
 
+	private void storeResponse() throws ExceptionReport {
+//		if (isStoreResponse()) {
+			ExecuteResponse executeResponse = new ExecuteResponse(this);
+			InputStream is = null;
+			try {
+				is = executeResponse.getAsStream();
+				DatabaseFactory.getDatabase().storeResponse(
+						getUniqueId().toString(), is);
+			} finally {
+				IOUtils.closeQuietly(is);
+			}
+//		}
+	}
+
 	private void storeRequest(ExecuteDocument executeDocument) {
 		InputStream is = null;
 		try {
@@ -29,18 +29,26 @@
 package org.n52.wps.server.request;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.Callable;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
+import javax.xml.transform.dom.DOMSource;
 
 import net.opengis.ows.x11.BoundingBoxType;
 import net.opengis.ows.x11.DomainMetadataType;
@@ -60,15 +68,18 @@ import net.opengis.wps.x20.LiteralDataType;
 import net.opengis.wps.x20.LiteralDataType.LiteralDataDomain;
 import net.opengis.wps.x20.ProcessOfferingDocument.ProcessOffering;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.xmlbeans.XmlException;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.commons.XMLUtil;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.io.BasicXMLTypeFactory;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.IParser;
 import org.n52.wps.io.ParserFactory;
+import org.n52.wps.io.XMLTextInputStream;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.bbox.BoundingBoxData;
 import org.n52.wps.io.data.binding.literal.AbstractLiteralDataBinding;
@@ -80,9 +91,12 @@ import org.n52.wps.io.data.binding.literal.LiteralLongBinding;
 import org.n52.wps.io.data.binding.literal.LiteralShortBinding;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.handler.ComplexDataSpool;
 import org.n52.wps.server.handler.DataInputInterceptors;
 import org.n52.wps.server.handler.DataInputInterceptors.DataInputInterceptorImplementations;
 import org.n52.wps.server.handler.DataInputInterceptors.InterceptorInstance;
+import org.n52.wps.server.handler.ReferenceResolutionExecutor;
+import org.n52.wps.server.request.strategy.ReferenceCache;
 import org.n52.wps.server.request.strategy.ReferenceInputStream;
 import org.n52.wps.server.request.strategy.ReferenceStrategyRegister;
 import org.n52.wps.util.XMLBeansHelper;
@@ -90,6 +104,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
 
+import com.google.common.base.Charsets;
 import com.google.common.primitives.Doubles;
 
 /**
@@ -98,6 +113,8 @@ import com.google.common.primitives.Doubles;
 public class InputHandler {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(InputHandler.class);
+	private static final byte[] FRAGMENT_START = "<data>".getBytes(Charsets.UTF_8);
+	private static final byte[] FRAGMENT_END = "</data>".getBytes(Charsets.UTF_8);
     private static final BigInteger INT_MAX
             = BigInteger.valueOf(Integer.MAX_VALUE);
     private static final BigInteger INT_MIN
@@ -155,6 +172,9 @@ public class InputHandler {
 		InputType[] inputsV100 = builder.inputs.getInputsV100();
 		
 		DataInputType[] inputsV200 = builder.inputs.getInputsV200();
+
+		// references are collected and resolved concurrently once all inline inputs are handled
+		List<PendingReference> pendingReferences = new ArrayList<PendingReference>();
 		
 		if(inputsV100 != null){
 		
@@ -182,7 +202,7 @@ public class InputHandler {
 				}
 			}
 			else if(input.getReference() != null) {
-				handleComplexValueReference(input);
+				pendingReferences.add(new PendingReference(input));
 			}
 			else {
 				throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
@@ -220,7 +240,7 @@ public class InputHandler {
 					}
 				}
 				else if(input.getReference() != null) {
-					handleComplexValueReference(input);
+					pendingReferences.add(new PendingReference(input));
 				}
 				else {
 					throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
@@ -228,7 +248,80 @@ public class InputHandler {
 				}
 			}
 		}
-		
+
+		resolveReferences(pendingReferences);
+	}
+
+	/**
+	 * Fetches and parses all referenced inputs in parallel. The parsed data is
+	 * put into the slot that was reserved for it, so the order of inputs with
+	 * maxOccurs &gt; 1 is the same as in the request.
+	 *
+	 * @param pendingReferences the references in order of the request
+	 * @throws ExceptionReport if one of the references could not be resolved
+	 */
+	private void resolveReferences(List<PendingReference> pendingReferences) throws ExceptionReport {
+		if (pendingReferences.isEmpty()) {
+			return;
+		}
+		List<String> hrefs = new ArrayList<String>(pendingReferences.size());
+		List<Callable<IData>> tasks = new ArrayList<Callable<IData>>(pendingReferences.size());
+		for (PendingReference pendingReference : pendingReferences) {
+			hrefs.add(pendingReference.href);
+			tasks.add(pendingReference);
+		}
+		List<IData> resolved = ReferenceResolutionExecutor.getInstance().resolveAll(hrefs, tasks);
+		for (int i = 0; i < pendingReferences.size(); i++) {
+			PendingReference pendingReference = pendingReferences.get(i);
+			pendingReference.target.set(pendingReference.slot, resolved.get(i));
+		}
+	}
+
+	/**
+	 * A referenced input waiting to be fetched and parsed. On creation, a slot
+	 * in the input list is reserved for the parsed data.
+	 */
+	private class PendingReference implements Callable<IData> {
+
+		private final InputType inputV100;
+
+		private final DataInputType inputV200;
+
+		private final String href;
+
+		private final List<IData> target;
+
+		private final int slot;
+
+		PendingReference(InputType input) {
+			this(input, null, input.getIdentifier().getStringValue(), input.getReference().getHref());
+		}
+
+		PendingReference(DataInputType input) {
+			this(null, input, input.getId(), input.getReference().getHref());
+		}
+
+		private PendingReference(InputType inputV100, DataInputType inputV200, String inputID, String href) {
+			this.inputV100 = inputV100;
+			this.inputV200 = inputV200;
+			this.href = href;
+			List<IData> list = inputData.get(inputID);
+			if (list == null) {
+				list = new ArrayList<IData>();
+				inputData.put(inputID, list);
+			}
+			this.target = list;
+			this.slot = list.size();
+			list.add(null);
+		}
+
+		@Override
+		public IData call() throws ExceptionReport {
+			if (inputV100 != null) {
+				return handleComplexValueReference(inputV100);
+			}
+			return handleComplexValueReference(inputV200);
+		}
 	}
 
     Map<String, InterceptorInstance> resolveInputInterceptors(String algorithmClassName) {
@@ -327,7 +420,7 @@ public class InputHandler {
          * @throws ExceptionReport If error occured while parsing XML
 	 */
 	 protected void handleComplexData(InputType input, String inputId) throws ExceptionReport{
-		String complexValue;
+		String spoolId;
 		InputDescriptionType inputReferenceDesc;
 		ComplexDataType data;
 		Node complexValueNode;
@@ -352,7 +445,7 @@ public class InputHandler {
                 dataEncoding = data.getEncoding();
 
                 complexValueNode =  input.getData().getComplexData().getDomNode();
-                complexValue = getComplexValueNodeString(complexValueNode);
+                spoolId = ComplexDataSpool.getSpoolId(complexValueNode);
 
                 //select parser
 		//1. mimeType set?
@@ -564,7 +657,12 @@ public class InputHandler {
                     throw new ExceptionReport("Error. No applicable parser found for " + formatSchema + "," + dataMimeType + "," + formatEncoding, ExceptionReport.NO_APPLICABLE_CODE);
 		}
 
-		IData collection = parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
+		IData collection;
+		if (spoolId == null) {
+			collection = parseComplexValue(formatEncoding, complexValueNode, dataMimeType, formatSchema, parser);
+		} else {
+			collection = parseSpooledComplexValue(formatEncoding, spoolId, dataMimeType, formatSchema, parser);
+		}
 
 		//enable maxoccurs of parameters with the same name.
                 List<IData> list = new ArrayList<IData>();
@@ -623,7 +721,7 @@ public class InputHandler {
 	 */
 	private void handleComplexData(DataInputType input, String inputId)
 			throws ExceptionReport {
-		String complexValue;
+		String spoolId;
 		net.opengis.wps.x20.InputDescriptionType inputReferenceDesc;
 		Data data;
 		Node complexValueNode;
@@ -651,7 +749,7 @@ public class InputHandler {
 		dataEncoding = data.getEncoding();
 
 		complexValueNode = data.getDomNode();
-		complexValue = getComplexValueNodeString(complexValueNode);
+		spoolId = ComplexDataSpool.getSpoolId(complexValueNode);
 
 		// select parser
 		// 1. mimeType set?
@@ -906,8 +1004,14 @@ public class InputHandler {
 					ExceptionReport.NO_APPLICABLE_CODE);
 		}
 
-		IData collection = parseComplexValue(formatEncoding, complexValue,
-				dataMimeType, formatSchema, parser);
+		IData collection;
+		if (spoolId == null) {
+			collection = parseComplexValue(formatEncoding, complexValueNode,
+					dataMimeType, formatSchema, parser);
+		} else {
+			collection = parseSpooledComplexValue(formatEncoding, spoolId,
+					dataMimeType, formatSchema, parser);
+		}
 
 		// enable maxoccurs of parameters with the same name.
 		List<IData> list = new ArrayList<IData>();
@@ -919,21 +1023,48 @@ public class InputHandler {
 	}
 	
 	/**
-	 * Handles the ComplexValueReference
+	 * Handles the ComplexValueReference. Called concurrently for all
+	 * references of a request, so it must not modify the input map.
 	 * 
 	 * @param input
 	 *            The client input
+	 * @return The parsed input data
 	 * @throws ExceptionReport
 	 *             If the input (as url) is invalid, or there is an error while
 	 *             parsing the XML.
 	 */
-	private void handleComplexValueReference(DataInputType input)
+	private IData handleComplexValueReference(DataInputType input)
 			throws ExceptionReport {
-		String inputID = input.getId();
+		ReferenceInputStream stream = ReferenceStrategyRegister.getInstance()
+				.resolveReference(new InputReference(input));
+		IData data = null;
+		try {
+			data = parseComplexValueReference(input, stream);
+		} finally {
+			closeAfterParsing(stream, data != null);
+		}
+		return data;
+	}
 
-		ReferenceStrategyRegister register = ReferenceStrategyRegister
-				.getInstance();
-		ReferenceInputStream stream = register.resolveReference(new InputReference(input));
+	/**
+	 * Closes a stream that was handed to a parser. Some parsers, e.g. the
+	 * GenericFileParser, keep the stream in the parsed data and read it when
+	 * the algorithm uses the data, so after successful parsing the stream is
+	 * closed with the {@link ExecutionContext} when the execution is
+	 * finished. If parsing failed, the stream is closed right away.
+	 */
+	private static void closeAfterParsing(Closeable stream, boolean parsed) {
+		ExecutionContext context = ExecutionContextFactory.getContext(false);
+		if (!parsed) {
+			IOUtils.closeQuietly(stream);
+		} else if (context != null) {
+			context.registerResource(stream);
+		}
+	}
+
+	private IData parseComplexValueReference(DataInputType input,
+			ReferenceInputStream stream) throws ExceptionReport {
+		String inputID = input.getId();
 
 		String dataURLString = input.getReference().getHref();
 		// dataURLString = URLDecoder.decode(dataURLString);
@@ -1440,19 +1571,31 @@ public class InputHandler {
 					ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
 
-		IData parsedInputData = parser.parse(stream, mimeType, schema);
-
-		// enable maxxoccurs of parameters with the same name.
-		if (inputData.containsKey(inputID)) {
-			List<IData> list = inputData.get(inputID);
-			list.add(parsedInputData);
-			inputData.put(inputID, list);
+		return parseReference(parser, stream, mimeType, schema);
+	}
+	
+	/**
+	 * Parses a referenced input. If the content of the reference is known,
+	 * i.e. it was served by the reference cache, parsed data of hot
+	 * references is taken from the cache.
+	 *
+	 * Only data that can be shared between executions is cached, see
+	 * {@link ReferenceCache#isCacheable(IData)}.
+	 */
+	private IData parseReference(IParser parser, ReferenceInputStream stream, String mimeType, String schema) {
+		ReferenceCache cache = ReferenceCache.getInstance();
+		if (cache == null || stream.getContentHash() == null) {
+			return parser.parse(stream, mimeType, schema);
+		}
+		String key = stream.getContentHash() + "|" + parser.getClass().getName() + "|" + mimeType + "|" + schema;
+		IData parsedInputData = cache.getParsedData(key);
+		if (parsedInputData == null) {
+			parsedInputData = parser.parse(stream, mimeType, schema);
+			cache.putParsedData(key, parsedInputData);
 		} else {
-			List<IData> list = new ArrayList<IData>();
-			list.add(parsedInputData);
-			inputData.put(inputID, list);
+			LOGGER.debug("Using cached parsed data for content {}", stream.getContentHash());
 		}
-
+		return parsedInputData;
 	}
 	
 	private Format getDefaultFormat(Format[] formatArray){
@@ -1573,34 +1716,99 @@ public class InputHandler {
                 return idata;
          }
 
-    //TODO-- Needs testing
-    protected IData getBase64EncodedData(String complexValue, IParser parser, String dataMimeType, String formatSchema) throws ExceptionReport {
-        File f = null;
-        String complexValueCopy = complexValue.toString();
-
-        try {
-            f = File.createTempFile("wps" + UUID.randomUUID(), "tmp");
-
-            if (complexValueCopy.startsWith("<xml-fragment")) {
-                int startIndex = complexValueCopy.indexOf(">");
-                complexValueCopy = complexValueCopy.substring(startIndex + 1);
-
-                int endIndex = complexValueCopy.indexOf("</xml-fragment");
-                complexValueCopy = complexValueCopy.substring(0, endIndex);
-            }
-
-            FileUtils.write(f, complexValueCopy);
+	/**
+	 * Parses inline data. XML content is written from the node straight into
+	 * a byte buffer for the parser, without the detour via a String.
+	 */
+	protected IData parseComplexValue(String formatEncoding, Node complexValueNode, String dataMimeType, String formatSchema, IParser parser) throws ExceptionReport {
+		if (StringUtils.isBlank(formatEncoding) || formatEncoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+			ExposedByteArrayOutputStream content = new ExposedByteArrayOutputStream();
+			try {
+				XMLUtil.writeNodeContent(complexValueNode, content);
+				return parser.parse(content.toInputStream(), dataMimeType, formatSchema);
+			} catch (IOException e) {
+				throw new ExceptionReport("Could not parse inline data", ExceptionReport.NO_APPLICABLE_CODE, e);
+			} catch (RuntimeException e) {
+				throw new ExceptionReport("Error occured, while XML parsing", ExceptionReport.NO_APPLICABLE_CODE, e);
+			}
+		}
+		if (formatEncoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+			try {
+				return parseBase64(XMLUtil.getInputFactory().createXMLStreamReader(new DOMSource(complexValueNode)), parser, dataMimeType, formatSchema);
+			} catch (XMLStreamException e) {
+				throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
+			}
+		}
+		return parseComplexValue(formatEncoding, getComplexValueNodeString(complexValueNode), dataMimeType, formatSchema, parser);
+	}
 
-            return parser.parseBase64(new FileInputStream(f), dataMimeType, formatSchema);
+	/**
+	 * Parses inline data that was spooled to disk while the request was read.
+	 * XML content is streamed into the parser, other encodings are handled
+	 * like inline data.
+	 *
+	 * @see ComplexDataSpool
+	 */
+	protected IData parseSpooledComplexValue(String formatEncoding, String spoolId, String dataMimeType, String formatSchema, IParser parser) throws ExceptionReport {
+		InputStream stream = null;
+		IData data = null;
+		try {
+			stream = ComplexDataSpool.getInstance().open(spoolId);
+			if (StringUtils.isBlank(formatEncoding) || formatEncoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+				data = parser.parse(stream, dataMimeType, formatSchema);
+			} else if (formatEncoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+				// the spooled content is a fragment, it needs a root element to be read
+				InputStream document = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+						new ByteArrayInputStream(FRAGMENT_START), stream, new ByteArrayInputStream(FRAGMENT_END))));
+				data = parseBase64(XMLUtil.getInputFactory().createXMLStreamReader(document, "UTF-8"), parser, dataMimeType, formatSchema);
+			} else {
+				String complexValue = IOUtils.toString(stream, "UTF-8");
+				// the content is read, the spool file is not needed anymore
+				IOUtils.closeQuietly(stream);
+				stream = null;
+				data = parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
+			}
+			return data;
+		} catch (XMLStreamException e) {
+			throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (IOException e) {
+			throw new ExceptionReport("Error occured, while reading spooled inline data", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (RuntimeException e) {
+			throw new ExceptionReport("Error occured, while XML parsing", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			// closing the stream also deletes the spool file
+			closeAfterParsing(stream, data != null);
+		}
+	}
 
-        } catch (IOException e) {
+    protected IData getBase64EncodedData(String complexValue, IParser parser, String dataMimeType, String formatSchema) throws ExceptionReport {
+        // the value may be wrapped in <xml-fragment>, its text is read anyway
+        try {
+            return parseBase64(XMLUtil.getInputFactory().createXMLStreamReader(new StringReader("<data>" + complexValue + "</data>")),
+                    parser, dataMimeType, formatSchema);
+        } catch (XMLStreamException e) {
             throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
-        } finally {
-            FileUtils.deleteQuietly(f);
-            System.gc();
         }
     }
 
+	/**
+	 * Decodes inline Base64 data while the parser reads it. The text is taken
+	 * event by event from the reader, it is neither collected in a String nor
+	 * written to a temporary file.
+	 */
+	protected IData parseBase64(XMLStreamReader reader, IParser parser, String dataMimeType, String formatSchema) throws ExceptionReport {
+		InputStream in = new XMLTextInputStream(reader);
+		IData data = null;
+		try {
+			data = parser.parseBase64(in, dataMimeType, formatSchema);
+			return data;
+		} catch (RuntimeException e) {
+			throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			closeAfterParsing(in, data != null);
+		}
+	}
+
 	/**
 	 * Handles the literalData
 	 * @param input The client's input
@@ -1889,15 +2097,25 @@ public class InputHandler {
 	}
 	
 	/**
-	 * Handles the ComplexValueReference
+	 * Handles the ComplexValueReference. Called concurrently for all references of a request,
+	 * so it must not modify the input map.
 	 * @param input The client input
+	 * @return The parsed input data
 	 * @throws ExceptionReport If the input (as url) is invalid, or there is an error while parsing the XML.
 	 */
-	private void handleComplexValueReference(InputType input) throws ExceptionReport{
-		String inputID = input.getIdentifier().getStringValue();
+	private IData handleComplexValueReference(InputType input) throws ExceptionReport{
+		ReferenceInputStream stream = ReferenceStrategyRegister.getInstance().resolveReference(new InputReference(input));
+		IData data = null;
+		try {
+			data = parseComplexValueReference(input, stream);
+		} finally {
+			closeAfterParsing(stream, data != null);
+		}
+		return data;
+	}
 
-		ReferenceStrategyRegister register = ReferenceStrategyRegister.getInstance();
-		ReferenceInputStream stream = register.resolveReference(new InputReference(input));
+	private IData parseComplexValueReference(InputType input, ReferenceInputStream stream) throws ExceptionReport{
+		String inputID = input.getIdentifier().getStringValue();
 
 		String dataURLString = input.getReference().getHref();
 		//dataURLString = URLDecoder.decode(dataURLString);
@@ -2321,21 +2539,7 @@ public class InputHandler {
 
 
 
-			IData parsedInputData = parser.parse(stream, mimeType, schema);
-
-			//enable maxxoccurs of parameters with the same name.
-			if(inputData.containsKey(inputID)) {
-				List<IData> list = inputData.get(inputID);
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
-			}
-			else {
-				List<IData> list = new ArrayList<IData>();
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
-			}
-
-
+			return parseReference(parser, stream, mimeType, schema);
 	}
 
 	/**
@@ -2499,4 +2703,15 @@ public class InputHandler {
 //			return conn.getInputStream();
 //		}
 //	}
+
+	/**
+	 * Hands out its buffer without copying it.
+	 */
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+		private InputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+
 }
@@ -0,0 +1,145 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.xmlbeans.XmlObject;
+import org.n52.wps.server.handler.ComplexDataSpool;
+import org.n52.wps.server.request.strategy.ReferenceStrategyRegister;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Computes the key under which the response to an Execute request is
+ * memoized: a SHA-256 hash over the process, the requested outputs and the
+ * inputs. Literal and bounding box inputs are hashed by their value, complex
+ * inputs by their content. Inline data is hashed as it was sent or spooled,
+ * references by the content hash of the reference cache.
+ *
+ * Inputs are sorted by identifier, so their order in the request does not
+ * matter. Values of the same input keep their order.
+ */
+final class RequestDigest {
+
+	private final Hasher request = Hashing.sha256().newHasher();
+
+	private final List<String[]> inputs = new ArrayList<String[]>();
+
+	/**
+	 * Adds a value describing the request, e.g. the process identifier.
+	 */
+	RequestDigest add(String value) {
+		put(request, value);
+		return this;
+	}
+
+	/**
+	 * @param identifier
+	 *            the input identifier
+	 * @param hash
+	 *            the hash of the input value
+	 */
+	void addInput(String identifier, String hash) {
+		inputs.add(new String[] { identifier, hash });
+	}
+
+	String getKey() {
+		List<String[]> sortedInputs = new ArrayList<String[]>(inputs);
+		// stable, values of an input keep their order
+		Collections.sort(sortedInputs, new Comparator<String[]>() {
+			@Override
+			public int compare(String[] a, String[] b) {
+				return String.valueOf(a[0]).compareTo(String.valueOf(b[0]));
+			}
+		});
+		for (String[] input : sortedInputs) {
+			put(request, input[0]);
+			put(request, input[1]);
+		}
+		return request.hash().toString();
+	}
+
+	static String hash(String... values) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		for (String value : values) {
+			put(hasher, value);
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * @param complexData
+	 *            the wps:ComplexData or wps:Data element
+	 * @return the hash of the format and the inline or spooled content
+	 * @throws IOException
+	 *             if spooled content cannot be read
+	 */
+	static String hashComplexData(XmlObject complexData, String mimeType, String encoding, String schema)
+			throws IOException {
+		String spoolId = ComplexDataSpool.getSpoolId(complexData.getDomNode());
+		if (spoolId != null) {
+			return hash(mimeType, encoding, schema, "spooled",
+					ComplexDataSpool.getInstance().getContentHash(spoolId));
+		}
+		return hash(mimeType, encoding, schema, "inline", complexData.xmlText());
+	}
+
+	/**
+	 * @param reference
+	 *            the referenced input
+	 * @return the hash of the format and the referenced content, or
+	 *         <code>null</code> if the content is not known without fetching
+	 *         it
+	 */
+	static String hashReference(InputReference reference) {
+		String contentHash = ReferenceStrategyRegister.getInstance().getContentHash(reference);
+		if (contentHash == null) {
+			return null;
+		}
+		return hash(reference.getMimeType(), reference.getEncoding(), reference.getSchema(), "reference",
+				contentHash);
+	}
+
+	private static void put(Hasher hasher, String value) {
+		// length prefixed, so the concatenation is unambiguous
+		if (value == null) {
+			hasher.putInt(-1);
+		} else {
+			hasher.putInt(value.length()).putString(value, Charsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which progress updates of a running process are worth storing.
+ * Algorithms may report their progress once per processed feature, and
+ * storing the status document each time dominates the runtime of such
+ * processes. A progress update is passed on if the reported percentage
+ * advanced by at least the configured step, or if the configured interval
+ * has passed since the last stored status. Repeated updates with an unchanged
+ * state are always dropped.
+ * 
+ * The latest update dropped within the interval is kept as pending. When the
+ * interval has passed without a newer status being stored, the pending update
+ * is announced and can be taken by {@link #takePending()}, so the stored
+ * status does not lag behind the process for longer than the interval.
+ * 
+ * Terminal states are not subject to this throttling, they are always stored
+ * by the request and only have to be announced by {@link #stored(Object)}.
+ */
+public class StatusUpdateCoalescer {
+
+	public static final int DEFAULT_INTERVAL = 1000;
+
+	public static final int DEFAULT_PERCENT_STEP = 5;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StatusUpdateCoalescer.class);
+
+	private static final Timer PENDING_TIMER = new Timer(StatusUpdateCoalescer.class.getSimpleName() + " Pending Updates", true);
+
+	private final long interval;
+
+	private final int percentStep;
+
+	private final Runnable pendingUpdate;
+
+	private Object lastState;
+
+	private long lastStored = -1;
+
+	private Object pendingState;
+
+	private TimerTask pendingTask;
+
+	/**
+	 * @param interval
+	 *            the minimum time between two stored progress updates in
+	 *            milliseconds
+	 * @param percentStep
+	 *            the progress change that is stored before the interval has
+	 *            passed, a value of 0 or less stores every change
+	 */
+	public StatusUpdateCoalescer(long interval, int percentStep) {
+		this(interval, percentStep, null);
+	}
+
+	/**
+	 * @param interval
+	 *            the minimum time between two stored progress updates in
+	 *            milliseconds
+	 * @param percentStep
+	 *            the progress change that is stored before the interval has
+	 *            passed, a value of 0 or less stores every change
+	 * @param pendingUpdate
+	 *            run from a timer thread when a pending update is due, may be
+	 *            <code>null</code> if pending updates are only taken on demand
+	 */
+	public StatusUpdateCoalescer(long interval, int percentStep, Runnable pendingUpdate) {
+		this.interval = interval;
+		this.percentStep = percentStep;
+		this.pendingUpdate = pendingUpdate;
+	}
+
+	/**
+	 * @param pendingUpdate
+	 *            run from a timer thread when a pending update is due
+	 * @return a coalescer using the server configuration
+	 */
+	public static StatusUpdateCoalescer newInstance(Runnable pendingUpdate) {
+		int interval = DEFAULT_INTERVAL;
+		int percentStep = DEFAULT_PERCENT_STEP;
+		Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
+		if (serverConfig != null) {
+			interval = serverConfig.getStatusUpdateInterval();
+			percentStep = serverConfig.getStatusUpdatePercentStep();
+		}
+		return new StatusUpdateCoalescer(interval, percentStep, pendingUpdate);
+	}
+
+	/**
+	 * Checks whether a progress update has to be stored. If so, the state is
+	 * remembered as the last stored one, otherwise it is kept as the pending
+	 * update.
+	 * 
+	 * @param state
+	 *            the state reported by the algorithm, either the percentage
+	 *            completed as {@link Integer} or a message
+	 * @return <code>true</code> if the status should be stored now
+	 */
+	public boolean isDue(Object state) {
+		return isDue(state, System.currentTimeMillis());
+	}
+
+	synchronized boolean isDue(Object state, long now) {
+		if (state == null ? lastState == null : state.equals(lastState)) {
+			clearPending();
+			return false;
+		}
+		if (lastStored < 0 || now - lastStored >= interval || isPercentStep(state)) {
+			lastState = state;
+			lastStored = now;
+			clearPending();
+			return true;
+		}
+		// a null state carries nothing worth storing later
+		if (state != null) {
+			pendingState = state;
+			schedulePending(now);
+		}
+		return false;
+	}
+
+	/**
+	 * Takes the latest update that was dropped since the last stored status
+	 * and remembers it as the last stored one.
+	 * 
+	 * @return the pending state or <code>null</code> if there is none
+	 */
+	public Object takePending() {
+		return takePending(System.currentTimeMillis());
+	}
+
+	synchronized Object takePending(long now) {
+		Object state = pendingState;
+		clearPending();
+		if (state != null) {
+			lastState = state;
+			lastStored = now;
+		}
+		return state;
+	}
+
+	/**
+	 * Announces a status that was stored without asking this coalescer, e.g.
+	 * a terminal state or the start of the process.
+	 * 
+	 * @param state
+	 *            the stored state, the percentage completed as {@link Integer}
+	 *            or <code>null</code> if the state carries no progress
+	 */
+	public void stored(Object state) {
+		stored(state, System.currentTimeMillis());
+	}
+
+	synchronized void stored(Object state, long now) {
+		lastState = state;
+		lastStored = now;
+		clearPending();
+	}
+
+	private void schedulePending(long now) {
+		if (pendingUpdate == null || pendingTask != null) {
+			return;
+		}
+		pendingTask = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					pendingUpdate.run();
+				} catch (RuntimeException e) {
+					LOGGER.warn("Storing pending status update failed.", e);
+				}
+			}
+		};
+		PENDING_TIMER.schedule(pendingTask, Math.max(0, lastStored + interval - now));
+	}
+
+	private void clearPending() {
+		pendingState = null;
+		if (pendingTask != null) {
+			pendingTask.cancel();
+			pendingTask = null;
+		}
+	}
+
+	private boolean isPercentStep(Object state) {
+		if (!(state instanceof Integer) || !(lastState instanceof Integer)) {
+			return false;
+		}
+		return Math.abs((Integer) state - (Integer) lastState) >= Math.max(percentStep, 1);
+	}
+
+}
@@ -0,0 +1,245 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.request.InputReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches plain HTTP GET references through the {@link ReferenceCache}.
+ * Fresh entries are served from disk. Stale entries are revalidated with a
+ * conditional request (If-None-Match/If-Modified-Since) and only downloaded
+ * again if the server sends new content. Freshness is taken from the
+ * Cache-Control and Expires headers of the data server; responses marked
+ * no-store and unsuccessful responses are passed through without caching.
+ *
+ * POST references are not cached.
+ *
+ * @see ReferenceCacheConfigurationModule
+ */
+public class CachingReferenceStrategy implements IReferenceStrategy {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachingReferenceStrategy.class);
+
+	@Override
+	public boolean isApplicable(InputReference input) {
+		if (input.isSetBody() || input.isSetBodyReference()) {
+			return false;
+		}
+		String href = input.getHref();
+		if (href == null) {
+			return false;
+		}
+		String lowerCaseHref = href.toLowerCase();
+		return (lowerCaseHref.startsWith("http://") || lowerCaseHref.startsWith("https://"))
+				&& ReferenceCache.getInstance() != null;
+	}
+
+	@Override
+	public ReferenceInputStream fetchData(InputReference input) throws ExceptionReport {
+		ReferenceCache cache = ReferenceCache.getInstance();
+		String href = input.getHref();
+		String mimeType = input.getMimeType();
+		String key = mimeType + " " + href;
+
+		ReferenceCache.Entry entry = cache.get(key);
+		if (entry != null && entry.isFresh(System.currentTimeMillis())) {
+			ReferenceInputStream cached = openCached(cache, entry);
+			if (cached != null) {
+				LOGGER.debug("Serving reference from cache: {}", href);
+				return cached;
+			}
+			entry = null;
+		}
+
+		try {
+			HttpGet httpget = new HttpGet(href);
+			if (mimeType != null) {
+				httpget.addHeader(new BasicHeader("Content-type", mimeType));
+			}
+			if (entry != null) {
+				if (entry.getETag() != null) {
+					httpget.addHeader(new BasicHeader("If-None-Match", entry.getETag()));
+				}
+				if (entry.getLastModified() != null) {
+					httpget.addHeader(new BasicHeader("If-Modified-Since", entry.getLastModified()));
+				}
+			}
+
+			HttpResponse response = ReferenceHttpClient.getInstance().getClient().execute(httpget);
+			int status = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+
+			if (status == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+				EntityUtils.consume(entity);
+				entry = cache.revalidated(key, entry, getExpires(response, cache.getDefaultTimeToLive()));
+				ReferenceInputStream cached = openCached(cache, entry);
+				if (cached != null) {
+					LOGGER.debug("Reference not modified, serving from cache: {}", href);
+					return cached;
+				}
+				// evicted in the meantime, fetch unconditionally
+				cache.remove(key);
+				return fetchData(input);
+			}
+
+			String contentType = getHeaderValue(entity == null ? null : entity.getContentType());
+			String contentEncoding = getHeaderValue(entity == null ? null : entity.getContentEncoding());
+
+			if (entity == null) {
+				throw new IOException("No content received, HTTP status " + status);
+			}
+			if (status != HttpStatus.SC_OK || isNoStore(response)) {
+				cache.remove(key);
+				return new ReferenceInputStream(entity.getContent(), contentType, contentEncoding);
+			}
+
+			InputStream content = entity.getContent();
+			try {
+				entry = cache.store(key, content, new ReferenceCache.Entry(contentType, contentEncoding,
+						getHeaderValue(response.getFirstHeader("ETag")),
+						getHeaderValue(response.getFirstHeader("Last-Modified")),
+						getExpires(response, cache.getDefaultTimeToLive())));
+			} finally {
+				content.close();
+			}
+			ReferenceInputStream cached = openCached(cache, entry);
+			if (cached == null) {
+				throw new IOException("Cached content was removed right after storing it");
+			}
+			return cached;
+		} catch (RuntimeException e) {
+			throw new ExceptionReport("Error occured while fetching reference",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (IOException e) {
+			String inputID = input.getIdentifier();
+			throw new ExceptionReport("Error occured while receiving the complexReferenceURL: inputID: " + inputID
+					+ " | dataURL: " + href, ExceptionReport.INVALID_PARAMETER_VALUE, e);
+		}
+	}
+
+	/**
+	 * @param input
+	 *            the reference
+	 * @return the hash of the content this strategy would serve for the
+	 *         reference without contacting the data server, or
+	 *         <code>null</code> if the content is not cached or not fresh
+	 */
+	public String getCachedContentHash(InputReference input) {
+		if (!isApplicable(input)) {
+			return null;
+		}
+		ReferenceCache.Entry entry = ReferenceCache.getInstance().get(input.getMimeType() + " " + input.getHref());
+		if (entry == null || !entry.isFresh(System.currentTimeMillis())) {
+			return null;
+		}
+		return entry.getContentHash();
+	}
+
+	private ReferenceInputStream openCached(ReferenceCache cache, ReferenceCache.Entry entry) {
+		InputStream stream = cache.open(entry);
+		if (stream == null) {
+			return null;
+		}
+		return new ReferenceInputStream(stream, entry.getMimeType(), entry.getEncoding(), entry.getContentHash());
+	}
+
+	private String getHeaderValue(Header header) {
+		return header == null ? null : header.getValue();
+	}
+
+	static boolean isNoStore(HttpResponse response) {
+		for (Header header : response.getHeaders("Cache-Control")) {
+			for (HeaderElement element : header.getElements()) {
+				if ("no-store".equalsIgnoreCase(element.getName())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines until when a response is fresh. max-age and no-cache of the
+	 * Cache-Control header have precedence over the Expires header.
+	 *
+	 * @param response
+	 *            the response of the data server
+	 * @param defaultTimeToLive
+	 *            in milli seconds, used if there are no caching headers
+	 * @return the expiry in milli seconds since the epoch
+	 */
+	static long getExpires(HttpResponse response, long defaultTimeToLive) {
+		long now = System.currentTimeMillis();
+		for (Header header : response.getHeaders("Cache-Control")) {
+			for (HeaderElement element : header.getElements()) {
+				String name = element.getName();
+				if ("no-cache".equalsIgnoreCase(name)) {
+					return now;
+				}
+				if ("max-age".equalsIgnoreCase(name) && element.getValue() != null) {
+					try {
+						return now + Long.parseLong(element.getValue().trim()) * 1000L;
+					} catch (NumberFormatException e) {
+						LOGGER.debug("Invalid max-age: {}", element.getValue());
+						return now;
+					}
+				}
+			}
+		}
+		Header expires = response.getFirstHeader("Expires");
+		if (expires != null) {
+			try {
+				Date date = DateUtils.parseDate(expires.getValue());
+				return date.getTime();
+			} catch (DateParseException e) {
+				// invalid dates mean "already expired"
+				return now;
+			}
+		}
+		return now + defaultTimeToLive;
+	}
+
+}
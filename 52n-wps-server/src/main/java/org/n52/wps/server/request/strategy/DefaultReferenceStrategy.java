@@ -35,14 +35,10 @@ import java.net.MalformedURLException;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DecompressingHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.InputReference;
@@ -58,14 +54,8 @@ import org.slf4j.LoggerFactory;
  */
 public class DefaultReferenceStrategy implements IReferenceStrategy{
 	
-	// TODO: follow HTTP redirects with LaxRedirectStrategy
-	
 	Logger logger = LoggerFactory.getLogger(DefaultReferenceStrategy.class);
 	
-	//TODO: get proxy from config
-	//static final HttpHost proxy = new HttpHost("127.0.0.1", 8080, "http");
-	static final HttpHost proxy = null;
-	
 	@Override
 	public boolean isApplicable(InputReference input) {
 		// true by default
@@ -88,7 +78,13 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 				
 				// but Body reference into a String
 				StringWriter writer = new StringWriter();
-				IOUtils.copy(httpGet(bodyHref, null), writer);
+				ReferenceInputStream bodyStream = httpGet(bodyHref, null);
+				try {
+					IOUtils.copy(bodyStream, writer);
+				} finally {
+					// returns the connection to the pool
+					IOUtils.closeQuietly(bodyStream);
+				}
 				String body = writer.toString();
 				
 				// trigger POST request
@@ -126,33 +122,25 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 	}
 	
 	/**
-	 * Make a GET request using mimeType and href
-	 * 
-	 * TODO: add support for autoretry, proxy
+	 * Make a GET request using mimeType and href. Connections are taken from
+	 * the pool of the shared {@link ReferenceHttpClient}, which also handles
+	 * retries and the proxy.
 	 */
 	private ReferenceInputStream httpGet(final String dataURLString, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
 		HttpGet httpget = new HttpGet(dataURLString);
 		
 		if (mimeType != null){
 			httpget.addHeader(new BasicHeader("Content-type", mimeType));
 		}
 		        
-		return processResponse(httpclient.execute(httpget));
+		return processResponse(ReferenceHttpClient.getInstance().getClient().execute(httpget));
 	}
 	
 	/**
-	 * Make a POST request using mimeType and href
-	 * 
-	 * TODO: add support for autoretry, proxy
+	 * Make a POST request using mimeType and href. POST requests are not
+	 * retried, as they are not idempotent.
 	 */
 	private ReferenceInputStream httpPost(final String dataURLString, final String body, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
 		HttpPost httppost = new HttpPost(dataURLString);
 		
 		if (mimeType != null){
@@ -163,7 +151,7 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		HttpEntity postEntity = new StringEntity(body);
 		httppost.setEntity(postEntity);
 		
-		return processResponse(httpclient.execute(httppost));
+		return processResponse(ReferenceHttpClient.getInstance().getClient().execute(httppost));
 	}
 
     private ReferenceInputStream processResponse(HttpResponse response) throws IOException {
@@ -0,0 +1,448 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.complex.GenericXMLDataBinding;
+import org.n52.wps.io.data.binding.complex.PlainStringBinding;
+import org.n52.wps.io.data.binding.literal.LiteralAnyURIBinding;
+import org.n52.wps.io.data.binding.literal.LiteralBooleanBinding;
+import org.n52.wps.io.data.binding.literal.LiteralByteBinding;
+import org.n52.wps.io.data.binding.literal.LiteralDoubleBinding;
+import org.n52.wps.io.data.binding.literal.LiteralFloatBinding;
+import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
+import org.n52.wps.io.data.binding.literal.LiteralLongBinding;
+import org.n52.wps.io.data.binding.literal.LiteralShortBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+import org.n52.wps.webapp.api.ConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Local disk cache for fetched input references. The fetched bytes are stored
+ * content addressed, i.e. under their SHA-256 hash, so equal content
+ * referenced through different URLs is stored only once. An in-memory index
+ * maps each reference to its content and the validators sent by the data
+ * server. If the cache grows beyond its maximum size, the least recently
+ * used references are removed.
+ *
+ * Optionally, parsed inputs are kept in memory, keyed by content hash and
+ * parser, so hot references are not parsed again.
+ *
+ * The cache directory is cleared on startup.
+ */
+public class ReferenceCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceCache.class);
+
+	private static final Set<Class<?>> CACHEABLE_BINDINGS = ImmutableSet.<Class<?>> of(
+			LiteralAnyURIBinding.class, LiteralBooleanBinding.class, LiteralByteBinding.class,
+			LiteralDoubleBinding.class, LiteralFloatBinding.class, LiteralIntBinding.class,
+			LiteralLongBinding.class, LiteralShortBinding.class, LiteralStringBinding.class,
+			PlainStringBinding.class, GenericXMLDataBinding.class);
+
+	private static final String CACHE_DIRECTORY_NAME = "wps-reference-cache";
+
+	private static ReferenceCache instance;
+
+	private static boolean initialized = false;
+
+	private final File directory;
+
+	private final long maxSize;
+
+	private final long defaultTimeToLive;
+
+	/** access ordered, the eldest entry is the least recently used */
+	private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private final Map<String, Integer> blobReferences = new HashMap<String, Integer>();
+
+	private final Cache<String, IData> parsedData;
+
+	private long size = 0;
+
+	/**
+	 * @return the cache, or <code>null</code> if caching of references is not
+	 *         enabled
+	 */
+	public static synchronized ReferenceCache getInstance() {
+		if (!initialized) {
+			ReferenceCacheConfigurationModule config = getConfigurationModule();
+			if (config != null && config.isActive()) {
+				String directory = config.getCacheDirectory();
+				File baseDirectory = StringUtils.isBlank(directory)
+						? new File(System.getProperty("java.io.tmpdir")) : new File(directory);
+				try {
+					instance = new ReferenceCache(new File(baseDirectory, CACHE_DIRECTORY_NAME),
+							config.getMaxCacheSize() * 1024L * 1024L,
+							config.getDefaultTimeToLive() * 1000L,
+							config.isParsedDataCacheEnabled() ? config.getMaxParsedDataEntries() : 0);
+				} catch (IOException e) {
+					LOGGER.error("Could not initialize the reference cache, references are not cached.", e);
+				}
+			}
+			initialized = true;
+		}
+		return instance;
+	}
+
+	/**
+	 * @param directory
+	 *            the directory for cached content, it is cleared
+	 * @param maxSize
+	 *            maximum size of all cached content in bytes
+	 * @param defaultTimeToLive
+	 *            time to live in milli seconds if the server sends no caching
+	 *            headers
+	 * @param maxParsedDataEntries
+	 *            number of parsed inputs kept in memory, 0 disables the parsed
+	 *            data cache
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public ReferenceCache(File directory, long maxSize, long defaultTimeToLive, int maxParsedDataEntries)
+			throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.defaultTimeToLive = defaultTimeToLive;
+		if (directory.exists()) {
+			FileUtils.cleanDirectory(directory);
+		}
+		FileUtils.forceMkdir(directory);
+		if (maxParsedDataEntries > 0) {
+			parsedData = CacheBuilder.newBuilder().maximumSize(maxParsedDataEntries).softValues().build();
+		} else {
+			parsedData = null;
+		}
+		LOGGER.info("Caching references in {}, maximum size {} bytes", directory, maxSize);
+	}
+
+	public long getDefaultTimeToLive() {
+		return defaultTimeToLive;
+	}
+
+	/**
+	 * @param key
+	 *            the reference
+	 * @return the cached entry or <code>null</code>
+	 */
+	public synchronized Entry get(String key) {
+		return index.get(key);
+	}
+
+	/**
+	 * Removes a reference from the cache.
+	 *
+	 * @param key
+	 *            the reference
+	 */
+	public synchronized void remove(String key) {
+		Entry entry = index.remove(key);
+		if (entry != null) {
+			release(entry);
+		}
+	}
+
+	/**
+	 * Opens the cached content of an entry.
+	 *
+	 * @param entry
+	 *            the entry
+	 * @return the content, or <code>null</code> if it has been evicted in the
+	 *         meantime
+	 */
+	public InputStream open(Entry entry) {
+		try {
+			return new FileInputStream(getBlobFile(entry.getContentHash()));
+		} catch (IOException e) {
+			LOGGER.debug("Cached content {} is gone", entry.getContentHash());
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the content of a reference. The content is written to a
+	 * temporary file first and then moved to its content address.
+	 *
+	 * @param key
+	 *            the reference
+	 * @param content
+	 *            the fetched content, not closed by this method
+	 * @param template
+	 *            the metadata of the content, the hash and size are set by
+	 *            this method
+	 * @return the stored entry
+	 * @throws IOException
+	 *             if the content cannot be read or written
+	 */
+	public Entry store(String key, InputStream content, Entry template) throws IOException {
+		File download = File.createTempFile("download", ".tmp", directory);
+		String contentHash;
+		long length;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			OutputStream out = new FileOutputStream(download);
+			try {
+				length = IOUtils.copyLarge(new DigestInputStream(content, digest), out);
+			} finally {
+				out.close();
+			}
+			contentHash = Hex.encodeHexString(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			FileUtils.deleteQuietly(download);
+			throw new IOException("SHA-256 is not available", e);
+		} catch (IOException e) {
+			FileUtils.deleteQuietly(download);
+			throw e;
+		}
+
+		Entry entry = new Entry(contentHash, length, template.getMimeType(), template.getEncoding(),
+				template.getETag(), template.getLastModified(), template.getExpires());
+		synchronized (this) {
+			File blob = getBlobFile(contentHash);
+			if (blobReferences.containsKey(contentHash)) {
+				// same content is already cached for another reference
+				FileUtils.deleteQuietly(download);
+			} else {
+				FileUtils.deleteQuietly(blob);
+				if (!download.renameTo(blob)) {
+					FileUtils.deleteQuietly(download);
+					throw new IOException("Could not move " + download + " to " + blob);
+				}
+				size += length;
+			}
+			Integer references = blobReferences.get(contentHash);
+			blobReferences.put(contentHash, references == null ? 1 : references + 1);
+			Entry previous = index.put(key, entry);
+			if (previous != null) {
+				release(previous);
+			}
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Replaces the expiry of an entry after the server confirmed that the
+	 * content did not change.
+	 *
+	 * @param key
+	 *            the reference
+	 * @param entry
+	 *            the revalidated entry
+	 * @param expires
+	 *            the new expiry in milli seconds since the epoch
+	 * @return the updated entry
+	 */
+	public synchronized Entry revalidated(String key, Entry entry, long expires) {
+		Entry updated = new Entry(entry.getContentHash(), entry.getSize(), entry.getMimeType(), entry.getEncoding(),
+				entry.getETag(), entry.getLastModified(), expires);
+		if (index.get(key) == entry) {
+			index.put(key, updated);
+		}
+		return updated;
+	}
+
+	/**
+	 * @param key
+	 *            the content hash and parser settings
+	 * @return the parsed input or <code>null</code>
+	 */
+	public IData getParsedData(String key) {
+		IData data = parsedData == null ? null : parsedData.getIfPresent(key);
+		if (data instanceof GenericXMLDataBinding) {
+			// algorithms may change the document, each execution gets a copy
+			return new GenericXMLDataBinding(((GenericXMLDataBinding) data).getPayload().copy());
+		}
+		return data;
+	}
+
+	/**
+	 * Keeps parsed data for later executions, if it can be shared, see
+	 * {@link #isCacheable(IData)}.
+	 */
+	public void putParsedData(String key, IData data) {
+		if (parsedData != null && isCacheable(data)) {
+			parsedData.put(key, data);
+		}
+	}
+
+	/**
+	 * Parsed data can only be shared between executions if it is held in
+	 * memory and cannot be changed by an algorithm. Data backed by files or
+	 * streams is disposed after each execution, so only literal values,
+	 * strings and XML documents, which are copied, are cached.
+	 *
+	 * @param data
+	 *            the parsed data
+	 * @return <code>true</code> if the data can be cached
+	 */
+	public static boolean isCacheable(IData data) {
+		return data != null && CACHEABLE_BINDINGS.contains(data.getClass());
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = index.values().iterator();
+		// the most recently stored entry is kept even if it is too large
+		while (size > maxSize && index.size() > 1 && iterator.hasNext()) {
+			Entry eldest = iterator.next();
+			iterator.remove();
+			release(eldest);
+		}
+	}
+
+	private void release(Entry entry) {
+		String contentHash = entry.getContentHash();
+		Integer references = blobReferences.get(contentHash);
+		if (references == null) {
+			return;
+		}
+		if (references > 1) {
+			blobReferences.put(contentHash, references - 1);
+		} else {
+			blobReferences.remove(contentHash);
+			FileUtils.deleteQuietly(getBlobFile(contentHash));
+			size -= entry.getSize();
+		}
+	}
+
+	private File getBlobFile(String contentHash) {
+		return new File(directory, contentHash);
+	}
+
+	private static ReferenceCacheConfigurationModule getConfigurationModule() {
+		ConfigurationManager configurationManager = WPSConfig.getInstance().getConfigurationManager();
+		if (configurationManager == null) {
+			return null;
+		}
+		return (ReferenceCacheConfigurationModule) configurationManager.getConfigurationServices()
+				.getConfigurationModule(ReferenceCacheConfigurationModule.class.getName());
+	}
+
+	/**
+	 * Immutable metadata of a cached reference.
+	 */
+	public static class Entry {
+
+		private final String contentHash;
+
+		private final long size;
+
+		private final String mimeType;
+
+		private final String encoding;
+
+		private final String eTag;
+
+		private final String lastModified;
+
+		private final long expires;
+
+		public Entry(String mimeType, String encoding, String eTag, String lastModified, long expires) {
+			this(null, -1, mimeType, encoding, eTag, lastModified, expires);
+		}
+
+		Entry(String contentHash, long size, String mimeType, String encoding, String eTag, String lastModified,
+				long expires) {
+			this.contentHash = contentHash;
+			this.size = size;
+			this.mimeType = mimeType;
+			this.encoding = encoding;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+
+		public String getContentHash() {
+			return contentHash;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getMimeType() {
+			return mimeType;
+		}
+
+		public String getEncoding() {
+			return encoding;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public long getExpires() {
+			return expires;
+		}
+
+		public boolean isFresh(long now) {
+			return now < expires;
+		}
+
+		public boolean hasValidators() {
+			return eTag != null || lastModified != null;
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.n52.wps.webapp.api.AlgorithmEntry;
+import org.n52.wps.webapp.api.ConfigurationCategory;
+import org.n52.wps.webapp.api.ConfigurationKey;
+import org.n52.wps.webapp.api.ConfigurationModule;
+import org.n52.wps.webapp.api.FormatEntry;
+import org.n52.wps.webapp.api.types.BooleanConfigurationEntry;
+import org.n52.wps.webapp.api.types.ConfigurationEntry;
+import org.n52.wps.webapp.api.types.IntegerConfigurationEntry;
+import org.n52.wps.webapp.api.types.StringConfigurationEntry;
+
+/**
+ * Configures the {@link CachingReferenceStrategy}. The cache is used if this
+ * module is active.
+ */
+public class ReferenceCacheConfigurationModule implements ConfigurationModule {
+
+	private boolean isActive = false;
+
+	private String cacheDirectory;
+
+	private int maxCacheSize;
+
+	private int defaultTimeToLive;
+
+	private boolean parsedDataCacheEnabled;
+
+	private int maxParsedDataEntries;
+
+	private final String cacheDirectoryKey = "reference_cache.directory";
+
+	private final String maxCacheSizeKey = "reference_cache.max_size";
+
+	private final String defaultTimeToLiveKey = "reference_cache.default_ttl";
+
+	private final String parsedDataCacheEnabledKey = "reference_cache.parsed_data_enabled";
+
+	private final String maxParsedDataEntriesKey = "reference_cache.max_parsed_data_entries";
+
+	private ConfigurationEntry<String> cacheDirectoryEntry = new StringConfigurationEntry(cacheDirectoryKey, "Cache directory",
+			"Directory for the cached references (empty = temporary directory)", false, "");
+	private ConfigurationEntry<Integer> maxCacheSizeEntry = new IntegerConfigurationEntry(maxCacheSizeKey, "Maximum cache size",
+			"In mega bytes, least recently used references are removed first", true, 1024);
+	private ConfigurationEntry<Integer> defaultTimeToLiveEntry = new IntegerConfigurationEntry(defaultTimeToLiveKey, "Default time to live",
+			"In seconds, used if the data server sends no caching headers (0 = always revalidate)", true, 0);
+	private ConfigurationEntry<Boolean> parsedDataCacheEnabledEntry = new BooleanConfigurationEntry(parsedDataCacheEnabledKey, "Cache parsed data",
+			"Keep parsed literal, string and XML inputs of hot references in memory", true, false);
+	private ConfigurationEntry<Integer> maxParsedDataEntriesEntry = new IntegerConfigurationEntry(maxParsedDataEntriesKey, "Maximum parsed data entries",
+			"Number of parsed inputs kept in memory", true, 50);
+
+	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(cacheDirectoryEntry, maxCacheSizeEntry,
+			defaultTimeToLiveEntry, parsedDataCacheEnabledEntry, maxParsedDataEntriesEntry);
+
+	@Override
+	public String getModuleName() {
+		return "Reference cache configuration";
+	}
+
+	@Override
+	public boolean isActive() {
+		return isActive;
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		isActive = active;
+	}
+
+	@Override
+	public ConfigurationCategory getCategory() {
+		return ConfigurationCategory.GENERAL;
+	}
+
+	@Override
+	public List<? extends ConfigurationEntry<?>> getConfigurationEntries() {
+		return configurationEntries;
+	}
+
+	@Override
+	public List<AlgorithmEntry> getAlgorithmEntries() {
+		return null;
+	}
+
+	@Override
+	public List<FormatEntry> getFormatEntries() {
+		return null;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	@ConfigurationKey(key = cacheDirectoryKey)
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public int getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	@ConfigurationKey(key = maxCacheSizeKey)
+	public void setMaxCacheSize(int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	public int getDefaultTimeToLive() {
+		return defaultTimeToLive;
+	}
+
+	@ConfigurationKey(key = defaultTimeToLiveKey)
+	public void setDefaultTimeToLive(int defaultTimeToLive) {
+		this.defaultTimeToLive = defaultTimeToLive;
+	}
+
+	public boolean isParsedDataCacheEnabled() {
+		return parsedDataCacheEnabled;
+	}
+
+	@ConfigurationKey(key = parsedDataCacheEnabledKey)
+	public void setParsedDataCacheEnabled(boolean parsedDataCacheEnabled) {
+		this.parsedDataCacheEnabled = parsedDataCacheEnabled;
+	}
+
+	public int getMaxParsedDataEntries() {
+		return maxParsedDataEntries;
+	}
+
+	@ConfigurationKey(key = maxParsedDataEntriesKey)
+	public void setMaxParsedDataEntries(int maxParsedDataEntries) {
+		this.maxParsedDataEntries = maxParsedDataEntries;
+	}
+
+}
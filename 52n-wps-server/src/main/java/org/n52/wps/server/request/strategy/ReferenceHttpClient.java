@@ -0,0 +1,213 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.webapp.api.ConfigurationManager;
+import org.n52.wps.webapp.entities.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Holds the HTTP client that is shared by all reference strategies. The
+ * connections are pooled and kept alive, so subsequent requests to the same
+ * data server reuse their TCP (and TLS) connections. Idempotent requests are
+ * retried with an exponential backoff after I/O errors.
+ *
+ * Streams obtained through this client must be closed to return the
+ * connection to the pool.
+ */
+public class ReferenceHttpClient {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceHttpClient.class);
+
+	private static ReferenceHttpClient instance;
+
+	private final PoolingClientConnectionManager connectionManager;
+
+	private final HttpClient client;
+
+	private final ScheduledExecutorService idleConnectionMonitor;
+
+	public static synchronized ReferenceHttpClient getInstance() {
+		if (instance == null) {
+			instance = new ReferenceHttpClient(getConfigurationModule(), getServerConfigurationModule());
+		}
+		return instance;
+	}
+
+	/**
+	 * Closes the pooled connections, e.g. on shutdown of the service.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.idleConnectionMonitor.shutdownNow();
+			instance.connectionManager.shutdown();
+			instance = null;
+		}
+	}
+
+	private ReferenceHttpClient(ReferenceHttpClientConfigurationModule config, Server serverConfig) {
+		final long keepAlive = config.getKeepAlive();
+
+		connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+		connectionManager.setMaxTotal(config.getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+
+		DefaultHttpClient backend = new DefaultHttpClient(connectionManager);
+		HttpParams params = backend.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, config.getConnectTimeout());
+		HttpConnectionParams.setSoTimeout(params, config.getSocketTimeout());
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+
+		if (serverConfig != null && StringUtils.isNotBlank(serverConfig.getProxyHost())) {
+			HttpHost proxy = new HttpHost(serverConfig.getProxyHost(), serverConfig.getProxyPort());
+			params.setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
+			LOGGER.info("Using proxy {} for referenced inputs", proxy);
+		}
+
+		backend.setRedirectStrategy(new LaxRedirectStrategy());
+		backend.setHttpRequestRetryHandler(new BackoffRetryHandler(config.getMaxRetries(), config.getRetryBackoff()));
+		backend.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+			private final ConnectionKeepAliveStrategy serverDefined = new DefaultConnectionKeepAliveStrategy();
+
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long duration = serverDefined.getKeepAliveDuration(response, context);
+				// the server did not send a Keep-Alive header
+				return duration < 0 ? keepAlive : duration;
+			}
+		});
+
+		client = new DecompressingHttpClient(backend);
+
+		long monitorPeriod = Math.max(keepAlive, 1000);
+		idleConnectionMonitor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("wps-http-idle-connections").setDaemon(true).build());
+		idleConnectionMonitor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+			}
+		}, monitorPeriod, monitorPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	public HttpClient getClient() {
+		return client;
+	}
+
+	private static ReferenceHttpClientConfigurationModule getConfigurationModule() {
+		ConfigurationManager configurationManager = WPSConfig.getInstance().getConfigurationManager();
+		ReferenceHttpClientConfigurationModule module = null;
+		if (configurationManager != null) {
+			module = (ReferenceHttpClientConfigurationModule) configurationManager.getConfigurationServices()
+					.getConfigurationModule(ReferenceHttpClientConfigurationModule.class.getName());
+		}
+		if (module == null) {
+			LOGGER.warn("No configuration found for the reference HTTP client, using defaults.");
+			module = new ReferenceHttpClientConfigurationModule();
+			module.setMaxConnections(100);
+			module.setMaxConnectionsPerRoute(10);
+			module.setConnectTimeout(10000);
+			module.setSocketTimeout(120000);
+			module.setKeepAlive(30000);
+			module.setMaxRetries(3);
+			module.setRetryBackoff(500);
+		}
+		return module;
+	}
+
+	private static Server getServerConfigurationModule() {
+		if (WPSConfig.getInstance().getConfigurationManager() == null) {
+			return null;
+		}
+		return WPSConfig.getInstance().getServerConfigurationModule();
+	}
+
+	/**
+	 * Retries idempotent requests like {@link DefaultHttpRequestRetryHandler}
+	 * does, but waits before each retry. The wait is doubled for every
+	 * further retry.
+	 */
+	static class BackoffRetryHandler extends DefaultHttpRequestRetryHandler {
+
+		private final long backoff;
+
+		BackoffRetryHandler(int retryCount, long backoff) {
+			super(retryCount, false);
+			this.backoff = backoff;
+		}
+
+		@Override
+		public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+			if (!super.retryRequest(exception, executionCount, context)) {
+				return false;
+			}
+			long wait = getBackoff(executionCount);
+			LOGGER.debug("Retrying request after {} ms ({}. retry): {}", wait, executionCount, exception.getMessage());
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return true;
+		}
+
+		long getBackoff(int executionCount) {
+			// executionCount is 1 after the first failed attempt
+			return backoff << Math.min(executionCount - 1, 16);
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.n52.wps.webapp.api.AlgorithmEntry;
+import org.n52.wps.webapp.api.ConfigurationCategory;
+import org.n52.wps.webapp.api.ConfigurationKey;
+import org.n52.wps.webapp.api.ConfigurationModule;
+import org.n52.wps.webapp.api.FormatEntry;
+import org.n52.wps.webapp.api.types.ConfigurationEntry;
+import org.n52.wps.webapp.api.types.IntegerConfigurationEntry;
+
+/**
+ * Configures the pooled HTTP client that is used to fetch referenced inputs.
+ * The proxy is taken from the server configuration module.
+ */
+public class ReferenceHttpClientConfigurationModule implements ConfigurationModule {
+
+	private boolean isActive = true;
+
+	private int maxConnections;
+
+	private int maxConnectionsPerRoute;
+
+	private int connectTimeout;
+
+	private int socketTimeout;
+
+	private int keepAlive;
+
+	private int maxRetries;
+
+	private int retryBackoff;
+
+	private final String maxConnectionsKey = "http.max_connections";
+
+	private final String maxConnectionsPerRouteKey = "http.max_connections_per_route";
+
+	private final String connectTimeoutKey = "http.connect_timeout";
+
+	private final String socketTimeoutKey = "http.socket_timeout";
+
+	private final String keepAliveKey = "http.keep_alive";
+
+	private final String maxRetriesKey = "http.max_retries";
+
+	private final String retryBackoffKey = "http.retry_backoff";
+
+	private ConfigurationEntry<Integer> maxConnectionsEntry = new IntegerConfigurationEntry(maxConnectionsKey, "Maximum connections",
+			"Maximum number of pooled connections to all hosts", true, 100);
+	private ConfigurationEntry<Integer> maxConnectionsPerRouteEntry = new IntegerConfigurationEntry(maxConnectionsPerRouteKey, "Maximum connections per host",
+			"Maximum number of pooled connections to a single host", true, 10);
+	private ConfigurationEntry<Integer> connectTimeoutEntry = new IntegerConfigurationEntry(connectTimeoutKey, "Connect timeout",
+			"In milli seconds (0 = no timeout)", true, 10000);
+	private ConfigurationEntry<Integer> socketTimeoutEntry = new IntegerConfigurationEntry(socketTimeoutKey, "Socket timeout",
+			"Maximum inactivity between two data packets in milli seconds (0 = no timeout)", true, 120000);
+	private ConfigurationEntry<Integer> keepAliveEntry = new IntegerConfigurationEntry(keepAliveKey, "Keep alive",
+			"How long idle connections are kept if the server does not say otherwise, in milli seconds", true, 30000);
+	private ConfigurationEntry<Integer> maxRetriesEntry = new IntegerConfigurationEntry(maxRetriesKey, "Maximum retries",
+			"How often an idempotent request is retried after an I/O error", true, 3);
+	private ConfigurationEntry<Integer> retryBackoffEntry = new IntegerConfigurationEntry(retryBackoffKey, "Retry backoff",
+			"Wait before the first retry in milli seconds, doubled for every further retry", true, 500);
+
+	private List<? extends ConfigurationEntry<?>> configurationEntries = Arrays.asList(maxConnectionsEntry,
+			maxConnectionsPerRouteEntry, connectTimeoutEntry, socketTimeoutEntry, keepAliveEntry, maxRetriesEntry,
+			retryBackoffEntry);
+
+	@Override
+	public String getModuleName() {
+		return "Reference HTTP client configuration";
+	}
+
+	@Override
+	public boolean isActive() {
+		return isActive;
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		isActive = active;
+	}
+
+	@Override
+	public ConfigurationCategory getCategory() {
+		return ConfigurationCategory.GENERAL;
+	}
+
+	@Override
+	public List<? extends ConfigurationEntry<?>> getConfigurationEntries() {
+		return configurationEntries;
+	}
+
+	@Override
+	public List<AlgorithmEntry> getAlgorithmEntries() {
+		return null;
+	}
+
+	@Override
+	public List<FormatEntry> getFormatEntries() {
+		return null;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	@ConfigurationKey(key = maxConnectionsKey)
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	@ConfigurationKey(key = maxConnectionsPerRouteKey)
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	@ConfigurationKey(key = connectTimeoutKey)
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	@ConfigurationKey(key = socketTimeoutKey)
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	public int getKeepAlive() {
+		return keepAlive;
+	}
+
+	@ConfigurationKey(key = keepAliveKey)
+	public void setKeepAlive(int keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	@ConfigurationKey(key = maxRetriesKey)
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public int getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	@ConfigurationKey(key = retryBackoffKey)
+	public void setRetryBackoff(int retryBackoff) {
+		this.retryBackoff = retryBackoff;
+	}
+
+}
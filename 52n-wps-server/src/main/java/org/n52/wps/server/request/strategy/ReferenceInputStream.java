@@ -39,11 +39,21 @@ public class ReferenceInputStream extends FilterInputStream {
     
     private final String mimeType;
     private final String encoding;
+    private final String contentHash;
     
     public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding) {
+        this(inputStream, mimeType, encoding, null);
+    }
+    
+    /**
+     * @param contentHash hash of the complete content if it is known in
+     *            advance, e.g. for cached references
+     */
+    public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding, String contentHash) {
         super(inputStream);
         this.mimeType = mimeType;
         this.encoding = encoding;
+        this.contentHash = contentHash;
     }
     
     public String getMimeType() {
@@ -53,4 +63,11 @@ public class ReferenceInputStream extends FilterInputStream {
     public String getEncoding() {
         return encoding;
     }
+    
+    /**
+     * @return the hash of the content or <code>null</code> if unknown
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
 }
@@ -50,6 +50,8 @@ public class ReferenceStrategyRegister {
 	private ReferenceStrategyRegister(){
 		registeredStrategies = new ArrayList<IReferenceStrategy>();
 		registeredStrategies.add(new WCS111XMLEmbeddedBase64OutputReferenceStrategy());
+		// only applicable if the reference cache is enabled
+		registeredStrategies.add(new CachingReferenceStrategy());
 	}
 	
 	protected void registerStrategy(IReferenceStrategy strategy){
@@ -66,4 +68,23 @@ public class ReferenceStrategyRegister {
 		}
 		return foundStrategy.fetchData(input);
 	}
+
+	/**
+	 * @param input
+	 *            the reference
+	 * @return the hash of the content the reference resolves to if it is
+	 *         known without fetching it, i.e. it would be served from the
+	 *         reference cache, otherwise <code>null</code>
+	 */
+	public String getContentHash(InputReference input) {
+		for(IReferenceStrategy strategy : registeredStrategies){
+			if(strategy.isApplicable(input)){
+				if(strategy instanceof CachingReferenceStrategy){
+					return ((CachingReferenceStrategy) strategy).getCachedContentHash(input);
+				}
+				return null;
+			}
+		}
+		return null;
+	}
 }
@@ -28,7 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.ExecuteRequest;
@@ -47,6 +49,11 @@ public class ExecuteResponse extends Response {
 		return this.builder.getAsStream();
 	}
 	
+    @Override
+	public void writeTo(OutputStream os) throws ExceptionReport, IOException {
+		this.builder.writeTo(os);
+	}
+	
 	public ExecuteResponseBuilder getExecuteResponseBuilder(){
 		return builder;
 	}
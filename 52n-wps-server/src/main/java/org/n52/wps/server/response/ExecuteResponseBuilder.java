@@ -28,7 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.xmlbeans.XmlObject;
 import org.n52.wps.server.ExceptionReport;
@@ -51,6 +53,12 @@ public interface ExecuteResponseBuilder {
 
 	public InputStream getAsStream() throws ExceptionReport;
 
+	/**
+	 * Writes the response to the given stream without closing it. Raw data
+	 * outputs are generated directly into the stream.
+	 */
+	public void writeTo(OutputStream os) throws ExceptionReport, IOException;
+
 	public void setStatus(XmlObject statusObject);
 
 }
@@ -28,7 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Calendar;
 
 import javax.xml.XMLConstants;
@@ -76,6 +78,7 @@ public class ExecuteResponseBuilderV100 implements ExecuteResponseBuilder{
 	private ExecuteRequestV100 request;
 	private ExecuteResponseDocument doc;
 	private RawData rawDataHandler = null;
+	private ResponseDocumentWriter responseWriter = new ResponseDocumentWriter();
 	private ProcessDescription superDescription;
 	private ProcessDescriptionType description;
 	private static Logger LOGGER = LoggerFactory.getLogger(ExecuteResponseBuilderV100.class);
@@ -120,6 +123,7 @@ public class ExecuteResponseBuilderV100 implements ExecuteResponseBuilder{
 				responseElem.setDataInputs(dataInputs);
 			}
 			responseElem.addNewProcessOutputs();
+			responseWriter.clear();
 			// has the client specified the outputs?
 			if (request.getExecute().isSetResponseForm()) {
 				// Get the outputdescriptions from the algorithm
@@ -333,7 +337,7 @@ public class ExecuteResponseBuilderV100 implements ExecuteResponseBuilder{
 				handler.updateResponseAsReference(doc, (request.getUniqueId()).toString(),mimeType);
 			}
 			else {
-				handler.updateResponseForInlineComplexData(doc);
+				handler.updateResponseForInlineComplexData(doc, responseWriter);
 			}
 		}
 
@@ -364,19 +368,32 @@ public class ExecuteResponseBuilderV100 implements ExecuteResponseBuilder{
 		if(request.isRawData() && rawDataHandler != null) {
 			return rawDataHandler.getAsStream();
 		}
-		if(request.isStoreResponse()) {
-			String id = request.getUniqueId().toString();
-			String statusLocation = DatabaseFactory.getDatabase().generateRetrieveResultURL(id);
-			doc.getExecuteResponse().setStatusLocation(statusLocation);
-		}
+		setStatusLocation();
 		try {
-			return doc.newInputStream(XMLBeansHelper.getXmlOptions());
+			return responseWriter.newInputStream(doc);
 		}
 		catch(Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	public void writeTo(OutputStream os) throws ExceptionReport, IOException {
+		if(request.isRawData() && rawDataHandler != null) {
+			rawDataHandler.writeTo(os);
+			return;
+		}
+		setStatusLocation();
+		responseWriter.write(doc, os);
+	}
+
+	private void setStatusLocation() {
+		if(request.isStoreResponse()) {
+			String id = request.getUniqueId().toString();
+			String statusLocation = DatabaseFactory.getDatabase().generateRetrieveResultURL(id);
+			doc.getExecuteResponse().setStatusLocation(statusLocation);
+		}
+	}
+
 	public void setStatus(XmlObject statusObject) {
 		
 		if(statusObject instanceof StatusType){
@@ -28,7 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import net.opengis.ows.x20.BoundingBoxType;
 import net.opengis.ows.x20.DomainMetadataType;
@@ -73,6 +75,7 @@ public class ExecuteResponseBuilderV200 implements ExecuteResponseBuilder{
 	private ResultDocument resultDoc;
 	private StatusInfoDocument statusInfoDoc;
 	private RawData rawDataHandler = null;
+	private ResponseDocumentWriter responseWriter = new ResponseDocumentWriter();
 	private ProcessOffering description;
 	private ProcessDescription superDescription;
 	private static Logger LOGGER = LoggerFactory.getLogger(ExecuteResponseBuilderV200.class);
@@ -102,6 +105,7 @@ public class ExecuteResponseBuilderV200 implements ExecuteResponseBuilder{
 
 		// if status succeeded, update response with result
 		if (statusInfoDoc.getStatusInfo().getStatus().equals(Status.Succeeded.toString())) {
+			responseWriter.clear();
 			// the response only include dataInputs, if the property is set to true;
 			// has the client specified the outputs?
 				// Get the outputdescriptions from the algorithm
@@ -256,7 +260,7 @@ public class ExecuteResponseBuilderV200 implements ExecuteResponseBuilder{
 				handler.updateResponseAsReference(resultDoc, (request.getUniqueId()).toString(),mimeType);
 			}
 			else {
-				handler.updateResponseForInlineComplexData(resultDoc);
+				handler.updateResponseForInlineComplexData(resultDoc, responseWriter);
 			}
 		}
 
@@ -288,16 +292,41 @@ public class ExecuteResponseBuilderV200 implements ExecuteResponseBuilder{
 			return rawDataHandler.getAsStream();
 		}
 		
+		XmlObject document = getResponseDocument();
+		if(document == resultDoc){
+			try {
+				return responseWriter.newInputStream(resultDoc);
+			} catch (IOException e) {
+				throw new ExceptionReport("Could not write the result document", ExceptionReport.NO_APPLICABLE_CODE, e);
+			}
+		}
+		return document.newInputStream(XMLBeansHelper.getXmlOptions());
+	}
+
+	private XmlObject getResponseDocument() {
 		if(request.getExecute().getMode().equals(ExecuteRequestType.Mode.SYNC)){
-			return resultDoc.newInputStream(XMLBeansHelper.getXmlOptions());
+			return resultDoc;
 		}else if(statusInfoDoc.getStatusInfo().getStatus().equals(Status.Succeeded.toString())){
 			//save last status info and return result document
 			DatabaseFactory.getDatabase().insertResponse(
 					request.getUniqueId().toString(), statusInfoDoc.newInputStream(XMLBeansHelper.getXmlOptions()));
-			return resultDoc.newInputStream(XMLBeansHelper.getXmlOptions());
+			return resultDoc;
 		}
 		
-		return statusInfoDoc.newInputStream(XMLBeansHelper.getXmlOptions());
+		return statusInfoDoc;
+	}
+
+	public void writeTo(OutputStream os) throws ExceptionReport, IOException {
+		if(request.isRawData() && rawDataHandler != null) {
+			rawDataHandler.writeTo(os);
+			return;
+		}
+		XmlObject document = getResponseDocument();
+		if(document == resultDoc){
+			responseWriter.write(resultDoc, os);
+		}else{
+			document.save(os, XMLBeansHelper.getXmlOptions());
+		}
 	}
 
 	public void setStatus(XmlObject statusObject) {
@@ -30,12 +30,9 @@ package org.n52.wps.server.response;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import net.opengis.ows.x11.BoundingBoxType;
 import net.opengis.ows.x11.CodeType;
 import net.opengis.ows.x11.LanguageStringType;
@@ -48,24 +45,17 @@ import net.opengis.wps.x20.DataDocument.Data;
 import net.opengis.wps.x20.DataOutputType;
 import net.opengis.wps.x20.ResultDocument;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.xmlbeans.XmlException;
-import org.apache.xmlbeans.XmlObject;
 import org.apache.xmlbeans.XmlString;
 import org.n52.wps.io.BasicXMLTypeFactory;
-import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.data.IBBOXData;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.literal.AbstractLiteralDataBinding;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.ProcessDescription;
+import org.n52.wps.server.database.ComplexValueWriter;
 import org.n52.wps.server.database.DatabaseFactory;
-import org.n52.wps.server.database.IDatabase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 import com.google.common.primitives.Doubles;
 
@@ -98,84 +88,35 @@ public class OutputDataItem extends ResponseData {
 	}
 
 	/**
+	 * Adds the complex data element for the output. The output itself is
+	 * generated while the response is written by the given writer.
 	 *
 	 * @param res
+	 * @param writer
 	 * @throws ExceptionReport
 	 */
-	public void updateResponseForInlineComplexData(ExecuteResponseDocument res) throws ExceptionReport {
+	public void updateResponseForInlineComplexData(ExecuteResponseDocument res, ResponseDocumentWriter writer) throws ExceptionReport {
 		OutputDataType output = prepareOutput(res);
 		prepareGenerator();
-		ComplexDataType complexData = null;
-
-
-
-		try {
-			// CHECKING IF STORE IS TRUE AND THEN PROCESSING.... SOMEHOW!
-			// CREATING A COMPLEXVALUE
-
-			// in case encoding is NULL -or- empty -or- UTF-8
-			// send plain text (XML or not) in response node
-			//
-			// in case encoding is base64
-			// send base64encoded (binary) data in node
-			//
-			// in case encoding is
-			//
-			InputStream stream = null;
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
-			}
-
-			// in case encoding is base64 create a new text node
-			// and parse the generator's result into it
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
-			}
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
-			}
-			complexData = output.addNewData().addNewComplexData();
-			if(mimeType.contains("xml") || mimeType.contains("XML")){
-				complexData.set(XmlObject.Factory.parse(stream));
-				stream.close();
-			}else{
-				DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				Document document = builder.newDocument();
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				IOUtils.copy(stream, baos);
-				stream.close();
-				String text = baos.toString();
-				baos.close();
-				Node dataNode = document.createTextNode(text);
-				complexData.set(XmlObject.Factory.parse(dataNode));
-			}
-
-		} catch(RuntimeException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (IOException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (XmlException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result. Check encoding (base64 for inline binary data or UTF-8 for XML based data)", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Base64 Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		// in case encoding is NULL -or- empty -or- UTF-8
+		// send plain text (XML or not) in response node
+		//
+		// in case encoding is base64
+		// send base64encoded (binary) data in node
+		boolean base64 = isBase64Encoding();
+		ComplexDataType complexData = output.addNewData().addNewComplexData();
+		if (schema != null) {
+			// setting the schema attribute for the output.
+			complexData.setSchema(schema);
 		}
-
-		if (complexData != null) {
-			if (schema != null) {
-				// setting the schema attribute for the output.
-				complexData.setSchema(schema);
-			}
-			if (encoding != null) {
-				complexData.setEncoding(encoding);
-			}
-			if (mimeType != null) {
-				complexData.setMimeType(mimeType);
-			}
+		if (encoding != null) {
+			complexData.setEncoding(encoding);
 		}
+		if (mimeType != null) {
+			complexData.setMimeType(mimeType);
+		}
+		// the output is generated while the response is written
+		writer.addInlineOutput(complexData, newInlineContent(base64), !base64 && isXML());
 	}
 
 	public void updateResponseForLiteralData(ExecuteResponseDocument res, String dataTypeReference){
@@ -197,7 +138,6 @@ public class OutputDataItem extends ResponseData {
 	public void updateResponseAsReference(ExecuteResponseDocument res, String reqID, String mimeType) throws ExceptionReport {
 		prepareGenerator();
 		OutputDataType output = prepareOutput(res);
-		InputStream stream;
 
 		OutputReferenceType outReference = output.addNewReference();
 		if (schema != null) {
@@ -209,29 +149,9 @@ public class OutputDataItem extends ResponseData {
 		if (mimeType != null) {
 			outReference.setMimeType(mimeType);
 		}
-		IDatabase db = DatabaseFactory.getDatabase();
 		String storeID = reqID + "" + id;
 
-		try {
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
-			}
-
-			// in case encoding is base64
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
-			}
-
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
-			}
-		}
-		catch (IOException e){
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		}
-
-		String storeReference = db.storeComplexValue(storeID, stream, COMPLEX_DATA_TYPE, mimeType);
+		String storeReference = storeComplexValue(storeID);
 		storeReference = storeReference.replace("#", "%23");
 		outReference.setHref(storeReference);
 		// MSS:  05-02-2009 changed default output type to text/xml to be certain that the calling application doesn't
@@ -239,6 +159,26 @@ public class OutputDataItem extends ResponseData {
 		this.mimeType = "text/xml";
 	}
 
+	/**
+	 * Generates the output directly into the store of the database.
+	 * 
+	 * @return the reference to the stored output
+	 */
+	private String storeComplexValue(String storeID) throws ExceptionReport {
+		final boolean base64 = isBase64Encoding();
+		try {
+			return DatabaseFactory.getDatabase().storeComplexValue(storeID, new ComplexValueWriter() {
+				@Override
+				public void writeTo(OutputStream out) throws IOException {
+					writeComplexData(out, base64);
+				}
+			}, COMPLEX_DATA_TYPE, mimeType);
+		} catch (RuntimeException e) {
+			LOGGER.error(e.getMessage(), e);
+			throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
 	private OutputDataType prepareOutput(ExecuteResponseDocument res){
 		OutputDataType output = res.getExecuteResponse().getProcessOutputs().addNewOutput();
 		CodeType identifierCode = output.addNewIdentifier();
@@ -274,7 +214,6 @@ public class OutputDataItem extends ResponseData {
 			String mimeType) throws ExceptionReport {
 		prepareGenerator();
 		DataOutputType output = prepareOutput(res);
-		InputStream stream;
 
 		net.opengis.wps.x20.ReferenceType outReference = output.addNewReference();
 		if (schema != null) {
@@ -286,30 +225,10 @@ public class OutputDataItem extends ResponseData {
 		if (mimeType != null) {
 			outReference.setMimeType(mimeType);
 		}
-		IDatabase db = DatabaseFactory.getDatabase();
 		String storeID = reqID + "" + id;
 
-		try {
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
-			}
-
-			// in case encoding is base64
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
-			}
-
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
-			}
-		}
-		catch (IOException e){
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		}
-
 		// TODO enhance this to support additional storage possibilities, e.g. WFS
-		String storeReference = db.storeComplexValue(storeID, stream, COMPLEX_DATA_TYPE, mimeType);
+		String storeReference = storeComplexValue(storeID);
 		storeReference = storeReference.replace("#", "%23");
 		outReference.setHref(storeReference);
 		// MSS:  05-02-2009 changed default output type to text/xml to be certain that the calling application doesn't
@@ -318,76 +237,45 @@ public class OutputDataItem extends ResponseData {
 		
 	}
 
-	public void updateResponseForInlineComplexData(ResultDocument res) throws ExceptionReport {
+	public void updateResponseForInlineComplexData(ResultDocument res, ResponseDocumentWriter writer) throws ExceptionReport {
 		DataOutputType output = prepareOutput(res);
 		prepareGenerator();
-		Data complexData = null;
+		boolean base64 = isBase64Encoding();
+		Data complexData = output.addNewData();
+		if (schema != null) {
+			// setting the schema attribute for the output.
+			complexData.setSchema(schema);
+		}
+		if (encoding != null) {
+			complexData.setEncoding(encoding);
+		}
+		if (mimeType != null) {
+			complexData.setMimeType(mimeType);
+		}
+		// the output is generated while the response is written
+		writer.addInlineOutput(complexData, newInlineContent(base64), !base64 && isXML());
+	}
 
-		try {
-			// in case encoding is NULL -or- empty -or- UTF-8
-			// send plain text (XML or not) in response node
-			//
-			// in case encoding is base64
-			// send base64encoded (binary) data in node
-			//
-			// in case encoding is
-			//
-			InputStream stream = null;
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
+	/**
+	 * @return the inline content of this output, written directly into the
+	 *         response document by streaming generators
+	 */
+	private ResponseDocumentWriter.InlineContent newInlineContent(final boolean base64) {
+		return new ResponseDocumentWriter.InlineContent() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				writeComplexData(out, base64);
 			}
 
-			// in case encoding is base64 create a new text node
-			// and parse the generator's result into it
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
+			@Override
+			public InputStream open() throws IOException {
+				return openComplexData(base64);
 			}
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
-			}
-			complexData = output.addNewData();
-			if(mimeType.contains("xml") || mimeType.contains("XML")){
-				complexData.set(XmlObject.Factory.parse(stream));
-				stream.close();
-			}else{
-				DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				Document document = builder.newDocument();
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				IOUtils.copy(stream, baos);
-				stream.close();
-				String text = baos.toString();
-				baos.close();
-				Node dataNode = document.createTextNode(text);
-				complexData.set(XmlObject.Factory.parse(dataNode));
-			}
-
-		} catch(RuntimeException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (IOException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (XmlException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result. Check encoding (base64 for inline binary data or UTF-8 for XML based data)", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Base64 Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		}
+		};
+	}
 
-		if (complexData != null) {
-			if (schema != null) {
-				// setting the schema attribute for the output.
-				complexData.setSchema(schema);
-			}
-			if (encoding != null) {
-				complexData.setEncoding(encoding);
-			}
-			if (mimeType != null) {
-				complexData.setMimeType(mimeType);
-			}
-		}
-		
+	private boolean isXML() {
+		return mimeType != null && (mimeType.contains("xml") || mimeType.contains("XML"));
 	}
 
 	public void updateResponseForBBOXData(ResultDocument res, IBBOXData obj) {
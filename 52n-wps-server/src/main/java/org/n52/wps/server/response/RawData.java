@@ -31,7 +31,9 @@ package org.n52.wps.server.response;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.data.IBBOXData;
 import org.n52.wps.io.data.IComplexData;
@@ -112,6 +114,43 @@ public class RawData extends ResponseData {
         throw new ExceptionReport("Could not determine encoding. Use default (=not set) or base64", ExceptionReport.NO_APPLICABLE_CODE);
     }
 
+    /**
+     * Writes the data to the given stream. Complex data is written by the
+     * generator into a {@link ResponseBuffer} and only copied to the stream
+     * once it is complete, so a failing generator results in an
+     * ExceptionReport instead of a truncated response.
+     */
+    public void writeTo(OutputStream out) throws ExceptionReport, IOException {
+        if (obj instanceof ILiteralData || obj instanceof IBBOXData) {
+            InputStream stream = getAsStream();
+            try {
+                IOUtils.copy(stream, out);
+            } finally {
+                stream.close();
+            }
+            return;
+        }
+        boolean base64;
+        if (encoding == null || "".equals(encoding) || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+            base64 = false;
+        } else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+            base64 = true;
+        } else {
+            throw new ExceptionReport("Could not determine encoding. Use default (=not set) or base64", ExceptionReport.NO_APPLICABLE_CODE);
+        }
+        ResponseBuffer buffer = new ResponseBuffer();
+        try {
+            try {
+                writeComplexData(buffer, base64);
+            } catch (IOException e) {
+                throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+            }
+            buffer.copyTo(out);
+        } finally {
+            buffer.delete();
+        }
+    }
+
     private StringBuilder appendAttr(StringBuilder builder, String key, Object value) {
         return builder.append(' ').append(key).append('=')
                 .append('"').append(value).append('"');
@@ -28,9 +28,12 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.Request;
 
@@ -53,6 +56,19 @@ abstract public class Response {
 	
 	public abstract InputStream getAsStream() throws ExceptionReport;
 	
+	/**
+	 * Writes the response to the given stream without closing it. Responses
+	 * that can be written directly override this to avoid buffering.
+	 */
+	public void writeTo(OutputStream os) throws ExceptionReport, IOException {
+		InputStream is = getAsStream();
+		try {
+			IOUtils.copyLarge(is, os);
+		} finally {
+			is.close();
+		}
+	}
+	
 	public Request getRequest(){
 		return request;
 	}
@@ -26,37 +26,46 @@
  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
  * Public License for more details.
  */
-package org.n52.wps.server.handler;
+package org.n52.wps.server.response;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.io.OutputStream;
 
-import org.n52.wps.commons.WPSConfig;
-import org.n52.wps.webapp.entities.Server;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 
 /**
- * After the client Request is accepted, it should be executed. To prevent
- * resource-exhaustion, this ThreadPoolExecutor stores the Requests in a queue,
- * and handles only a couple of them at a time. To tune the performance one can
- * alter the parameters of this pool.
- * 
- * Proper pool size estimation: N = Number of processors WT = Average waiting
- * time of a task ST = Average service time of a task #Threads = N * (1 + WT/ST)
- * 
- * @author Timon ter Braak
+ * Buffers a response until it is complete, so a failure while the response is
+ * generated can still be reported by an ExceptionReport instead of sending a
+ * truncated response to the client. Small responses are kept in memory,
+ * larger ones in a temporary file.
  */
-public class RequestExecutor extends ThreadPoolExecutor {
+class ResponseBuffer extends DeferredFileOutputStream {
+
+	private static final int IN_MEMORY_THRESHOLD = 1024 * 1024;
+
+	ResponseBuffer() {
+		super(IN_MEMORY_THRESHOLD, "wps-response", null, null);
+	}
+
+	/**
+	 * Closes the buffer and copies the complete response to the given stream.
+	 * The stream is not closed.
+	 */
+	void copyTo(OutputStream out) throws IOException {
+		close();
+		writeTo(out);
+	}
 
-	public static Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServerConfigurationModule();
-	
 	/**
-	 * Create a RequestExecutor.
+	 * Deletes the temporary file of the buffer, if any.
 	 */
-	public RequestExecutor() {
-		super(serverConfig.getMinPoolSize(), serverConfig.getMaxPoolSize(), serverConfig.getKeepAliveSeconds(),
-				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
-						serverConfig.getMaxQueuedTasks()));
+	void delete() {
+		IOUtils.closeQuietly(this);
+		if (!isInMemory()) {
+			FileUtils.deleteQuietly(getFile());
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -28,6 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,11 +38,14 @@ import net.opengis.wps.x100.ComplexDataDescriptionType;
 import net.opengis.wps.x100.OutputDescriptionType;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.GeneratorFactory;
 import org.n52.wps.io.IGenerator;
+import org.n52.wps.io.IOHandler;
+import org.n52.wps.io.IStreamingGenerator;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.ProcessDescription;
@@ -355,6 +361,53 @@ public abstract class ResponseData {
 			throw new ExceptionReport("Could not find an appropriate generator based on given mimetype/schema/encoding for output", ExceptionReport.NO_APPLICABLE_CODE);
 		}
 	}
+
+	/**
+	 * @return <code>true</code> if the output has to be encoded in Base64,
+	 *         <code>false</code> for the default encoding
+	 * @throws ExceptionReport
+	 *             if the encoding is not supported
+	 */
+	protected boolean isBase64Encoding() throws ExceptionReport {
+		if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+			return false;
+		}
+		if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+			return true;
+		}
+		throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
+	}
+
+	/**
+	 * @return the generated complex output in the requested encoding
+	 */
+	protected InputStream openComplexData(boolean base64) throws IOException {
+		return base64 ? generator.generateBase64Stream(obj, mimeType, schema)
+				: generator.generateStream(obj, mimeType, schema);
+	}
+
+	/**
+	 * Generates the complex output directly into the given stream. Generators
+	 * that cannot write to streams are bridged by copying their generated
+	 * stream. The stream is not closed.
+	 */
+	protected void writeComplexData(OutputStream out, boolean base64) throws IOException {
+		if (generator instanceof IStreamingGenerator) {
+			IStreamingGenerator streamingGenerator = (IStreamingGenerator) generator;
+			if (base64) {
+				streamingGenerator.writeBase64To(obj, mimeType, schema, out);
+			} else {
+				streamingGenerator.writeTo(obj, mimeType, schema, out);
+			}
+			return;
+		}
+		InputStream stream = openComplexData(base64);
+		try {
+			IOUtils.copyLarge(stream, out);
+		} finally {
+			stream.close();
+		}
+	}
 	
 }
 
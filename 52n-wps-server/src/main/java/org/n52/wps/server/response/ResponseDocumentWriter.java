@@ -0,0 +1,489 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.WriterOutputStream;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.database.SelfCleaningFileInputStream;
+import org.n52.wps.util.XMLBeansHelper;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+/**
+ * Writes response documents with inline complex outputs without holding the
+ * outputs in memory. The outputs are only marked in the document by a
+ * processing instruction. When the document is written, it is serialized
+ * with StAX and the output of the generator is copied into the stream at the
+ * marker: XML event by event from the generated stream, text and Base64 as
+ * written by the generator, directly for streaming generators.
+ *
+ * Documents with inline outputs are buffered until they are complete, so a
+ * failing generator is reported by an ExceptionReport instead of a truncated
+ * document.
+ */
+public class ResponseDocumentWriter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String PROCESSING_INSTRUCTION_TARGET = "n52-inline-output";
+
+	private final XMLOutputFactory outputFactory;
+
+	private final XMLInputFactory inputFactory;
+
+	/**
+	 * Prefix of the markers of this writer, so markers contained in copied
+	 * request data are not mistaken for outputs.
+	 */
+	private final String markerPrefix = UUID.randomUUID().toString() + " ";
+
+	private final List<InlineOutput> outputs = new ArrayList<InlineOutput>();
+
+	public ResponseDocumentWriter() {
+		this.outputFactory = new WstxOutputFactory();
+		this.outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+		this.outputFactory.setProperty(WstxOutputProperties.P_OUTPUT_VALIDATE_STRUCTURE, Boolean.FALSE);
+		this.inputFactory = new WstxInputFactory();
+		this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	/**
+	 * The content of an inline output, generated while the document is
+	 * written.
+	 */
+	interface InlineContent {
+
+		/**
+		 * Generates text or Base64 content into the stream, which is not
+		 * closed.
+		 */
+		void writeTo(OutputStream out) throws IOException;
+
+		/**
+		 * @return the generated XML content, which is copied event by event
+		 */
+		InputStream open() throws IOException;
+
+	}
+
+	/**
+	 * Marks the given element to be filled with the given content when the
+	 * document is written.
+	 * 
+	 * @param xml
+	 *            <code>true</code> to copy the output as XML,
+	 *            <code>false</code> to copy it as text
+	 */
+	synchronized void addInlineOutput(XmlObject complexData, InlineContent content, boolean xml) {
+		XmlCursor cursor = complexData.newCursor();
+		try {
+			cursor.toEndToken();
+			cursor.insertProcInst(PROCESSING_INSTRUCTION_TARGET, markerPrefix + outputs.size());
+		} finally {
+			cursor.dispose();
+		}
+		outputs.add(new InlineOutput(content, xml));
+	}
+
+	/**
+	 * Forgets all outputs, e.g. before the outputs of a document are created
+	 * again.
+	 */
+	synchronized void clear() {
+		outputs.clear();
+	}
+
+	synchronized boolean hasInlineOutputs() {
+		return !outputs.isEmpty();
+	}
+
+	/**
+	 * Writes the document including all inline outputs to the stream. The
+	 * stream is not closed.
+	 * 
+	 * @throws ExceptionReport
+	 *             if an inline output could not be generated, nothing is
+	 *             written to the stream then
+	 * @throws IOException
+	 *             if the stream could not be written
+	 */
+	public void write(XmlObject document, OutputStream out) throws ExceptionReport, IOException {
+		List<InlineOutput> current = getOutputs();
+		if (current.isEmpty()) {
+			document.save(out, XMLBeansHelper.getXmlOptions());
+			return;
+		}
+		ResponseBuffer buffer = new ResponseBuffer();
+		try {
+			try {
+				write(document, current, buffer);
+			} catch (IOException e) {
+				throw new ExceptionReport("Error while generating Complex Data out of the process result",
+						ExceptionReport.NO_APPLICABLE_CODE, e);
+			}
+			buffer.copyTo(out);
+		} finally {
+			buffer.delete();
+		}
+	}
+
+	private synchronized List<InlineOutput> getOutputs() {
+		return new ArrayList<InlineOutput>(outputs);
+	}
+
+	private void write(XmlObject document, List<InlineOutput> current, OutputStream out) throws IOException {
+		try {
+			XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			DocumentHandler handler = new DocumentHandler(writer, current);
+			document.save(handler, handler, XMLBeansHelper.getXmlOptions());
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not write response document", e);
+		} catch (SAXException e) {
+			if (e.getException() instanceof IOException) {
+				throw (IOException) e.getException();
+			}
+			throw new IOException("Could not write response document", e);
+		}
+	}
+
+	/**
+	 * @return the document including all inline outputs. Documents with
+	 *         inline outputs are buffered in a temporary file, which is
+	 *         deleted when the stream is closed.
+	 */
+	public InputStream newInputStream(XmlObject document) throws IOException {
+		if (!hasInlineOutputs()) {
+			return document.newInputStream(XMLBeansHelper.getXmlOptions());
+		}
+		File file = File.createTempFile("response", ".xml");
+		try {
+			OutputStream out = new BufferedOutputStream(FileUtils.openOutputStream(file));
+			try {
+				write(document, getOutputs(), out);
+			} finally {
+				out.close();
+			}
+			return new SelfCleaningFileInputStream(file);
+		} catch (IOException e) {
+			FileUtils.deleteQuietly(file);
+			throw e;
+		}
+	}
+
+	private void copyXML(InputStream in, XMLStreamWriter writer) throws XMLStreamException {
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+		// whitespace outside of the root element is not copied
+		int depth = 0;
+		try {
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					writer.writeStartElement(nonNull(reader.getPrefix()), reader.getLocalName(),
+							nonNull(reader.getNamespaceURI()));
+					for (int i = 0; i < reader.getNamespaceCount(); i++) {
+						String prefix = reader.getNamespacePrefix(i);
+						if (prefix == null || prefix.length() == 0) {
+							writer.writeDefaultNamespace(nonNull(reader.getNamespaceURI(i)));
+						} else {
+							writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+						}
+					}
+					for (int i = 0; i < reader.getAttributeCount(); i++) {
+						writer.writeAttribute(nonNull(reader.getAttributePrefix(i)),
+								nonNull(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+								reader.getAttributeValue(i));
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					writer.writeEndElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					if (depth > 0) {
+						writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(),
+								reader.getTextLength());
+					}
+					break;
+				case XMLStreamConstants.CDATA:
+					writer.writeCData(reader.getText());
+					break;
+				case XMLStreamConstants.COMMENT:
+					writer.writeComment(reader.getText());
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+					break;
+				default:
+					// the document itself and its DTD are not copied
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String nonNull(String value) {
+		return value == null ? "" : value;
+	}
+
+	private static String getPrefix(String qName) {
+		int colon = qName.indexOf(':');
+		return colon < 0 ? "" : qName.substring(0, colon);
+	}
+
+	private static class InlineOutput {
+
+		private final InlineContent content;
+
+		private final boolean xml;
+
+		InlineOutput(InlineContent content, boolean xml) {
+			this.content = content;
+			this.xml = xml;
+		}
+
+	}
+
+	/**
+	 * Writes characters as text of the current element of the document.
+	 */
+	private static class CharactersWriter extends Writer {
+
+		private final XMLStreamWriter writer;
+
+		CharactersWriter(XMLStreamWriter writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			try {
+				writer.writeCharacters(cbuf, off, len);
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public void flush() {
+			// the document is flushed when it is complete
+		}
+
+		@Override
+		public void close() {
+			// the document is closed when it is complete
+		}
+
+	}
+
+	/**
+	 * Writes the SAX events of the saved document to StAX, replacing the
+	 * markers by the outputs.
+	 */
+	private class DocumentHandler extends DefaultHandler implements LexicalHandler {
+
+		private final XMLStreamWriter writer;
+
+		private final List<InlineOutput> outputs;
+
+		private final List<String[]> pendingPrefixes = new ArrayList<String[]>();
+
+		DocumentHandler(XMLStreamWriter writer, List<InlineOutput> outputs) {
+			this.writer = writer;
+			this.outputs = outputs;
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) {
+			pendingPrefixes.add(new String[] { prefix, uri });
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			try {
+				writer.writeStartElement(getPrefix(qName), localName, uri);
+				for (String[] prefix : pendingPrefixes) {
+					if ("xml".equals(prefix[0])) {
+						continue;
+					} else if (prefix[0].length() == 0) {
+						writer.writeDefaultNamespace(prefix[1]);
+					} else {
+						writer.writeNamespace(prefix[0], prefix[1]);
+					}
+				}
+				pendingPrefixes.clear();
+				for (int i = 0; i < atts.getLength(); i++) {
+					String attributeQName = atts.getQName(i);
+					if (attributeQName.equals("xmlns") || attributeQName.startsWith("xmlns:")) {
+						continue;
+					}
+					String attributeURI = atts.getURI(i);
+					if (attributeURI == null || attributeURI.length() == 0) {
+						writer.writeAttribute(atts.getLocalName(i), atts.getValue(i));
+					} else {
+						writer.writeAttribute(getPrefix(attributeQName), attributeURI, atts.getLocalName(i),
+								atts.getValue(i));
+					}
+				}
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			try {
+				writer.writeEndElement();
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			try {
+				writer.writeCharacters(ch, start, length);
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			characters(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			try {
+				if (PROCESSING_INSTRUCTION_TARGET.equals(target) && data != null && data.startsWith(markerPrefix)) {
+					writeOutput(outputs.get(Integer.parseInt(data.substring(markerPrefix.length()))));
+				} else {
+					writer.writeProcessingInstruction(target, data);
+				}
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void comment(char[] ch, int start, int length) throws SAXException {
+			try {
+				writer.writeComment(new String(ch, start, length));
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void startDTD(String name, String publicId, String systemId) {
+			// response documents have no DTD
+		}
+
+		@Override
+		public void endDTD() {
+			// response documents have no DTD
+		}
+
+		@Override
+		public void startEntity(String name) {
+			// entities are reported resolved
+		}
+
+		@Override
+		public void endEntity(String name) {
+			// entities are reported resolved
+		}
+
+		@Override
+		public void startCDATA() {
+			// the content is reported as characters
+		}
+
+		@Override
+		public void endCDATA() {
+			// the content is reported as characters
+		}
+
+		private void writeOutput(InlineOutput output) throws IOException, XMLStreamException {
+			if (output.xml) {
+				InputStream in = output.content.open();
+				try {
+					copyXML(in, writer);
+				} finally {
+					in.close();
+				}
+			} else {
+				OutputStream out = new WriterOutputStream(new CharactersWriter(writer), UTF8);
+				output.content.writeTo(out);
+				// decodes the remaining bytes
+				out.close();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests parsing of HTTP Range headers by {@link ByteRange}.
+ */
+public class ByteRangeTest {
+
+    @Test
+    public void testSingleRanges() {
+        assertRange(ByteRange.parse("bytes=0-99", 1000), 0, 99);
+        assertRange(ByteRange.parse("bytes=500-", 1000), 500, 999);
+        assertRange(ByteRange.parse("bytes=-100", 1000), 900, 999);
+        // ranges reaching beyond the end are cut
+        assertRange(ByteRange.parse("bytes=900-2000", 1000), 900, 999);
+        assertRange(ByteRange.parse("bytes=-2000", 1000), 0, 999);
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-599, 0-9,2000-", 1000);
+        assertEquals(2, ranges.size());
+        assertEquals(500, ranges.get(0).getStart());
+        assertEquals(100, ranges.get(0).getLength());
+        assertEquals("bytes 0-9/1000", ranges.get(1).toContentRange(1000));
+    }
+
+    @Test
+    public void testUnsatisfiableRanges() {
+        assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    public void testMalformedRangesAreIgnored() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-9", 1000));
+        assertNull(ByteRange.parse("bytes=9-0", 1000));
+        assertNull(ByteRange.parse("bytes=a-b", 1000));
+        assertNull(ByteRange.parse("bytes=0-9,10", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+    }
+
+    private void assertRange(List<ByteRange> ranges, long start, long end) {
+        assertEquals(1, ranges.size());
+        assertEquals(start, ranges.get(0).getStart());
+        assertEquals(end, ranges.get(0).getEnd());
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.modules.LocalAlgorithmRepositoryCM;
+import org.n52.wps.webapp.api.ConfigurationManager;
+import org.n52.wps.webapp.common.AbstractITClass;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * Tests that the revision of the {@link RepositoryManager} changes whenever
+ * the offered processes may have changed.
+ */
+public class RepositoryManagerTest extends AbstractITClass {
+
+	private ConfigurationManager configurationManager;
+
+	@Before
+	public void setUp() {
+		MockMvcBuilders.webAppContextSetup(this.wac).build();
+		configurationManager = this.wac.getBean(ConfigurationManager.class);
+		WPSConfig.getInstance().setConfigurationManager(configurationManager);
+	}
+
+	@Test
+	public void testRevisionIsStableWithoutChanges() {
+		long revision = RepositoryManager.getInstance().getRevision();
+		assertEquals(revision, RepositoryManager.getInstance().getRevision());
+	}
+
+	@Test
+	public void testRevisionChangesOnReload() {
+		long revision = RepositoryManager.getInstance().getRevision();
+		RepositoryManager.getInstance().reloadRepositories();
+		assertNotEquals(revision, RepositoryManager.getInstance().getRevision());
+	}
+
+	@Test
+	public void testRevisionChangesWhenProcessesChange() {
+		long revision = RepositoryManager.getInstance().getRevision();
+		RepositoryManager.getInstance().processesChanged();
+		assertNotEquals(revision, RepositoryManager.getInstance().getRevision());
+	}
+
+	@Test
+	public void testRevisionChangesOnConfigurationChange() {
+		long revision = RepositoryManager.getInstance().getRevision();
+		configurationManager.getConfigurationServices().updateConfigurationModuleStatus(
+				LocalAlgorithmRepositoryCM.class.getName(), true);
+		assertNotEquals(revision, RepositoryManager.getInstance().getRevision());
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+
+/**
+ * Tests the lookups of the {@link RepositorySnapshot}.
+ */
+public class RepositorySnapshotTest {
+
+	@Test
+	public void testFirstRepositoryWins() {
+		TestRepository first = new TestRepository("a", "b");
+		TestRepository second = new TestRepository("b", "c");
+		RepositorySnapshot snapshot = new RepositorySnapshot(1, Arrays.<IAlgorithmRepository> asList(first, second));
+		assertEquals(1, snapshot.getConfigurationRevision());
+		assertSame(first, snapshot.getRepository("a"));
+		assertSame(first, snapshot.getRepository("b"));
+		assertSame(second, snapshot.getRepository("c"));
+		assertNull(snapshot.getRepository("d"));
+		assertEquals(Arrays.asList("a", "b", "b", "c"), snapshot.getAlgorithmNames());
+		assertSame(first, snapshot.getRepositoryForClassName(TestRepository.class.getName()));
+	}
+
+	@Test
+	public void testDescriptionsAndBindingsAreResolvedOnce() {
+		TestRepository repository = new TestRepository("a");
+		RepositorySnapshot snapshot = new RepositorySnapshot(0, Arrays.<IAlgorithmRepository> asList(repository));
+		ProcessDescription description = snapshot.getProcessDescription("a");
+		assertSame(description, snapshot.getProcessDescription("a"));
+		assertEquals(1, repository.descriptionRequests);
+		assertNull(snapshot.getProcessDescription("b"));
+
+		assertSame(String.class, snapshot.getInputDataType("a", "input"));
+		assertSame(String.class, snapshot.getInputDataType("a", "input"));
+		assertSame(Integer.class, snapshot.getOutputDataType("a", "output"));
+		assertEquals(2, repository.algorithmRequests);
+		assertNull(snapshot.getInputDataType("b", "input"));
+	}
+
+	private static class TestRepository implements IAlgorithmRepository {
+
+		private final List<String> names;
+
+		private int descriptionRequests = 0;
+
+		private int algorithmRequests = 0;
+
+		TestRepository(String... names) {
+			this.names = Arrays.asList(names);
+		}
+
+		public Collection<String> getAlgorithmNames() {
+			return names;
+		}
+
+		public IAlgorithm getAlgorithm(String processID) {
+			algorithmRequests++;
+			return new TestAlgorithm();
+		}
+
+		public ProcessDescription getProcessDescription(String processID) {
+			descriptionRequests++;
+			return new ProcessDescription();
+		}
+
+		public boolean containsAlgorithm(String processID) {
+			return names.contains(processID);
+		}
+
+		public void shutdown() {
+		}
+
+	}
+
+	private static class TestAlgorithm implements IAlgorithm {
+
+		public Map<String, IData> run(Map<String, List<IData>> inputData) throws ExceptionReport {
+			throw new UnsupportedOperationException();
+		}
+
+		public List<String> getErrors() {
+			return null;
+		}
+
+		public ProcessDescription getDescription() {
+			return null;
+		}
+
+		public String getWellKnownName() {
+			return "";
+		}
+
+		public boolean processDescriptionIsValid(String version) {
+			return true;
+		}
+
+		public Class<?> getInputDataType(String id) {
+			return String.class;
+		}
+
+		public Class<?> getOutputDataType(String id) {
+			return Integer.class;
+		}
+
+	}
+
+}
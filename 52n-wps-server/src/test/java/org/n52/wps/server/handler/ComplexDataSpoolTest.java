@@ -0,0 +1,161 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.wps.util.XMLBeansHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+/**
+ * Tests spooling of inline complex data by the {@link ComplexDataSpool}.
+ */
+public class ComplexDataSpoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ComplexDataSpool spool;
+
+	@Before
+	public void setUp() throws IOException {
+		spool = new ComplexDataSpool(folder.newFolder("spool"), 1024) {
+			@Override
+			protected boolean isComplexInput(String processId, String inputId) {
+				return "process".equals(processId) && "complexInput".equals(inputId);
+			}
+		};
+	}
+
+	@Test
+	public void testSmallDataStaysInDocument() throws Exception {
+		Document doc = parse(request("<gml:Point><gml:pos>1 2</gml:pos></gml:Point>"));
+		Element complexData = getComplexData(doc);
+		assertNull(ComplexDataSpool.getSpoolId(complexData));
+		assertEquals("1 2", complexData.getTextContent());
+	}
+
+	@Test
+	public void testLargeDataIsSpooled() throws Exception {
+		StringBuilder points = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			points.append("<gml:Point gml:id=\"p").append(i).append("\"><gml:pos>1 2</gml:pos></gml:Point>");
+		}
+		Document doc = parse(request("<gml:MultiPoint>" + points + "</gml:MultiPoint>"));
+		Element complexData = getComplexData(doc);
+		String id = ComplexDataSpool.getSpoolId(complexData);
+		assertNotNull(id);
+		// only the processing instruction is left
+		assertEquals(1, complexData.getChildNodes().getLength());
+		assertEquals("end", doc.getDocumentElement().getLastChild().getTextContent());
+
+		InputStream in = spool.open(id);
+		String content;
+		try {
+			content = IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+		assertTrue(content.startsWith("<gml:MultiPoint"));
+		assertTrue(content.contains("xmlns:gml=\"http://www.opengis.net/gml\""));
+		assertTrue(content.contains("<gml:Point gml:id=\"p199\"><gml:pos>1 2</gml:pos></gml:Point>"));
+		assertEquals(1, folder.getRoot().listFiles().length);
+		assertEquals(0, folder.getRoot().listFiles()[0].list().length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testForgedProcessingInstructionIsIgnored() throws Exception {
+		Document doc = parse(request("<?" + ComplexDataSpool.PROCESSING_INSTRUCTION_TARGET + " ../secret?>"));
+		assertNull(ComplexDataSpool.getSpoolId(getComplexData(doc)));
+		spool.open("../secret");
+	}
+
+	@Test
+	public void testLargeComplexDataOfWPS20IsSpooled() throws Exception {
+		Document doc = parse(requestV200("complexInput", largeText()));
+		assertNotNull(ComplexDataSpool.getSpoolId(getData(doc)));
+	}
+
+	@Test
+	public void testLargeLiteralDataOfWPS20StaysInDocument() throws Exception {
+		String text = largeText();
+		Document doc = parse(requestV200("literalInput", text));
+		Element data = getData(doc);
+		assertNull(ComplexDataSpool.getSpoolId(data));
+		assertEquals(text, data.getTextContent());
+		assertEquals(0, folder.getRoot().listFiles()[0].list().length);
+	}
+
+	private Document parse(String request) throws SAXException, IOException {
+		return spool.parse(new ByteArrayInputStream(request.getBytes("UTF-8")));
+	}
+
+	private Element getComplexData(Document doc) {
+		return (Element) doc.getElementsByTagNameNS(XMLBeansHelper.NS_WPS_1_0_0, "ComplexData").item(0);
+	}
+
+	private Element getData(Document doc) {
+		return (Element) doc.getElementsByTagNameNS(XMLBeansHelper.NS_WPS_2_0, "Data").item(0);
+	}
+
+	private String largeText() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append("value").append(i).append(' ');
+		}
+		return text.toString();
+	}
+
+	private String requestV200(String inputId, String content) {
+		return "<wps:Execute service=\"WPS\" version=\"2.0.0\" xmlns:wps=\"" + XMLBeansHelper.NS_WPS_2_0
+				+ "\" xmlns:ows=\"" + XMLBeansHelper.NS_OWS_2_0 + "\"><ows:Identifier>process</ows:Identifier>"
+				+ "<wps:Input id=\"" + inputId + "\"><wps:Data>" + content + "</wps:Data></wps:Input></wps:Execute>";
+	}
+
+	private String request(String content) {
+		return "<wps:Execute service=\"WPS\" version=\"1.0.0\" xmlns:wps=\"" + XMLBeansHelper.NS_WPS_1_0_0
+				+ "\" xmlns:gml=\"http://www.opengis.net/gml\"><wps:ComplexData mimeType=\"text/xml\">" + content
+				+ "</wps:ComplexData><wps:After>end</wps:After></wps:Execute>";
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.handler.ExecuteResultCache.RecordingOutputStream;
+
+/**
+ * Tests recording and memoization of responses by the
+ * {@link ExecuteResultCache}.
+ */
+public class ExecuteResultCacheTest {
+
+	private ExecuteResultCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new ExecuteResultCache(1 << 20, 60000, 16);
+	}
+
+	@Test
+	public void testResponseIsPassedThroughAndMemoized() throws Exception {
+		ByteArrayOutputStream client = new ByteArrayOutputStream();
+		RecordingOutputStream recording = cache.record(client);
+		recording.write("<Execute".getBytes("UTF-8"));
+		recording.write('/');
+		recording.write(">".getBytes("UTF-8"), 0, 1);
+		recording.close();
+		cache.put("key", recording);
+		assertArrayEquals("<Execute/>".getBytes("UTF-8"), client.toByteArray());
+		assertArrayEquals(client.toByteArray(), cache.get("key"));
+		assertNull(cache.get("other"));
+	}
+
+	@Test
+	public void testLargeResponseIsNotMemoized() throws Exception {
+		ByteArrayOutputStream client = new ByteArrayOutputStream();
+		RecordingOutputStream recording = cache.record(client);
+		byte[] response = "<ExecuteResponse>0123456789</ExecuteResponse>".getBytes("UTF-8");
+		recording.write(response);
+		cache.put("key", recording);
+		assertArrayEquals(response, client.toByteArray());
+		assertNull(cache.get("key"));
+	}
+
+	@Test
+	public void testTimeToLiveIsLimitedToTheRetentionPeriod() {
+		assertEquals(60000, ExecuteResultCache.clampTimeToLive(60000, Long.MAX_VALUE));
+		assertEquals(60000, ExecuteResultCache.clampTimeToLive(60000, 60000));
+		assertEquals(30000, ExecuteResultCache.clampTimeToLive(60000, 30000));
+	}
+
+}
@@ -0,0 +1,294 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.io.AbstractIOHandler;
+import org.n52.wps.server.ExceptionReport;
+
+/**
+ * Tests ordering, per host limits, fail fast behaviour and execution context
+ * propagation of the {@link ReferenceResolutionExecutor}.
+ */
+public class ReferenceResolutionExecutorTest {
+
+	private ReferenceResolutionExecutor executor;
+
+	@Before
+	public void setUp() {
+		executor = new ReferenceResolutionExecutor(8, 2, 10);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testResultsKeepTaskOrder() throws ExceptionReport {
+		List<String> hrefs = new ArrayList<String>();
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 6; i++) {
+			final int value = i;
+			hrefs.add("http://host" + i + "/data");
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					// later tasks finish first
+					Thread.sleep((6 - value) * 10);
+					return value;
+				}
+			});
+		}
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), executor.resolveAll(hrefs, tasks));
+	}
+
+	@Test
+	public void testConcurrentFetchesPerHostAreLimited() throws ExceptionReport {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		List<String> hrefs = new ArrayList<String>();
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 6; i++) {
+			hrefs.add("http://sameHost:8080/wfs?request=GetFeature&typeName=layer" + i);
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					int now = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), now));
+					}
+					Thread.sleep(20);
+					running.decrementAndGet();
+					return now;
+				}
+			});
+		}
+		executor.resolveAll(hrefs, tasks);
+		assertTrue(maxRunning.get() <= 2);
+	}
+
+	@Test
+	public void testTasksWaitingForTheirHostDoNotBlockOtherHosts() throws ExceptionReport {
+		ReferenceResolutionExecutor twoThreads = new ReferenceResolutionExecutor(2, 1, 10);
+		try {
+			final CountDownLatch otherHostDone = new CountDownLatch(1);
+			List<String> hrefs = Arrays.asList("http://busy/data1", "http://busy/data2", "http://other/data");
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return otherHostDone.await(5, TimeUnit.SECONDS);
+				}
+			});
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return true;
+				}
+			});
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					otherHostDone.countDown();
+					return true;
+				}
+			});
+			assertEquals(Arrays.asList(true, true, true), twoThreads.resolveAll(hrefs, tasks));
+		} finally {
+			twoThreads.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testQueuesOfIdleHostsAreDropped() throws Exception {
+		List<String> hrefs = new ArrayList<String>();
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 6; i++) {
+			final int value = i;
+			hrefs.add("http://host" + (i % 3) + "/data" + i);
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return value;
+				}
+			});
+		}
+		executor.resolveAll(hrefs, tasks);
+		executor.resolveAll(hrefs.subList(0, 1), tasks.subList(0, 1));
+		// the host of a task is released right after its result is available
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executor.getHostQueueCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, executor.getHostQueueCount());
+	}
+
+	@Test
+	public void testFailureCancelsOutstandingTasks() throws InterruptedException {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		List<String> hrefs = Arrays.asList("http://slow/data", "http://failing/data");
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		tasks.add(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return 0;
+			}
+		});
+		tasks.add(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				throw new ExceptionReport("failed", ExceptionReport.INVALID_PARAMETER_VALUE);
+			}
+		});
+		try {
+			executor.resolveAll(hrefs, tasks);
+			fail("Expected an ExceptionReport");
+		} catch (ExceptionReport e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testTemporaryFilesAreDeletedWithTheExecution() throws Exception {
+		ExecutionContext context = new ExecutionContext();
+		ExecutionContextFactory.registerContext(context);
+		final List<Thread> workers = new ArrayList<Thread>();
+		List<File> files;
+		try {
+			List<String> hrefs = Arrays.asList("http://host1/data", "http://host2/data", "http://host3/data");
+			List<Callable<File>> tasks = new ArrayList<Callable<File>>();
+			for (int i = 0; i < hrefs.size(); i++) {
+				tasks.add(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						synchronized (workers) {
+							workers.add(Thread.currentThread());
+						}
+						return new TempFileParser().parse();
+					}
+				});
+			}
+			files = executor.resolveAll(hrefs, tasks);
+		} finally {
+			ExecutionContextFactory.unregisterContext();
+		}
+		assertFalse(workers.contains(Thread.currentThread()));
+		for (File file : files) {
+			assertTrue(file.exists());
+		}
+		context.close();
+		for (File file : files) {
+			assertFalse(file.exists());
+		}
+	}
+
+	@Test
+	public void testWorkersDoNotKeepTheExecutionContext() throws Exception {
+		ExecutionContextFactory.registerContext(new ExecutionContext());
+		try {
+			assertEquals(Arrays.asList(1, 1), executor.resolveAll(Arrays.asList("http://host1/data",
+					"http://host2/data"), Arrays.<Callable<Integer>> asList(new ContextProbe(), new ContextProbe())));
+		} finally {
+			ExecutionContextFactory.unregisterContext();
+		}
+		List<Callable<ExecutionContext>> probes = new ArrayList<Callable<ExecutionContext>>();
+		for (int i = 0; i < 8; i++) {
+			probes.add(new Callable<ExecutionContext>() {
+				@Override
+				public ExecutionContext call() throws Exception {
+					return ExecutionContextFactory.getContext(false);
+				}
+			});
+		}
+		List<String> hrefs = new ArrayList<String>();
+		for (int i = 0; i < probes.size(); i++) {
+			hrefs.add("http://host" + i + "/data");
+		}
+		for (ExecutionContext context : executor.resolveAll(hrefs, probes)) {
+			assertNull(context);
+		}
+	}
+
+	@Test
+	public void testHostOf() {
+		assertEquals("example.org", ReferenceResolutionExecutor.hostOf("http://Example.org:8080/wfs?service=WFS"));
+		assertEquals("", ReferenceResolutionExecutor.hostOf("not a url"));
+	}
+
+	/**
+	 * Writes a temporary file the way parsers do.
+	 */
+	private static class TempFileParser extends AbstractIOHandler {
+
+		File parse() throws IOException {
+			File file = File.createTempFile("reference", ".tmp");
+			registerTempFile(file);
+			return file;
+		}
+
+	}
+
+	private static class ContextProbe implements Callable<Integer> {
+
+		@Override
+		public Integer call() throws Exception {
+			Thread.sleep(10);
+			return ExecutionContextFactory.getContext(false) == null ? 0 : 1;
+		}
+
+	}
+
+}
@@ -0,0 +1,258 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.observerpattern.ISubject;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.n52.wps.server.response.ExecuteResponseBuilder;
+import org.n52.wps.server.response.Response;
+
+/**
+ * Tests queueing, priorities and concurrency limits of the
+ * {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest {
+
+	private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private RequestScheduler scheduler;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testSlowProcessDoesNotBlockOthers() throws Exception {
+		Map<String, Integer> limits = new HashMap<String, Integer>();
+		limits.put("slow", 1);
+		scheduler = newScheduler(2, limits, new HashMap<String, Integer>());
+
+		scheduler.submit(new TestRequest("slow", true, release));
+		scheduler.submit(new TestRequest("slow", true, release));
+		Future<Response> quick = scheduler.submit(new TestRequest("quick", true, null));
+
+		quick.get(5, TimeUnit.SECONDS);
+		assertEquals(1, scheduler.getQueueSize());
+	}
+
+	@Test
+	public void testHigherPriorityStartsFirst() throws Exception {
+		Map<String, Integer> priorities = new HashMap<String, Integer>();
+		priorities.put("important", 5);
+		scheduler = newScheduler(1, new HashMap<String, Integer>(), priorities);
+
+		scheduler.submit(new TestRequest("blocker", true, release));
+		TestRequest normal = new TestRequest("normal", true, null);
+		TestRequest important = new TestRequest("important", true, null);
+		Future<Response> normalFuture = scheduler.submit(normal);
+		scheduler.submit(important);
+
+		assertEquals(2, normal.queuePosition);
+		assertEquals(1, important.queuePosition);
+
+		release.countDown();
+		normalFuture.get(5, TimeUnit.SECONDS);
+		assertEquals("important", started.get(1));
+		assertEquals("normal", started.get(2));
+	}
+
+	@Test
+	public void testSyncRequestsUseSeparatePool() throws Exception {
+		scheduler = newScheduler(1, new HashMap<String, Integer>(), new HashMap<String, Integer>());
+
+		scheduler.submit(new TestRequest("async", true, release));
+		Future<Response> sync = scheduler.submit(new TestRequest("sync", false, null));
+
+		sync.get(5, TimeUnit.SECONDS);
+		assertTrue(started.contains("sync"));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testFullQueueIsRejected() throws ExceptionReport {
+		scheduler = newScheduler(1, new HashMap<String, Integer>(), new HashMap<String, Integer>());
+
+		scheduler.submit(new TestRequest("a", true, release));
+		scheduler.submit(new TestRequest("b", true, null));
+		scheduler.submit(new TestRequest("c", true, null));
+		scheduler.submit(new TestRequest("d", true, null));
+	}
+
+	@Test
+	public void testParseSettings() {
+		Map<String, Integer> settings = RequestScheduler.parseSettings(" a.B = 2, c=x, d, e=-1,");
+		assertEquals(2, settings.size());
+		assertEquals(Integer.valueOf(2), settings.get("a.B"));
+		assertEquals(Integer.valueOf(-1), settings.get("e"));
+	}
+
+	@Test
+	public void testIdleThreadsAreStoppedDownToTheMinimumPoolSize() throws Exception {
+		scheduler = newScheduler(1, 2, new HashMap<String, Integer>(), new HashMap<String, Integer>());
+		assertEquals(1, scheduler.getThreadCount());
+
+		CountDownLatch finished = new CountDownLatch(1);
+		Future<Response> first = scheduler.submit(new TestRequest("a", false, finished));
+		Future<Response> second = scheduler.submit(new TestRequest("b", false, finished));
+		assertTrue(scheduler.getThreadCount() >= 2);
+		finished.countDown();
+		first.get(5, TimeUnit.SECONDS);
+		second.get(5, TimeUnit.SECONDS);
+
+		// the keep alive time is one second
+		long timeout = System.currentTimeMillis() + 5000;
+		while (scheduler.getThreadCount() > 1 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(100);
+		}
+		assertEquals(1, scheduler.getThreadCount());
+	}
+
+	private RequestScheduler newScheduler(int poolSize, Map<String, Integer> limits, Map<String, Integer> priorities) {
+		return newScheduler(0, poolSize, limits, priorities);
+	}
+
+	private RequestScheduler newScheduler(int minPoolSize, int poolSize, Map<String, Integer> limits,
+			Map<String, Integer> priorities) {
+		return new RequestScheduler(minPoolSize, poolSize, poolSize, 1, 2, 0, limits, priorities) {
+			@Override
+			protected String getRepositoryName(String processId) {
+				return null;
+			}
+		};
+	}
+
+	private class TestRequest extends ExecuteRequest {
+
+		private final String processId;
+
+		private final boolean storeResponse;
+
+		private final CountDownLatch latch;
+
+		private volatile int queuePosition;
+
+		TestRequest(String processId, boolean storeResponse, CountDownLatch latch) throws ExceptionReport {
+			super((org.w3c.dom.Document) null);
+			this.processId = processId;
+			this.storeResponse = storeResponse;
+			this.latch = latch;
+		}
+
+		@Override
+		public Response call() throws ExceptionReport {
+			started.add(processId);
+			if (latch != null) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public String getAlgorithmIdentifier() {
+			return processId;
+		}
+
+		@Override
+		public boolean isStoreResponse() {
+			return storeResponse;
+		}
+
+		@Override
+		public void updateStatusQueued(int position, long estimatedStart) {
+			queuePosition = position;
+		}
+
+		@Override
+		public Map<String, IData> getAttachedResult() {
+			return null;
+		}
+
+		@Override
+		public ExecuteResponseBuilder getExecuteResponseBuilder() {
+			return null;
+		}
+
+		@Override
+		public boolean isRawData() {
+			return false;
+		}
+
+		@Override
+		public boolean validate() throws ExceptionReport {
+			return true;
+		}
+
+		@Override
+		public void update(ISubject subject) {
+		}
+
+		@Override
+		public void updateStatusAccepted() {
+		}
+
+		@Override
+		public void updateStatusStarted() {
+		}
+
+		@Override
+		public void updateStatusSuccess() {
+		}
+
+		@Override
+		public void updateStatusError(String errorMessage) {
+		}
+	}
+
+}
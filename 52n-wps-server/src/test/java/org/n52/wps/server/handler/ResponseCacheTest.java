@@ -0,0 +1,126 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.handler.ResponseCache.CachedResponse;
+
+/**
+ * Tests caching and revalidation of responses by the {@link ResponseCache}.
+ */
+public class ResponseCacheTest {
+
+	private ResponseCache cache;
+
+	private AtomicInteger calls;
+
+	@Before
+	public void setUp() {
+		cache = new ResponseCache(1 << 20);
+		calls = new AtomicInteger();
+	}
+
+	@Test
+	public void testResponseIsGeneratedOnce() throws Exception {
+		CachedResponse first = cache.get("caps", 1, loader("<Capabilities/>"));
+		CachedResponse second = cache.get("caps", 1, loader("<Capabilities/>"));
+		assertSame(first, second);
+		assertEquals(1, calls.get());
+		assertArrayEquals("<Capabilities/>".getBytes("UTF-8"), first.getContent());
+		assertArrayEquals(first.getContent(),
+				IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(first.getGzippedContent()))));
+	}
+
+	@Test
+	public void testNewRevisionDiscardsResponses() throws Exception {
+		cache.get("caps", 1, loader("<Capabilities/>"));
+		CachedResponse updated = cache.get("caps", 2, loader("<Capabilities><Process/></Capabilities>"));
+		assertEquals(2, calls.get());
+		assertArrayEquals("<Capabilities><Process/></Capabilities>".getBytes("UTF-8"), updated.getContent());
+	}
+
+	@Test
+	public void testFailedResponseIsNotCached() throws Exception {
+		try {
+			cache.get("describe", 1, new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					throw new ExceptionReport("Algorithm does not exist: foo", ExceptionReport.INVALID_PARAMETER_VALUE);
+				}
+			});
+			fail("ExceptionReport expected");
+		} catch (ExceptionReport e) {
+			assertEquals("Algorithm does not exist: foo", e.getMessage());
+		}
+		cache.get("describe", 1, loader("<ProcessDescriptions/>"));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testConditionalRequests() throws Exception {
+		CachedResponse response = cache.get("caps", 1, loader("<Capabilities/>"));
+		assertNotEquals(response.getEntityTag(false), response.getEntityTag(true));
+		assertTrue(response.isNotModified(response.getEntityTag(false), -1));
+		assertTrue(response.isNotModified("\"other\", W/" + response.getEntityTag(true), -1));
+		assertTrue(response.isNotModified("*", -1));
+		assertFalse(response.isNotModified("\"other\"", -1));
+		assertFalse(response.isNotModified(null, -1));
+		assertTrue(response.isNotModified(null, response.getLastModified()));
+		assertFalse(response.isNotModified(null, response.getLastModified() - 1000));
+		// If-None-Match takes precedence
+		assertFalse(response.isNotModified("\"other\"", response.getLastModified()));
+	}
+
+	private Callable<byte[]> loader(final String content) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				calls.incrementAndGet();
+				return content.getBytes("UTF-8");
+			}
+		};
+	}
+
+}
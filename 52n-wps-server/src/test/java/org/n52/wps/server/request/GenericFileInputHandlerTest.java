@@ -0,0 +1,138 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import net.opengis.wps.x100.ComplexDataType;
+import net.opengis.wps.x100.InputType;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.xmlbeans.XmlCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.complex.GenericFileDataBinding;
+import org.n52.wps.webapp.api.ConfigurationManager;
+import org.n52.wps.webapp.common.AbstractITClass;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests that file inputs are still readable by the algorithm after the input
+ * handler is done, as the GenericFileParser reads its stream lazily.
+ */
+public class GenericFileInputHandlerTest extends AbstractITClass {
+
+	private static final byte[] CONTENT = "referenced file content".getBytes();
+
+	private HttpServer server;
+
+	private ExecutionContext context;
+
+	@Before
+	public void setUp() throws IOException {
+		MockMvcBuilders.webAppContextSetup(this.wac).build();
+		WPSConfig.getInstance().setConfigurationManager(this.wac.getBean(ConfigurationManager.class));
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/file.tif", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", "image/tiff");
+				exchange.sendResponseHeaders(200, CONTENT.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(CONTENT);
+				out.close();
+			}
+		});
+		server.start();
+		context = new ExecutionContext();
+		ExecutionContextFactory.registerContext(context);
+	}
+
+	@After
+	public void tearDown() {
+		ExecutionContextFactory.unregisterContext();
+		context.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void testGenericFileReferenceIsReadableAfterParsing() throws Exception {
+		InputType input = InputType.Factory.newInstance();
+		input.addNewIdentifier().setStringValue("ComplexInputData");
+		input.addNewReference().setHref("http://localhost:" + server.getAddress().getPort() + "/file.tif");
+		input.getReference().setMimeType("image/tiff");
+
+		InputHandler handler = new InputHandler.Builder(new Input(new InputType[] { input }),
+				"org.n52.wps.server.algorithm.test.DummyTestClass").build();
+
+		List<IData> data = handler.getParsedInputData().get("ComplexInputData");
+		assertEquals(1, data.size());
+		File file = ((GenericFileDataBinding) data.get(0)).getPayload().getBaseFile(false);
+		assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+	}
+
+	@Test
+	public void testBase64FileIsReadableAfterParsing() throws Exception {
+		InputType input = InputType.Factory.newInstance();
+		input.addNewIdentifier().setStringValue("ComplexInputData");
+		ComplexDataType complexData = input.addNewData().addNewComplexData();
+		complexData.setMimeType("image/tiff");
+		complexData.setEncoding("base64");
+		XmlCursor cursor = complexData.newCursor();
+		cursor.toEndToken();
+		cursor.insertChars(Base64.encodeBase64String(CONTENT));
+		cursor.dispose();
+
+		InputHandler handler = new InputHandler.Builder(new Input(new InputType[] { input }),
+				"org.n52.wps.server.algorithm.test.DummyTestClass").build();
+
+		List<IData> data = handler.getParsedInputData().get("ComplexInputData");
+		assertEquals(1, data.size());
+		File file = ((GenericFileDataBinding) data.get(0)).getPayload().getBaseFile(false);
+		assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the keys computed by the {@link RequestDigest}.
+ */
+public class RequestDigestTest {
+
+	@Test
+	public void testOrderOfInputsDoesNotMatter() {
+		RequestDigest first = new RequestDigest().add("process");
+		first.addInput("a", RequestDigest.hash("1"));
+		first.addInput("b", RequestDigest.hash("2"));
+		RequestDigest second = new RequestDigest().add("process");
+		second.addInput("b", RequestDigest.hash("2"));
+		second.addInput("a", RequestDigest.hash("1"));
+		assertEquals(first.getKey(), second.getKey());
+	}
+
+	@Test
+	public void testOrderOfValuesMatters() {
+		RequestDigest first = new RequestDigest().add("process");
+		first.addInput("a", RequestDigest.hash("1"));
+		first.addInput("a", RequestDigest.hash("2"));
+		RequestDigest second = new RequestDigest().add("process");
+		second.addInput("a", RequestDigest.hash("2"));
+		second.addInput("a", RequestDigest.hash("1"));
+		assertNotEquals(first.getKey(), second.getKey());
+	}
+
+	@Test
+	public void testValuesAreNotConcatenated() {
+		assertNotEquals(RequestDigest.hash("ab", "c"), RequestDigest.hash("a", "bc"));
+		assertNotEquals(RequestDigest.hash((String) null), RequestDigest.hash(""));
+		assertNotEquals(new RequestDigest().add("process").add(null).getKey(),
+				new RequestDigest().add("process").getKey());
+	}
+
+}
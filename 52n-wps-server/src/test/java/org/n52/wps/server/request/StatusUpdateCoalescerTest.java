@@ -0,0 +1,119 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests throttling of progress updates by the {@link StatusUpdateCoalescer}.
+ */
+public class StatusUpdateCoalescerTest {
+
+	private StatusUpdateCoalescer coalescer;
+
+	@Before
+	public void setUp() {
+		coalescer = new StatusUpdateCoalescer(1000, 5);
+		coalescer.stored(0, 0);
+	}
+
+	@Test
+	public void testSmallStepsWithinIntervalAreDropped() {
+		assertFalse(coalescer.isDue(1, 10));
+		assertFalse(coalescer.isDue(4, 20));
+		assertTrue(coalescer.isDue(5, 30));
+		assertFalse(coalescer.isDue(9, 40));
+	}
+
+	@Test
+	public void testChangeIsStoredAfterInterval() {
+		assertFalse(coalescer.isDue(1, 999));
+		assertTrue(coalescer.isDue(1, 1000));
+		assertFalse(coalescer.isDue(2, 1500));
+		assertTrue(coalescer.isDue("reading features", 2000));
+	}
+
+	@Test
+	public void testUnchangedStateIsNeverStored() {
+		assertFalse(coalescer.isDue(0, 5000));
+		assertTrue(coalescer.isDue("message", 5000));
+		assertFalse(coalescer.isDue("message", 10000));
+	}
+
+	@Test
+	public void testStoredStateRestartsInterval() {
+		coalescer.stored(null, 900);
+		assertFalse(coalescer.isDue(1, 1000));
+		assertTrue(coalescer.isDue(1, 1900));
+	}
+
+	@Test
+	public void testLatestDroppedUpdateIsPending() {
+		assertFalse(coalescer.isDue(1, 10));
+		assertFalse(coalescer.isDue(2, 20));
+		assertEquals(2, coalescer.takePending(1000));
+		assertNull(coalescer.takePending(1000));
+		assertFalse(coalescer.isDue(2, 1100));
+	}
+
+	@Test
+	public void testStoredStateDiscardsPendingUpdate() {
+		assertFalse(coalescer.isDue(1, 10));
+		coalescer.stored(null, 20);
+		assertNull(coalescer.takePending(1000));
+		assertFalse(coalescer.isDue(3, 30));
+		assertTrue(coalescer.isDue(5, 40));
+		assertNull(coalescer.takePending(1000));
+	}
+
+	@Test
+	public void testTrailingUpdateIsAnnouncedAfterInterval() throws InterruptedException {
+		final CountDownLatch announced = new CountDownLatch(1);
+		final StatusUpdateCoalescer trailing = new StatusUpdateCoalescer(50, 5, new Runnable() {
+			public void run() {
+				announced.countDown();
+			}
+		});
+		long now = System.currentTimeMillis();
+		trailing.stored(0, now);
+		assertFalse(trailing.isDue(1, now));
+		assertTrue(announced.await(5, TimeUnit.SECONDS));
+		assertEquals(1, trailing.takePending());
+	}
+
+}
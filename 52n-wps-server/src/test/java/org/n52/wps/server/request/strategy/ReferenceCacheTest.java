@@ -0,0 +1,146 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.wps.io.data.GenericFileData;
+import org.n52.wps.io.data.binding.complex.GenericFileDataBinding;
+import org.n52.wps.io.data.binding.complex.GenericXMLDataBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+/**
+ * Tests content addressing and eviction of the {@link ReferenceCache}.
+ */
+public class ReferenceCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ReferenceCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		cache = new ReferenceCache(folder.newFolder("cache"), 10, 0, 0);
+	}
+
+	@Test
+	public void testStoreAndOpen() throws IOException {
+		ReferenceCache.Entry entry = store("http://host/a", "abcd");
+		assertEquals(4, entry.getSize());
+		assertEquals("text/xml", entry.getMimeType());
+		assertEquals("\"etag\"", entry.getETag());
+		assertTrue(entry.hasValidators());
+		assertEquals("abcd", read(cache.open(cache.get("http://host/a"))));
+	}
+
+	@Test
+	public void testEqualContentIsStoredOnce() throws IOException {
+		ReferenceCache.Entry a = store("http://host/a", "abcd");
+		ReferenceCache.Entry b = store("http://other/b", "abcd");
+		assertEquals(a.getContentHash(), b.getContentHash());
+		assertEquals(4, cache.getSize());
+
+		cache.remove("http://host/a");
+		assertEquals(4, cache.getSize());
+		assertEquals("abcd", read(cache.open(b)));
+
+		cache.remove("http://other/b");
+		assertEquals(0, cache.getSize());
+		assertNull(cache.open(b));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws IOException {
+		store("http://host/a", "aaaa");
+		store("http://host/b", "bbbb");
+		// touch a, so b is the least recently used
+		assertNotNull(cache.get("http://host/a"));
+		store("http://host/c", "cccc");
+
+		assertNotNull(cache.get("http://host/a"));
+		assertNull(cache.get("http://host/b"));
+		assertNotNull(cache.get("http://host/c"));
+		assertEquals(8, cache.getSize());
+	}
+
+	@Test
+	public void testOnlySharableParsedDataIsCached() throws Exception {
+		cache = new ReferenceCache(folder.newFolder("parsed"), 10, 0, 10);
+		cache.putParsedData("literal", new LiteralStringBinding("value"));
+		cache.putParsedData("file", new GenericFileDataBinding(
+				new GenericFileData(new ByteArrayInputStream(new byte[0]), "image/tiff")));
+		GenericXMLDataBinding xml = new GenericXMLDataBinding(XmlObject.Factory.parse("<a/>"));
+		cache.putParsedData("xml", xml);
+
+		assertEquals("value", cache.getParsedData("literal").getPayload());
+		assertNull(cache.getParsedData("file"));
+		GenericXMLDataBinding cached = (GenericXMLDataBinding) cache.getParsedData("xml");
+		assertNotSame(xml.getPayload(), cached.getPayload());
+		assertEquals(xml.getPayload().xmlText(), cached.getPayload().xmlText());
+	}
+
+	@Test
+	public void testRevalidatedEntryKeepsContent() throws IOException {
+		ReferenceCache.Entry entry = store("http://host/a", "abcd");
+		assertTrue(!entry.isFresh(System.currentTimeMillis()));
+		ReferenceCache.Entry revalidated = cache.revalidated("http://host/a", entry, Long.MAX_VALUE);
+		assertTrue(revalidated.isFresh(System.currentTimeMillis()));
+		assertEquals(entry.getContentHash(), cache.get("http://host/a").getContentHash());
+		assertEquals("abcd", read(cache.open(revalidated)));
+	}
+
+	private ReferenceCache.Entry store(String key, String content) throws IOException {
+		return cache.store(key, new ByteArrayInputStream(content.getBytes("UTF-8")),
+				new ReferenceCache.Entry("text/xml", null, "\"etag\"", null, 0));
+	}
+
+	private String read(InputStream in) throws IOException {
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+}
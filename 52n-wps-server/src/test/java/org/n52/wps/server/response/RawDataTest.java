@@ -28,11 +28,18 @@
  */
 package org.n52.wps.server.response;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.xmlbeans.XmlObject;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -40,6 +47,8 @@ import org.junit.Test;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.bbox.BoundingBoxData;
+import org.n52.wps.io.datahandler.generator.AbstractGenerator;
+import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.ProcessDescription;
 import org.n52.wps.server.algorithm.test.DummyTestClass;
@@ -120,4 +129,78 @@ public class RawDataTest  extends AbstractITClass{
 		}
     }
 
+    @Test
+    public void testComplexRawDataIsWrittenByTheGenerator() throws Exception {
+        RawData plain = newComplexRawData(null, new TestGenerator(false));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        plain.writeTo(out);
+        assertArrayEquals(IOUtils.toByteArray(plain.getAsStream()), out.toByteArray());
+
+        RawData base64 = newComplexRawData("base64", new TestGenerator(false));
+        out = new ByteArrayOutputStream();
+        base64.writeTo(out);
+        assertArrayEquals(IOUtils.toByteArray(base64.getAsStream()), out.toByteArray());
+    }
+
+    @Test
+    public void testFailingGeneratorWritesNothing() throws Exception {
+        RawData rawData = newComplexRawData(null, new TestGenerator(true));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            rawData.writeTo(out);
+            fail("the failure of the generator is not reported");
+        } catch (ExceptionReport e) {
+            assertEquals("generator failed", e.getCause().getMessage());
+        }
+        assertEquals(0, out.size());
+    }
+
+    private RawData newComplexRawData(String encoding, AbstractGenerator generator) throws ExceptionReport {
+        IData data = new IData() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Object getPayload() {
+                return null;
+            }
+
+            @Override
+            public Class<?> getSupportedClass() {
+                return Object.class;
+            }
+        };
+        RawData rawData = new RawData(data, "BBOXOutputData", null, encoding, null, identifier, processDescription);
+        rawData.generator = generator;
+        return rawData;
+    }
+
+    /**
+     * Writes a line of text, or fails after the first bytes.
+     */
+    private static class TestGenerator extends AbstractGenerator {
+
+        private static final byte[] CONTENT = "a line of generated text\n".getBytes();
+
+        private final boolean failing;
+
+        TestGenerator(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public InputStream generateStream(IData data, String mimeType, String schema) {
+            return new ByteArrayInputStream(CONTENT);
+        }
+
+        @Override
+        public void writeTo(IData data, String mimeType, String schema, OutputStream out) throws IOException {
+            if (failing) {
+                out.write(CONTENT, 0, 4);
+                throw new IOException("generator failed");
+            }
+            out.write(CONTENT);
+        }
+
+    }
+
 }
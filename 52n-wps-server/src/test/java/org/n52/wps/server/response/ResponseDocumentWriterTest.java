@@ -0,0 +1,216 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wps.x100.ComplexDataType;
+import net.opengis.wps.x100.ExecuteResponseDocument;
+import net.opengis.wps.x100.ExecuteResponseDocument.ExecuteResponse.ProcessOutputs;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlCursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+
+/**
+ * Tests that the {@link ResponseDocumentWriter} writes inline outputs into the
+ * response document and reports failing outputs before anything is written.
+ */
+public class ResponseDocumentWriterTest {
+
+	private ExecuteResponseDocument document;
+
+	private ResponseDocumentWriter writer;
+
+	@Before
+	public void setUp() {
+		document = ExecuteResponseDocument.Factory.newInstance();
+		document.addNewExecuteResponse().addNewProcessOutputs();
+		writer = new ResponseDocumentWriter();
+	}
+
+	@Test
+	public void testXMLOutput() throws Exception {
+		writer.addInlineOutput(addComplexData(), new Content("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+				+ "<t:a xmlns:t=\"urn:test\" t:id=\"1\"><t:b>x &amp; \u00e4</t:b><!-- c --></t:a>", "ISO-8859-1"),
+				true);
+		ComplexDataType complexData = getComplexData(write(), 0);
+		XmlCursor cursor = complexData.newCursor();
+		try {
+			assertTrue(cursor.toFirstChild());
+			assertEquals(new QName("urn:test", "a"), cursor.getName());
+			assertEquals("1", cursor.getAttributeText(new QName("urn:test", "id")));
+			assertTrue(cursor.toFirstChild());
+			assertEquals(new QName("urn:test", "b"), cursor.getName());
+			assertEquals("x & \u00e4", cursor.getTextValue());
+		} finally {
+			cursor.dispose();
+		}
+	}
+
+	@Test
+	public void testTextOutput() throws Exception {
+		String text = "a < b & \u00e4\u20ac\n";
+		writer.addInlineOutput(addComplexData(), new Content(text, "UTF-8"), false);
+		assertEquals(text, getText(getComplexData(write(), 0)));
+	}
+
+	@Test
+	public void testBase64Output() throws Exception {
+		byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		writer.addInlineOutput(addComplexData(), new Content(Base64.encodeBase64String(data), "US-ASCII"), false);
+		assertArrayEquals(data, Base64.decodeBase64(getText(getComplexData(write(), 0))));
+	}
+
+	@Test
+	public void testMultipleOutputs() throws Exception {
+		writer.addInlineOutput(addComplexData(), new Content("first", "UTF-8"), false);
+		writer.addInlineOutput(addComplexData(), new Content("<second/>", "UTF-8"), true);
+		writer.addInlineOutput(addComplexData(), new Content("third", "UTF-8"), false);
+		ExecuteResponseDocument result = write();
+		assertEquals("first", getText(getComplexData(result, 0)));
+		XmlCursor cursor = getComplexData(result, 1).newCursor();
+		try {
+			assertTrue(cursor.toFirstChild());
+			assertEquals("second", cursor.getName().getLocalPart());
+		} finally {
+			cursor.dispose();
+		}
+		assertEquals("third", getText(getComplexData(result, 2)));
+	}
+
+	@Test
+	public void testInputStreamMatchesWrittenDocument() throws Exception {
+		writer.addInlineOutput(addComplexData(), new Content("text", "UTF-8"), false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(document, out);
+		InputStream in = writer.newInputStream(document);
+		try {
+			assertArrayEquals(out.toByteArray(), IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testFailingOutputWritesNothing() throws Exception {
+		writer.addInlineOutput(addComplexData(), new Content("first", "UTF-8"), false);
+		writer.addInlineOutput(addComplexData(), new Content("second", "UTF-8") {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write("partial".getBytes("UTF-8"));
+				throw new IOException("generator failed");
+			}
+		}, false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writer.write(document, out);
+			fail("Expected an ExceptionReport");
+		} catch (ExceptionReport e) {
+			assertEquals("generator failed", e.getCause().getMessage());
+		}
+		assertEquals(0, out.size());
+	}
+
+	@Test
+	public void testDocumentWithoutInlineOutputs() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(document, out);
+		assertEquals(0, ExecuteResponseDocument.Factory.parse(new ByteArrayInputStream(out.toByteArray()))
+				.getExecuteResponse().getProcessOutputs().sizeOfOutputArray());
+	}
+
+	private ComplexDataType addComplexData() {
+		return document.getExecuteResponse().getProcessOutputs().addNewOutput().addNewData().addNewComplexData();
+	}
+
+	private ExecuteResponseDocument write() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(document, out);
+		return ExecuteResponseDocument.Factory.parse(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static ComplexDataType getComplexData(ExecuteResponseDocument result, int index) {
+		ProcessOutputs outputs = result.getExecuteResponse().getProcessOutputs();
+		return outputs.getOutputArray(index).getData().getComplexData();
+	}
+
+	private static String getText(ComplexDataType complexData) {
+		XmlCursor cursor = complexData.newCursor();
+		try {
+			return cursor.getTextValue();
+		} finally {
+			cursor.dispose();
+		}
+	}
+
+	/**
+	 * Content written byte by byte, like a generator writing to an unbuffered
+	 * stream.
+	 */
+	private static class Content implements ResponseDocumentWriter.InlineContent {
+
+		private final byte[] bytes;
+
+		Content(String content, String charset) throws IOException {
+			this.bytes = content.getBytes(charset);
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			for (byte b : bytes) {
+				out.write(b);
+			}
+		}
+
+		@Override
+		public InputStream open() {
+			return new ByteArrayInputStream(bytes);
+		}
+
+	}
+
+}
@@ -28,17 +28,23 @@
  */
 package org.n52.wps.server.sextante;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.IAlgorithmRepository;
 import org.n52.wps.server.ProcessDescription;
+import org.n52.wps.server.ProcessDescriptionCache;
 import org.n52.wps.server.sextante.SextanteProcessDescriptionCreator.UnsupportedGeoAlgorithmException;
 import org.n52.wps.webapp.api.AlgorithmEntry;
 import org.n52.wps.webapp.api.ConfigurationCategory;
@@ -61,12 +67,20 @@ import es.unex.sextante.exceptions.NullParameterAdditionalInfoException;
 public class SextanteProcessRepository implements IAlgorithmRepository{
 	private static Logger LOGGER = LoggerFactory.getLogger(SextanteProcessRepository.class);
 	private Map<String, ProcessDescription> registeredProcesses;
+	// processes offered by Sextante, their descriptions are created on first use
+	private Set<String> sextanteProcesses;
+	private SextanteProcessDescriptionCreator descriptionCreator;
 	private ConfigurationModule sextanteAlgorithmRepoConfigModule;
+	// processes whose description could not be created, they are not tried
+	// again until the repositories are reloaded, which creates a new repository
+	private final Set<String> failedProcesses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<String, Object> descriptionLocks = new ConcurrentHashMap<String, Object>();
 	 
 	
 	public SextanteProcessRepository(){
 		LOGGER.info("Initializing Sextante Repository");
-		registeredProcesses = new HashMap<String, ProcessDescription>();
+		registeredProcesses = new ConcurrentHashMap<String, ProcessDescription>();
+		sextanteProcesses = new HashSet<String>();
 		
 		/*
 		 * get properties of Repository
@@ -85,26 +99,14 @@ public class SextanteProcessRepository implements IAlgorithmRepository{
 		HashMap<String, HashMap<String, GeoAlgorithm>> sextanteMap = Sextante.getAlgorithms();
 		HashMap<String, GeoAlgorithm> algorithmMap = sextanteMap.get("SEXTANTE");
 		Set<String> keys = algorithmMap.keySet();
-		SextanteProcessDescriptionCreator descriptionCreator = new SextanteProcessDescriptionCreator();
+		descriptionCreator = new SextanteProcessDescriptionCreator();
 		for(Object keyObject : keys){
 			String key = (String) keyObject;
 			if(!processList.contains(key)){
 				LOGGER.info("Did not add Sextante Process : " + key +". Not in Repository properties or not active.");
 				continue;
 			}
-			GeoAlgorithm sextanteProcess = Sextante.getAlgorithmFromCommandLineName(key);
-			ProcessDescription processDescription;
-			try {
-				processDescription = descriptionCreator.createDescribeProcessType(sextanteProcess);
-			} catch (NullParameterAdditionalInfoException e) {
-				LOGGER.warn("Could not add Sextante Process : " + key +". Errors while creating describe Process");
-				continue;
-			} catch (UnsupportedGeoAlgorithmException e) {
-				LOGGER.warn("Could not add Sextante Process : " + key + ". Errors while creating describe Process");
-				continue;
-			}
-		
-			registeredProcesses.put(key, processDescription);
+			sextanteProcesses.add(key);
 			LOGGER.info("Sextante Process " + key + " added.");
 		}
 		
@@ -120,7 +122,7 @@ public class SextanteProcessRepository implements IAlgorithmRepository{
 		if(!containsAlgorithm(processID)){
 			throw new RuntimeException("Could not allocate Process");
 		}
-		return new GenericSextanteProcessDelegator(processID, registeredProcesses.get(processID));
+		return new GenericSextanteProcessDelegator(processID, getDescription(processID));
 	}
 
 	public Collection<String> getAlgorithmNames() {
@@ -147,11 +149,68 @@ public class SextanteProcessRepository implements IAlgorithmRepository{
 	@Override
 	public ProcessDescription getProcessDescription(String processID) {
 		if (getAlgorithmNames().contains(processID)) {
-			return registeredProcesses.get(processID);
+			return getDescription(processID);
 		}
 		return null;
 	}
 
+	/**
+	 * Creates the description of a process on first use, or takes it from the
+	 * {@link ProcessDescriptionCache} if the Sextante library is unchanged.
+	 */
+	private ProcessDescription getDescription(String processID) {
+		ProcessDescription processDescription = registeredProcesses.get(processID);
+		if (processDescription != null || !sextanteProcesses.contains(processID) || failedProcesses.contains(processID)) {
+			return processDescription;
+		}
+		// only callers of the same process wait, the others are not blocked
+		synchronized (getDescriptionLock(processID)) {
+			processDescription = registeredProcesses.get(processID);
+			if (processDescription != null || failedProcesses.contains(processID)) {
+				return processDescription;
+			}
+			GeoAlgorithm sextanteProcess = Sextante.getAlgorithmFromCommandLineName(processID);
+			ProcessDescriptionCache cache = ProcessDescriptionCache.getInstance();
+			String repository = getClass().getName();
+			String checksum = null;
+			try {
+				checksum = cache.checksum(ProcessDescriptionCache.getCodeSourceFile(sextanteProcess.getClass()),
+						ProcessDescriptionCache.getCodeSourceFile(SextanteProcessDescriptionCreator.class));
+				processDescription = cache.get(repository, processID, checksum);
+			} catch (IOException e) {
+				LOGGER.warn("Could not compute checksum of Sextante Process " + processID + ".", e);
+			}
+			if (processDescription == null) {
+				try {
+					processDescription = descriptionCreator.createDescribeProcessType(sextanteProcess);
+				} catch (NullParameterAdditionalInfoException e) {
+					LOGGER.warn("Could not create description of Sextante Process : " + processID +". Errors while creating describe Process");
+					failedProcesses.add(processID);
+					return null;
+				} catch (UnsupportedGeoAlgorithmException e) {
+					LOGGER.warn("Could not create description of Sextante Process : " + processID + ". Errors while creating describe Process");
+					failedProcesses.add(processID);
+					return null;
+				}
+				if (processDescription == null) {
+					failedProcesses.add(processID);
+					return null;
+				}
+				if (checksum != null) {
+					cache.put(repository, processID, checksum, processDescription);
+				}
+			}
+			registeredProcesses.put(processID, processDescription);
+			return processDescription;
+		}
+	}
+
+
+	private Object getDescriptionLock(String processID) {
+		Object lock = new Object();
+		Object existing = descriptionLocks.putIfAbsent(processID, lock);
+		return existing != null ? existing : lock;
+	}
 
 	@Override
 	public void shutdown() {}
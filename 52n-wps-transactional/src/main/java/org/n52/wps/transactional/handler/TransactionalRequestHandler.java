@@ -103,6 +103,7 @@ public class TransactionalRequestHandler {
 				throw new ExceptionReport("Could not deploy process",
 						ExceptionReport.NO_APPLICABLE_CODE);
 			} else {
+				RepositoryManager.getInstance().processesChanged();
 				return new TransactionalResponse(
 						"Process successfully deployed");
 			}
@@ -181,6 +182,7 @@ public class TransactionalRequestHandler {
 					throw new ExceptionReport("Could not undeploy process",
 							ExceptionReport.NO_APPLICABLE_CODE);
 				} else {
+					RepositoryManager.getInstance().processesChanged();
 					return new TransactionalResponse(
 							"Process successfully undeployed");
 				}
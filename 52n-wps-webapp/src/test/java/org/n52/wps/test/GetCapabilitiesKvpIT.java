@@ -101,4 +101,12 @@ public class GetCapabilitiesKvpIT {
     public void wrongServiceParameter() throws ParserConfigurationException, SAXException, IOException {
         GetClient.checkForExceptionReport(url, "Service=HotDogStand&Request=GetCapabilities", HttpServletResponse.SC_BAD_REQUEST, "InvalidParameterValue");
     }
+
+    @Test
+    public void wrongServiceParameterAfterCachedResponse() throws ParserConfigurationException, SAXException, IOException {
+        String response = GetClient.sendRequest(url, "Service=WPS&Request=GetCapabilities");
+        assertThat(response, response, containsString("<wps:Capabilities"));
+
+        GetClient.checkForExceptionReport(url, "Service=HotDogStand&Request=GetCapabilities", HttpServletResponse.SC_BAD_REQUEST, "InvalidParameterValue");
+    }
 }